@@ -0,0 +1,37 @@
+package io.github.horoc.treetops.benchmark.breastcancer;
+
+import io.github.horoc.treetops.benchmark.common.AllocationBenchmarkTemplate;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * @author chenzhou@apache.org
+ * created on 2023/3/5
+ */
+public class AllocationBenchmark extends AllocationBenchmarkTemplate {
+
+    @Override
+    protected String modelName() {
+        return "breast_cancer_model";
+    }
+
+    @Override
+    protected int numClass() {
+        return 1;
+    }
+
+    @Override
+    protected double[] getFeature() {
+        double[] ret = new double[30];
+        Random r = new Random();
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = -2.0 + 4 * r.nextDouble();
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public double predictScalar() {
+        return predictor.predictScalar(features);
+    }
+}
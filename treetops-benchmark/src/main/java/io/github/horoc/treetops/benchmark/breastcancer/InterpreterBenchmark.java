@@ -0,0 +1,31 @@
+package io.github.horoc.treetops.benchmark.breastcancer;
+
+import io.github.horoc.treetops.benchmark.common.InterpreterBenchmarkTemplate;
+import java.util.Random;
+
+/**
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class InterpreterBenchmark extends InterpreterBenchmarkTemplate {
+
+    @Override
+    protected String modelName() {
+        return "breast_cancer_model";
+    }
+
+    @Override
+    protected int numClass() {
+        return 1;
+    }
+
+    @Override
+    protected double[] getFeature() {
+        double[] ret = new double[30];
+        Random r = new Random();
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = -2.0 + 4 * r.nextDouble();
+        }
+        return ret;
+    }
+}
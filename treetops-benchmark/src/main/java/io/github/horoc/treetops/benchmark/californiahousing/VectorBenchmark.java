@@ -0,0 +1,31 @@
+package io.github.horoc.treetops.benchmark.californiahousing;
+
+import io.github.horoc.treetops.benchmark.common.VectorBenchmarkTemplate;
+import java.util.Random;
+
+/**
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class VectorBenchmark extends VectorBenchmarkTemplate {
+
+    @Override
+    protected String modelName() {
+        return "california_housing_model";
+    }
+
+    @Override
+    protected int numClass() {
+        return 1;
+    }
+
+    @Override
+    protected double[] getFeature() {
+        double[] ret = new double[8];
+        Random r = new Random();
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = -2.0 + 4 * r.nextDouble();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.horoc.treetops.benchmark.common;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.factory.TreePredictorFactory;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Single row prediction of interpreter engines, which do not generate class.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(2)
+public abstract class InterpreterBenchmarkTemplate {
+
+    @SuppressWarnings("checkstyle:VisibilityModifier")
+    @Param({"SIMPLE", "FLAT", "BINNED"})
+    public EngineType engineType;
+
+    @SuppressWarnings("checkstyle:VisibilityModifier")
+    protected Predictor predictor;
+
+    @SuppressWarnings("checkstyle:VisibilityModifier")
+    protected double[] features;
+
+    @SuppressWarnings("checkstyle:VisibilityModifier")
+    protected double[] output;
+
+    /**
+     * model name, model file should be modelName.txt.
+     *
+     * @return model name
+     */
+    protected abstract String modelName();
+
+    /**
+     * num of output values.
+     *
+     * @return num class
+     */
+    protected abstract int numClass();
+
+    /**
+     * Get test feature.
+     *
+     * @return features
+     */
+    protected abstract double[] getFeature();
+
+    @Setup
+    public void setup() {
+        TreePredictorFactory.setTreeModelLoader(new ClassPathLoader());
+        this.predictor = TreePredictorFactory.newInstance(modelName() + "_" + engineType.name().toLowerCase(), "/" + modelName() + ".txt", null, engineType);
+        this.features = getFeature();
+        this.output = new double[numClass()];
+    }
+
+    @Benchmark
+    public void predictRaw(Blackhole blackhole) {
+        predictor.predictRaw(features, output);
+        blackhole.consume(output);
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.horoc.treetops.benchmark.wine;
+
+import io.github.horoc.treetops.benchmark.common.InliningStrategyBenchmarkTemplate;
+import java.util.Random;
+
+/**
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class InliningStrategyBenchmark extends InliningStrategyBenchmarkTemplate {
+
+    @Override
+    protected String modelName() {
+        return "wine_model";
+    }
+
+    @Override
+    protected int numClass() {
+        return 3;
+    }
+
+    @Override
+    protected double[] getFeature() {
+        double[] ret = new double[13];
+        Random r = new Random();
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = -2.0 + 4 * r.nextDouble();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,294 @@
+package io.github.horoc.treetops.core.dispatcher;
+
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Asynchronous front-end of predictor, concurrent single row requests are coalesced into micro batches,
+ * which are scored by the batch prediction of predictor on worker threads. <br>
+ * - micro batch is bounded by max batch size and max wait time since its first request is taken. <br>
+ * - pending requests are bounded by queue capacity, request is rejected when the queue is full. <br>
+ * - request which is not scored before its deadline is shed with {@link TimeoutException}.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/8
+ */
+@ThreadSafe
+public final class MicroBatchDispatcher implements AutoCloseable {
+
+    private static final int HISTOGRAM_BUCKETS = 32;
+
+    private final Predictor predictor;
+
+    private final int maxBatchSize;
+
+    private final long maxWaitNanos;
+
+    private final long defaultTimeoutNanos;
+
+    private final BlockingQueue<Request> queue;
+
+    private final ThreadPoolExecutor workers;
+
+    private final Thread collector;
+
+    private volatile boolean running = true;
+
+    /**
+     * size of output values of a single row, resolved by the first scored row.
+     */
+    private volatile int numClass;
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    private final LongAdder submitted = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder expired = new LongAdder();
+
+    private final LongAdder batches = new LongAdder();
+
+    private final AtomicLongArray batchSizeHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+    public MicroBatchDispatcher(Predictor predictor, MicroBatchOptions options) {
+        if (Objects.isNull(predictor) || Objects.isNull(options)) {
+            throw new IllegalArgumentException("predictor and options can not be null");
+        }
+        if (options.getMaxBatchSize() <= 0 || options.getQueueCapacity() <= 0 || options.getWorkerThreads() <= 0 || options.getMaxWaitMicros() < 0) {
+            throw new IllegalArgumentException("invalid micro batch options");
+        }
+        this.predictor = predictor;
+        this.maxBatchSize = options.getMaxBatchSize();
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(options.getMaxWaitMicros());
+        this.defaultTimeoutNanos = TimeUnit.MICROSECONDS.toNanos(options.getDefaultTimeoutMicros());
+        this.queue = new ArrayBlockingQueue<>(options.getQueueCapacity());
+
+        // collector scores the batch itself when all workers are busy, thus pending requests are bounded by the queue
+        AtomicInteger workerIndex = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(options.getWorkerThreads(), options.getWorkerThreads(), 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(options.getWorkerThreads()), r -> newDaemonThread(r, "treetops-micro-batch-worker-" + workerIndex.getAndIncrement()),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        this.collector = newDaemonThread(this::collect, "treetops-micro-batch-collector");
+        this.collector.start();
+    }
+
+    /**
+     * Submit a single row with default timeout.
+     *
+     * @param features input feature
+     * @return future of prediction output, completed exceptionally with {@link RejectedExecutionException} if the queue is full,
+     *     or with {@link TimeoutException} if the deadline is exceeded
+     */
+    public CompletableFuture<double[]> submit(double[] features) {
+        return submit(features, defaultTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Submit a single row with timeout.
+     *
+     * @param features input feature
+     * @param timeout  timeout of request, no deadline if it is not positive
+     * @param unit     unit of timeout
+     * @return future of prediction output
+     */
+    public CompletableFuture<double[]> submit(double[] features, long timeout, TimeUnit unit) {
+        CompletableFuture<double[]> future = new CompletableFuture<>();
+        if (!running) {
+            future.completeExceptionally(new RejectedExecutionException("micro batch dispatcher is closed"));
+            return future;
+        }
+        Request request = new Request(features, timeout > 0, System.nanoTime() + unit.toNanos(Math.max(timeout, 0)), future);
+        submitted.increment();
+        if (!queue.offer(request)) {
+            rejected.increment();
+            future.completeExceptionally(new RejectedExecutionException("micro batch queue is full"));
+            return future;
+        }
+        maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+        // closed concurrently, request would never be taken by collector
+        if (!running && queue.remove(request)) {
+            future.completeExceptionally(new RejectedExecutionException("micro batch dispatcher is closed"));
+        }
+        return future;
+    }
+
+    /**
+     * Snapshot of counters.
+     *
+     * @return stats
+     */
+    public MicroBatchStats getStats() {
+        long[] histogram = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            histogram[i] = batchSizeHistogram.get(i);
+        }
+        return new MicroBatchStats(queue.size(), maxQueueDepth.get(), submitted.sum(), rejected.sum(), expired.sum(), batches.sum(), histogram);
+    }
+
+    /**
+     * Stop accepting requests, pending requests are rejected, micro batches which are being scored are completed.
+     */
+    @Override
+    public void close() {
+        running = false;
+        collector.interrupt();
+        try {
+            collector.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.future.completeExceptionally(new RejectedExecutionException("micro batch dispatcher is closed"));
+        }
+    }
+
+    private void collect() {
+        List<Request> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                Request first = queue.take();
+                batch.add(first);
+                long waitDeadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = waitDeadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    Request next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // closed, requests of current batch are still scored
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                List<Request> requests = new ArrayList<>(batch);
+                batch.clear();
+                dispatch(requests);
+            }
+        }
+    }
+
+    private void dispatch(List<Request> requests) {
+        try {
+            workers.execute(() -> score(requests));
+        } catch (RejectedExecutionException e) {
+            // workers are shut down
+            score(requests);
+        }
+    }
+
+    private void score(List<Request> requests) {
+        long now = System.nanoTime();
+        List<Request> live = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            if (request.hasDeadline && now - request.deadline > 0) {
+                expired.increment();
+                request.future.completeExceptionally(new TimeoutException("deadline of prediction request is exceeded before it is scored"));
+            } else {
+                live.add(request);
+            }
+        }
+        if (live.isEmpty()) {
+            return;
+        }
+        batches.increment();
+        batchSizeHistogram.incrementAndGet(MicroBatchStats.bucketOf(live.size()));
+
+        double[][] rows = new double[live.size()][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = live.get(i).features;
+        }
+        // output size is resolved by rows scored alone, until one of them succeeds
+        int from = 0;
+        while (numClass == 0 && from < rows.length) {
+            double[] head = scoreSingle(live.get(from++));
+            if (head != null) {
+                numClass = head.length;
+            }
+        }
+        if (from == rows.length) {
+            return;
+        }
+        try {
+            double[] output = new double[rows.length * numClass];
+            predictor.predict(rows, from, rows.length, output);
+            for (int i = from; i < rows.length; i++) {
+                live.get(i).future.complete(Arrays.copyOfRange(output, i * numClass, (i + 1) * numClass));
+            }
+        } catch (Throwable e) {
+            // a single invalid row fails the whole batch, isolate it by scoring rows one by one
+            for (int i = from; i < rows.length; i++) {
+                scoreSingle(live.get(i));
+            }
+        }
+    }
+
+    /**
+     * Score a single row and complete its request.
+     *
+     * @param request request
+     * @return prediction output, null if the row is failed
+     */
+    private double[] scoreSingle(Request request) {
+        try {
+            double[] output = predictor.predict(request.features);
+            request.future.complete(output);
+            return output;
+        } catch (Throwable e) {
+            request.future.completeExceptionally(e);
+            return null;
+        }
+    }
+
+    private static Thread newDaemonThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Pending prediction request.
+     */
+    private static final class Request {
+
+        private final double[] features;
+
+        private final boolean hasDeadline;
+
+        /**
+         * deadline in {@link System#nanoTime()}.
+         */
+        private final long deadline;
+
+        private final CompletableFuture<double[]> future;
+
+        Request(double[] features, boolean hasDeadline, long deadline, CompletableFuture<double[]> future) {
+            this.features = features;
+            this.hasDeadline = hasDeadline;
+            this.deadline = deadline;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.horoc.treetops.core.dispatcher;
+
+/**
+ * Options of {@link MicroBatchDispatcher}.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/8
+ */
+public class MicroBatchOptions {
+
+    /**
+     * max num of rows of a micro batch.
+     */
+    private int maxBatchSize = 64;
+
+    /**
+     * max time to wait for more requests since the first request of a micro batch is taken.
+     */
+    private long maxWaitMicros = 200;
+
+    /**
+     * capacity of pending request queue, request is rejected when the queue is full.
+     */
+    private int queueCapacity = 4096;
+
+    /**
+     * num of threads which score micro batches.
+     */
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * default timeout of request, request which is not scored before its deadline is shed, no deadline if it is not positive.
+     */
+    private long defaultTimeoutMicros;
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getMaxWaitMicros() {
+        return maxWaitMicros;
+    }
+
+    public void setMaxWaitMicros(long maxWaitMicros) {
+        this.maxWaitMicros = maxWaitMicros;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public long getDefaultTimeoutMicros() {
+        return defaultTimeoutMicros;
+    }
+
+    public void setDefaultTimeoutMicros(long defaultTimeoutMicros) {
+        this.defaultTimeoutMicros = defaultTimeoutMicros;
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.horoc.treetops.core.dispatcher;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of counters of {@link MicroBatchDispatcher}.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/8
+ */
+public final class MicroBatchStats {
+
+    private final int queueDepth;
+
+    private final int maxQueueDepth;
+
+    private final long submitted;
+
+    private final long rejected;
+
+    private final long expired;
+
+    private final long batches;
+
+    /**
+     * bucket i counts batches whose size is in range (2^(i-1), 2^i], e.g. bucket 0 is size 1, bucket 3 is size 5 ~ 8.
+     */
+    private final long[] batchSizeHistogram;
+
+    MicroBatchStats(int queueDepth, int maxQueueDepth, long submitted, long rejected, long expired, long batches, long[] batchSizeHistogram) {
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.submitted = submitted;
+        this.rejected = rejected;
+        this.expired = expired;
+        this.batches = batches;
+        this.batchSizeHistogram = batchSizeHistogram;
+    }
+
+    /**
+     * Histogram bucket of batch size.
+     *
+     * @param batchSize batch size, should be positive
+     * @return bucket index
+     */
+    public static int bucketOf(int batchSize) {
+        return 32 - Integer.numberOfLeadingZeros(batchSize - 1);
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getExpired() {
+        return expired;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public long[] getBatchSizeHistogram() {
+        return batchSizeHistogram.clone();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MicroBatchStats{queueDepth=%d, maxQueueDepth=%d, submitted=%d, rejected=%d, expired=%d, batches=%d, batchSizeHistogram=%s}",
+            queueDepth, maxQueueDepth, submitted, rejected, expired, batches, Arrays.toString(batchSizeHistogram));
+    }
+}
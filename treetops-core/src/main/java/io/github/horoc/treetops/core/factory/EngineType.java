@@ -0,0 +1,57 @@
+package io.github.horoc.treetops.core.factory;
+
+/**
+ * Predictor engine types which can be created by {@link TreePredictorFactory}.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/3/18
+ */
+public enum EngineType {
+
+    /**
+     * Predictor class generated by asm, model which exceeds class file limits is split into chunk classes,
+     * and the predictor class sums up raw values of chunks in order.
+     */
+    GENERATED,
+
+    /**
+     * Interpret tree model directly, refer to {@link io.github.horoc.treetops.core.predictor.SimplePredictor}.
+     */
+    SIMPLE,
+
+    /**
+     * Interpret trees packed into primitive arrays, faster replacement of {@link #SIMPLE} without class generation,
+     * refer to {@link io.github.horoc.treetops.core.predictor.FlatTreePredictor}.
+     */
+    FLAT,
+
+    /**
+     * Interpret trees of which feature values are mapped to integer bins once per row,
+     * nodes compare bins instead of double thresholds, refer to {@link io.github.horoc.treetops.core.predictor.BinnedPredictor}.
+     */
+    BINNED,
+
+    /**
+     * Generated predictor which only resolves features used by split nodes,
+     * supports sparse input, refer to {@link io.github.horoc.treetops.core.predictor.SparsePredictor}.
+     */
+    SPARSE,
+
+    /**
+     * Trees are partitioned into shards which are scored concurrently for a single row,
+     * only activates when the estimated cost of a row is high enough, refer to {@link io.github.horoc.treetops.core.predictor.ShardedPredictor}.
+     */
+    SHARDED,
+
+    /**
+     * Bitvector engine of QuickScorer algorithm, suits models of many trees with many leaves,
+     * can not be used with prediction early stop, refer to {@link io.github.horoc.treetops.core.predictor.QuickScorerPredictor}.
+     */
+    QUICK_SCORER,
+
+    /**
+     * Vectorized batch engine of JDK 17+ by jdk.incubator.vector, falls back to {@link #FLAT} on Java 8, without the module,
+     * or for models with categorical nodes, refer to {@link io.github.horoc.treetops.core.predictor.VectorSupport}.
+     */
+    VECTOR
+}
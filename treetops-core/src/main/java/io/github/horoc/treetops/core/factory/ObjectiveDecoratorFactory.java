@@ -61,6 +61,7 @@ public class ObjectiveDecoratorFactory {
         }
 
         AbstractOutputConvertor convertor = convertorClass.newInstance();
+        convertor.initialize(treeModel);
         return convertor.decorate(predictor, treeModel);
     }
 
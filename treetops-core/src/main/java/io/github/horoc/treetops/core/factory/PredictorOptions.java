@@ -0,0 +1,209 @@
+package io.github.horoc.treetops.core.factory;
+
+import io.github.horoc.treetops.core.generator.InliningStrategy;
+import io.github.horoc.treetops.core.generator.PredictorClassGenerator;
+import io.github.horoc.treetops.core.predictor.PredictionEarlyStop;
+import io.github.horoc.treetops.core.predictor.ProfileGuidedOptions;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Options of predictor creation, refer to
+ * {@link TreePredictorFactory#newInstance(java.lang.String, java.lang.String, java.lang.String, PredictorOptions)}.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/3/25
+ */
+public class PredictorOptions {
+
+    /**
+     * predictor engine type.
+     */
+    private EngineType engineType = EngineType.GENERATED;
+
+    /**
+     * Float precision mode, thresholds and leaf values are rounded to float, and float inputs are read without widening copy. <br>
+     * Prediction may slightly deviate from the double model, refer to {@link io.github.horoc.treetops.core.predictor.PrecisionReport}.
+     */
+    private boolean floatPrecision;
+
+    /**
+     * Prediction early stop, refer to official library: pred_early_stop. <br>
+     * Only takes effect on binary and multiclass objective, the same as official library.
+     * Not supported by {@link EngineType#QUICK_SCORER} and model compaction.
+     */
+    private boolean earlyStop;
+
+    /**
+     * Refer to official library: pred_early_stop_freq.
+     */
+    private int earlyStopRoundPeriod = PredictionEarlyStop.DEFAULT_ROUND_PERIOD;
+
+    /**
+     * Refer to official library: pred_early_stop_margin.
+     */
+    private double earlyStopMarginThreshold = PredictionEarlyStop.DEFAULT_MARGIN_THRESHOLD;
+
+    /**
+     * Refer to official library: start_iteration, trees before this iteration are not compiled.
+     */
+    private int startIteration;
+
+    /**
+     * Refer to official library: num_iteration, all remaining iterations are compiled if it is not positive.
+     */
+    private int numIteration;
+
+    /**
+     * Shard count of {@link EngineType#SHARDED} engine, adaptive if it is not positive,
+     * refer to {@link io.github.horoc.treetops.core.predictor.ShardedPredictor#adaptiveShardCount(io.github.horoc.treetops.core.model.TreeModel, int)}.
+     */
+    private int shardCount;
+
+    /**
+     * Pool of {@link EngineType#SHARDED} engine, a dedicated pool shared by sharded predictors is used if it is null.
+     */
+    private ForkJoinPool shardPool;
+
+    /**
+     * Bytecode size budget of generated tree method, subtrees of larger tree are outlined into separate methods,
+     * refer to {@link PredictorClassGenerator#DEFAULT_METHOD_SIZE_BUDGET}.
+     */
+    private int methodSizeBudget = PredictorClassGenerator.DEFAULT_METHOD_SIZE_BUDGET;
+
+    /**
+     * How trees are scored by row prediction methods of generated predictor, resolved by measured tree sizes by default.
+     */
+    private InliningStrategy inliningStrategy = InliningStrategy.AUTO;
+
+    /**
+     * Feature preload mode of {@link EngineType#GENERATED} engine, used features are loaded and normalized once per row
+     * instead of in every split node, refer to {@link io.github.horoc.treetops.core.predictor.FeaturePreloadPredictor}.
+     */
+    private boolean featurePreload;
+
+    /**
+     * Profile guided recompilation of {@link EngineType#GENERATED} engine, disabled if it is null,
+     * refer to {@link io.github.horoc.treetops.core.predictor.ProfileGuidedPredictor}.
+     */
+    private ProfileGuidedOptions profileGuided;
+
+    /**
+     * Compact model before predictor creation, constant trees are folded, identical trees are merged and redundant splits are collapsed,
+     * refer to {@link io.github.horoc.treetops.core.model.ModelCompaction}. <br>
+     * Iteration limit of prediction calls and leaf index are not supported by the compacted predictor, and it can not be used with early stop,
+     * compaction report is available by {@link TreePredictorFactory#getCompaction(io.github.horoc.treetops.core.predictor.Predictor)}.
+     */
+    private boolean compaction;
+
+    public EngineType getEngineType() {
+        return engineType;
+    }
+
+    public void setEngineType(EngineType engineType) {
+        this.engineType = engineType;
+    }
+
+    public boolean isFloatPrecision() {
+        return floatPrecision;
+    }
+
+    public void setFloatPrecision(boolean floatPrecision) {
+        this.floatPrecision = floatPrecision;
+    }
+
+    public boolean isEarlyStop() {
+        return earlyStop;
+    }
+
+    public void setEarlyStop(boolean earlyStop) {
+        this.earlyStop = earlyStop;
+    }
+
+    public int getEarlyStopRoundPeriod() {
+        return earlyStopRoundPeriod;
+    }
+
+    public void setEarlyStopRoundPeriod(int earlyStopRoundPeriod) {
+        this.earlyStopRoundPeriod = earlyStopRoundPeriod;
+    }
+
+    public double getEarlyStopMarginThreshold() {
+        return earlyStopMarginThreshold;
+    }
+
+    public void setEarlyStopMarginThreshold(double earlyStopMarginThreshold) {
+        this.earlyStopMarginThreshold = earlyStopMarginThreshold;
+    }
+
+    public int getStartIteration() {
+        return startIteration;
+    }
+
+    public void setStartIteration(int startIteration) {
+        this.startIteration = startIteration;
+    }
+
+    public int getNumIteration() {
+        return numIteration;
+    }
+
+    public void setNumIteration(int numIteration) {
+        this.numIteration = numIteration;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    public ForkJoinPool getShardPool() {
+        return shardPool;
+    }
+
+    public void setShardPool(ForkJoinPool shardPool) {
+        this.shardPool = shardPool;
+    }
+
+    public int getMethodSizeBudget() {
+        return methodSizeBudget;
+    }
+
+    public void setMethodSizeBudget(int methodSizeBudget) {
+        this.methodSizeBudget = methodSizeBudget;
+    }
+
+    public InliningStrategy getInliningStrategy() {
+        return inliningStrategy;
+    }
+
+    public void setInliningStrategy(InliningStrategy inliningStrategy) {
+        this.inliningStrategy = inliningStrategy;
+    }
+
+    public boolean isFeaturePreload() {
+        return featurePreload;
+    }
+
+    public void setFeaturePreload(boolean featurePreload) {
+        this.featurePreload = featurePreload;
+    }
+
+    public ProfileGuidedOptions getProfileGuided() {
+        return profileGuided;
+    }
+
+    public void setProfileGuided(ProfileGuidedOptions profileGuided) {
+        this.profileGuided = profileGuided;
+    }
+
+    public boolean isCompaction() {
+        return compaction;
+    }
+
+    public void setCompaction(boolean compaction) {
+        this.compaction = compaction;
+    }
+}
@@ -3,16 +3,29 @@ package io.github.horoc.treetops.core.factory;
 import io.github.horoc.treetops.core.generator.PredictorClassGenerator;
 import io.github.horoc.treetops.core.loader.AbstractLoader;
 import io.github.horoc.treetops.core.loader.FileTreeModelLoader;
+import io.github.horoc.treetops.core.model.ModelCompaction;
 import io.github.horoc.treetops.core.model.TreeModel;
+import io.github.horoc.treetops.core.predictor.BinnedPredictor;
+import io.github.horoc.treetops.core.predictor.FeaturePreloadPredictor;
+import io.github.horoc.treetops.core.predictor.FlatTreePredictor;
 import io.github.horoc.treetops.core.predictor.MetaDataHolder;
+import io.github.horoc.treetops.core.predictor.PredictionEarlyStop;
 import io.github.horoc.treetops.core.predictor.Predictor;
 import io.github.horoc.treetops.core.predictor.PredictorWrapper;
+import io.github.horoc.treetops.core.predictor.ProfileGuidedPredictor;
+import io.github.horoc.treetops.core.predictor.QuickScorerPredictor;
+import io.github.horoc.treetops.core.predictor.ShardedPredictor;
 import io.github.horoc.treetops.core.predictor.SimplePredictor;
+import io.github.horoc.treetops.core.predictor.SparsePredictor;
+import io.github.horoc.treetops.core.predictor.VectorSupport;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.lang.ref.WeakReference;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.annotation.concurrent.ThreadSafe;
@@ -41,13 +54,14 @@ public class TreePredictorFactory {
     private static AbstractLoader treeModelLoader = FileTreeModelLoader.getInstance();
 
     /**
-     * Due to the limitation of asm framework, generated class can not be too large,
-     * thus when the tree nums of model larger than threshold,
-     * will use {@link SimplePredictor} as predictor implementation.
+     * Due to the limitation of class file, generated class can not be too large,
+     * thus when the tree nums of model larger than threshold, trees are split into several chunk classes,
+     * refer to {@link PredictorClassGenerator#generateClasses(String, TreeModel)}.
      * <p>
-     * Default threshold is 300, which can meet the requirement of most business scenarios.
+     * Default threshold is 300, which keeps generated methods small enough to be compiled by jit.
+     * It is read by profile guided recompilation outside the factory lock.
      */
-    private static int asmGenerationTreeNumsThreshold = 300;
+    private static volatile int asmGenerationTreeNumsThreshold = PredictorClassGenerator.DEFAULT_MAX_CHUNK_TREE_NUMS;
 
     /**
      * Entry point for user custom model loader, default model loader is {@link FileTreeModelLoader} <br>
@@ -60,9 +74,9 @@ public class TreePredictorFactory {
     }
 
     /**
-     * Entry point for user to custom tree nums threshold. <br>
-     * To be careful, the value should not be too large, since asm has a limitation of class size.
-     * Can see the detail {@link org.objectweb.asm.ClassWriter#toByteArray()}.
+     * Entry point for user to custom max tree nums of a single generated class. <br>
+     * To be careful, the value should not be too large, since jit does not compile huge methods,
+     * trees of a class are also bounded by estimated constant pool size, can see the detail {@link org.objectweb.asm.ClassWriter#toByteArray()}.
      *
      * @param threshold custom value
      */
@@ -119,6 +133,38 @@ public class TreePredictorFactory {
      */
     public static synchronized Predictor newInstance(final String modelName, final String resource, final String saveClassFileDir,
                                                      boolean enableGeneration) {
+        return newInstance(modelName, resource, saveClassFileDir, enableGeneration ? EngineType.GENERATED : EngineType.SIMPLE);
+    }
+
+    /**
+     * Create predictor from resource with specific engine type, refer to
+     * {@link TreePredictorFactory#newInstance(java.lang.String, java.lang.String, java.lang.String, boolean)}.
+     *
+     * @param modelName        model name, should be distinct from exist Predictor, and must only contain character: [a-zA-z0-9_]
+     * @param resource         resource path, if using default model loader, it means file path
+     * @param saveClassFileDir generated Predictor class save path, can be null if it's not necessary
+     * @param engineType       predictor engine type
+     * @return Predictor instance
+     */
+    public static synchronized Predictor newInstance(final String modelName, final String resource, final String saveClassFileDir,
+                                                     final EngineType engineType) {
+        PredictorOptions options = new PredictorOptions();
+        options.setEngineType(engineType);
+        return newInstance(modelName, resource, saveClassFileDir, options);
+    }
+
+    /**
+     * Create predictor from resource with options, refer to
+     * {@link TreePredictorFactory#newInstance(java.lang.String, java.lang.String, java.lang.String, boolean)}.
+     *
+     * @param modelName        model name, should be distinct from exist Predictor, and must only contain character: [a-zA-z0-9_]
+     * @param resource         resource path, if using default model loader, it means file path
+     * @param saveClassFileDir generated Predictor class save path, can be null if it's not necessary
+     * @param options          predictor options
+     * @return Predictor instance
+     */
+    public static synchronized Predictor newInstance(final String modelName, final String resource, final String saveClassFileDir,
+                                                     final PredictorOptions options) {
         checkModelName(modelName);
 
         String className = toClassName(modelName);
@@ -133,31 +179,35 @@ public class TreePredictorFactory {
         }
         try {
             TreeModel treeModel = treeModelLoader.loadModel(resource);
-            Predictor predictor;
-            // if model is too large, downgrade to simple predictor implementation
-            if (!enableGeneration || treeModel.getTrees().size() > asmGenerationTreeNumsThreshold) {
-                predictor = new SimplePredictor(treeModel);
-            } else {
-                // new class loader to do class generation
-                PredictorClassGenerator generator = PredictorClassGenerator.getInstance();
-                byte[] bytes = generator.generateCode(className, treeModel);
-                if (StringUtils.isNotBlank(saveClassFileDir)) {
-                    saveClass(bytes, className, saveClassFileDir);
+            if (options.getStartIteration() > 0 || options.getNumIteration() > 0) {
+                treeModel = treeModel.copyWithIterations(options.getStartIteration(), options.getNumIteration());
+            }
+            if (options.isEarlyStop() && options.getEngineType() == EngineType.QUICK_SCORER) {
+                throw new IllegalArgumentException("quick scorer engine can not be used with prediction early stop, since trees are not scored one by one");
+            }
+            ModelCompaction compaction = null;
+            if (options.isCompaction()) {
+                if (options.isEarlyStop()) {
+                    throw new IllegalArgumentException("model compaction can not be used with prediction early stop, since iterations are changed");
                 }
-                Object targetObj = generator.defineClassFromCode(className, bytes).newInstance();
-                predictor = (Predictor) targetObj;
+                compaction = ModelCompaction.compact(treeModel);
+                treeModel = compaction.getModel();
             }
-
-            // init meta data if need
-            if (predictor instanceof MetaDataHolder) {
-                ((MetaDataHolder) predictor).initialize(treeModel);
+            if (options.isFloatPrecision()) {
+                treeModel = treeModel.copyWithFloatPrecision();
+            }
+            Predictor predictor;
+            if (options.getProfileGuided() != null && options.getEngineType() == EngineType.GENERATED) {
+                predictor = createProfileGuidedPredictor(className, treeModel, saveClassFileDir, options);
+            } else {
+                predictor = createRawPredictor(className, treeModel, saveClassFileDir, options);
             }
 
             // objective decorate
             Predictor objectivePredictor = ObjectiveDecoratorFactory.decoratePredictorByObjectiveType(predictor, treeModel);
 
             // wrapper
-            Predictor predictorWrapper = new PredictorWrapper(objectivePredictor, treeModel);
+            Predictor predictorWrapper = new PredictorWrapper(objectivePredictor, treeModel, compaction);
 
             PREDICTORS.put(className, new WeakReference<>(predictorWrapper));
             return predictorWrapper;
@@ -166,6 +216,162 @@ public class TreePredictorFactory {
         }
     }
 
+    /**
+     * Create raw predictor of the engine type, without objective decoration.
+     *
+     * @param className        class name of generated predictor
+     * @param treeModel        tree model
+     * @param saveClassFileDir generated Predictor class save path, can be null if it's not necessary
+     * @param options          predictor options
+     * @return raw predictor
+     * @throws Exception
+     */
+    private static Predictor createRawPredictor(final String className, final TreeModel treeModel, final String saveClassFileDir,
+                                                final PredictorOptions options) throws Exception {
+        Predictor predictor;
+        if (options.getEngineType() == EngineType.SPARSE) {
+            int[] usedFeatures = SparsePredictor.usedFeatures(treeModel);
+            TreeModel compactModel = SparsePredictor.compactModel(treeModel, usedFeatures);
+            Predictor compactPredictor = createPredictor(className, compactModel, saveClassFileDir, options, newEarlyStop(options, compactModel));
+            predictor = new SparsePredictor(usedFeatures, compactPredictor, treeModel.getNumClass());
+        } else if (isFeaturePreload(options)) {
+            int[] usedFeatures = SparsePredictor.usedFeatures(treeModel);
+            TreeModel preloadModel = FeaturePreloadPredictor.preloadModel(treeModel, usedFeatures);
+            Predictor preloadPredictor = createPredictor(className, preloadModel, saveClassFileDir, options, newEarlyStop(options, preloadModel));
+            predictor = new FeaturePreloadPredictor(usedFeatures, preloadPredictor, treeModel.getNumClass());
+        } else if (options.getEngineType() == EngineType.SHARDED) {
+            predictor = createShardedPredictor(className, treeModel, saveClassFileDir, options);
+        } else {
+            predictor = createPredictor(className, treeModel, saveClassFileDir, options, newEarlyStop(options, treeModel));
+        }
+        return predictor;
+    }
+
+    /**
+     * Create profile guided predictor, each recompilation generates classes of a new name, since class can not be redefined by the same loader.
+     *
+     * @param className        class name of generated predictor
+     * @param treeModel        tree model
+     * @param saveClassFileDir generated Predictor class save path, can be null if it's not necessary
+     * @param options          predictor options
+     * @return raw predictor
+     */
+    private static Predictor createProfileGuidedPredictor(final String className, final TreeModel treeModel, final String saveClassFileDir,
+                                                          final PredictorOptions options) {
+        AtomicInteger version = new AtomicInteger();
+        return new ProfileGuidedPredictor(treeModel, model -> {
+            int v = version.getAndIncrement();
+            try {
+                return createRawPredictor(v == 0 ? className : className + "_pgo_" + v, model, saveClassFileDir, options);
+            } catch (Exception e) {
+                throw new RuntimeException(String.format("fail to recompile predictor, className: %s", className), e);
+            }
+        }, options.getProfileGuided());
+    }
+
+    /**
+     * Create raw predictor of tree model, without objective decoration.
+     *
+     * @param className        class name of generated predictor
+     * @param treeModel        tree model
+     * @param saveClassFileDir generated Predictor class save path, can be null if it's not necessary
+     * @param options          predictor options
+     * @param earlyStop        prediction early stop config, null if disabled
+     * @return raw predictor
+     * @throws Exception
+     */
+    private static Predictor createPredictor(final String className, final TreeModel treeModel, final String saveClassFileDir,
+                                             final PredictorOptions options, final PredictionEarlyStop earlyStop) throws Exception {
+        Predictor predictor;
+        if (options.getEngineType() == EngineType.SIMPLE) {
+            predictor = new SimplePredictor(treeModel, earlyStop);
+        } else if (options.getEngineType() == EngineType.FLAT) {
+            predictor = new FlatTreePredictor(treeModel, earlyStop);
+        } else if (options.getEngineType() == EngineType.BINNED) {
+            predictor = new BinnedPredictor(treeModel, earlyStop);
+        } else if (options.getEngineType() == EngineType.VECTOR) {
+            predictor = VectorSupport.newPredictor(treeModel, earlyStop);
+        } else if (options.getEngineType() == EngineType.QUICK_SCORER) {
+            predictor = new QuickScorerPredictor(treeModel);
+        } else {
+            // new class loader to do class generation, large model is split into chunk classes
+            PredictorClassGenerator generator = PredictorClassGenerator.getInstance();
+            generator.setFloatPrecision(options.isFloatPrecision());
+            generator.setEarlyStop(earlyStop);
+            generator.setMaxChunkTreeNums(asmGenerationTreeNumsThreshold);
+            generator.setMethodSizeBudget(options.getMethodSizeBudget());
+            generator.setInliningStrategy(options.getInliningStrategy());
+            generator.setFeaturePreload(isFeaturePreload(options));
+            Map<String, byte[]> classes = generator.generateClasses(className, treeModel);
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                if (StringUtils.isNotBlank(saveClassFileDir)) {
+                    saveClass(entry.getValue(), entry.getKey(), saveClassFileDir);
+                }
+                generator.defineClassFromCode(entry.getKey(), entry.getValue());
+            }
+            Object targetObj = generator.loadClass(className).newInstance();
+            predictor = (Predictor) targetObj;
+        }
+
+        // init meta data if need
+        if (predictor instanceof MetaDataHolder) {
+            ((MetaDataHolder) predictor).initialize(treeModel);
+        }
+        return predictor;
+    }
+
+    /**
+     * Create tree-sharded predictor, downgrade to a single predictor if sharding does not pay off. <br>
+     * Prediction early stop is disabled for shards, since margin of partial sums is meaningless.
+     *
+     * @param className        class name of generated predictor
+     * @param treeModel        tree model
+     * @param saveClassFileDir generated Predictor class save path, can be null if it's not necessary
+     * @param options          predictor options
+     * @return raw predictor
+     * @throws Exception
+     */
+    private static Predictor createShardedPredictor(final String className, final TreeModel treeModel, final String saveClassFileDir,
+                                                    final PredictorOptions options) throws Exception {
+        int shardCount = options.getShardCount();
+        if (shardCount <= 0) {
+            ForkJoinPool pool = options.getShardPool();
+            int parallelism = pool == null ? Runtime.getRuntime().availableProcessors() : pool.getParallelism();
+            shardCount = ShardedPredictor.adaptiveShardCount(treeModel, parallelism);
+        }
+        List<TreeModel> shardModels = ShardedPredictor.partition(treeModel, shardCount);
+        if (shardModels.size() == 1) {
+            return createPredictor(className, treeModel, saveClassFileDir, options, newEarlyStop(options, treeModel));
+        }
+
+        Predictor[] shards = new Predictor[shardModels.size()];
+        for (int s = 0; s < shards.length; s++) {
+            shards[s] = createPredictor(className + "_shard_" + s, shardModels.get(s), saveClassFileDir, options, null);
+        }
+        return new ShardedPredictor(shards, shardModels, treeModel.getNumClass(), options.getShardPool());
+    }
+
+    private static boolean isFeaturePreload(final PredictorOptions options) {
+        return options.isFeaturePreload() && options.getEngineType() == EngineType.GENERATED;
+    }
+
+    private static PredictionEarlyStop newEarlyStop(final PredictorOptions options, final TreeModel treeModel) {
+        if (options.isEarlyStop() && PredictionEarlyStop.isSupported(treeModel)) {
+            return new PredictionEarlyStop(options.getEarlyStopRoundPeriod(), options.getEarlyStopMarginThreshold(), treeModel);
+        }
+        return null;
+    }
+
+    /**
+     * Compaction report of predictor created with {@link PredictorOptions#setCompaction(boolean)}.
+     *
+     * @param predictor predictor created by factory
+     * @return compaction report, null if the model of predictor is not compacted
+     */
+    public static ModelCompaction getCompaction(final Predictor predictor) {
+        return predictor instanceof PredictorWrapper ? ((PredictorWrapper) predictor).getCompaction() : null;
+    }
+
     /**
      * Clean predictor reference.
      *
@@ -0,0 +1,93 @@
+package io.github.horoc.treetops.core.generator;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Method visitor which only counts the bytecode size of visited instructions, so that the size of generated code
+ * can be measured by the same emitting logic before it is written. <br>
+ * Size of ldc is counted as ldc_w, and jump is counted as short jump, thus it is accurate enough for methods smaller than 32KB.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/8
+ */
+final class BytecodeSizeCounter extends MethodVisitor implements Opcodes {
+
+    private int size;
+
+    BytecodeSizeCounter() {
+        super(ASM9);
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+        size += 1;
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+        size += opcode == SIPUSH ? 3 : 2;
+    }
+
+    @Override
+    public void visitVarInsn(int opcode, int var) {
+        if (var <= 3) {
+            size += 1;
+        } else if (var <= 255) {
+            size += 2;
+        } else {
+            size += 4;
+        }
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+        size += 3;
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+        size += 3;
+    }
+
+    @Override
+    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+        size += opcode == INVOKEINTERFACE ? 5 : 3;
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+        size += 3;
+    }
+
+    @Override
+    public void visitLdcInsn(Object value) {
+        size += 3;
+    }
+
+    @Override
+    public void visitIincInsn(int var, int increment) {
+        size += 3;
+    }
+
+    /**
+     * Opcode, at most 3 bytes of padding, default offset, low and high, followed by jump offsets.
+     */
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+        size += 1 + 3 + 12 + 4 * labels.length;
+    }
+
+    /**
+     * Opcode, at most 3 bytes of padding, default offset and num of pairs, followed by match-offset pairs.
+     */
+    @Override
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        size += 1 + 3 + 8 + 8 * keys.length;
+    }
+
+    int getSize() {
+        return size;
+    }
+}
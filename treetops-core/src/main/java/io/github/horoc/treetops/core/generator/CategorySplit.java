@@ -0,0 +1,233 @@
+package io.github.horoc.treetops.core.generator;
+
+import io.github.horoc.treetops.core.model.TreeNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Category split decisions of generated tree methods, categories of each split are folded into constants of generated class:
+ * long mask, tableswitch, lookupswitch or static bitset.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+final class CategorySplit implements Opcodes {
+
+    private static final String CLINIT = "<clinit>";
+
+    private static final String CATEGORY_FIELD_PREFIX = "cat_";
+
+    /**
+     * Category split whose categories are all smaller than 64 is decided by a long mask,
+     * otherwise it is decided by switch if it has at most this num of categories, or by a static bitset.
+     */
+    private static final int MAX_SWITCH_CATEGORIES = 16;
+
+    private CategorySplit() {
+    }
+
+    /**
+     * Define bitset field of each category split which is decided by bitset, refer to {@link CategorySplit#MAX_SWITCH_CATEGORIES}. <br>
+     * Bitset is stored as string constant of 16 bits chars, and converted to char array in static initializer,
+     * so that the size of static initializer does not grow with the size of bitset.
+     *
+     * @param cv        class visitor
+     * @param className internal class name
+     * @param trees     trees defined in the class
+     */
+    static void addBitsetFields(ClassVisitor cv, final String className, final List<TreeNode> trees) {
+        MethodVisitor methodVisitor = null;
+        for (TreeNode root : trees) {
+            for (TreeNode node : root.getAllNodes()) {
+                if (node.isLeaf() || !node.isCategoryNode() || !isBitsetNode(node)) {
+                    continue;
+                }
+                if (methodVisitor == null) {
+                    methodVisitor = cv.visitMethod(ACC_STATIC, CLINIT, "()V", null, null);
+                    methodVisitor.visitCode();
+                }
+                // cat_[%tree_index]_[%node_index] = "[%bitset]".toCharArray()
+                String fieldName = fieldName(node);
+                cv.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, fieldName, "[C", null, null).visitEnd();
+                methodVisitor.visitLdcInsn(new String(bitset(node)));
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "toCharArray", "()[C", false);
+                methodVisitor.visitFieldInsn(PUTSTATIC, className, fieldName, "[C");
+            }
+        }
+        if (methodVisitor != null) {
+            methodVisitor.visitInsn(RETURN);
+            methodVisitor.visitMaxs(1, 1);
+            methodVisitor.visitEnd();
+        }
+    }
+
+    /**
+     * Jump to left child if (int) feature is in categories of the split, otherwise jump to right child,
+     * feature should already be checked to be non-negative.
+     *
+     * @param methodVisitor method visitor
+     * @param node          category split node
+     * @param className     internal class name
+     * @param feature       local variable index of feature value
+     * @param left          label of left child
+     * @param right         label of right child
+     */
+    static void jump(MethodVisitor methodVisitor, final TreeNode node, final String className, int feature, Label left, Label right) {
+        int[] categories = categories(node);
+        if (categories.length == 0) {
+            methodVisitor.visitJumpInsn(GOTO, right);
+        } else if (categories[categories.length - 1] < Long.SIZE) {
+            checkMask(methodVisitor, categories, feature, left, right);
+        } else if (!isBitsetNode(node)) {
+            switchCategory(methodVisitor, categories, feature, left, right);
+        } else {
+            checkBitset(methodVisitor, node, className, feature, left, right);
+        }
+    }
+
+    /**
+     * Category split with small categories, decided by (int) feature &lt; 64 &amp;&amp; ((mask &gt;&gt;&gt; (int) feature) &amp; 1) != 0.
+     *
+     * @param methodVisitor method visitor
+     * @param categories    sorted categories of left child
+     * @param feature       local variable index of feature value
+     * @param left          label of left child
+     * @param right         label of right child
+     */
+    private static void checkMask(MethodVisitor methodVisitor, final int[] categories, int feature, Label left, Label right) {
+        long mask = 0L;
+        for (int category : categories) {
+            mask |= 1L << category;
+        }
+        methodVisitor.visitVarInsn(DLOAD, feature);
+        methodVisitor.visitInsn(D2I);
+        methodVisitor.visitIntInsn(BIPUSH, Long.SIZE);
+        methodVisitor.visitJumpInsn(IF_ICMPGE, right);
+        methodVisitor.visitLdcInsn(mask);
+        methodVisitor.visitVarInsn(DLOAD, feature);
+        methodVisitor.visitInsn(D2I);
+        methodVisitor.visitInsn(LUSHR);
+        methodVisitor.visitInsn(LCONST_1);
+        methodVisitor.visitInsn(LAND);
+        methodVisitor.visitInsn(LCONST_0);
+        methodVisitor.visitInsn(LCMP);
+        methodVisitor.visitJumpInsn(IFNE, left);
+        methodVisitor.visitJumpInsn(GOTO, right);
+    }
+
+    /**
+     * Category split with a few large categories, decided by tableswitch if categories are dense, otherwise by lookupswitch.
+     *
+     * @param methodVisitor method visitor
+     * @param categories    sorted categories of left child
+     * @param feature       local variable index of feature value
+     * @param left          label of left child
+     * @param right         label of right child
+     */
+    private static void switchCategory(MethodVisitor methodVisitor, final int[] categories, int feature, Label left, Label right) {
+        int min = categories[0];
+        int max = categories[categories.length - 1];
+        methodVisitor.visitVarInsn(DLOAD, feature);
+        methodVisitor.visitInsn(D2I);
+        if (max - min < 2 * categories.length) {
+            Label[] targets = new Label[max - min + 1];
+            Arrays.fill(targets, right);
+            for (int category : categories) {
+                targets[category - min] = left;
+            }
+            methodVisitor.visitTableSwitchInsn(min, max, right, targets);
+        } else {
+            Label[] targets = new Label[categories.length];
+            Arrays.fill(targets, left);
+            methodVisitor.visitLookupSwitchInsn(right, categories, targets);
+        }
+    }
+
+    /**
+     * Category split with many large categories, decided by static bitset of 16 bits chars,
+     * refer to {@link CategorySplit#addBitsetFields(ClassVisitor, String, List)}.
+     *
+     * @param methodVisitor method visitor
+     * @param node          category split node
+     * @param className     internal class name
+     * @param feature       local variable index of feature value
+     * @param left          label of left child
+     * @param right         label of right child
+     */
+    private static void checkBitset(MethodVisitor methodVisitor, final TreeNode node, final String className, int feature,
+                                     Label left, Label right) {
+        // if ((int) feature >>> 4 >= bitset.length) jump to right child node
+        methodVisitor.visitVarInsn(DLOAD, feature);
+        methodVisitor.visitInsn(D2I);
+        methodVisitor.visitInsn(ICONST_4);
+        methodVisitor.visitInsn(IUSHR);
+        methodVisitor.visitLdcInsn(bitset(node).length);
+        methodVisitor.visitJumpInsn(IF_ICMPGE, right);
+
+        // if (((bitset[(int) feature >>> 4] >> ((int) feature & 15)) & 1) != 0) jump to left child node
+        methodVisitor.visitFieldInsn(GETSTATIC, className, fieldName(node), "[C");
+        methodVisitor.visitVarInsn(DLOAD, feature);
+        methodVisitor.visitInsn(D2I);
+        methodVisitor.visitInsn(ICONST_4);
+        methodVisitor.visitInsn(IUSHR);
+        methodVisitor.visitInsn(CALOAD);
+        methodVisitor.visitVarInsn(DLOAD, feature);
+        methodVisitor.visitInsn(D2I);
+        methodVisitor.visitIntInsn(BIPUSH, 15);
+        methodVisitor.visitInsn(IAND);
+        methodVisitor.visitInsn(ISHR);
+        methodVisitor.visitInsn(ICONST_1);
+        methodVisitor.visitInsn(IAND);
+        methodVisitor.visitJumpInsn(IFNE, left);
+        methodVisitor.visitJumpInsn(GOTO, right);
+    }
+
+    /**
+     * Refer to official library: microsoft/LightGBM/include/LightGBM/utils/common.h#FindInBitset,
+     * category c is in the split if bit (c % 32) of cat_threshold[begin + c / 32] is set.
+     *
+     * @param node category split node
+     * @return sorted categories of left child
+     */
+    private static int[] categories(final TreeNode node) {
+        List<Long> words = node.getCatThreshold().subList(node.getCatBoundaryBegin(), node.getCatBoundaryEnd());
+        List<Integer> categories = new ArrayList<>();
+        for (int i = 0; i < words.size(); i++) {
+            for (int j = 0; j < Integer.SIZE; j++) {
+                if (((words.get(i) >> j) & 1) != 0) {
+                    categories.add(i * Integer.SIZE + j);
+                }
+            }
+        }
+        return categories.stream().mapToInt(c -> c).toArray();
+    }
+
+    private static boolean isBitsetNode(final TreeNode node) {
+        int[] categories = categories(node);
+        return categories.length > MAX_SWITCH_CATEGORIES && categories[categories.length - 1] >= Long.SIZE;
+    }
+
+    /**
+     * Bitset of category split in 16 bits chars, trailing zero chars are trimmed.
+     *
+     * @param node category split node
+     * @return bitset chars
+     */
+    private static char[] bitset(final TreeNode node) {
+        int[] categories = categories(node);
+        char[] bitset = new char[categories.length == 0 ? 0 : categories[categories.length - 1] / Character.SIZE + 1];
+        for (int category : categories) {
+            bitset[category / Character.SIZE] |= 1 << (category % Character.SIZE);
+        }
+        return bitset;
+    }
+
+    private static String fieldName(final TreeNode node) {
+        return CATEGORY_FIELD_PREFIX + node.getTreeIndex() + "_" + node.getNodeIndex();
+    }
+}
@@ -0,0 +1,219 @@
+package io.github.horoc.treetops.core.generator;
+
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Input forms supported by generated predictor, each form defines its own tree decision methods,
+ * which only differ in the way of loading feature values.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/3/11
+ */
+enum FeatureInput implements Opcodes {
+
+    /**
+     * Dense feature array. <br>
+     * tree method  : double tree_[%tree_index](double[] features) <br>
+     * batch method : void predictRaw(double[][] features, int from, int to, double[] output)
+     */
+    DENSE("", "([D)D", 2, "([[DII[D)V", 4, 5, false, Storage.DOUBLE_ARRAY),
+
+    /**
+     * Flat matrix, feature j of row i is stored at matrix[offset + i * rowStride + j * featureStride]. <br>
+     * tree method  : double tree_[%tree_index]_strided(double[] matrix, int base, int featureStride) <br>
+     * batch method : void predictRaw(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output)
+     */
+    STRIDED("_strided", "([DII)D", 4, "([DIIII[D)V", 6, 7, true, Storage.DOUBLE_ARRAY),
+
+    /**
+     * Dense float feature array, only generated in float precision mode. <br>
+     * tree method  : double tree_[%tree_index]_float(float[] features) <br>
+     * batch method : void predictRaw(float[][] features, int from, int to, double[] output)
+     */
+    FLOAT("_float", "([F)D", 2, "([[FII[D)V", 4, 5, false, Storage.FLOAT_ARRAY),
+
+    /**
+     * Flat float matrix, only generated in float precision mode. <br>
+     * tree method  : double tree_[%tree_index]_float_strided(float[] matrix, int base, int featureStride) <br>
+     * batch method : void predictRaw(float[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output)
+     */
+    FLOAT_STRIDED("_float_strided", "([FII)D", 4, "([FIIII[D)V", 6, 7, true, Storage.FLOAT_ARRAY),
+
+    /**
+     * Double buffer, e.g. off-heap rows, feature j of row i is read by absolute get of index offset + i * rowStride + j * featureStride. <br>
+     * tree method  : double tree_[%tree_index]_buffer(DoubleBuffer buffer, int base, int featureStride) <br>
+     * batch method : void predictRaw(DoubleBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output)
+     */
+    DOUBLE_BUFFER("_buffer", "(Ljava/nio/DoubleBuffer;II)D", 4, "(Ljava/nio/DoubleBuffer;IIII[D)V", 6, 7, true, Storage.DOUBLE_BUFFER),
+
+    /**
+     * Byte buffer of doubles in the byte order of the buffer, all offsets and strides are in bytes. <br>
+     * tree method  : double tree_[%tree_index]_byte_buffer(ByteBuffer buffer, int base, int featureStride) <br>
+     * batch method : void predictRaw(ByteBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output)
+     */
+    BYTE_BUFFER("_byte_buffer", "(Ljava/nio/ByteBuffer;II)D", 4, "(Ljava/nio/ByteBuffer;IIII[D)V", 6, 7, true, Storage.BYTE_BUFFER);
+
+    private final String methodSuffix;
+
+    private final String treeDescriptor;
+
+    private final int featureLocalIndex;
+
+    private final String batchDescriptor;
+
+    private final int batchOutputLocalIndex;
+
+    private final int batchRowLocalIndex;
+
+    /**
+     * whether features of a row are read from a flat matrix with stride.
+     */
+    private final boolean strided;
+
+    /**
+     * container of feature values.
+     */
+    private final Storage storage;
+
+    /**
+     * Define feature input form.
+     *
+     * @param methodSuffix          suffix of tree method name
+     * @param treeDescriptor        descriptor of tree method
+     * @param featureLocalIndex     local variable index of loaded feature value in tree method
+     * @param batchDescriptor       descriptor of batch prediction method
+     * @param batchOutputLocalIndex local variable index of output buffer in batch prediction method
+     * @param batchRowLocalIndex    local variable index of row counter in batch prediction method
+     * @param strided               whether features of a row are read from a flat matrix with stride
+     * @param storage               container of feature values
+     */
+    FeatureInput(String methodSuffix, String treeDescriptor, int featureLocalIndex,
+                 String batchDescriptor, int batchOutputLocalIndex, int batchRowLocalIndex, boolean strided, Storage storage) {
+        this.methodSuffix = methodSuffix;
+        this.treeDescriptor = treeDescriptor;
+        this.featureLocalIndex = featureLocalIndex;
+        this.batchDescriptor = batchDescriptor;
+        this.batchOutputLocalIndex = batchOutputLocalIndex;
+        this.batchRowLocalIndex = batchRowLocalIndex;
+        this.strided = strided;
+        this.storage = storage;
+    }
+
+    /**
+     * Push feature value onto the operand stack of tree method, float value is widened to double,
+     * buffer is read by absolute get.
+     *
+     * @param methodVisitor method visitor
+     * @param featureIndex  index of feature
+     */
+    void loadFeature(MethodVisitor methodVisitor, int featureIndex) {
+        methodVisitor.visitVarInsn(ALOAD, 1);
+        if (strided) {
+            // matrix[base + index * featureStride]
+            methodVisitor.visitVarInsn(ILOAD, 2);
+            if (featureIndex != 0) {
+                methodVisitor.visitLdcInsn(featureIndex);
+                methodVisitor.visitVarInsn(ILOAD, 3);
+                methodVisitor.visitInsn(IMUL);
+                methodVisitor.visitInsn(IADD);
+            }
+        } else {
+            // features[index]
+            methodVisitor.visitLdcInsn(featureIndex);
+        }
+        switch (storage) {
+            case FLOAT_ARRAY:
+                methodVisitor.visitInsn(FALOAD);
+                methodVisitor.visitInsn(F2D);
+                break;
+            case DOUBLE_BUFFER:
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/nio/DoubleBuffer", "get", "(I)D", false);
+                break;
+            case BYTE_BUFFER:
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL, "java/nio/ByteBuffer", "getDouble", "(I)D", false);
+                break;
+            default:
+                methodVisitor.visitInsn(DALOAD);
+        }
+    }
+
+    /**
+     * Push first row index (inclusive) and last row index (exclusive) onto the operand stack of batch method.
+     *
+     * @param methodVisitor method visitor
+     */
+    void loadBatchRange(MethodVisitor methodVisitor) {
+        if (strided) {
+            methodVisitor.visitInsn(ICONST_0);
+            methodVisitor.visitVarInsn(ILOAD, 5);
+        } else {
+            methodVisitor.visitVarInsn(ILOAD, 2);
+            methodVisitor.visitVarInsn(ILOAD, 3);
+        }
+    }
+
+    /**
+     * Push arguments of tree method for current row onto the operand stack of batch method.
+     *
+     * @param methodVisitor method visitor
+     */
+    void loadBatchTreeArguments(MethodVisitor methodVisitor) {
+        methodVisitor.visitVarInsn(ALOAD, 1);
+        if (strided) {
+            // matrix, offset + row * rowStride, featureStride
+            methodVisitor.visitVarInsn(ILOAD, 2);
+            methodVisitor.visitVarInsn(ILOAD, getBatchRowLocalIndex());
+            methodVisitor.visitVarInsn(ILOAD, 3);
+            methodVisitor.visitInsn(IMUL);
+            methodVisitor.visitInsn(IADD);
+            methodVisitor.visitVarInsn(ILOAD, 4);
+        } else {
+            // features[row]
+            methodVisitor.visitVarInsn(ILOAD, getBatchRowLocalIndex());
+            methodVisitor.visitInsn(AALOAD);
+        }
+    }
+
+    String getMethodSuffix() {
+        return methodSuffix;
+    }
+
+    String getTreeDescriptor() {
+        return treeDescriptor;
+    }
+
+    int getFeatureLocalIndex() {
+        return featureLocalIndex;
+    }
+
+    String getBatchDescriptor() {
+        return batchDescriptor;
+    }
+
+    int getBatchOutputLocalIndex() {
+        return batchOutputLocalIndex;
+    }
+
+    int getBatchRowLocalIndex() {
+        return batchRowLocalIndex;
+    }
+
+    boolean isStrided() {
+        return strided;
+    }
+
+    boolean isFloatElement() {
+        return storage == Storage.FLOAT_ARRAY;
+    }
+
+    /**
+     * Container of feature values.
+     */
+    enum Storage {
+        DOUBLE_ARRAY,
+        FLOAT_ARRAY,
+        DOUBLE_BUFFER,
+        BYTE_BUFFER
+    }
+}
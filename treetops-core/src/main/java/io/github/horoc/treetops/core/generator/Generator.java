@@ -1,6 +1,7 @@
 package io.github.horoc.treetops.core.generator;
 
 import io.github.horoc.treetops.core.model.TreeModel;
+import java.util.Map;
 
 /**
  * @author chenzhou@apache.org
@@ -25,4 +26,13 @@ public interface Generator {
      * @return bytecode data
      */
     byte[] generateCode(String className, TreeModel model);
+
+    /**
+     * Generate predictor bytecode, large model may be split into several classes.
+     *
+     * @param className class name of predictor
+     * @param model     tree model
+     * @return bytecode data of each class keyed by class name, predictor class is the last entry
+     */
+    Map<String, byte[]> generateClasses(String className, TreeModel model);
 }
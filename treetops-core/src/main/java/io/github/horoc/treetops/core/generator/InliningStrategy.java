@@ -0,0 +1,32 @@
+package io.github.horoc.treetops.core.generator;
+
+/**
+ * How trees are scored by the row prediction methods of generated predictor,
+ * the result is exactly the same for every strategy, since trees are summed up in the same order.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public enum InliningStrategy {
+
+    /**
+     * Resolved by measured bytecode size of trees: {@link #INLINED} if all trees fit in method size budget, otherwise {@link #GROUPED}.
+     */
+    AUTO,
+
+    /**
+     * Each tree is a separate method, prediction method invokes one method per tree.
+     */
+    TREE_METHOD,
+
+    /**
+     * Consecutive trees are combined into group methods, each group method is within method size budget,
+     * tree which is larger than the budget is still a separate method.
+     */
+    GROUPED,
+
+    /**
+     * Trees are inlined into the prediction method itself, downgrade to {@link #GROUPED} if they do not fit in method size budget.
+     */
+    INLINED
+}
@@ -1,9 +1,21 @@
 package io.github.horoc.treetops.core.generator;
 
+import io.github.horoc.treetops.core.model.DecisionType;
 import io.github.horoc.treetops.core.model.MissingType;
 import io.github.horoc.treetops.core.model.TreeModel;
 import io.github.horoc.treetops.core.model.TreeNode;
+import io.github.horoc.treetops.core.predictor.PredictionEarlyStop;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.StringUtils;
 import org.objectweb.asm.ClassVisitor;
@@ -11,6 +23,7 @@ import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.util.CheckClassAdapter;
 
 /**
@@ -22,9 +35,23 @@ import org.objectweb.asm.util.CheckClassAdapter;
  */
 public final class PredictorClassGenerator extends ClassLoader implements Generator, Opcodes {
 
-    private static final int FEATURE_PARAMETER_INDEX = 1;
+    /**
+     * Default max tree nums of a single generated class, it keeps the per row methods
+     * below the HugeMethodLimit (8000 bytes) of HotSpot, otherwise they would never be compiled by jit.
+     */
+    public static final int DEFAULT_MAX_CHUNK_TREE_NUMS = 300;
+
+    /**
+     * Default bytecode size budget of tree method, equals to HugeMethodLimit of HotSpot,
+     * method larger than it would never be compiled by jit.
+     */
+    public static final int DEFAULT_METHOD_SIZE_BUDGET = 8000;
 
-    private static final double K_ZERO_THRESHOLD = 1e-35f;
+    /**
+     * Size limit of methods of a tree which exceeds method size budget, equals to FreqInlineSize of HotSpot,
+     * so that hot subtree methods can still be inlined into their parents by jit.
+     */
+    private static final int OUTLINED_METHOD_SIZE = 325;
 
     private static final String INIT = "<init>";
 
@@ -34,154 +61,1571 @@ public final class PredictorClassGenerator extends ClassLoader implements Genera
 
     private static final String PREDICTOR_INTERNAL_NAME = "io/github/horoc/treetops/core/predictor/Predictor";
 
-    private static final String META_DATA_HOLDER_INTERNAL_NAME = "io/github/horoc/treetops/core/predictor/MetaDataHolder";
-
     private static final String PREDICT_METHOD = "predictRaw";
 
-    private static final String FIND_CAT_BIT_SET_METHOD = "findCatBitset";
+    private static final String PREDICT_SCALAR_METHOD = "predictRawScalar";
+
+    private static final String BATCH_SEGMENT_METHOD_PREFIX = "batch_";
+
+    private static final String ROW_METHOD_PREFIX = "row";
+
+    private static final String GROUP_METHOD_PREFIX = "group_";
+
+    private static final String LEAF_INDEX_METHOD = "predictLeafIndex";
+
+    private static final String LEAF_METHOD_PREFIX = "leaf_";
+
+    private static final String LEAF_METHOD_DESCRIPTOR = "([D)I";
+
+    private static final String EARLY_STOP_INTERNAL_NAME = "io/github/horoc/treetops/core/predictor/PredictionEarlyStop";
+
+    private static final String ARRAYS_INTERNAL_NAME = "java/util/Arrays";
+
+    /**
+     * Trees of batch prediction are split into several segment methods,
+     * keep each segment method small enough to be compiled by jit.
+     */
+    private static final int BATCH_SEGMENT_TREE_NUMS = 100;
+
+    private static final String CHUNK_CLASS_SUFFIX = "$Chunk";
+
+    private static final String CHUNK_FIELD_PREFIX = "chunk_";
+
+    private static final String ACCUMULATE_METHOD = "accumulate";
+
+    private static final String ACCUMULATE_LIMIT_METHOD = "accumulateLimit";
+
+    private static final String ACCUMULATE_SCALAR_METHOD = "accumulateScalar";
+
+    private static final String ACCUMULATE_BATCH_METHOD = "accumulateBatch";
+
+    private static final String ACCUMULATE_LEAF_INDEX_METHOD = "accumulateLeafIndex";
+
+    /**
+     * Estimated constant pool entries of a chunk class should not exceed the budget,
+     * jvm limits constant pool to 65535 entries, the rest is left for names and descriptors.
+     */
+    private static final int CHUNK_CONSTANT_POOL_BUDGET = 40000;
+
+    /**
+     * In float precision mode, thresholds and leaf values are stored as float constants,
+     * and float input methods are generated as well.
+     */
+    private boolean floatPrecision;
+
+    /**
+     * Prediction early stop config, null if disabled.
+     */
+    private PredictionEarlyStop earlyStop;
+
+    /**
+     * Max tree nums of a single generated class, larger model is split into chunk classes.
+     */
+    private int maxChunkTreeNums = DEFAULT_MAX_CHUNK_TREE_NUMS;
+
+    /**
+     * Bytecode size budget of tree method, subtrees of larger tree are outlined into separate methods.
+     */
+    private int methodSizeBudget = DEFAULT_METHOD_SIZE_BUDGET;
+
+    /**
+     * How trees are scored by row prediction methods.
+     */
+    private InliningStrategy inliningStrategy = InliningStrategy.AUTO;
+
+    /**
+     * In feature preload mode, features are read from a preloaded row,
+     * refer to {@link io.github.horoc.treetops.core.predictor.FeaturePreloadPredictor}.
+     */
+    private boolean featurePreload;
+
+    private PredictorClassGenerator() {
+    }
+
+    /**
+     * We can not maintain a singleton instance of generator here, <br>
+     * since we want jvm to unload class which would be no longer used.
+     *
+     * @return predictor instance
+     */
+    public static PredictorClassGenerator getInstance() {
+        return new PredictorClassGenerator();
+    }
+
+    /**
+     * Enable float precision mode, model values should already be rounded to float,
+     * refer to {@link TreeModel#copyWithFloatPrecision()}.
+     *
+     * @param floatPrecision whether to generate float precision predictor
+     */
+    public void setFloatPrecision(boolean floatPrecision) {
+        this.floatPrecision = floatPrecision;
+    }
+
+    /**
+     * Enable prediction early stop, margin is checked every round period iterations,
+     * remaining trees of the row are skipped once the margin is larger than threshold.
+     *
+     * @param earlyStop early stop config, null if disabled
+     */
+    public void setEarlyStop(PredictionEarlyStop earlyStop) {
+        this.earlyStop = earlyStop;
+    }
+
+    /**
+     * Set max tree nums of a single generated class, refer to {@link PredictorClassGenerator#generateClasses(String, TreeModel)}.
+     *
+     * @param maxChunkTreeNums max tree nums, should be positive
+     */
+    public void setMaxChunkTreeNums(int maxChunkTreeNums) {
+        if (maxChunkTreeNums <= 0) {
+            throw new IllegalArgumentException("max tree nums of generated class should be positive");
+        }
+        this.maxChunkTreeNums = maxChunkTreeNums;
+    }
+
+    /**
+     * Set bytecode size budget of tree method, refer to {@link PredictorClassGenerator#DEFAULT_METHOD_SIZE_BUDGET}.
+     *
+     * @param methodSizeBudget size budget in bytes, should be positive
+     */
+    public void setMethodSizeBudget(int methodSizeBudget) {
+        if (methodSizeBudget <= 0) {
+            throw new IllegalArgumentException("method size budget should be positive");
+        }
+        this.methodSizeBudget = methodSizeBudget;
+    }
+
+    /**
+     * Set inlining strategy of row prediction methods, refer to {@link InliningStrategy}.
+     *
+     * @param inliningStrategy inlining strategy, should not be null
+     */
+    public void setInliningStrategy(InliningStrategy inliningStrategy) {
+        if (inliningStrategy == null) {
+            throw new IllegalArgumentException("inlining strategy can not be null");
+        }
+        this.inliningStrategy = inliningStrategy;
+    }
+
+    /**
+     * Enable feature preload mode, split feature of each node should already be remapped to its position in preloaded row,
+     * refer to {@link io.github.horoc.treetops.core.predictor.FeaturePreloadPredictor#preloadModel(TreeModel, int[])}. <br>
+     * Nodes read normalized value and missing code of the feature instead of checking missing value by themselves,
+     * only dense input methods are generated.
+     *
+     * @param featurePreload whether to generate feature preload predictor
+     */
+    public void setFeaturePreload(boolean featurePreload) {
+        this.featurePreload = featurePreload;
+    }
+
+    @Override
+    public Class<?> defineClassFromCode(final String className, final byte[] code) {
+        return this.defineClass(className, code, 0, code.length);
+    }
+
+    /**
+     * Generate a single predictor class which contains all trees of the model,
+     * large model may exceed class file limits, refer to {@link PredictorClassGenerator#generateClasses(String, TreeModel)}.
+     */
+    @Override
+    public byte[] generateCode(final String className, final TreeModel model) {
+        return generatePredictorClass(className, model, null);
+    }
+
+    /**
+     * Generate predictor class of the model, model which is larger than max tree nums or constant pool budget
+     * is split into chunk classes, each chunk class defines tree methods of a range of trees,
+     * and the predictor class sums up raw values of chunks in order. <br>
+     * Chunk classes should be defined before predictor class is instantiated.
+     *
+     * @param className class name of predictor
+     * @param model     tree model
+     * @return bytecode of each class keyed by class name, predictor class is the last entry
+     */
+    @Override
+    public Map<String, byte[]> generateClasses(final String className, final TreeModel model) {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        List<int[]> chunks = chunkRanges(toInternalName(className), model);
+        if (chunks.size() == 1) {
+            classes.put(className, generatePredictorClass(className, model, null));
+            return classes;
+        }
+        for (int k = 0; k < chunks.size(); k++) {
+            String chunkClassName = className + CHUNK_CLASS_SUFFIX + k;
+            classes.put(chunkClassName, generateChunkClass(chunkClassName, model, chunks.get(k)[0], chunks.get(k)[1]));
+        }
+        classes.put(className, generatePredictorClass(className, model, chunks));
+        return classes;
+    }
+
+    /**
+     * Generate predictor class.
+     *
+     * @param className class name
+     * @param model     model config
+     * @param chunks    tree range of each chunk class, null if trees are defined in predictor class
+     * @return bytecode data
+     */
+    private byte[] generatePredictorClass(final String className, final TreeModel model, final List<int[]> chunks) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        ClassVisitor cv = new CheckClassAdapter(cw);
+        String internalClassName = toInternalName(className);
+
+        // define class
+        cv.visit(V1_8, ACC_PUBLIC | ACC_SUPER, toInternalName(internalClassName), null, OBJECT_INTERNAL_NAME,
+            new String[] {PREDICTOR_INTERNAL_NAME});
+
+        List<FeatureInput> inputs = featureInputs();
+        if (chunks == null) {
+            // define init method, and bitset of large category split
+            // description : private static final char[] cat_[%tree_index]_[%node_index];
+            addInitMethod(cv, internalClassName, model.getTrees());
+
+            // tree decision method of each input form
+            // description : private double tree_[%tree_index](double[] features);
+            // description : private double tree_[%tree_index]_strided(double[] matrix, int base, int featureStride);
+            // description : private double group_[%tree_index][%suffix](arguments of tree method, double raw);
+            for (FeatureInput input : inputs) {
+                model.getTrees().forEach(t -> addTreeMethod(cv, internalClassName, t, input));
+                addGroupMethods(cv, internalClassName, model, input, 0, model.getTrees().size());
+            }
+
+            // leaf index method of each tree, leaf blocks return leaf index instead of leaf value
+            // description : private int leaf_[%tree_index](double[] features);
+            model.getTrees().forEach(t -> addLeafIndexTreeMethod(cv, internalClassName, t));
+        } else {
+            // chunk instance of each tree range
+            // description : private final [%class_name]$Chunk[%chunk_index] chunk_[%chunk_index];
+            for (int k = 0; k < chunks.size(); k++) {
+                cv.visitField(ACC_PRIVATE | ACC_FINAL, CHUNK_FIELD_PREFIX + k, "L" + chunkInternalName(internalClassName, k) + ";", null, null).visitEnd();
+            }
+            addChunkedInitMethod(cv, internalClassName, chunks.size());
+        }
+
+        for (FeatureInput input : inputs) {
+            if (input.isStrided()) {
+                continue;
+            }
+            // prediction method
+            // description : public double[] predictRaw(double[] features);
+            addPredictionMethod(cv, internalClassName, model, input);
+
+            // prediction method with output buffer
+            // description : public void predictRaw(double[] features, double[] output);
+            addBufferPredictionMethod(cv, internalClassName, model, input, chunks);
+
+            // scalar prediction method
+            // description : public double predictRawScalar(double[] features);
+            if (model.getNumClass() == 1) {
+                addScalarPredictionMethod(cv, internalClassName, model, input, chunks);
+            }
+        }
+
+        // leaf index prediction method
+        // description : public void predictLeafIndex(double[] features, int[] output);
+        // description : public void predictLeafIndex(double[][] features, int from, int to, int[] output);
+        addLeafIndexPredictionMethod(cv, internalClassName, model, chunks);
+        addBatchLeafIndexPredictionMethod(cv, internalClassName, model, chunks);
+
+        // prediction method with per-call iteration limit
+        // description : public void predictRaw(double[] features, int numIteration, double[] output);
+        addIterationLimitPredictionMethod(cv, internalClassName, model, FeatureInput.DENSE, chunks);
+
+        // batch prediction method of each input form
+        // description : public void predictRaw(double[][] features, int from, int to, double[] output);
+        // description : public void predictRaw(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output);
+        for (FeatureInput input : inputs) {
+            if (earlyStop == null) {
+                addBatchPredictionMethod(cv, internalClassName, model, input, chunks);
+            } else {
+                addEarlyStopBatchPredictionMethod(cv, internalClassName, model, input, chunks);
+            }
+        }
+
+        cv.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Generate chunk class, which defines tree methods of trees in [begin, end),
+     * and package-private methods to continue raw values of previous chunks, they are only invoked by predictor class.
+     *
+     * @param className class name of chunk
+     * @param model     model config
+     * @param begin     position of first tree (inclusive)
+     * @param end       position of last tree (exclusive)
+     * @return bytecode data
+     */
+    private byte[] generateChunkClass(final String className, final TreeModel model, int begin, int end) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        ClassVisitor cv = new CheckClassAdapter(cw);
+        String internalClassName = toInternalName(className);
+
+        // define class
+        cv.visit(V1_8, ACC_FINAL | ACC_SUPER, internalClassName, null, OBJECT_INTERNAL_NAME, null);
+        List<TreeNode> trees = model.getTrees().subList(begin, end);
+        addInitMethod(cv, internalClassName, trees);
+        List<FeatureInput> inputs = featureInputs();
+        for (FeatureInput input : inputs) {
+            trees.forEach(t -> addTreeMethod(cv, internalClassName, t, input));
+            addGroupMethods(cv, internalClassName, model, input, begin, end);
+        }
+        trees.forEach(t -> addLeafIndexTreeMethod(cv, internalClassName, t));
+
+        for (FeatureInput input : inputs) {
+            // description : void accumulate[%suffix](arguments of tree method, double[] output, int outputOffset);
+            String descriptor = "(" + treeArguments(input) + "[DI)V";
+            int outputLocal = argumentsSize(input.getTreeDescriptor()) + 1;
+            MethodVisitor methodVisitor = simpleVisitMethod(cv, 0, ACCUMULATE_METHOD + input.getMethodSuffix(), descriptor);
+            methodVisitor.visitCode();
+            accumulateRow(methodVisitor, internalClassName, model, input, descriptor, outputLocal, outputLocal + 1, -1, begin, end);
+            methodVisitor.visitMaxs(1, 1);
+            methodVisitor.visitEnd();
+
+            // description : void accumulateBatch[%suffix](arguments of batch method);
+            methodVisitor = simpleVisitMethod(cv, 0, ACCUMULATE_BATCH_METHOD + input.getMethodSuffix(), input.getBatchDescriptor());
+            methodVisitor.visitCode();
+            invokeBatchSegments(cv, methodVisitor, internalClassName, model, input, begin, end);
+            methodVisitor.visitInsn(RETURN);
+            methodVisitor.visitMaxs(1, 1);
+            methodVisitor.visitEnd();
+
+            // description : double accumulateScalar[%suffix](double[] features, double raw);
+            if (!input.isStrided() && model.getNumClass() == 1) {
+                methodVisitor = simpleVisitMethod(cv, 0, ACCUMULATE_SCALAR_METHOD + input.getMethodSuffix(), "(" + rowDescriptor(input) + "D)D");
+                methodVisitor.visitCode();
+                accumulateScalar(methodVisitor, internalClassName, model, input, begin, end);
+                methodVisitor.visitMaxs(1, 1);
+                methodVisitor.visitEnd();
+            }
+        }
+
+        // description : void accumulateLimit(double[] features, double[] output, int outputOffset, int numIteration);
+        String limitDescriptor = "([D[DII)V";
+        MethodVisitor methodVisitor = simpleVisitMethod(cv, 0, ACCUMULATE_LIMIT_METHOD, limitDescriptor);
+        methodVisitor.visitCode();
+        accumulateRow(methodVisitor, internalClassName, model, FeatureInput.DENSE, limitDescriptor, 2, 3, 4, begin, end);
+        methodVisitor.visitMaxs(1, 1);
+        methodVisitor.visitEnd();
+
+        // description : void accumulateLeafIndex(double[] features, int[] output, int outputOffset);
+        addChunkLeafIndexMethod(cv, internalClassName, model, begin, end);
+
+        cv.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Split trees into chunks, each chunk is bounded by max tree nums and estimated constant pool entries. <br>
+     * Chunk boundaries are aligned to iterations, and to checkpoints in early stop mode,
+     * so that iteration limit and margin can be checked by predictor class between chunks exactly as checked between trees.
+     *
+     * @param className internal class name
+     * @param model     model config
+     * @return tree range [begin, end) of each chunk
+     */
+    private List<int[]> chunkRanges(final String className, final TreeModel model) {
+        List<TreeNode> trees = model.getTrees();
+        int treePerIteration = Math.max(model.getNumberTreePerIteration(), 1);
+        int align = earlyStop == null ? treePerIteration : earlyStop.getRoundPeriod() * treePerIteration;
+        // tree methods of each input form and leaf index method
+        int methodNums = featureInputs().size() + 1;
+
+        List<int[]> chunks = new ArrayList<>();
+        int begin = 0;
+        int cost = 0;
+        for (int unitBegin = 0; unitBegin < trees.size(); unitBegin += align) {
+            int unitEnd = Math.min(unitBegin + align, trees.size());
+            int unitCost = 0;
+            for (int t = unitBegin; t < unitEnd; t++) {
+                // each node may refer to a double constant (two entries) and int constants of category split,
+                // each method refers to name, name_and_type and method_ref entries, outlined subtree methods included
+                TreeNode root = trees.get(t);
+                unitCost += 3 * root.getAllNodes().size() + 3 * methodNums * (1 + outlinedSubtrees(className, root, FeatureInput.DENSE, false).size());
+            }
+            if (unitBegin > begin && (cost + unitCost > CHUNK_CONSTANT_POOL_BUDGET || unitEnd - begin > maxChunkTreeNums)) {
+                chunks.add(new int[] {begin, unitBegin});
+                begin = unitBegin;
+                cost = 0;
+            }
+            cost += unitCost;
+        }
+        chunks.add(new int[] {begin, trees.size()});
+        return chunks;
+    }
+
+    private List<FeatureInput> featureInputs() {
+        return Arrays.stream(FeatureInput.values())
+            .filter(input -> floatPrecision || !input.isFloatElement())
+            .filter(input -> !featurePreload || input == FeatureInput.DENSE)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Define init method, and static bitset fields of category split which are used by trees defined in the class.
+     *
+     * @param cv        class visitor
+     * @param className internal class name
+     * @param trees     trees defined in the class
+     */
+    private void addInitMethod(ClassVisitor cv, final String className, final List<TreeNode> trees) {
+        MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PUBLIC, INIT, "()V");
+        methodVisitor.visitCode();
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitMethodInsn(INVOKESPECIAL, OBJECT_INTERNAL_NAME, INIT, "()V", false);
+        methodVisitor.visitInsn(RETURN);
+        methodVisitor.visitMaxs(1, 1);
+        methodVisitor.visitEnd();
+        CategorySplit.addBitsetFields(cv, className, trees);
+    }
+
+    /**
+     * Define init method of chunked predictor class, which creates instance of each chunk class.
+     *
+     * @param cv        class visitor
+     * @param className internal class name
+     * @param chunkNums num of chunks
+     */
+    private void addChunkedInitMethod(ClassVisitor cv, final String className, int chunkNums) {
+        MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PUBLIC, INIT, "()V");
+        methodVisitor.visitCode();
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitMethodInsn(INVOKESPECIAL, OBJECT_INTERNAL_NAME, INIT, "()V", false);
+
+        // this.chunk_[%chunk_index] = new [%class_name]$Chunk[%chunk_index]()
+        for (int k = 0; k < chunkNums; k++) {
+            String chunkClassName = chunkInternalName(className, k);
+            methodVisitor.visitVarInsn(ALOAD, 0);
+            methodVisitor.visitTypeInsn(NEW, chunkClassName);
+            methodVisitor.visitInsn(DUP);
+            methodVisitor.visitMethodInsn(INVOKESPECIAL, chunkClassName, INIT, "()V", false);
+            methodVisitor.visitFieldInsn(PUTFIELD, className, CHUNK_FIELD_PREFIX + k, "L" + chunkClassName + ";");
+        }
+
+        methodVisitor.visitInsn(RETURN);
+        methodVisitor.visitMaxs(1, 1);
+        methodVisitor.visitEnd();
+    }
+
+    /**
+     * Allocating version of prediction, delegate to the output buffer version.
+     *
+     * @param cv        class visitor
+     * @param className internal class name
+     * @param model     model config
+     * @param input     feature input form, should not be strided
+     */
+    private void addPredictionMethod(ClassVisitor cv, final String className, final TreeModel model, final FeatureInput input) {
+        String row = rowDescriptor(input);
+        MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PUBLIC, PREDICT_METHOD, "(" + row + ")[D");
+        methodVisitor.visitCode();
+
+        methodVisitor.visitLdcInsn(model.getNumClass());
+        methodVisitor.visitIntInsn(NEWARRAY, T_DOUBLE);
+        methodVisitor.visitVarInsn(ASTORE, 2);
+
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitVarInsn(ALOAD, 1);
+        methodVisitor.visitVarInsn(ALOAD, 2);
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, className, PREDICT_METHOD, "(" + row + "[D)V", false);
+
+        methodVisitor.visitVarInsn(ALOAD, 2);
+        methodVisitor.visitInsn(ARETURN);
+        methodVisitor.visitMaxs(1, 1);
+        methodVisitor.visitEnd();
+    }
+
+    /**
+     * Raw value of each class is accumulated in local variables, and output buffer is only written once,
+     * so that the prediction does not need any allocation.
+     *
+     * @param cv        class visitor
+     * @param className internal class name
+     * @param model     model config
+     * @param input     feature input form, should not be strided
+     * @param chunks    tree range of each chunk class, null if trees are defined in current class
+     */
+    private void addBufferPredictionMethod(ClassVisitor cv, final String className, final TreeModel model, final FeatureInput input,
+                                           final List<int[]> chunks) {
+        String descriptor = "(" + rowDescriptor(input) + "[D)V";
+        MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PUBLIC, PREDICT_METHOD, descriptor);
+        methodVisitor.visitCode();
+        int outputLocal = argumentsSize(input.getTreeDescriptor()) + 1;
+        if (chunks == null) {
+            accumulateRow(methodVisitor, className, model, input, descriptor, outputLocal, -1, -1, 0, model.getTrees().size());
+        } else {
+            accumulateChunks(methodVisitor, className, model, input, chunks, outputLocal, -1, -1);
+        }
+        methodVisitor.visitMaxs(1, 1);
+        methodVisitor.visitEnd();
+    }
+
+    /**
+     * Prediction with per-call iteration limit. <br>
+     * If the limit does not truncate the model, it delegates to the output buffer version, so the common path has no extra branch per tree,
+     * otherwise the limit is only compared at the end of each iteration.
+     *
+     * @param cv        class visitor
+     * @param className internal class name
+     * @param model     model config
+     * @param input     feature input form, should not be strided
+     * @param chunks    tree range of each chunk class, null if trees are defined in current class
+     */
+    private void addIterationLimitPredictionMethod(ClassVisitor cv, final String className, final TreeModel model, final FeatureInput input,
+                                                   final List<int[]> chunks) {
+        String row = rowDescriptor(input);
+        String descriptor = "(" + row + "I[D)V";
+        int iterationLocal = argumentsSize(input.getTreeDescriptor()) + 1;
+        int outputLocal = iterationLocal + 1;
+        MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PUBLIC, PREDICT_METHOD, descriptor);
+        methodVisitor.visitCode();
+
+        // if (numIteration <= 0 || numIteration >= total iterations) predictRaw(features, output)
+        Label full = new Label();
+        Label truncated = new Label();
+        methodVisitor.visitVarInsn(ILOAD, iterationLocal);
+        methodVisitor.visitJumpInsn(IFLE, full);
+        methodVisitor.visitVarInsn(ILOAD, iterationLocal);
+        methodVisitor.visitLdcInsn(numIterations(model));
+        methodVisitor.visitJumpInsn(IF_ICMPLT, truncated);
+        methodVisitor.visitLabel(full);
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitVarInsn(ALOAD, 1);
+        methodVisitor.visitVarInsn(ALOAD, outputLocal);
+        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, className, PREDICT_METHOD, "(" + row + "[D)V", false);
+        methodVisitor.visitInsn(RETURN);
+
+        methodVisitor.visitLabel(truncated);
+        if (chunks == null) {
+            accumulateRow(methodVisitor, className, model, input, descriptor, outputLocal, -1, iterationLocal, 0, model.getTrees().size());
+        } else {
+            accumulateChunks(methodVisitor, className, model, input, chunks, outputLocal, -1, iterationLocal);
+        }
+        methodVisitor.visitMaxs(1, 1);
+        methodVisitor.visitEnd();
+    }
+
+    /**
+     * Leaf index of tree t is written into output[t].
+     *
+     * @param cv        class visitor
+     * @param className internal class name
+     * @param model     model config
+     * @param chunks    tree range of each chunk class, null if trees are defined in current class
+     */
+    private void addLeafIndexPredictionMethod(ClassVisitor cv, final String className, final TreeModel model, final List<int[]> chunks) {
+        MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PUBLIC, LEAF_INDEX_METHOD, "([D[I)V");
+        methodVisitor.visitCode();
+
+        List<TreeNode> trees = model.getTrees();
+        if (chunks == null) {
+            for (int t = 0; t < trees.size(); t++) {
+                // output[t] = leaf_[%tree_index](features)
+                methodVisitor.visitVarInsn(ALOAD, 2);
+                methodVisitor.visitLdcInsn(t);
+                methodVisitor.visitVarInsn(ALOAD, 0);
+                methodVisitor.visitVarInsn(ALOAD, 1);
+                methodVisitor.visitMethodInsn(INVOKESPECIAL, className, LEAF_METHOD_PREFIX + trees.get(t).getTreeIndex(), LEAF_METHOD_DESCRIPTOR, false);
+                methodVisitor.visitInsn(IASTORE);
+            }
+        } else {
+            for (int k = 0; k < chunks.size(); k++) {
+                // chunk_[%chunk_index].accumulateLeafIndex(features, output, 0)
+                loadChunk(methodVisitor, className, k);
+                methodVisitor.visitVarInsn(ALOAD, 1);
+                methodVisitor.visitVarInsn(ALOAD, 2);
+                methodVisitor.visitInsn(ICONST_0);
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL, chunkInternalName(className, k), ACCUMULATE_LEAF_INDEX_METHOD, "([D[II)V", false);
+            }
+        }
+
+        methodVisitor.visitInsn(RETURN);
+        methodVisitor.visitMaxs(1, 1);
+        methodVisitor.visitEnd();
+    }
+
+    /**
+     * Leaf indices of row i are written into output[i * num_trees, (i + 1) * num_trees).
+     *
+     * @param cv        class visitor
+     * @param className internal class name
+     * @param model     model config
+     * @param chunks    tree range of each chunk class, null if trees are defined in current class
+     */
+    private void addBatchLeafIndexPredictionMethod(ClassVisitor cv, final String className, final TreeModel model, final List<int[]> chunks) {
+        MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PUBLIC, LEAF_INDEX_METHOD, "([[DII[I)V");
+        methodVisitor.visitCode();
+
+        List<TreeNode> trees = model.getTrees();
+        int row = 5;
+        int base = 6;
+        methodVisitor.visitVarInsn(ILOAD, 2);
+        methodVisitor.visitVarInsn(ISTORE, row);
+
+        // for (int row = from; row < to; row++)
+        Label loop = new Label();
+        Label exit = new Label();
+        methodVisitor.visitLabel(loop);
+        methodVisitor.visitVarInsn(ILOAD, row);
+        methodVisitor.visitVarInsn(ILOAD, 3);
+        methodVisitor.visitJumpInsn(IF_ICMPGE, exit);
+        methodVisitor.visitVarInsn(ILOAD, row);
+        methodVisitor.visitLdcInsn(trees.size());
+        methodVisitor.visitInsn(IMUL);
+        methodVisitor.visitVarInsn(ISTORE, base);
+
+        for (int k = 0; chunks != null && k < chunks.size(); k++) {
+            // chunk_[%chunk_index].accumulateLeafIndex(features[row], output, row * num_trees)
+            loadChunk(methodVisitor, className, k);
+            methodVisitor.visitVarInsn(ALOAD, 1);
+            methodVisitor.visitVarInsn(ILOAD, row);
+            methodVisitor.visitInsn(AALOAD);
+            methodVisitor.visitVarInsn(ALOAD, 4);
+            methodVisitor.visitVarInsn(ILOAD, base);
+            methodVisitor.visitMethodInsn(INVOKEVIRTUAL, chunkInternalName(className, k), ACCUMULATE_LEAF_INDEX_METHOD, "([D[II)V", false);
+        }
+
+        for (int t = 0; chunks == null && t < trees.size(); t++) {
+            // output[row * num_trees + t] = leaf_[%tree_index](features[row])
+            methodVisitor.visitVarInsn(ALOAD, 4);
+            methodVisitor.visitVarInsn(ILOAD, base);
+            methodVisitor.visitLdcInsn(t);
+            methodVisitor.visitInsn(IADD);
+            methodVisitor.visitVarInsn(ALOAD, 0);
+            methodVisitor.visitVarInsn(ALOAD, 1);
+            methodVisitor.visitVarInsn(ILOAD, row);
+            methodVisitor.visitInsn(AALOAD);
+            methodVisitor.visitMethodInsn(INVOKESPECIAL, className, LEAF_METHOD_PREFIX + trees.get(t).getTreeIndex(), LEAF_METHOD_DESCRIPTOR, false);
+            methodVisitor.visitInsn(IASTORE);
+        }
+
+        methodVisitor.visitIincInsn(row, 1);
+        methodVisitor.visitJumpInsn(GOTO, loop);
+        methodVisitor.visitLabel(exit);
+        methodVisitor.visitInsn(RETURN);
+        methodVisitor.visitMaxs(1, 1);
+        methodVisitor.visitEnd();
+    }
+
+    /**
+     * Accumulate raw values of a single row into local variables, then write them into output[offset, offset + num_class). <br>
+     * Arguments of tree method are the leading arguments of current method, followed by output buffer and optional output offset. <br>
+     * In early stop mode, margin is checked every round period iterations, remaining trees are skipped once it is confident. <br>
+     * Only trees in [begin, end) are scored, if begin is not zero, accumulators start from the values of output buffer,
+     * so that chunk classes can continue the raw values of previous chunks. <br>
+     * Trees are scored group by group, margin and iteration limit are only checked at the end of a group.
+     *
+     * @param methodVisitor  method visitor
+     * @param className      internal class name
+     * @param model          model config
+     * @param input          feature input form
+     * @param descriptor     descriptor of current method
+     * @param outputLocal    local variable index of output buffer
+     * @param offsetLocal    local variable index of output offset, -1 if output offset is zero
+     * @param iterationLocal local variable index of iteration limit, -1 if all trees are scored
+     * @param begin          position of first tree (inclusive)
+     * @param end            position of last tree (exclusive)
+     */
+    private void accumulateRow(MethodVisitor methodVisitor, final String className, final TreeModel model, final FeatureInput input,
+                               final String descriptor, int outputLocal, int offsetLocal, int iterationLocal, int begin, int end) {
+        int numClass = model.getNumClass();
+        int treePerIteration = Math.max(model.getNumberTreePerIteration(), 1);
+        int accumulatorLocal = argumentsSize(descriptor) + 1;
+        Label write = new Label();
+
+        // accumulator of class i is stored in local variable (accumulatorLocal + 2 * i)
+        for (int i = 0; i < numClass; i++) {
+            if (begin > 0) {
+                methodVisitor.visitVarInsn(ALOAD, outputLocal);
+                loadOffset(methodVisitor, offsetLocal, i);
+                methodVisitor.visitInsn(DALOAD);
+            } else {
+                methodVisitor.visitInsn(DCONST_0);
+            }
+            methodVisitor.visitVarInsn(DSTORE, accumulatorLocal + 2 * i);
+        }
+
+        // iteration limit is checked after every iteration, thus trees are scored one by one
+        List<TreeNode> trees = model.getTrees();
+        for (TreeGroup group : treeGroups(className, model, input, begin, end, iterationLocal >= 0)) {
+            int t = group.last();
+            int accumulator = accumulatorLocal + 2 * (trees.get(t).getTreeIndex() % numClass);
+            accumulateGroup(methodVisitor, className, model, input, group, accumulator, accumulatorLocal + 2 * numClass);
+
+            // if (numIteration <= scored iterations) break
+            if (iterationLocal >= 0 && (t + 1) % treePerIteration == 0 && t != trees.size() - 1) {
+                methodVisitor.visitVarInsn(ILOAD, iterationLocal);
+                methodVisitor.visitLdcInsn((t + 1) / treePerIteration);
+                methodVisitor.visitJumpInsn(IF_ICMPLE, write);
+            }
+
+            if (earlyStop != null && earlyStop.isCheckpoint(t) && t != trees.size() - 1) {
+                if (numClass == 1) {
+                    checkBinaryMargin(methodVisitor, accumulatorLocal, write);
+                } else {
+                    // margin of multiclass is checked on output buffer
+                    writeAccumulators(methodVisitor, numClass, outputLocal, offsetLocal, accumulatorLocal);
+                    methodVisitor.visitVarInsn(ALOAD, outputLocal);
+                    loadOffset(methodVisitor, offsetLocal, 0);
+                    methodVisitor.visitLdcInsn(numClass);
+                    methodVisitor.visitLdcInsn(earlyStop.getMarginThreshold());
+                    methodVisitor.visitMethodInsn(INVOKESTATIC, EARLY_STOP_INTERNAL_NAME, "isConfident", "([DIID)Z", false);
+                    methodVisitor.visitJumpInsn(IFNE, write);
+                }
+            }
+        }
+
+        methodVisitor.visitLabel(write);
+        writeAccumulators(methodVisitor, numClass, outputLocal, offsetLocal, accumulatorLocal);
+        methodVisitor.visitInsn(RETURN);
+    }
+
+    private void writeAccumulators(MethodVisitor methodVisitor, int numClass, int outputLocal, int offsetLocal, int accumulatorLocal) {
+        for (int i = 0; i < numClass; i++) {
+            methodVisitor.visitVarInsn(ALOAD, outputLocal);
+            loadOffset(methodVisitor, offsetLocal, i);
+            methodVisitor.visitVarInsn(DLOAD, accumulatorLocal + 2 * i);
+            methodVisitor.visitInsn(DASTORE);
+        }
+    }
+
+    /**
+     * Accumulate raw values of a single row by chunks in order, each chunk continues the raw values in output buffer. <br>
+     * Since chunk boundaries are aligned to iterations and checkpoints, iteration limit and margin are checked between chunks as well.
+     *
+     * @param methodVisitor  method visitor
+     * @param className      internal class name
+     * @param model          model config
+     * @param input          feature input form
+     * @param chunks         tree range of each chunk class
+     * @param outputLocal    local variable index of output buffer
+     * @param offsetLocal    local variable index of output offset, -1 if output offset is zero
+     * @param iterationLocal local variable index of iteration limit, -1 if all trees are scored
+     */
+    private void accumulateChunks(MethodVisitor methodVisitor, final String className, final TreeModel model, final FeatureInput input,
+                                  final List<int[]> chunks, int outputLocal, int offsetLocal, int iterationLocal) {
+        int treePerIteration = Math.max(model.getNumberTreePerIteration(), 1);
+        Label exit = new Label();
+        for (int k = 0; k < chunks.size(); k++) {
+            // chunk_[%chunk_index].accumulate[%suffix](arguments of tree method, output, offset)
+            loadChunk(methodVisitor, className, k);
+            loadArguments(methodVisitor, input.getTreeDescriptor());
+            methodVisitor.visitVarInsn(ALOAD, outputLocal);
+            loadOffset(methodVisitor, offsetLocal, 0);
+            if (iterationLocal < 0) {
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL, chunkInternalName(className, k), ACCUMULATE_METHOD + input.getMethodSuffix(),
+                    "(" + treeArguments(input) + "[DI)V", false);
+            } else {
+                methodVisitor.visitVarInsn(ILOAD, iterationLocal);
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL, chunkInternalName(className, k), ACCUMULATE_LIMIT_METHOD, "([D[DII)V", false);
+            }
+            if (k == chunks.size() - 1) {
+                continue;
+            }
+
+            // if (numIteration <= scored iterations) break
+            if (iterationLocal >= 0) {
+                methodVisitor.visitVarInsn(ILOAD, iterationLocal);
+                methodVisitor.visitLdcInsn(chunks.get(k)[1] / treePerIteration);
+                methodVisitor.visitJumpInsn(IF_ICMPLE, exit);
+            }
+            if (earlyStop != null) {
+                methodVisitor.visitVarInsn(ALOAD, outputLocal);
+                loadOffset(methodVisitor, offsetLocal, 0);
+                methodVisitor.visitLdcInsn(model.getNumClass());
+                methodVisitor.visitLdcInsn(earlyStop.getMarginThreshold());
+                methodVisitor.visitMethodInsn(INVOKESTATIC, EARLY_STOP_INTERNAL_NAME, "isConfident", "([DIID)Z", false);
+                methodVisitor.visitJumpInsn(IFNE, exit);
+            }
+        }
+        methodVisitor.visitLabel(exit);
+        methodVisitor.visitInsn(RETURN);
+    }
+
+    /**
+     * Leaf index of tree at position t is written into output[offset + t].
+     *
+     * @param cv        class visitor
+     * @param className internal class name of chunk
+     * @param model     model config
+     * @param begin     position of first tree (inclusive)
+     * @param end       position of last tree (exclusive)
+     */
+    private void addChunkLeafIndexMethod(ClassVisitor cv, final String className, final TreeModel model, int begin, int end) {
+        MethodVisitor methodVisitor = simpleVisitMethod(cv, 0, ACCUMULATE_LEAF_INDEX_METHOD, "([D[II)V");
+        methodVisitor.visitCode();
+        for (int t = begin; t < end; t++) {
+            methodVisitor.visitVarInsn(ALOAD, 2);
+            methodVisitor.visitVarInsn(ILOAD, 3);
+            methodVisitor.visitLdcInsn(t);
+            methodVisitor.visitInsn(IADD);
+            methodVisitor.visitVarInsn(ALOAD, 0);
+            methodVisitor.visitVarInsn(ALOAD, 1);
+            methodVisitor.visitMethodInsn(INVOKESPECIAL, className, LEAF_METHOD_PREFIX + model.getTrees().get(t).getTreeIndex(), LEAF_METHOD_DESCRIPTOR, false);
+            methodVisitor.visitInsn(IASTORE);
+        }
+        methodVisitor.visitInsn(RETURN);
+        methodVisitor.visitMaxs(1, 1);
+        methodVisitor.visitEnd();
+    }
+
+    private void loadChunk(MethodVisitor methodVisitor, final String className, int chunkIndex) {
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        methodVisitor.visitFieldInsn(GETFIELD, className, CHUNK_FIELD_PREFIX + chunkIndex, "L" + chunkInternalName(className, chunkIndex) + ";");
+    }
+
+    /**
+     * Push offset + delta onto the operand stack.
+     *
+     * @param methodVisitor method visitor
+     * @param offsetLocal   local variable index of offset, -1 if offset is zero
+     * @param delta         constant delta
+     */
+    private void loadOffset(MethodVisitor methodVisitor, int offsetLocal, int delta) {
+        if (offsetLocal < 0) {
+            methodVisitor.visitLdcInsn(delta);
+            return;
+        }
+        methodVisitor.visitVarInsn(ILOAD, offsetLocal);
+        if (delta != 0) {
+            methodVisitor.visitLdcInsn(delta);
+            methodVisitor.visitInsn(IADD);
+        }
+    }
+
+    /**
+     * Refer to official library: microsoft/LightGBM/src/boosting/prediction_early_stop.cpp#CreateBinary,
+     * jump to exit label if 2 * |raw| > margin threshold.
+     *
+     * @param methodVisitor method visitor
+     * @param accumulator   local variable index of raw value
+     * @param exit          exit label
+     */
+    private void checkBinaryMargin(MethodVisitor methodVisitor, int accumulator, Label exit) {
+        methodVisitor.visitVarInsn(DLOAD, accumulator);
+        methodVisitor.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "abs", "(D)D", false);
+        methodVisitor.visitLdcInsn(2.0);
+        methodVisitor.visitInsn(DMUL);
+        methodVisitor.visitLdcInsn(earlyStop.getMarginThreshold());
+        methodVisitor.visitInsn(DCMPL);
+        methodVisitor.visitJumpInsn(IFGT, exit);
+    }
+
+    /**
+     * Scalar prediction, only defined when model has single output.
+     *
+     * @param cv        class visitor
+     * @param className internal class name
+     * @param model     model config
+     * @param input     feature input form, should not be strided
+     * @param chunks    tree range of each chunk class, null if trees are defined in current class
+     */
+    private void addScalarPredictionMethod(ClassVisitor cv, final String className, final TreeModel model, final FeatureInput input,
+                                           final List<int[]> chunks) {
+        String row = rowDescriptor(input);
+        MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PUBLIC, PREDICT_SCALAR_METHOD, "(" + row + ")D");
+        methodVisitor.visitCode();
+        methodVisitor.visitInsn(DCONST_0);
+        methodVisitor.visitVarInsn(DSTORE, 2);
+        if (chunks == null) {
+            accumulateScalar(methodVisitor, className, model, input, 0, model.getTrees().size());
+        } else {
+            Label exit = new Label();
+            for (int k = 0; k < chunks.size(); k++) {
+                // raw = chunk_[%chunk_index].accumulateScalar(features, raw)
+                loadChunk(methodVisitor, className, k);
+                methodVisitor.visitVarInsn(ALOAD, 1);
+                methodVisitor.visitVarInsn(DLOAD, 2);
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL, chunkInternalName(className, k), ACCUMULATE_SCALAR_METHOD + input.getMethodSuffix(),
+                    "(" + row + "D)D", false);
+                methodVisitor.visitVarInsn(DSTORE, 2);
+                // chunk boundary is a checkpoint
+                if (earlyStop != null && k != chunks.size() - 1) {
+                    checkBinaryMargin(methodVisitor, 2, exit);
+                }
+            }
+            methodVisitor.visitLabel(exit);
+            methodVisitor.visitVarInsn(DLOAD, 2);
+            methodVisitor.visitInsn(DRETURN);
+        }
+        methodVisitor.visitMaxs(1, 1);
+        methodVisitor.visitEnd();
+    }
+
+    /**
+     * Add raw values of trees in [begin, end) onto local variable 2, then return it.
+     *
+     * @param methodVisitor method visitor
+     * @param className     internal class name
+     * @param model         model config
+     * @param input         feature input form, should not be strided
+     * @param begin         position of first tree (inclusive)
+     * @param end           position of last tree (exclusive)
+     */
+    private void accumulateScalar(MethodVisitor methodVisitor, final String className, final TreeModel model, final FeatureInput input,
+                                  int begin, int end) {
+        Label exit = new Label();
+        List<TreeNode> trees = model.getTrees();
+        for (TreeGroup group : treeGroups(className, model, input, begin, end, false)) {
+            int t = group.last();
+            accumulateGroup(methodVisitor, className, model, input, group, 2, 4);
+            if (earlyStop != null && earlyStop.isCheckpoint(t) && t != trees.size() - 1) {
+                checkBinaryMargin(methodVisitor, 2, exit);
+            }
+        }
 
-    private PredictorClassGenerator() {
+        methodVisitor.visitLabel(exit);
+        methodVisitor.visitVarInsn(DLOAD, 2);
+        methodVisitor.visitInsn(DRETURN);
     }
 
     /**
-     * We can not maintain a singleton instance of generator here, <br>
-     * since we want jvm to unload class which would be no longer used.
+     * Batch prediction iterates tree-outer/row-inner, so that code and constants of a single tree
+     * stay hot in instruction cache across the whole batch.
      *
-     * @return predictor instance
+     * @param cv        class visitor
+     * @param className internal class name
+     * @param model     model config
+     * @param input     feature input form
+     * @param chunks    tree range of each chunk class, null if trees are defined in current class
      */
-    public static PredictorClassGenerator getInstance() {
-        return new PredictorClassGenerator();
+    private void addBatchPredictionMethod(ClassVisitor cv, final String className, final TreeModel model, final FeatureInput input,
+                                          final List<int[]> chunks) {
+        MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PUBLIC, PREDICT_METHOD, input.getBatchDescriptor());
+        methodVisitor.visitCode();
+        resetBatchOutput(methodVisitor, model, input);
+        if (chunks == null) {
+            invokeBatchSegments(cv, methodVisitor, className, model, input, 0, model.getTrees().size());
+        } else {
+            for (int k = 0; k < chunks.size(); k++) {
+                // chunk_[%chunk_index].accumulateBatch[%suffix](arguments of batch method)
+                loadChunk(methodVisitor, className, k);
+                loadArguments(methodVisitor, input.getBatchDescriptor());
+                methodVisitor.visitMethodInsn(INVOKEVIRTUAL, chunkInternalName(className, k), ACCUMULATE_BATCH_METHOD + input.getMethodSuffix(),
+                    input.getBatchDescriptor(), false);
+            }
+        }
+        methodVisitor.visitInsn(RETURN);
+        methodVisitor.visitMaxs(1, 1);
+        methodVisitor.visitEnd();
     }
 
-    @Override
-    public Class<?> defineClassFromCode(final String className, final byte[] code) {
-        return this.defineClass(className, code, 0, code.length);
+    /**
+     * Reset output[from * num_class, to * num_class) of batch method.
+     *
+     * @param methodVisitor method visitor of batch method
+     * @param model         model config
+     * @param input         feature input form
+     */
+    private void resetBatchOutput(MethodVisitor methodVisitor, final TreeModel model, final FeatureInput input) {
+        methodVisitor.visitVarInsn(ALOAD, input.getBatchOutputLocalIndex());
+        input.loadBatchRange(methodVisitor);
+        methodVisitor.visitLdcInsn(model.getNumClass());
+        methodVisitor.visitInsn(IMUL);
+        methodVisitor.visitVarInsn(ISTORE, input.getBatchRowLocalIndex());
+        methodVisitor.visitLdcInsn(model.getNumClass());
+        methodVisitor.visitInsn(IMUL);
+        methodVisitor.visitVarInsn(ILOAD, input.getBatchRowLocalIndex());
+        methodVisitor.visitInsn(DCONST_0);
+        methodVisitor.visitMethodInsn(INVOKESTATIC, ARRAYS_INTERNAL_NAME, "fill", "([DIID)V", false);
     }
 
-    @Override
-    public byte[] generateCode(final String className, final TreeModel model) {
-        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
-        ClassVisitor cv = new CheckClassAdapter(cw);
-        String internalClassName = toInternalName(className);
-
-        // define class
-        cv.visit(V1_8, ACC_PUBLIC | ACC_SUPER, toInternalName(internalClassName), null, getSuperName(model),
-            new String[] {PREDICTOR_INTERNAL_NAME});
-
-        // define init method
-        addInitMethod(cv, model);
-
-        // tree decision method
-        // description : private double tree_[%tree_index](double[] features);
-        model.getTrees().forEach(t -> addTreeMethod(cv, internalClassName, t));
+    /**
+     * Define batch segment methods of trees in [begin, end), and invoke them in order,
+     * each segment adds raw values of its trees onto the output buffer.
+     *
+     * @param cv            class visitor
+     * @param methodVisitor method visitor of batch method
+     * @param className     internal class name
+     * @param model         model config
+     * @param input         feature input form
+     * @param begin         position of first tree (inclusive)
+     * @param end           position of last tree (exclusive)
+     */
+    private void invokeBatchSegments(ClassVisitor cv, MethodVisitor methodVisitor, final String className, final TreeModel model,
+                                     final FeatureInput input, int begin, int end) {
+        for (int segmentBegin = begin; segmentBegin < end; segmentBegin += BATCH_SEGMENT_TREE_NUMS) {
+            int segmentEnd = Math.min(segmentBegin + BATCH_SEGMENT_TREE_NUMS, end);
+            String segmentName = BATCH_SEGMENT_METHOD_PREFIX + (segmentBegin / BATCH_SEGMENT_TREE_NUMS) + input.getMethodSuffix();
+            addBatchSegmentMethod(cv, className, model, input, segmentName, segmentBegin, segmentEnd);
 
-        // prediction method
-        addPredictionMethod(cv, internalClassName, model);
+            methodVisitor.visitVarInsn(ALOAD, 0);
+            loadArguments(methodVisitor, input.getBatchDescriptor());
+            methodVisitor.visitMethodInsn(INVOKESPECIAL, className, segmentName, input.getBatchDescriptor(), false);
+        }
+    }
 
-        cv.visitEnd();
-        return cw.toByteArray();
+    /**
+     * Batch prediction in early stop mode iterates row-outer/tree-inner, since each row may stop at different iteration,
+     * every row is scored by a row method: void row_[%suffix](arguments of tree method, double[] output, int outputOffset).
+     *
+     * @param cv        class visitor
+     * @param className internal class name
+     * @param model     model config
+     * @param input     feature input form
+     * @param chunks    tree range of each chunk class, null if trees are defined in current class
+     */
+    private void addEarlyStopBatchPredictionMethod(ClassVisitor cv, final String className, final TreeModel model, final FeatureInput input,
+                                                   final List<int[]> chunks) {
+        String rowMethodName = ROW_METHOD_PREFIX + input.getMethodSuffix();
+        String rowDescriptor = "(" + treeArguments(input) + "[DI)V";
+        int outputLocal = argumentsSize(input.getTreeDescriptor()) + 1;
+        MethodVisitor rowVisitor = simpleVisitMethod(cv, ACC_PRIVATE, rowMethodName, rowDescriptor);
+        rowVisitor.visitCode();
+        if (chunks == null) {
+            accumulateRow(rowVisitor, className, model, input, rowDescriptor, outputLocal, outputLocal + 1, -1, 0, model.getTrees().size());
+        } else {
+            accumulateChunks(rowVisitor, className, model, input, chunks, outputLocal, outputLocal + 1, -1);
+        }
+        rowVisitor.visitMaxs(1, 1);
+        rowVisitor.visitEnd();
+        addRowLoopBatchMethod(cv, className, model, input, rowMethodName, rowDescriptor);
     }
 
     /**
-     * Define init method.
+     * Batch prediction which scores every row by a row method: void row_[%suffix](arguments of tree method, double[] output, int outputOffset).
      *
-     * @param cv    class visitor
-     * @param model model config
+     * @param cv            class visitor
+     * @param className     internal class name
+     * @param model         model config
+     * @param input         feature input form
+     * @param rowMethodName name of row method
+     * @param rowDescriptor descriptor of row method
      */
-    private void addInitMethod(ClassVisitor cv, final TreeModel model) {
-        MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PUBLIC, INIT, "()V");
+    private void addRowLoopBatchMethod(ClassVisitor cv, final String className, final TreeModel model, final FeatureInput input,
+                                       final String rowMethodName, final String rowDescriptor) {
+        MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PUBLIC, PREDICT_METHOD, input.getBatchDescriptor());
         methodVisitor.visitCode();
+        int row = input.getBatchRowLocalIndex();
+        int rowEnd = row + 1;
+        input.loadBatchRange(methodVisitor);
+        methodVisitor.visitVarInsn(ISTORE, rowEnd);
+        methodVisitor.visitVarInsn(ISTORE, row);
+
+        // for (int row = from; row < to; row++)
+        Label loop = new Label();
+        Label exit = new Label();
+        methodVisitor.visitLabel(loop);
+        methodVisitor.visitVarInsn(ILOAD, row);
+        methodVisitor.visitVarInsn(ILOAD, rowEnd);
+        methodVisitor.visitJumpInsn(IF_ICMPGE, exit);
+
+        // row_[%suffix](features of row, output, row * num_class)
         methodVisitor.visitVarInsn(ALOAD, 0);
-        if (model.isContainsCatNode()) {
-            methodVisitor.visitMethodInsn(INVOKESPECIAL, META_DATA_HOLDER_INTERNAL_NAME, INIT, "()V", false);
-        } else {
-            methodVisitor.visitMethodInsn(INVOKESPECIAL, OBJECT_INTERNAL_NAME, INIT, "()V", false);
-        }
+        input.loadBatchTreeArguments(methodVisitor);
+        methodVisitor.visitVarInsn(ALOAD, input.getBatchOutputLocalIndex());
+        methodVisitor.visitVarInsn(ILOAD, row);
+        methodVisitor.visitLdcInsn(model.getNumClass());
+        methodVisitor.visitInsn(IMUL);
+        methodVisitor.visitMethodInsn(INVOKESPECIAL, className, rowMethodName, rowDescriptor, false);
+
+        methodVisitor.visitIincInsn(row, 1);
+        methodVisitor.visitJumpInsn(GOTO, loop);
+        methodVisitor.visitLabel(exit);
         methodVisitor.visitInsn(RETURN);
         methodVisitor.visitMaxs(1, 1);
         methodVisitor.visitEnd();
     }
 
-    private void addPredictionMethod(ClassVisitor cv, final String className, final TreeModel model) {
-        MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PUBLIC, PREDICT_METHOD, "([D)[D");
+    private void addBatchSegmentMethod(ClassVisitor cv, final String className, final TreeModel model, final FeatureInput input,
+                                       final String segmentName, int begin, int end) {
+        MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PRIVATE, segmentName, input.getBatchDescriptor());
         methodVisitor.visitCode();
 
-        methodVisitor.visitLdcInsn(model.getNumClass());
-        methodVisitor.visitIntInsn(NEWARRAY, T_DOUBLE);
-        methodVisitor.visitVarInsn(ASTORE, 2);
+        int numClass = model.getNumClass();
+        int row = input.getBatchRowLocalIndex();
+        int rowEnd = row + 1;
+        input.loadBatchRange(methodVisitor);
+        methodVisitor.visitVarInsn(ISTORE, rowEnd);
+        methodVisitor.visitVarInsn(ISTORE, row + 2);
 
-        for (int i = 0; i < model.getTrees().size(); i++) {
+        for (int i = begin; i < end; i++) {
             TreeNode root = model.getTrees().get(i);
-            methodVisitor.visitVarInsn(ALOAD, 2);
-            methodVisitor.visitLdcInsn(root.getTreeIndex() % model.getNumClass());
+            Label loop = new Label();
+            Label exit = new Label();
+
+            // for (int row = from; row < to; row++)
+            methodVisitor.visitVarInsn(ILOAD, row + 2);
+            methodVisitor.visitVarInsn(ISTORE, row);
+            methodVisitor.visitLabel(loop);
+            methodVisitor.visitVarInsn(ILOAD, row);
+            methodVisitor.visitVarInsn(ILOAD, rowEnd);
+            methodVisitor.visitJumpInsn(IF_ICMPGE, exit);
+
+            // output[row * num_class + class_index] += tree_[%tree_index](features of row)
+            methodVisitor.visitVarInsn(ALOAD, input.getBatchOutputLocalIndex());
+            methodVisitor.visitVarInsn(ILOAD, row);
+            if (numClass > 1) {
+                methodVisitor.visitLdcInsn(numClass);
+                methodVisitor.visitInsn(IMUL);
+                methodVisitor.visitLdcInsn(root.getTreeIndex() % numClass);
+                methodVisitor.visitInsn(IADD);
+            }
             methodVisitor.visitInsn(DUP2);
             methodVisitor.visitInsn(DALOAD);
             methodVisitor.visitVarInsn(ALOAD, 0);
-            methodVisitor.visitVarInsn(ALOAD, 1);
-            methodVisitor.visitMethodInsn(INVOKESPECIAL, className, TREE_METHOD_PREFIX + root.getTreeIndex(), "([D)D", false);
+            input.loadBatchTreeArguments(methodVisitor);
+            methodVisitor.visitMethodInsn(INVOKESPECIAL, className, treeMethodName(root, input), input.getTreeDescriptor(), false);
             methodVisitor.visitInsn(DADD);
             methodVisitor.visitInsn(DASTORE);
+
+            methodVisitor.visitIincInsn(row, 1);
+            methodVisitor.visitJumpInsn(GOTO, loop);
+            methodVisitor.visitLabel(exit);
         }
 
-        methodVisitor.visitVarInsn(ALOAD, 2);
-        methodVisitor.visitInsn(ARETURN);
+        methodVisitor.visitInsn(RETURN);
         methodVisitor.visitMaxs(1, 1);
         methodVisitor.visitEnd();
     }
 
-    private void addTreeMethod(ClassVisitor cv, final String className, final TreeNode root) {
-        MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PRIVATE, TREE_METHOD_PREFIX + root.getTreeIndex(), "([D)D");
+    /**
+     * Define group methods of trees in [begin, end), only groups of {@link InliningStrategy#GROUPED} need a method. <br>
+     * description : private double group_[%tree_index][%suffix](arguments of tree method, double raw);
+     *
+     * @param cv        class visitor
+     * @param className internal class name
+     * @param model     model config
+     * @param input     feature input form
+     * @param begin     position of first tree (inclusive)
+     * @param end       position of last tree (exclusive)
+     */
+    private void addGroupMethods(ClassVisitor cv, final String className, final TreeModel model, final FeatureInput input, int begin, int end) {
+        int rawLocal = argumentsSize(input.getTreeDescriptor()) + 1;
+        for (TreeGroup group : treeGroups(className, model, input, begin, end, false)) {
+            if (group.getStrategy() != InliningStrategy.GROUPED) {
+                continue;
+            }
+            MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PRIVATE, groupMethodName(model, group, input), "(" + treeArguments(input) + "D)D");
+            methodVisitor.visitCode();
+            inlineTrees(methodVisitor, className, model, input, group, rawLocal, rawLocal + 2);
+            methodVisitor.visitVarInsn(DLOAD, rawLocal);
+            methodVisitor.visitInsn(DRETURN);
+            methodVisitor.visitMaxs(1, 1);
+            methodVisitor.visitEnd();
+        }
+    }
+
+    /**
+     * Split trees in [begin, end) into groups in scoring order. <br>
+     * Trees are grouped by windows of consecutive iterations, window is bounded by method size budget and closed at every checkpoint in early stop mode,
+     * trees of the same class in a window form a group, and the group of the class of last tree comes last,
+     * so that margin can be checked at the end of the window exactly as checked between trees. <br>
+     * Tree which exceeds method size budget is never inlined, since it is outlined into several methods.
+     *
+     * @param className internal class name
+     * @param model     model config
+     * @param input     feature input form
+     * @param begin     position of first tree (inclusive)
+     * @param end       position of last tree (exclusive)
+     * @param perTree   whether each tree should be scored by its own tree method
+     * @return tree groups
+     */
+    private List<TreeGroup> treeGroups(final String className, final TreeModel model, final FeatureInput input, int begin, int end, boolean perTree) {
+        // measured as inlined trees of group method
+        int rawLocal = argumentsSize(input.getTreeDescriptor()) + 1;
+        int[] sizes = new int[end - begin];
+        for (int t = begin; t < end; t++) {
+            BytecodeSizeCounter counter = new BytecodeSizeCounter();
+            inlineTrees(counter, className, model, input, new TreeGroup(new int[] {t}, InliningStrategy.INLINED), rawLocal, rawLocal + 2);
+            sizes[t - begin] = counter.getSize();
+        }
+        InliningStrategy strategy = perTree ? InliningStrategy.TREE_METHOD : resolveInliningStrategy(sizes);
+        int treePerIteration = Math.max(model.getNumberTreePerIteration(), 1);
+        int[] windowSizes = new int[treePerIteration];
+        List<TreeGroup> groups = new ArrayList<>();
+        int windowBegin = begin;
+        for (int iterationBegin = begin; iterationBegin < end; iterationBegin += treePerIteration) {
+            int iterationEnd = Math.min(iterationBegin + treePerIteration, end);
+            boolean fits = strategy != InliningStrategy.TREE_METHOD;
+            for (int t = iterationBegin; t < iterationEnd; t++) {
+                fits &= windowSizes[t - iterationBegin] + sizes[t - begin] <= methodSizeBudget;
+            }
+            if (!fits && iterationBegin > windowBegin) {
+                addWindowGroups(groups, model, sizes, begin, windowBegin, iterationBegin, treePerIteration, strategy);
+                windowBegin = iterationBegin;
+                Arrays.fill(windowSizes, 0);
+            }
+            for (int t = iterationBegin; t < iterationEnd; t++) {
+                windowSizes[t - iterationBegin] += sizes[t - begin];
+            }
+            if (earlyStop != null && earlyStop.isCheckpoint(iterationEnd - 1)) {
+                addWindowGroups(groups, model, sizes, begin, windowBegin, iterationEnd, treePerIteration, strategy);
+                windowBegin = iterationEnd;
+                Arrays.fill(windowSizes, 0);
+            }
+        }
+        addWindowGroups(groups, model, sizes, begin, windowBegin, end, treePerIteration, strategy);
+        return groups;
+    }
+
+    /**
+     * Resolve inlining strategy by measured bytecode size of trees.
+     *
+     * @param sizes bytecode size of each inlined tree
+     * @return resolved strategy, never {@link InliningStrategy#AUTO}
+     */
+    private InliningStrategy resolveInliningStrategy(final int[] sizes) {
+        long total = Arrays.stream(sizes).asLongStream().sum();
+        boolean inlinable = inliningStrategy == InliningStrategy.AUTO || inliningStrategy == InliningStrategy.INLINED;
+        if (inlinable && total <= methodSizeBudget) {
+            return InliningStrategy.INLINED;
+        }
+        return inlinable ? InliningStrategy.GROUPED : inliningStrategy;
+    }
+
+    /**
+     * Add groups of trees in window [windowBegin, windowEnd), trees of the same class are congruent in position modulo tree per iteration,
+     * unless trees are removed by model compaction, thus a run is also split where the class changes.
+     *
+     * @param groups           tree groups
+     * @param model            model config
+     * @param sizes            bytecode size of each inlined tree, size of tree t is sizes[t - begin]
+     * @param begin            position of first tree of sizes
+     * @param windowBegin      position of first tree of window (inclusive)
+     * @param windowEnd        position of last tree of window (exclusive)
+     * @param treePerIteration num of trees per iteration
+     * @param strategy         resolved inlining strategy
+     */
+    private void addWindowGroups(final List<TreeGroup> groups, final TreeModel model, final int[] sizes, int begin, int windowBegin, int windowEnd,
+                                 int treePerIteration, final InliningStrategy strategy) {
+        List<TreeNode> trees = model.getTrees();
+        int numClass = model.getNumClass();
+        for (int last = Math.max(windowEnd - treePerIteration, windowBegin); last < windowEnd; last++) {
+            List<Integer> run = new ArrayList<>();
+            for (int t = windowBegin + (last - windowBegin) % treePerIteration; t <= last; t += treePerIteration) {
+                if (!run.isEmpty() && trees.get(run.get(run.size() - 1)).getTreeIndex() % numClass != trees.get(t).getTreeIndex() % numClass) {
+                    addRunGroup(groups, run, strategy);
+                }
+                if (strategy == InliningStrategy.TREE_METHOD || sizes[t - begin] > methodSizeBudget) {
+                    addRunGroup(groups, run, strategy);
+                    groups.add(new TreeGroup(new int[] {t}, InliningStrategy.TREE_METHOD));
+                } else {
+                    run.add(t);
+                }
+            }
+            addRunGroup(groups, run, strategy);
+        }
+    }
+
+    private void addRunGroup(final List<TreeGroup> groups, final List<Integer> run, final InliningStrategy strategy) {
+        if (run.isEmpty()) {
+            return;
+        }
+        // a single tree is not worth a group method
+        InliningStrategy groupStrategy = run.size() == 1 && strategy == InliningStrategy.GROUPED ? InliningStrategy.TREE_METHOD : strategy;
+        groups.add(new TreeGroup(run.stream().mapToInt(i -> i).toArray(), groupStrategy));
+        run.clear();
+    }
+
+    /**
+     * Add raw value of trees in group onto the accumulator.
+     *
+     * @param methodVisitor method visitor
+     * @param className     internal class name
+     * @param model         model config
+     * @param input         feature input form, arguments of tree method should be the leading arguments of current method
+     * @param group         tree group
+     * @param accumulator   local variable index of accumulator
+     * @param featureLocal  free local variable index for loaded feature value of inlined trees
+     */
+    private void accumulateGroup(MethodVisitor methodVisitor, final String className, final TreeModel model, final FeatureInput input,
+                                 final TreeGroup group, int accumulator, int featureLocal) {
+        switch (group.getStrategy()) {
+            case INLINED:
+                inlineTrees(methodVisitor, className, model, input, group, accumulator, featureLocal);
+                break;
+            case GROUPED:
+                // raw = group_[%tree_index][%suffix](arguments of tree method, raw)
+                methodVisitor.visitVarInsn(ALOAD, 0);
+                loadArguments(methodVisitor, input.getTreeDescriptor());
+                methodVisitor.visitVarInsn(DLOAD, accumulator);
+                methodVisitor.visitMethodInsn(INVOKESPECIAL, className, groupMethodName(model, group, input), "(" + treeArguments(input) + "D)D", false);
+                methodVisitor.visitVarInsn(DSTORE, accumulator);
+                break;
+            default:
+                // raw += tree_[%tree_index][%suffix](arguments of tree method)
+                methodVisitor.visitVarInsn(DLOAD, accumulator);
+                methodVisitor.visitVarInsn(ALOAD, 0);
+                loadArguments(methodVisitor, input.getTreeDescriptor());
+                methodVisitor.visitMethodInsn(INVOKESPECIAL, className, treeMethodName(model.getTrees().get(group.first()), input),
+                    input.getTreeDescriptor(), false);
+                methodVisitor.visitInsn(DADD);
+                methodVisitor.visitVarInsn(DSTORE, accumulator);
+        }
+    }
+
+    /**
+     * Inline decision blocks of trees in group, leaf block adds leaf value onto the accumulator and jumps to the next tree.
+     *
+     * @param methodVisitor method visitor
+     * @param className     internal class name
+     * @param model         model config
+     * @param input         feature input form, arguments of tree method should be the leading arguments of current method
+     * @param group         tree group
+     * @param accumulator   local variable index of accumulator
+     * @param featureLocal  free local variable index for loaded feature value
+     */
+    private void inlineTrees(MethodVisitor methodVisitor, final String className, final TreeModel model, final FeatureInput input,
+                             final TreeGroup group, int accumulator, int featureLocal) {
+        for (int t : group.getPositions()) {
+            List<TreeNode> nodes = subtreeNodes(model.getTrees().get(t), Collections.emptySet());
+            Map<Integer, Label> labels = nodes.stream().collect(Collectors.toMap(TreeNode::getNodeIndex, o -> new Label()));
+            Label next = new Label();
+            for (TreeNode node : nodes) {
+                if (!node.isLeaf()) {
+                    defineNodeBlock(methodVisitor, node, className, labels, input, false, featureLocal);
+                    continue;
+                }
+                methodVisitor.visitLabel(labels.get(node.getNodeIndex()));
+                methodVisitor.visitVarInsn(DLOAD, accumulator);
+                loadConstant(methodVisitor, node.getLeafValue());
+                methodVisitor.visitInsn(DADD);
+                methodVisitor.visitVarInsn(DSTORE, accumulator);
+                methodVisitor.visitJumpInsn(GOTO, next);
+            }
+            methodVisitor.visitLabel(next);
+        }
+    }
+
+    private void addTreeMethod(ClassVisitor cv, final String className, final TreeNode root, final FeatureInput input) {
+        Set<Integer> outlined = outlinedSubtrees(className, root, input, false);
+        defineSubtreeMethod(cv, className, root, root, input, false, outlined);
+    }
+
+    /**
+     * Same decision blocks as tree method of dense input, but leaf block returns leaf index.
+     *
+     * @param cv        class visitor
+     * @param className internal class name
+     * @param root      root of tree
+     */
+    private void addLeafIndexTreeMethod(ClassVisitor cv, final String className, final TreeNode root) {
+        Set<Integer> outlined = outlinedSubtrees(className, root, FeatureInput.DENSE, true);
+        defineSubtreeMethod(cv, className, root, root, FeatureInput.DENSE, true, outlined);
+    }
+
+    /**
+     * Define method of a subtree, outlined subtrees inside it are replaced by calls and defined as separate methods recursively. <br>
+     * description : private double tree_[%tree_index]_[%node_index][%suffix](arguments of tree method);
+     *
+     * @param cv        class visitor
+     * @param className internal class name
+     * @param root      root of tree
+     * @param subtree   root of subtree, the method is tree method if it is the root of tree
+     * @param input     feature input form
+     * @param leafIndex whether leaf block returns leaf index instead of leaf value
+     * @param outlined  node indices of outlined subtree roots
+     */
+    private void defineSubtreeMethod(ClassVisitor cv, final String className, final TreeNode root, final TreeNode subtree,
+                                     final FeatureInput input, boolean leafIndex, final Set<Integer> outlined) {
+        MethodVisitor methodVisitor = simpleVisitMethod(cv, ACC_PRIVATE, subtreeMethodName(root, subtree, input, leafIndex),
+            leafIndex ? LEAF_METHOD_DESCRIPTOR : input.getTreeDescriptor());
         methodVisitor.visitCode();
 
-        Map<Integer, Label> labels = root.getAllNodes().stream().collect(Collectors.toMap(TreeNode::getNodeIndex, o -> new Label()));
-        root.getAllNodes().forEach(node -> defineNodeBlock(methodVisitor, node, className, labels));
+        List<TreeNode> nodes = subtreeNodes(subtree, outlined);
+        Map<Integer, Label> labels = nodes.stream().collect(Collectors.toMap(TreeNode::getNodeIndex, o -> new Label()));
+        List<TreeNode> callees = new ArrayList<>();
+        for (TreeNode node : nodes) {
+            if (node != subtree && outlined.contains(node.getNodeIndex())) {
+                methodVisitor.visitLabel(labels.get(node.getNodeIndex()));
+                invokeSubtree(methodVisitor, className, root, node, input, leafIndex);
+                callees.add(node);
+            } else {
+                defineNodeBlock(methodVisitor, node, className, labels, input, leafIndex, input.getFeatureLocalIndex());
+            }
+        }
 
         methodVisitor.visitMaxs(1, 1);
         methodVisitor.visitEnd();
+        callees.forEach(node -> defineSubtreeMethod(cv, className, root, node, input, leafIndex, outlined));
+    }
+
+    /**
+     * Return value of outlined subtree method.
+     *
+     * @param methodVisitor method visitor
+     * @param className     internal class name
+     * @param root          root of tree
+     * @param subtree       root of outlined subtree
+     * @param input         feature input form
+     * @param leafIndex     whether leaf block returns leaf index instead of leaf value
+     */
+    private void invokeSubtree(MethodVisitor methodVisitor, final String className, final TreeNode root, final TreeNode subtree,
+                               final FeatureInput input, boolean leafIndex) {
+        String descriptor = leafIndex ? LEAF_METHOD_DESCRIPTOR : input.getTreeDescriptor();
+        methodVisitor.visitVarInsn(ALOAD, 0);
+        loadArguments(methodVisitor, descriptor);
+        methodVisitor.visitMethodInsn(INVOKESPECIAL, className, subtreeMethodName(root, subtree, input, leafIndex), descriptor, false);
+        methodVisitor.visitInsn(leafIndex ? IRETURN : DRETURN);
+    }
+
+    /**
+     * Nodes of subtree method in pre-order, the hot child of each split node directly follows it so that it is reached by fall through,
+     * refer to {@link PredictorClassGenerator#hotChild(TreeNode)}. Outlined subtrees are not expanded.
+     *
+     * @param subtree  root of subtree
+     * @param outlined node indices of outlined subtree roots
+     * @return nodes of method
+     */
+    private List<TreeNode> subtreeNodes(final TreeNode subtree, final Set<Integer> outlined) {
+        List<TreeNode> nodes = new ArrayList<>();
+        Deque<TreeNode> stack = new ArrayDeque<>();
+        stack.push(subtree);
+        while (!stack.isEmpty()) {
+            TreeNode node = stack.pop();
+            nodes.add(node);
+            if (!node.isLeaf() && (node == subtree || !outlined.contains(node.getNodeIndex()))) {
+                TreeNode hot = hotChild(node);
+                stack.push(hot == node.getLeftNode() ? node.getRightNode() : node.getLeftNode());
+                stack.push(hot);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Child which more training samples fall into, by leaf_count / internal_count of model file,
+     * or by leaf_weight / internal_weight if counts are absent. Left child is hot if it is a tie.
+     *
+     * @param node split node
+     * @return hot child
+     */
+    private TreeNode hotChild(final TreeNode node) {
+        TreeNode left = node.getLeftNode();
+        TreeNode right = node.getRightNode();
+        if (left.getDataCount() != right.getDataCount()) {
+            return right.getDataCount() > left.getDataCount() ? right : left;
+        }
+        return right.getDataWeight() > left.getDataWeight() ? right : left;
+    }
+
+    /**
+     * Select subtrees to be outlined into separate methods, only if the measured size of tree method exceeds method size budget. <br>
+     * Subtrees are selected bottom-up, whenever size of a subtree exceeds {@link PredictorClassGenerator#OUTLINED_METHOD_SIZE},
+     * its larger child subtree is replaced by a call, so that every method of the tree is small enough to be inlined by jit.
+     *
+     * @param className internal class name
+     * @param root      root of tree
+     * @param input     feature input form
+     * @param leafIndex whether leaf block returns leaf index instead of leaf value
+     * @return node indices of outlined subtree roots, empty if tree method is within budget
+     */
+    private Set<Integer> outlinedSubtrees(final String className, final TreeNode root, final FeatureInput input, boolean leafIndex) {
+        Set<Integer> outlined = new HashSet<>();
+        if (measureSubtree(className, root, input, leafIndex, Integer.MAX_VALUE, outlined) > methodSizeBudget) {
+            measureSubtree(className, root, input, leafIndex, OUTLINED_METHOD_SIZE, outlined);
+        }
+        return outlined;
+    }
+
+    /**
+     * Measure bytecode size of subtree bottom-up, child subtree is outlined once the size exceeds limit.
+     *
+     * @param className internal class name
+     * @param node      root of subtree
+     * @param input     feature input form
+     * @param leafIndex whether leaf block returns leaf index instead of leaf value
+     * @param limit     size limit of a method
+     * @param outlined  node indices of outlined subtree roots, selected subtrees are added into it
+     * @return size of subtree in the method of its parent
+     */
+    private int measureSubtree(final String className, final TreeNode node, final FeatureInput input, boolean leafIndex,
+                               int limit, final Set<Integer> outlined) {
+        BytecodeSizeCounter counter = new BytecodeSizeCounter();
+        Map<Integer, Label> labels = new HashMap<>();
+        labels.put(node.getNodeIndex(), new Label());
+        if (node.isLeaf()) {
+            defineNodeBlock(counter, node, className, labels, input, leafIndex, input.getFeatureLocalIndex());
+            return counter.getSize();
+        }
+        labels.put(node.getLeftNode().getNodeIndex(), new Label());
+        labels.put(node.getRightNode().getNodeIndex(), new Label());
+        defineNodeBlock(counter, node, className, labels, input, leafIndex, input.getFeatureLocalIndex());
+        BytecodeSizeCounter callCounter = new BytecodeSizeCounter();
+        invokeSubtree(callCounter, className, node, node, input, leafIndex);
+        int callSize = callCounter.getSize();
+
+        TreeNode[] children = {node.getLeftNode(), node.getRightNode()};
+        int[] sizes = new int[children.length];
+        for (int c = 0; c < children.length; c++) {
+            sizes[c] = measureSubtree(className, children[c], input, leafIndex, limit, outlined);
+        }
+        while (counter.getSize() + sizes[0] + sizes[1] > limit) {
+            int c = sizes[0] >= sizes[1] ? 0 : 1;
+            if (children[c].isLeaf() || sizes[c] <= callSize) {
+                break;
+            }
+            outlined.add(children[c].getNodeIndex());
+            sizes[c] = callSize;
+        }
+        return counter.getSize() + sizes[0] + sizes[1];
     }
 
+    /**
+     * Define decision block of a node, the block starts with the label of the node.
+     *
+     * @param methodVisitor method visitor
+     * @param node          tree node
+     * @param className     internal class name
+     * @param labels        labels of nodes in current method
+     * @param input         feature input form
+     * @param leafIndex     whether leaf block returns leaf index instead of leaf value
+     * @param featureLocal  local variable index of loaded feature value
+     */
     private void defineNodeBlock(MethodVisitor methodVisitor, final TreeNode node, final String className,
-                                 final Map<Integer, Label> labels) {
+                                 final Map<Integer, Label> labels, final FeatureInput input, boolean leafIndex, int featureLocal) {
         if (node.isLeaf()) {
-            defineLeafNodeBlock(methodVisitor, node, labels);
+            defineLeafNodeBlock(methodVisitor, node, labels, leafIndex);
             return;
         }
 
         if (node.isCategoryNode()) {
-            defineCategoryNodeBlock(methodVisitor, node, className, labels);
+            defineCategoryNodeBlock(methodVisitor, node, className, labels, input, featureLocal);
+        } else if (featurePreload) {
+            definePreloadedNumericalNodeBlock(methodVisitor, node, labels, input);
         } else {
-            defineNumericalNodeBlock(methodVisitor, node, labels);
+            defineNumericalNodeBlock(methodVisitor, node, labels, input, featureLocal);
         }
     }
 
-    private void defineLeafNodeBlock(MethodVisitor methodVisitor, final TreeNode node, final Map<Integer, Label> labels) {
+    private void defineLeafNodeBlock(MethodVisitor methodVisitor, final TreeNode node, final Map<Integer, Label> labels, boolean leafIndex) {
         int nodeIndex = node.getNodeIndex();
         methodVisitor.visitLabel(labels.get(nodeIndex));
-        methodVisitor.visitLdcInsn(new Double(node.getLeafValue()));
-        methodVisitor.visitInsn(DRETURN);
+        if (leafIndex) {
+            // leaf node index is stored as ~leaf_index
+            methodVisitor.visitLdcInsn(~nodeIndex);
+            methodVisitor.visitInsn(IRETURN);
+        } else {
+            loadConstant(methodVisitor, node.getLeafValue());
+            methodVisitor.visitInsn(DRETURN);
+        }
     }
 
     @SuppressWarnings("Duplicates")
-    private void defineNumericalNodeBlock(MethodVisitor methodVisitor, final TreeNode node, final Map<Integer, Label> labels) {
+    private void defineNumericalNodeBlock(MethodVisitor methodVisitor, final TreeNode node, final Map<Integer, Label> labels,
+                                          final FeatureInput input, int feature) {
         int nodeIndex = node.getNodeIndex();
         methodVisitor.visitLabel(labels.get(nodeIndex));
 
         // load feature
-        loadFeatureByIndex(methodVisitor, node.getSplitFeatures().get(nodeIndex));
-        methodVisitor.visitVarInsn(DSTORE, 2);
+        input.loadFeature(methodVisitor, node.getSplitFeatures().get(nodeIndex));
+        methodVisitor.visitVarInsn(DSTORE, feature);
 
         // if missing_type != nan and feature is nan, set feature to zero
         MissingType missingType = MissingType.ofMask((node.getDecisionType() >> 2) & 3);
         if (missingType != MissingType.Nan) {
-            methodVisitor.visitVarInsn(DLOAD, 2);
-            methodVisitor.visitVarInsn(DLOAD, 2);
+            methodVisitor.visitVarInsn(DLOAD, feature);
+            methodVisitor.visitVarInsn(DLOAD, feature);
             methodVisitor.visitInsn(DCMPL);
             Label label = new Label();
             // if feature is not nan, go to continue
             methodVisitor.visitJumpInsn(IFEQ, label);
             // set feature to zero
             methodVisitor.visitInsn(DCONST_0);
-            methodVisitor.visitVarInsn(DSTORE, 2);
+            methodVisitor.visitVarInsn(DSTORE, feature);
             // continue
             methodVisitor.visitLabel(label);
         }
@@ -190,14 +1634,14 @@ public final class PredictorClassGenerator extends ClassLoader implements Genera
         if (missingType == MissingType.Zero) {
             Label label = new Label();
             // if feature < -1e-35, not zero, jump to continue
-            methodVisitor.visitVarInsn(DLOAD, 2);
-            methodVisitor.visitLdcInsn(new Double(-K_ZERO_THRESHOLD));
+            methodVisitor.visitVarInsn(DLOAD, feature);
+            methodVisitor.visitLdcInsn(new Double(-DecisionType.K_ZERO_THRESHOLD));
             methodVisitor.visitInsn(DCMPL);
             methodVisitor.visitJumpInsn(IFLT, label);
 
             // if feature > 1e-35, not zero, jump to continue
-            methodVisitor.visitVarInsn(DLOAD, 2);
-            methodVisitor.visitLdcInsn(new Double(K_ZERO_THRESHOLD));
+            methodVisitor.visitVarInsn(DLOAD, feature);
+            methodVisitor.visitLdcInsn(new Double(DecisionType.K_ZERO_THRESHOLD));
             methodVisitor.visitInsn(DCMPG);
             methodVisitor.visitJumpInsn(IFGT, label);
 
@@ -216,8 +1660,8 @@ public final class PredictorClassGenerator extends ClassLoader implements Genera
         if (missingType == MissingType.Nan) {
             Label label = new Label();
             // if feature is not nan, jump to continue
-            methodVisitor.visitVarInsn(DLOAD, 2);
-            methodVisitor.visitVarInsn(DLOAD, 2);
+            methodVisitor.visitVarInsn(DLOAD, feature);
+            methodVisitor.visitVarInsn(DLOAD, feature);
             methodVisitor.visitInsn(DCMPL);
             methodVisitor.visitJumpInsn(IFEQ, label);
 
@@ -233,54 +1677,185 @@ public final class PredictorClassGenerator extends ClassLoader implements Genera
         }
 
         // compare to threshold
-        methodVisitor.visitVarInsn(DLOAD, 2);
-        methodVisitor.visitLdcInsn(new Double(node.getThreshold()));
+        methodVisitor.visitVarInsn(DLOAD, feature);
+        loadConstant(methodVisitor, node.getThreshold());
+        methodVisitor.visitInsn(DCMPG);
+        jumpByComparison(methodVisitor, node, labels);
+    }
+
+    /**
+     * Jump to child by the comparison result of feature and threshold on the operand stack,
+     * block of hot child directly follows the node, refer to {@link PredictorClassGenerator#subtreeNodes(TreeNode, Set)},
+     * so only the cold child is jumped to, and the hot child is reached by fall through.
+     *
+     * @param methodVisitor method visitor
+     * @param node          numerical split node
+     * @param labels        labels of nodes in current method
+     */
+    private void jumpByComparison(MethodVisitor methodVisitor, final TreeNode node, final Map<Integer, Label> labels) {
+        if (hotChild(node) == node.getLeftNode()) {
+            // feature > threshold, jump to right, otherwise fall through to left
+            methodVisitor.visitJumpInsn(IFGT, labels.get(node.getRightNode().getNodeIndex()));
+        } else {
+            // feature <= threshold, jump to left, otherwise fall through to right
+            methodVisitor.visitJumpInsn(IFLE, labels.get(node.getLeftNode().getNodeIndex()));
+        }
+    }
+
+    /**
+     * Numerical split of preloaded row, value of the feature is already normalized and its missing code is precomputed,
+     * refer to {@link io.github.horoc.treetops.core.predictor.FeaturePreloadPredictor}.
+     *
+     * @param methodVisitor method visitor
+     * @param node          numerical split node
+     * @param labels        labels of nodes in current method
+     * @param input         feature input form
+     */
+    private void definePreloadedNumericalNodeBlock(MethodVisitor methodVisitor, final TreeNode node, final Map<Integer, Label> labels,
+                                                   final FeatureInput input) {
+        int nodeIndex = node.getNodeIndex();
+        methodVisitor.visitLabel(labels.get(nodeIndex));
+
+        int position = node.getSplitFeatures().get(nodeIndex);
+        MissingType missingType = MissingType.ofMask((node.getDecisionType() >> 2) & 3);
+        Label defaultChild = labels.get(node.isDefaultLeftDecision() ? node.getLeftNode().getNodeIndex() : node.getRightNode().getNodeIndex());
+        if (missingType == MissingType.Zero) {
+            // if feature is zero or nan, jump to default child node
+            input.loadFeature(methodVisitor, position + 1);
+            methodVisitor.visitInsn(DCONST_0);
+            methodVisitor.visitInsn(DCMPL);
+            methodVisitor.visitJumpInsn(IFNE, defaultChild);
+        } else if (missingType == MissingType.Nan) {
+            // if feature is nan, jump to default child node
+            input.loadFeature(methodVisitor, position + 1);
+            methodVisitor.visitInsn(DCONST_1);
+            methodVisitor.visitInsn(DCMPL);
+            methodVisitor.visitJumpInsn(IFGT, defaultChild);
+        }
+
+        // compare normalized feature to threshold
+        input.loadFeature(methodVisitor, position);
+        loadConstant(methodVisitor, node.getThreshold());
         methodVisitor.visitInsn(DCMPG);
-        // feature > threshold, jump to right
-        methodVisitor.visitJumpInsn(IFGE, labels.get(node.getRightNode().getNodeIndex()));
-        // feature <= threshold, jump to left
-        methodVisitor.visitJumpInsn(GOTO, labels.get(node.getLeftNode().getNodeIndex()));
+        jumpByComparison(methodVisitor, node, labels);
     }
 
     private void defineCategoryNodeBlock(MethodVisitor methodVisitor, final TreeNode node, final String className,
-                                         final Map<Integer, Label> labels) {
+                                         final Map<Integer, Label> labels, final FeatureInput input, int feature) {
         int nodeIndex = node.getNodeIndex();
         methodVisitor.visitLabel(labels.get(nodeIndex));
 
+        if (featurePreload) {
+            // if missing code of preloaded feature is nan, jump to right child node
+            input.loadFeature(methodVisitor, node.getSplitFeatures().get(nodeIndex) + 1);
+            methodVisitor.visitInsn(DCONST_1);
+            methodVisitor.visitInsn(DCMPL);
+            methodVisitor.visitJumpInsn(IFGT, labels.get(node.getRightNode().getNodeIndex()));
+        }
+
         // load feature
-        loadFeatureByIndex(methodVisitor, node.getSplitFeatures().get(nodeIndex));
-        methodVisitor.visitVarInsn(DSTORE, 2);
+        input.loadFeature(methodVisitor, node.getSplitFeatures().get(nodeIndex));
+        methodVisitor.visitVarInsn(DSTORE, feature);
 
-        // if feature isNaN, jump to right child node
-        methodVisitor.visitVarInsn(DLOAD, 2);
-        methodVisitor.visitVarInsn(DLOAD, 2);
-        methodVisitor.visitInsn(DCMPL);
-        methodVisitor.visitJumpInsn(IFNE, labels.get(node.getRightNode().getNodeIndex()));
+        if (!featurePreload) {
+            // if feature isNaN, jump to right child node
+            methodVisitor.visitVarInsn(DLOAD, feature);
+            methodVisitor.visitVarInsn(DLOAD, feature);
+            methodVisitor.visitInsn(DCMPL);
+            methodVisitor.visitJumpInsn(IFNE, labels.get(node.getRightNode().getNodeIndex()));
+        }
 
-        // if feature < 0, jump to right child node
-        methodVisitor.visitVarInsn(DLOAD, 2);
-        methodVisitor.visitInsn(DCONST_0);
-        methodVisitor.visitInsn(DCMPG);
+        // if (int) feature < 0, jump to right child node
+        methodVisitor.visitVarInsn(DLOAD, feature);
+        methodVisitor.visitInsn(D2I);
         methodVisitor.visitJumpInsn(IFLT, labels.get(node.getRightNode().getNodeIndex()));
 
-        // if findInBitset, jump to right child node
-        methodVisitor.visitVarInsn(ALOAD, 0);
-        methodVisitor.visitLdcInsn(node.getTreeIndex());
-        methodVisitor.visitLdcInsn(node.getCatBoundaryBegin());
-        methodVisitor.visitLdcInsn(node.getCatBoundaryEnd() - node.getCatBoundaryBegin());
-        methodVisitor.visitVarInsn(DLOAD, 2);
-        methodVisitor.visitMethodInsn(INVOKEVIRTUAL, className, FIND_CAT_BIT_SET_METHOD, "(IIID)Z", false);
-        methodVisitor.visitJumpInsn(IFNE, labels.get(node.getLeftNode().getNodeIndex()));
+        // if (int) feature is in categories, jump to left child node, otherwise jump to right child node
+        Label left = labels.get(node.getLeftNode().getNodeIndex());
+        Label right = labels.get(node.getRightNode().getNodeIndex());
+        CategorySplit.jump(methodVisitor, node, className, feature, left, right);
+    }
+
+    /**
+     * Push all arguments of current method onto the operand stack, except 'this'.
+     *
+     * @param methodVisitor method visitor
+     * @param descriptor    method descriptor
+     */
+    private void loadArguments(MethodVisitor methodVisitor, final String descriptor) {
+        int index = 1;
+        for (Type type : Type.getArgumentTypes(descriptor)) {
+            methodVisitor.visitVarInsn(type.getOpcode(ILOAD), index);
+            index += type.getSize();
+        }
+    }
+
+    /**
+     * Push model constant onto the operand stack as double, it is stored as float constant in float precision mode.
+     *
+     * @param methodVisitor method visitor
+     * @param value         constant value
+     */
+    private void loadConstant(MethodVisitor methodVisitor, double value) {
+        if (floatPrecision) {
+            methodVisitor.visitLdcInsn((float) value);
+            methodVisitor.visitInsn(F2D);
+        } else {
+            methodVisitor.visitLdcInsn(value);
+        }
+    }
+
+    private int numIterations(final TreeModel model) {
+        return model.getTrees().size() / Math.max(model.getNumberTreePerIteration(), 1);
+    }
+
+    /**
+     * Descriptor of a single row, e.g. [D for dense input.
+     *
+     * @param input feature input form, should not be strided
+     * @return row descriptor
+     */
+    private String rowDescriptor(final FeatureInput input) {
+        return Type.getArgumentTypes(input.getTreeDescriptor())[0].getDescriptor();
+    }
+
+    /**
+     * Arguments of tree method without parentheses, e.g. [DII for strided input.
+     *
+     * @param input feature input form
+     * @return argument descriptors
+     */
+    private String treeArguments(final FeatureInput input) {
+        return input.getTreeDescriptor().substring(1, input.getTreeDescriptor().indexOf(')'));
+    }
+
+    /**
+     * Size of arguments of method in local variable slots, except 'this'.
+     *
+     * @param descriptor method descriptor
+     * @return size of arguments
+     */
+    private int argumentsSize(final String descriptor) {
+        return (Type.getArgumentsAndReturnSizes(descriptor) >> 2) - 1;
+    }
+
+    private String chunkInternalName(final String className, int chunkIndex) {
+        return className + CHUNK_CLASS_SUFFIX + chunkIndex;
+    }
+
+    private String treeMethodName(final TreeNode root, final FeatureInput input) {
+        return TREE_METHOD_PREFIX + root.getTreeIndex() + input.getMethodSuffix();
+    }
 
-        // others, jump left child node
-        methodVisitor.visitJumpInsn(GOTO, labels.get(node.getRightNode().getNodeIndex()));
+    private String groupMethodName(final TreeModel model, final TreeGroup group, final FeatureInput input) {
+        return GROUP_METHOD_PREFIX + model.getTrees().get(group.first()).getTreeIndex() + input.getMethodSuffix();
     }
 
-    private void loadFeatureByIndex(MethodVisitor methodVisitor, int index) {
-        // load features[index] to stack
-        methodVisitor.visitVarInsn(ALOAD, FEATURE_PARAMETER_INDEX);
-        methodVisitor.visitLdcInsn(index);
-        methodVisitor.visitInsn(DALOAD);
+    private String subtreeMethodName(final TreeNode root, final TreeNode subtree, final FeatureInput input, boolean leafIndex) {
+        if (leafIndex) {
+            return LEAF_METHOD_PREFIX + root.getTreeIndex() + (subtree == root ? "" : "_" + subtree.getNodeIndex());
+        }
+        return subtree == root ? treeMethodName(root, input) : TREE_METHOD_PREFIX + root.getTreeIndex() + "_" + subtree.getNodeIndex() + input.getMethodSuffix();
     }
 
     private MethodVisitor simpleVisitMethod(ClassVisitor cv, int access, final String name,
@@ -291,12 +1866,4 @@ public final class PredictorClassGenerator extends ClassLoader implements Genera
     private String toInternalName(final String name) {
         return StringUtils.join(name.split("\\."), "/");
     }
-
-    private String getSuperName(final TreeModel model) {
-        if (model.isContainsCatNode()) {
-            return META_DATA_HOLDER_INTERNAL_NAME;
-        } else {
-            return OBJECT_INTERNAL_NAME;
-        }
-    }
 }
@@ -0,0 +1,43 @@
+package io.github.horoc.treetops.core.generator;
+
+/**
+ * Consecutive trees of the same class which are scored together by row prediction methods,
+ * refer to {@link InliningStrategy}.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+final class TreeGroup {
+
+    /**
+     * positions of trees in model, in scoring order.
+     */
+    private final int[] positions;
+
+    /**
+     * {@link InliningStrategy#TREE_METHOD} for a single tree method call,
+     * {@link InliningStrategy#GROUPED} for a group method call, {@link InliningStrategy#INLINED} for inlined trees.
+     */
+    private final InliningStrategy strategy;
+
+    TreeGroup(int[] positions, InliningStrategy strategy) {
+        this.positions = positions;
+        this.strategy = strategy;
+    }
+
+    int[] getPositions() {
+        return positions;
+    }
+
+    InliningStrategy getStrategy() {
+        return strategy;
+    }
+
+    int first() {
+        return positions[0];
+    }
+
+    int last() {
+        return positions[positions.length - 1];
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.horoc.treetops.core.model;
+
+/**
+ * Constants of decision type of split node, shared by parser, generator and interpreters,
+ * refer to official library: microsoft/LightGBM/include/LightGBM/tree.h. <br>
+ * Bit 0 is the categorical flag, bit 1 is the default left flag, bits 2-3 are the {@link MissingType} mask.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public final class DecisionType {
+
+    /**
+     * Refer to official library: kZeroThreshold, value in [-kZeroThreshold, kZeroThreshold] is treated as zero.
+     */
+    public static final double K_ZERO_THRESHOLD = 1e-35f;
+
+    /**
+     * Refer to official library: kCategoricalMask.
+     */
+    public static final int CATEGORICAL_MASK = 1;
+
+    /**
+     * Refer to official library: kDefaultLeftMask.
+     */
+    public static final int DEFAULT_LEFT_MASK = 2;
+
+    private DecisionType() {
+    }
+}
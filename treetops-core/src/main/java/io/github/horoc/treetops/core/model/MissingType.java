@@ -18,6 +18,11 @@ public enum MissingType {
      */
     Nan(2);
 
+    /**
+     * cached values, avoid cloning array of {@link MissingType#values()} on every lookup.
+     */
+    private static final MissingType[] VALUES = MissingType.values();
+
     private final int mask;
 
     MissingType(int mask) {
@@ -29,7 +34,7 @@ public enum MissingType {
     }
 
     public static MissingType ofMask(int mask) {
-        for (MissingType type : MissingType.values()) {
+        for (MissingType type : VALUES) {
             if (type.getMask() == mask) {
                 return type;
             }
@@ -0,0 +1,334 @@
+package io.github.horoc.treetops.core.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compaction pass of tree model, which runs before predictor creation: <br>
+ * 1. split node of which both children are leaves of the same value is collapsed into a leaf, bottom up. <br>
+ * 2. tree of a single leaf is folded into the per class bias, which is added to every leaf of another tree of the same class,
+ * or kept as a single leaf tree if the class has no other tree. <br>
+ * 3. structurally identical trees of the same class are merged into the first one by summing their leaf values,
+ * identical means the same splits and the same training-time sample counts, so that TreeSHAP contributions are unchanged. <br>
+ * Prediction of the compacted model equals the origin one, except that leaf values are summed in a different order.
+ * Trees of different iterations are merged, thus leaf index, per call iteration limit and early stop of the origin model
+ * can not be mapped to the compacted model, predictor of compacted model rejects them.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public final class ModelCompaction {
+
+    private final TreeModel model;
+
+    private final int removedTrees;
+
+    private final int removedNodes;
+
+    /**
+     * num of single leaf trees folded into bias.
+     */
+    private final int foldedTrees;
+
+    /**
+     * num of trees merged into an identical tree.
+     */
+    private final int mergedTrees;
+
+    /**
+     * num of split nodes collapsed into a leaf.
+     */
+    private final int collapsedSplits;
+
+    private ModelCompaction(TreeModel model, int removedTrees, int removedNodes, int foldedTrees, int mergedTrees, int collapsedSplits) {
+        this.model = model;
+        this.removedTrees = removedTrees;
+        this.removedNodes = removedNodes;
+        this.foldedTrees = foldedTrees;
+        this.mergedTrees = mergedTrees;
+        this.collapsedSplits = collapsedSplits;
+    }
+
+    /**
+     * Compact tree model, the origin model is not modified.
+     *
+     * @param treeModel tree model
+     * @return compacted model and statistics
+     */
+    public static ModelCompaction compact(TreeModel treeModel) {
+        if (Objects.isNull(treeModel)) {
+            throw new IllegalArgumentException("tree model can not be null");
+        }
+        int numClass = Math.max(treeModel.getNumClass(), 1);
+        int[] collapsed = new int[1];
+        List<TreeNode> trees = new ArrayList<>(treeModel.getTrees().size());
+        for (TreeNode root : treeModel.getTrees()) {
+            int collapsedBefore = collapsed[0];
+            TreeNode copied = collapse(root.copyTree(), collapsed);
+            if (collapsed[0] > collapsedBefore) {
+                renumber(copied);
+            }
+            trees.add(copied);
+        }
+
+        // fold single leaf trees into bias of class, the first one of each class holds the bias in case no other tree of the class remains
+        double[] bias = new double[numClass];
+        TreeNode[] biasHolder = new TreeNode[numClass];
+        List<TreeNode> remaining = new ArrayList<>(trees.size());
+        int folded = 0;
+        for (TreeNode root : trees) {
+            if (!root.isLeaf()) {
+                remaining.add(root);
+                continue;
+            }
+            int classIndex = root.getTreeIndex() % numClass;
+            bias[classIndex] += root.getLeafValue();
+            if (biasHolder[classIndex] == null) {
+                biasHolder[classIndex] = root;
+            } else {
+                folded++;
+            }
+        }
+        List<TreeNode> compacted = mergeIdenticalTrees(remaining, numClass);
+        int merged = remaining.size() - compacted.size();
+        for (int c = 0; c < numClass; c++) {
+            if (biasHolder[c] == null) {
+                continue;
+            }
+            TreeNode target = firstTreeOfClass(compacted, c, numClass);
+            if (target == null) {
+                biasHolder[c].setLeafValue(bias[c]);
+                compacted.add(biasHolder[c]);
+            } else {
+                folded++;
+                addToLeaves(target, bias[c]);
+            }
+        }
+        // keep the origin order of trees
+        compacted.sort((a, b) -> Integer.compare(a.getTreeIndex(), b.getTreeIndex()));
+
+        TreeModel compactedModel = treeModel.copyWithTrees(compacted);
+        int removedNodes = countNodes(treeModel.getTrees()) - countNodes(compacted);
+        return new ModelCompaction(compactedModel, treeModel.getTrees().size() - compacted.size(), removedNodes, folded, merged, collapsed[0]);
+    }
+
+    public TreeModel getModel() {
+        return model;
+    }
+
+    public int getRemovedTrees() {
+        return removedTrees;
+    }
+
+    public int getRemovedNodes() {
+        return removedNodes;
+    }
+
+    public int getFoldedTrees() {
+        return foldedTrees;
+    }
+
+    public int getMergedTrees() {
+        return mergedTrees;
+    }
+
+    public int getCollapsedSplits() {
+        return collapsedSplits;
+    }
+
+    @Override
+    public String toString() {
+        return "ModelCompaction{"
+            + "removedTrees=" + removedTrees
+            + ", removedNodes=" + removedNodes
+            + ", foldedTrees=" + foldedTrees
+            + ", mergedTrees=" + mergedTrees
+            + ", collapsedSplits=" + collapsedSplits
+            + '}';
+    }
+
+    /**
+     * Collapse split nodes of which both children are leaves of the same value, bottom up,
+     * the collapsed leaf takes sample count and weight of the split node.
+     *
+     * @param node      root of subtree
+     * @param collapsed counter of collapsed split nodes
+     * @return root of collapsed subtree
+     */
+    private static TreeNode collapse(TreeNode node, int[] collapsed) {
+        if (node.isLeaf()) {
+            return node;
+        }
+        TreeNode left = collapse(node.getLeftNode(), collapsed);
+        TreeNode right = collapse(node.getRightNode(), collapsed);
+        node.setLeftNode(left);
+        node.setRightNode(right);
+        if (left.isLeaf() && right.isLeaf() && left.getLeafValue() == right.getLeafValue()) {
+            collapsed[0]++;
+            left.setDataCount(node.getDataCount());
+            left.setDataWeight(node.getDataWeight());
+            return left;
+        }
+        return node;
+    }
+
+    /**
+     * Renumber nodes of tree in pre-order, split nodes from 0 and leaves from ~0, same as the layout of official library,
+     * split features and all nodes list are rebuilt accordingly.
+     *
+     * @param root root of tree
+     */
+    private static void renumber(TreeNode root) {
+        List<TreeNode> splits = new ArrayList<>();
+        List<TreeNode> leaves = new ArrayList<>();
+        collectNodes(root, splits, leaves);
+        List<Integer> splitFeatures = new ArrayList<>(splits.size());
+        for (int i = 0; i < splits.size(); i++) {
+            TreeNode split = splits.get(i);
+            splitFeatures.add(split.getSplitFeatures().get(split.getNodeIndex()));
+        }
+        List<TreeNode> allNodes = new ArrayList<>(splits.size() + leaves.size());
+        for (int i = 0; i < splits.size(); i++) {
+            splits.get(i).setNodeIndex(i);
+            allNodes.add(splits.get(i));
+        }
+        for (int i = 0; i < leaves.size(); i++) {
+            leaves.get(i).setNodeIndex(~i);
+            allNodes.add(leaves.get(i));
+        }
+        for (TreeNode node : allNodes) {
+            node.setSplitFeatures(splitFeatures);
+            node.setAllNodes(allNodes);
+        }
+    }
+
+    private static void collectNodes(TreeNode node, List<TreeNode> splits, List<TreeNode> leaves) {
+        if (node.isLeaf()) {
+            leaves.add(node);
+            return;
+        }
+        splits.add(node);
+        collectNodes(node.getLeftNode(), splits, leaves);
+        collectNodes(node.getRightNode(), splits, leaves);
+    }
+
+    /**
+     * Merge identical trees of the same class into the first one, leaf values of merged trees are added to it.
+     *
+     * @param trees    trees with split nodes
+     * @param numClass num of class
+     * @return remaining trees
+     */
+    private static List<TreeNode> mergeIdenticalTrees(List<TreeNode> trees, int numClass) {
+        Map<Integer, List<TreeNode>> buckets = new HashMap<>();
+        List<TreeNode> ret = new ArrayList<>(trees.size());
+        for (TreeNode root : trees) {
+            int key = 31 * structureHash(root, root) + root.getTreeIndex() % numClass;
+            List<TreeNode> bucket = buckets.computeIfAbsent(key, k -> new ArrayList<>());
+            TreeNode identical = null;
+            for (TreeNode candidate : bucket) {
+                if (candidate.getTreeIndex() % numClass == root.getTreeIndex() % numClass && isIdentical(candidate, root, candidate, root)) {
+                    identical = candidate;
+                    break;
+                }
+            }
+            if (identical == null) {
+                bucket.add(root);
+                ret.add(root);
+            } else {
+                addLeaves(identical, root);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Hash of splits and sample counts of subtree, consistent with {@link #isIdentical(TreeNode, TreeNode, TreeNode, TreeNode)}.
+     * Threshold of categorical node is an index into cat_boundaries of its own tree, thus its category bitset is hashed instead.
+     *
+     * @param node subtree
+     * @param root root of tree, where category bitsets are stored
+     * @return hash
+     */
+    private static int structureHash(TreeNode node, TreeNode root) {
+        if (node.isLeaf()) {
+            return node.getDataCount();
+        }
+        Object split = node.isCategoryNode() ? root.getCatThreshold().subList(node.getCatBoundaryBegin(), node.getCatBoundaryEnd()) : node.getThreshold();
+        int hash = Objects.hash(node.getSplitFeatures().get(node.getNodeIndex()), node.getDecisionType(), split, node.getDataCount());
+        return (hash * 31 + structureHash(node.getLeftNode(), root)) * 31 + structureHash(node.getRightNode(), root);
+    }
+
+    /**
+     * Whether two subtrees have the same splits and sample counts, leaf values are not compared.
+     *
+     * @param a     subtree a
+     * @param b     subtree b
+     * @param rootA root of tree a, where category bitsets are stored
+     * @param rootB root of tree b, where category bitsets are stored
+     * @return true if identical
+     */
+    private static boolean isIdentical(TreeNode a, TreeNode b, TreeNode rootA, TreeNode rootB) {
+        if (a.isLeaf() || b.isLeaf()) {
+            return a.isLeaf() && b.isLeaf() && a.getDataCount() == b.getDataCount();
+        }
+        boolean sameSplit = Objects.equals(a.getSplitFeatures().get(a.getNodeIndex()), b.getSplitFeatures().get(b.getNodeIndex()))
+            && a.getDecisionType() == b.getDecisionType()
+            && a.getDataCount() == b.getDataCount();
+        if (!sameSplit) {
+            return false;
+        }
+        if (a.isCategoryNode()) {
+            List<Long> catA = rootA.getCatThreshold().subList(a.getCatBoundaryBegin(), a.getCatBoundaryEnd());
+            List<Long> catB = rootB.getCatThreshold().subList(b.getCatBoundaryBegin(), b.getCatBoundaryEnd());
+            if (!catA.equals(catB)) {
+                return false;
+            }
+        } else if (Double.compare(a.getThreshold(), b.getThreshold()) != 0) {
+            return false;
+        }
+        return isIdentical(a.getLeftNode(), b.getLeftNode(), rootA, rootB) && isIdentical(a.getRightNode(), b.getRightNode(), rootA, rootB);
+    }
+
+    private static void addLeaves(TreeNode target, TreeNode source) {
+        if (target.isLeaf()) {
+            target.setLeafValue(target.getLeafValue() + source.getLeafValue());
+            return;
+        }
+        addLeaves(target.getLeftNode(), source.getLeftNode());
+        addLeaves(target.getRightNode(), source.getRightNode());
+    }
+
+    private static void addToLeaves(TreeNode node, double value) {
+        if (node.isLeaf()) {
+            node.setLeafValue(node.getLeafValue() + value);
+            return;
+        }
+        addToLeaves(node.getLeftNode(), value);
+        addToLeaves(node.getRightNode(), value);
+    }
+
+    private static TreeNode firstTreeOfClass(List<TreeNode> trees, int classIndex, int numClass) {
+        for (TreeNode root : trees) {
+            if (root.getTreeIndex() % numClass == classIndex) {
+                return root;
+            }
+        }
+        return null;
+    }
+
+    private static int countNodes(List<TreeNode> trees) {
+        int count = 0;
+        for (TreeNode root : trees) {
+            count += countNodes(root);
+        }
+        return count;
+    }
+
+    private static int countNodes(TreeNode node) {
+        return node.isLeaf() ? 1 : 1 + countNodes(node.getLeftNode()) + countNodes(node.getRightNode());
+    }
+}
@@ -79,6 +79,30 @@ public class RawTreeBlock {
      */
     private List<Long> catThreshold;
 
+    /**
+     * match with model file field:
+     * - leaf_count=%d %d ...
+     */
+    private List<Integer> leafCount;
+
+    /**
+     * match with model file field:
+     * - internal_count=%d %d ...
+     */
+    private List<Integer> internalCount;
+
+    /**
+     * match with model file field:
+     * - leaf_weight=%f %f ...
+     */
+    private List<Double> leafWeight;
+
+    /**
+     * match with model file field:
+     * - internal_weight=%f %f ...
+     */
+    private List<Double> internalWeight;
+
     public int getTree() {
         return tree;
     }
@@ -174,4 +198,36 @@ public class RawTreeBlock {
     public void setCatThreshold(List<Long> catThreshold) {
         this.catThreshold = catThreshold;
     }
+
+    public List<Integer> getLeafCount() {
+        return leafCount;
+    }
+
+    public void setLeafCount(List<Integer> leafCount) {
+        this.leafCount = leafCount;
+    }
+
+    public List<Integer> getInternalCount() {
+        return internalCount;
+    }
+
+    public void setInternalCount(List<Integer> internalCount) {
+        this.internalCount = internalCount;
+    }
+
+    public List<Double> getLeafWeight() {
+        return leafWeight;
+    }
+
+    public void setLeafWeight(List<Double> leafWeight) {
+        this.leafWeight = leafWeight;
+    }
+
+    public List<Double> getInternalWeight() {
+        return internalWeight;
+    }
+
+    public void setInternalWeight(List<Double> internalWeight) {
+        this.internalWeight = internalWeight;
+    }
 }
@@ -78,4 +78,73 @@ public class TreeModel {
     public void setTrees(List<TreeNode> trees) {
         this.trees = trees;
     }
+
+    /**
+     * Copy model meta data with the given trees, tree nodes are shared with the given list.
+     *
+     * @param trees trees of the copied model
+     * @return copied model
+     */
+    public TreeModel copyWithTrees(List<TreeNode> trees) {
+        TreeModel model = new TreeModel();
+        model.setNumClass(numClass);
+        model.setNumberTreePerIteration(numberTreePerIteration);
+        model.setMaxFeatureIndex(maxFeatureIndex);
+        model.setContainsCatNode(containsCatNode);
+        model.setObjectiveType(objectiveType);
+        model.setObjectiveConfig(objectiveConfig);
+        model.setTrees(trees);
+        return model;
+    }
+
+    /**
+     * Refer to official library: start_iteration and num_iteration of microsoft/LightGBM/src/boosting/gbdt.cpp#GBDT::InitPredict,
+     * copy model with trees of iterations [startIteration, startIteration + numIteration),
+     * each iteration contains num_tree_per_iteration trees, tree nodes are shared with this model.
+     *
+     * @param startIteration first iteration, inclusive
+     * @param numIteration   num of iterations, all remaining iterations are selected if it is not positive
+     * @return copied model
+     */
+    public TreeModel copyWithIterations(int startIteration, int numIteration) {
+        int treePerIteration = Math.max(numberTreePerIteration, 1);
+        int totalIteration = trees.size() / treePerIteration;
+        int start = Math.max(0, Math.min(startIteration, totalIteration));
+        int end = totalIteration;
+        if (numIteration > 0) {
+            end = (int) Math.min(end, (long) start + numIteration);
+        }
+        return copyWithTrees(new ArrayList<>(trees.subList(start * treePerIteration, end * treePerIteration)));
+    }
+
+    /**
+     * Copy model with thresholds and leaf values rounded to float, which is used by float precision mode. <br>
+     * Threshold is rounded down to the largest float not greater than it,
+     * so that decision of float feature value is exactly the same as the double model, since feature <= threshold.
+     *
+     * @return copied model
+     */
+    public TreeModel copyWithFloatPrecision() {
+        List<TreeNode> copiedTrees = new ArrayList<>(trees.size());
+        for (TreeNode root : trees) {
+            TreeNode copied = root.copyTree();
+            roundToFloat(copied);
+            copiedTrees.add(copied);
+        }
+        return copyWithTrees(copiedTrees);
+    }
+
+    private static void roundToFloat(TreeNode node) {
+        if (node.isLeaf()) {
+            node.setLeafValue((float) node.getLeafValue());
+            return;
+        }
+        float threshold = (float) node.getThreshold();
+        if (threshold > node.getThreshold()) {
+            threshold = Math.nextDown(threshold);
+        }
+        node.setThreshold(threshold);
+        roundToFloat(node.getLeftNode());
+        roundToFloat(node.getRightNode());
+    }
 }
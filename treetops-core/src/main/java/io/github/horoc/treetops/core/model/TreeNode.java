@@ -1,6 +1,9 @@
 package io.github.horoc.treetops.core.model;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author chenzhou@apache.org
@@ -36,6 +39,16 @@ public class TreeNode {
 
     private double leafValue;
 
+    /**
+     * num of training samples which fall into this node, refer to internal_count and leaf_count of model file.
+     */
+    private int dataCount;
+
+    /**
+     * sum of hessian of training samples which fall into this node, refer to internal_weight and leaf_weight of model file.
+     */
+    private double dataWeight;
+
     private List<TreeNode> allNodes;
 
     public TreeNode() {
@@ -162,6 +175,22 @@ public class TreeNode {
         this.leafValue = leafValue;
     }
 
+    public int getDataCount() {
+        return dataCount;
+    }
+
+    public void setDataCount(int dataCount) {
+        this.dataCount = dataCount;
+    }
+
+    public double getDataWeight() {
+        return dataWeight;
+    }
+
+    public void setDataWeight(double dataWeight) {
+        this.dataWeight = dataWeight;
+    }
+
     public List<TreeNode> getAllNodes() {
         return allNodes;
     }
@@ -169,4 +198,55 @@ public class TreeNode {
     public void setAllNodes(List<TreeNode> allNodes) {
         this.allNodes = allNodes;
     }
+
+    /**
+     * Deep copy the tree which is rooted at this node, split features list is copied as well,
+     * so that the copied tree can be rewritten without affecting the origin one.
+     *
+     * @return root of copied tree
+     */
+    public TreeNode copyTree() {
+        List<Integer> copiedSplitFeatures = splitFeatures == null ? null : new ArrayList<>(splitFeatures);
+        List<TreeNode> copiedNodes = new ArrayList<>();
+        Map<TreeNode, TreeNode> copies = new IdentityHashMap<>();
+        collectCopies(this, copies);
+        for (TreeNode node : copies.keySet()) {
+            TreeNode copied = copies.get(node);
+            copied.setLeftNode(node.getLeftNode() == null ? null : copies.get(node.getLeftNode()));
+            copied.setRightNode(node.getRightNode() == null ? null : copies.get(node.getRightNode()));
+            copied.setSplitFeatures(copiedSplitFeatures);
+            copied.setAllNodes(copiedNodes);
+        }
+        if (allNodes != null) {
+            for (TreeNode node : allNodes) {
+                copiedNodes.add(copies.containsKey(node) ? copies.get(node) : node.copyNode());
+            }
+        }
+        return copies.get(this);
+    }
+
+    private static void collectCopies(TreeNode node, Map<TreeNode, TreeNode> copies) {
+        if (node == null || copies.containsKey(node)) {
+            return;
+        }
+        copies.put(node, node.copyNode());
+        collectCopies(node.getLeftNode(), copies);
+        collectCopies(node.getRightNode(), copies);
+    }
+
+    private TreeNode copyNode() {
+        TreeNode node = new TreeNode(treeIndex, nodeIndex);
+        node.setCategoryNode(isCategoryNode);
+        node.setDefaultLeftDecision(isDefaultLeftDecision);
+        node.setDecisionType(decisionType);
+        node.setThreshold(threshold);
+        node.setCatBoundaryBegin(catBoundaryBegin);
+        node.setCatBoundaryEnd(catBoundaryEnd);
+        node.setCatThreshold(catThreshold);
+        node.setLeaf(isLeaf);
+        node.setLeafValue(leafValue);
+        node.setDataCount(dataCount);
+        node.setDataWeight(dataWeight);
+        return node;
+    }
 }
@@ -1,6 +1,7 @@
 package io.github.horoc.treetops.core.parser;
 
 import io.github.horoc.treetops.core.factory.ObjectiveDecoratorFactory;
+import io.github.horoc.treetops.core.model.DecisionType;
 import io.github.horoc.treetops.core.model.RawTreeBlock;
 import io.github.horoc.treetops.core.model.TreeModel;
 import io.github.horoc.treetops.core.model.TreeNode;
@@ -29,16 +30,6 @@ import org.apache.commons.lang3.Validate;
 @ParametersAreNonnullByDefault
 public class TreeModelParser {
 
-    /**
-     * Refer to official library: microsoft/LightGBM/include/LightGBM/tree.h#kCategoricalMask.
-     */
-    private static final int CATEGORICAL_MASK = 1;
-
-    /**
-     * Refer to official library: microsoft/LightGBM/include/LightGBM/tree.h#kDefaultLeftMask.
-     */
-    private static final int DEFAULT_LEFT_MASK = 2;
-
     /**
      * Model file config separator.
      */
@@ -126,6 +117,16 @@ public class TreeModelParser {
         convertAndSetField("threshold", rawDataMap, val -> fromStringToList(val, Double::valueOf), block::setThreshold);
         convertAndSetField("cat_boundaries", rawDataMap, val -> fromStringToList(val, Integer::valueOf), block::setCatBoundaries);
         convertAndSetField("cat_threshold", rawDataMap, val -> fromStringToList(val, Long::valueOf), block::setCatThreshold);
+        convertAndSetField("leaf_count", rawDataMap, val -> fromStringToList(val, Integer::valueOf), block::setLeafCount);
+        convertAndSetField("internal_count", rawDataMap, val -> fromStringToList(val, Integer::valueOf), block::setInternalCount);
+        convertAndSetField("leaf_weight", rawDataMap, val -> fromStringToList(val, Double::valueOf), block::setLeafWeight);
+        convertAndSetField("internal_weight", rawDataMap, val -> fromStringToList(val, Double::valueOf), block::setInternalWeight);
+
+        // tree of a single leaf has no split node, e.g. trees of constant output after early stopping of training
+        if (block.getNumLeaves() == 1) {
+            initSingleLeafTree(root, block);
+            return nextOffset;
+        }
 
         // init all nodes
         int treeSize = block.getLeftChild().size();
@@ -170,20 +171,57 @@ public class TreeModelParser {
         node.setDefaultLeftDecision(isDefaultLeftDecisionNode(block.getDecisionType().get(nodeIndex)));
         node.setSplitFeatures(block.getSplitFeature());
         node.setCatThreshold(block.getCatThreshold());
+        if (Objects.nonNull(block.getInternalCount())) {
+            node.setDataCount(block.getInternalCount().get(nodeIndex));
+        }
+        if (Objects.nonNull(block.getInternalWeight())) {
+            node.setDataWeight(block.getInternalWeight().get(nodeIndex));
+        }
         if (node.isCategoryNode()) {
-            node.setCatBoundaryBegin(block.getThreshold().get(nodeIndex).intValue());
-            node.setCatBoundaryEnd(node.getCatBoundaryBegin() + 1);
+            // threshold of category node is the index of its bitset, which is stored in cat_threshold[cat_boundaries[i], cat_boundaries[i + 1])
+            int catIndex = block.getThreshold().get(nodeIndex).intValue();
+            node.setCatBoundaryBegin(block.getCatBoundaries().get(catIndex));
+            node.setCatBoundaryEnd(block.getCatBoundaries().get(catIndex + 1));
         } else {
             node.setThreshold(block.getThreshold().get(nodeIndex));
         }
     }
 
+    /**
+     * load tree of a single leaf, the root is the leaf of index ~0.
+     *
+     * @param root  tree node root
+     * @param block raw block data
+     */
+    private static void initSingleLeafTree(TreeNode root, final RawTreeBlock block) {
+        Validate.notEmpty(block.getLeafValue(), "parsing tree model failed, leaf value of tree %s is missing", block.getTree());
+        root.setNodeIndex(~0);
+        root.setLeaf(true);
+        root.setTreeIndex(block.getTree());
+        root.setLeafValue(block.getLeafValue().get(0));
+        if (Objects.nonNull(block.getLeafCount())) {
+            root.setDataCount(block.getLeafCount().get(0));
+        }
+        if (Objects.nonNull(block.getLeafWeight())) {
+            root.setDataWeight(block.getLeafWeight().get(0));
+        }
+        List<TreeNode> treeNodes = new ArrayList<>(1);
+        treeNodes.add(root);
+        root.setAllNodes(treeNodes);
+    }
+
     private static void linkTreeNode(TreeNode node, List<TreeNode> treeNodes, final RawTreeBlock block) {
         int leftIndex = block.getLeftChild().get(node.getNodeIndex());
         if (leftIndex < 0) {
             TreeNode leftLeaf = new TreeNode(node.getTreeIndex(), leftIndex);
             leftLeaf.setLeaf(true);
             leftLeaf.setLeafValue(block.getLeafValue().get(-leftIndex - 1));
+            if (Objects.nonNull(block.getLeafCount())) {
+                leftLeaf.setDataCount(block.getLeafCount().get(-leftIndex - 1));
+            }
+            if (Objects.nonNull(block.getLeafWeight())) {
+                leftLeaf.setDataWeight(block.getLeafWeight().get(-leftIndex - 1));
+            }
             node.setLeftNode(leftLeaf);
             treeNodes.add(leftLeaf);
         } else {
@@ -195,6 +233,12 @@ public class TreeModelParser {
             TreeNode rightLeaf = new TreeNode(node.getTreeIndex(), rightIndex);
             rightLeaf.setLeaf(true);
             rightLeaf.setLeafValue(block.getLeafValue().get(-rightIndex - 1));
+            if (Objects.nonNull(block.getLeafCount())) {
+                rightLeaf.setDataCount(block.getLeafCount().get(-rightIndex - 1));
+            }
+            if (Objects.nonNull(block.getLeafWeight())) {
+                rightLeaf.setDataWeight(block.getLeafWeight().get(-rightIndex - 1));
+            }
             node.setRightNode(rightLeaf);
             treeNodes.add(rightLeaf);
         } else {
@@ -211,7 +255,8 @@ public class TreeModelParser {
             if (StringUtils.isBlank(line)) {
                 return nextOffset;
             }
-            String[] sp = line.split("=");
+            // value is empty if the list is empty, e.g. split_feature of tree of a single leaf
+            String[] sp = line.split("=", -1);
             if (sp.length != 2) {
                 throw new RuntimeException(String.format("try to parse tree model failed, invalid key-value content %s", line));
             }
@@ -221,11 +266,11 @@ public class TreeModelParser {
     }
 
     private static boolean isCategoryNode(int decisionType) {
-        return (decisionType & CATEGORICAL_MASK) > 0;
+        return (decisionType & DecisionType.CATEGORICAL_MASK) > 0;
     }
 
     private static boolean isDefaultLeftDecisionNode(int decisionType) {
-        return (decisionType & DEFAULT_LEFT_MASK) > 0;
+        return (decisionType & DecisionType.DEFAULT_LEFT_MASK) > 0;
     }
 
     private static boolean isTreeBlockHeader(final String line) {
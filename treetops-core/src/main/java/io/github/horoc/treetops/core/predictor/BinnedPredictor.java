@@ -0,0 +1,403 @@
+package io.github.horoc.treetops.core.predictor;
+
+import io.github.horoc.treetops.core.model.DecisionType;
+import io.github.horoc.treetops.core.model.MissingType;
+import io.github.horoc.treetops.core.model.TreeModel;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Interpreter which maps feature values to integer bins before traversal, similar to the bin mapper of official library. <br>
+ * Distinct thresholds of each numerical feature are sorted at load time, and each split node stores the bin of its threshold as a short,
+ * so that {@code value <= threshold} holds if and only if {@code bin(value) <= thresholdBin}. <br>
+ * A feature value is binned once per row, by binary search, into a code of {@code bin << 2 | isNaN << 1 | isZero},
+ * thus NaN/zero missing value handling is resolved by a mask test instead of floating point checks at every node.
+ * Categorical features are coded by the category itself, -1 for NaN or negative value. <br>
+ * Batches are binned by blocks of rows in column order, then scored tree by tree. Packed trees are shared with {@link FlatTreePredictor},
+ * which also serves float and buffer input, leaf index prediction, and batches in early stop mode.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+@ThreadSafe
+public final class BinnedPredictor implements Predictor {
+
+    private static final int ZERO_CODE = 1;
+
+    private static final int NAN_CODE = 2;
+
+    private static final int BIN_SHIFT = 2;
+
+    /**
+     * rows of a batch are binned and scored by blocks, to keep codes of a block in cache.
+     */
+    private static final int BLOCK_ROWS = 256;
+
+    private final FlatTreePredictor scalar;
+
+    private final int numClass;
+
+    private final int numFeatures;
+
+    /**
+     * features used by split nodes, only these are binned.
+     */
+    private final int[] usedFeatures;
+
+    /**
+     * position in used features of split feature of each split node, codes of a row are stored by this position.
+     */
+    private final int[] featurePosition;
+
+    /**
+     * sorted distinct thresholds of each numerical feature, null for categorical or unused feature.
+     */
+    private final double[][] binThresholds;
+
+    /**
+     * bin of threshold of each split node.
+     */
+    private final short[] thresholdBin;
+
+    /**
+     * code bits which lead a split node to its default child, by missing type of the node.
+     */
+    private final byte[] missingMask;
+
+    /**
+     * prediction early stop config, null if disabled.
+     */
+    private final PredictionEarlyStop earlyStop;
+
+    /**
+     * per thread buffer of codes of used features, a single row uses the first usedFeatures.length codes, a block uses usedFeatures.length * BLOCK_ROWS codes in column order.
+     */
+    private final ThreadLocal<int[]> codeBuffer;
+
+    public BinnedPredictor(TreeModel treeModel) {
+        this(treeModel, null);
+    }
+
+    public BinnedPredictor(TreeModel treeModel, PredictionEarlyStop earlyStop) {
+        this.scalar = new FlatTreePredictor(treeModel, earlyStop);
+        this.numClass = scalar.numClass;
+        this.numFeatures = treeModel.getMaxFeatureIndex() + 1;
+        this.earlyStop = earlyStop;
+        int numNodes = scalar.feature.length;
+        boolean[] categorical = new boolean[numFeatures];
+        boolean[] numerical = new boolean[numFeatures];
+        for (int node = 0; node < numNodes; node++) {
+            if ((scalar.decisionFlags[node] & DecisionType.CATEGORICAL_MASK) != 0) {
+                categorical[scalar.feature[node]] = true;
+            } else {
+                numerical[scalar.feature[node]] = true;
+            }
+        }
+        this.usedFeatures = usedFeatures(categorical, numerical);
+        this.binThresholds = binThresholds(numerical);
+        this.featurePosition = new int[numNodes];
+        this.thresholdBin = new short[numNodes];
+        this.missingMask = new byte[numNodes];
+        for (int node = 0; node < numNodes; node++) {
+            featurePosition[node] = Arrays.binarySearch(usedFeatures, scalar.feature[node]);
+            int flags = scalar.decisionFlags[node];
+            if ((flags & DecisionType.CATEGORICAL_MASK) == 0) {
+                thresholdBin[node] = (short) lowerBound(binThresholds[scalar.feature[node]], scalar.threshold[node]);
+                int missingType = (flags >> 2) & 3;
+                missingMask[node] = (byte) (missingType == MissingType.Zero.getMask() ? ZERO_CODE : missingType == MissingType.Nan.getMask() ? NAN_CODE : 0);
+            }
+        }
+        final int bufferSize = Math.max(usedFeatures.length, 1) * BLOCK_ROWS;
+        this.codeBuffer = ThreadLocal.withInitial(() -> new int[bufferSize]);
+    }
+
+    @Override
+    public double[] predictRaw(double[] features) {
+        double[] ret = new double[numClass];
+        predictRaw(features, ret);
+        return ret;
+    }
+
+    @Override
+    public void predictRaw(double[] features, double[] output) {
+        predictRaw(features, 0, output);
+    }
+
+    @Override
+    public void predictRaw(double[] features, int numIteration, double[] output) {
+        Arrays.fill(output, 0, numClass, 0.0);
+        int[] codes = binRow(features);
+        int treeEnd = scalar.roots.length;
+        if (numIteration > 0) {
+            treeEnd = (int) Math.min(treeEnd, (long) numIteration * scalar.numTreePerIteration);
+        }
+        for (int t = 0; t < treeEnd; t++) {
+            output[scalar.treeClasses[t]] += scalar.leafValue[~leaf(scalar.roots[t], codes, 0, 1)];
+            if (earlyStop != null && earlyStop.isStopped(t, output, 0)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void predictRaw(double[][] features, int from, int to, double[] output) {
+        if (earlyStop != null) {
+            scalar.predictRaw(features, from, to, output);
+            return;
+        }
+        Arrays.fill(output, from * numClass, to * numClass, 0.0);
+        int[] codes = codeBuffer.get();
+        for (int blockBegin = from; blockBegin < to; blockBegin += BLOCK_ROWS) {
+            int blockRows = Math.min(BLOCK_ROWS, to - blockBegin);
+            for (int i = 0; i < usedFeatures.length; i++) {
+                int f = usedFeatures[i];
+                for (int r = 0; r < blockRows; r++) {
+                    codes[i * BLOCK_ROWS + r] = code(f, features[blockBegin + r][f]);
+                }
+            }
+            scoreBlock(codes, blockRows, output, blockBegin * numClass);
+        }
+    }
+
+    @Override
+    public void predictRaw(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        if (earlyStop != null) {
+            scalar.predictRaw(matrix, offset, rowStride, featureStride, numRows, output);
+            return;
+        }
+        Arrays.fill(output, 0, numRows * numClass, 0.0);
+        int[] codes = codeBuffer.get();
+        for (int blockBegin = 0; blockBegin < numRows; blockBegin += BLOCK_ROWS) {
+            int blockRows = Math.min(BLOCK_ROWS, numRows - blockBegin);
+            for (int i = 0; i < usedFeatures.length; i++) {
+                int f = usedFeatures[i];
+                int base = offset + blockBegin * rowStride + f * featureStride;
+                for (int r = 0; r < blockRows; r++) {
+                    codes[i * BLOCK_ROWS + r] = code(f, matrix[base + r * rowStride]);
+                }
+            }
+            scoreBlock(codes, blockRows, output, blockBegin * numClass);
+        }
+    }
+
+    @Override
+    public double[] predictRaw(float[] features) {
+        return scalar.predictRaw(features);
+    }
+
+    @Override
+    public void predictRaw(float[] features, double[] output) {
+        scalar.predictRaw(features, output);
+    }
+
+    @Override
+    public void predictRaw(float[][] features, int from, int to, double[] output) {
+        scalar.predictRaw(features, from, to, output);
+    }
+
+    @Override
+    public void predictRaw(float[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        scalar.predictRaw(matrix, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public void predictRaw(DoubleBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        scalar.predictRaw(buffer, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public void predictRaw(ByteBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        scalar.predictRaw(buffer, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public double predictRawScalar(double[] features) {
+        int[] codes = binRow(features);
+        double ret = 0.0;
+        for (int t = 0; t < scalar.roots.length; t++) {
+            ret += scalar.leafValue[~leaf(scalar.roots[t], codes, 0, 1)];
+            if (earlyStop != null && earlyStop.isStopped(t, ret)) {
+                break;
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public double predictRawScalar(float[] features) {
+        return scalar.predictRawScalar(features);
+    }
+
+    @Override
+    public void predictLeafIndex(double[] features, int[] output) {
+        scalar.predictLeafIndex(features, output);
+    }
+
+    @Override
+    public void predictLeafIndex(double[][] features, int from, int to, int[] output) {
+        scalar.predictLeafIndex(features, from, to, output);
+    }
+
+    /**
+     * Bin used features of a single row into the per thread buffer.
+     *
+     * @param features input data
+     * @return codes indexed by position in used features
+     */
+    private int[] binRow(double[] features) {
+        int[] codes = codeBuffer.get();
+        for (int i = 0; i < usedFeatures.length; i++) {
+            codes[i] = code(usedFeatures[i], features[usedFeatures[i]]);
+        }
+        return codes;
+    }
+
+    /**
+     * Score a block of binned rows tree by tree.
+     *
+     * @param codes        codes of the block in column order
+     * @param blockRows    num of rows of the block
+     * @param output       output of raw values
+     * @param outputOffset index of output of the first row of the block
+     */
+    private void scoreBlock(int[] codes, int blockRows, double[] output, int outputOffset) {
+        for (int t = 0; t < scalar.roots.length; t++) {
+            int root = scalar.roots[t];
+            int classOffset = outputOffset + scalar.treeClasses[t];
+            for (int r = 0; r < blockRows; r++) {
+                output[classOffset + r * numClass] += scalar.leafValue[~leaf(root, codes, r, BLOCK_ROWS)];
+            }
+        }
+    }
+
+    /**
+     * Map a feature value to its code, refer to official library: microsoft/LightGBM/include/LightGBM/tree.h#Tree::NumericalDecision.
+     *
+     * @param f     feature index
+     * @param value feature value
+     * @return category for categorical feature, bin and missing bits for numerical feature
+     */
+    private int code(int f, double value) {
+        double[] thresholds = binThresholds[f];
+        if (thresholds == null) {
+            return Double.isNaN(value) || (int) value < 0 ? -1 : (int) value;
+        }
+        if (Double.isNaN(value)) {
+            return lowerBound(thresholds, 0.0) << BIN_SHIFT | NAN_CODE | ZERO_CODE;
+        }
+        int zero = value >= -DecisionType.K_ZERO_THRESHOLD && value <= DecisionType.K_ZERO_THRESHOLD ? ZERO_CODE : 0;
+        return lowerBound(thresholds, value) << BIN_SHIFT | zero;
+    }
+
+    /**
+     * Traverse tree by codes.
+     *
+     * @param root   root of tree
+     * @param codes  codes of features
+     * @param base   index of the code of the first used feature of the row
+     * @param stride distance between codes of two adjacent used features of the row
+     * @return ~global leaf index
+     */
+    private int leaf(int root, int[] codes, int base, int stride) {
+        int node = root;
+        while (node >= 0) {
+            int code = codes[base + featurePosition[node] * stride];
+            int flags = scalar.decisionFlags[node];
+            boolean goLeft;
+            if ((flags & DecisionType.CATEGORICAL_MASK) != 0) {
+                goLeft = isInCategory(node, code);
+            } else if ((code & missingMask[node]) != 0) {
+                goLeft = (flags & DecisionType.DEFAULT_LEFT_MASK) != 0;
+            } else {
+                goLeft = code >> BIN_SHIFT <= thresholdBin[node];
+            }
+            node = goLeft ? scalar.left[node] : scalar.right[node];
+        }
+        return node;
+    }
+
+    private boolean isInCategory(int node, int category) {
+        if (category < 0) {
+            return false;
+        }
+        int word = scalar.catBegin[node] + category / 32;
+        return word < scalar.catEnd[node] && ((scalar.catThresholds[word] >> (category % 32)) & 1) != 0;
+    }
+
+    private int[] usedFeatures(boolean[] categorical, boolean[] numerical) {
+        int[] used = new int[numFeatures];
+        int numUsed = 0;
+        for (int f = 0; f < numFeatures; f++) {
+            if (categorical[f] && numerical[f]) {
+                throw new IllegalArgumentException("feature " + f + " is used by both numerical and categorical split nodes");
+            }
+            if (categorical[f] || numerical[f]) {
+                used[numUsed++] = f;
+            }
+        }
+        return Arrays.copyOf(used, numUsed);
+    }
+
+    private double[][] binThresholds(boolean[] numerical) {
+        double[][] ret = new double[numFeatures][];
+        int[] counts = new int[numFeatures];
+        for (int node = 0; node < scalar.feature.length; node++) {
+            counts[scalar.feature[node]]++;
+        }
+        for (int f = 0; f < numFeatures; f++) {
+            if (numerical[f]) {
+                ret[f] = new double[counts[f]];
+                counts[f] = 0;
+            }
+        }
+        for (int node = 0; node < scalar.feature.length; node++) {
+            int f = scalar.feature[node];
+            if (ret[f] != null) {
+                ret[f][counts[f]++] = scalar.threshold[node];
+            }
+        }
+        for (int f = 0; f < numFeatures; f++) {
+            if (ret[f] != null) {
+                ret[f] = distinct(ret[f]);
+                if (ret[f].length > Short.MAX_VALUE) {
+                    throw new IllegalArgumentException("too many distinct thresholds of feature " + f + ": " + ret[f].length);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static double[] distinct(double[] values) {
+        Arrays.sort(values);
+        int size = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (size == 0 || values[i] > values[size - 1]) {
+                values[size++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Num of thresholds which are less than value, thus value <= thresholds[i] if and only if the result <= i.
+     *
+     * @param thresholds sorted distinct thresholds
+     * @param value      feature value, not NaN
+     * @return bin of value
+     */
+    private static int lowerBound(double[] thresholds, double value) {
+        int low = 0;
+        int high = thresholds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (thresholds[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
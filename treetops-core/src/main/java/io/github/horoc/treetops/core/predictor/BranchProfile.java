@@ -0,0 +1,183 @@
+package io.github.horoc.treetops.core.predictor;
+
+import io.github.horoc.treetops.core.model.TreeModel;
+import io.github.horoc.treetops.core.model.TreeNode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Branch frequencies of production traffic, collected by {@link ProfileGuidedPredictor}. <br>
+ * Only the leaf which each sampled row falls into is counted, count of a split node is the sum of its leaves,
+ * so that counting costs a single atomic increment per tree of a sampled row. <br>
+ * Profile can be exported as text and imported by a new predictor instance of the same model, see {@link BranchProfile#export()}.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+@ThreadSafe
+public final class BranchProfile {
+
+    private static final String HEADER = "treetops_branch_profile";
+
+    private static final String SAMPLES_KEY = "samples=";
+
+    private static final String TREE_KEY = "tree=";
+
+    /**
+     * num of sampled rows.
+     */
+    private final AtomicLong samples = new AtomicLong();
+
+    /**
+     * leafCounts[t].get(l) is the num of sampled rows which fall into leaf l of the t-th tree, null before bound to a model.
+     */
+    private volatile AtomicLongArray[] leafCounts;
+
+    /**
+     * Create an empty profile, it is shaped by the model of predictor which it is bound to.
+     */
+    public BranchProfile() {
+    }
+
+    /**
+     * Parse exported profile.
+     *
+     * @param text text of {@link BranchProfile#export()}
+     * @return profile
+     */
+    public static BranchProfile parse(final String text) {
+        String[] lines = text.trim().split("\n");
+        if (lines.length < 2 || !HEADER.equals(lines[0].trim()) || !lines[1].startsWith(SAMPLES_KEY)) {
+            throw new IllegalArgumentException("invalid branch profile header");
+        }
+        BranchProfile profile = new BranchProfile();
+        AtomicLongArray[] counts = new AtomicLongArray[lines.length - 2];
+        try {
+            profile.samples.set(Long.parseLong(lines[1].substring(SAMPLES_KEY.length()).trim()));
+            for (int t = 0; t < counts.length; t++) {
+                String[] tokens = lines[t + 2].trim().split(" ");
+                if (!tokens[0].equals(TREE_KEY + t)) {
+                    throw new IllegalArgumentException("invalid branch profile line of tree " + t);
+                }
+                counts[t] = new AtomicLongArray(tokens.length - 1);
+                for (int l = 1; l < tokens.length; l++) {
+                    counts[t].set(l - 1, Long.parseLong(tokens[l]));
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid branch profile count", e);
+        }
+        profile.leafCounts = counts;
+        return profile;
+    }
+
+    /**
+     * Export profile as text, the first line is a header, the second line is the num of sampled rows,
+     * and each following line contains leaf counts of a tree, e.g. "tree=0 12 0 7 3".
+     *
+     * @return text of profile
+     */
+    public String export() {
+        StringBuilder builder = new StringBuilder(HEADER).append('\n').append(SAMPLES_KEY).append(samples.get()).append('\n');
+        AtomicLongArray[] counts = leafCounts;
+        for (int t = 0; counts != null && t < counts.length; t++) {
+            builder.append(TREE_KEY).append(t);
+            for (int l = 0; l < counts[t].length(); l++) {
+                builder.append(' ').append(counts[t].get(l));
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    public long getSamples() {
+        return samples.get();
+    }
+
+    /**
+     * Num of sampled rows which fall into the leaf.
+     *
+     * @param tree      index of tree in model
+     * @param leafIndex index of leaf in tree, the same as {@link Predictor#predictLeafIndex(double[], int[])}
+     * @return count of leaf, 0 if the profile is not bound to a model
+     */
+    public long getLeafCount(int tree, int leafIndex) {
+        AtomicLongArray[] counts = leafCounts;
+        return counts == null ? 0L : counts[tree].get(leafIndex);
+    }
+
+    /**
+     * Shape the profile by the model, or check the shape of an imported profile.
+     *
+     * @param treeModel tree model of predictor
+     */
+    synchronized void bind(final TreeModel treeModel) {
+        List<TreeNode> trees = treeModel.getTrees();
+        if (leafCounts == null) {
+            AtomicLongArray[] counts = new AtomicLongArray[trees.size()];
+            for (int t = 0; t < counts.length; t++) {
+                counts[t] = new AtomicLongArray(numLeaves(trees.get(t)));
+            }
+            leafCounts = counts;
+            return;
+        }
+        if (leafCounts.length != trees.size()) {
+            throw new IllegalArgumentException("branch profile does not match the model, num of trees differs");
+        }
+        for (int t = 0; t < leafCounts.length; t++) {
+            if (leafCounts[t].length() != numLeaves(trees.get(t))) {
+                throw new IllegalArgumentException("branch profile does not match the model, num of leaves of tree " + t + " differs");
+            }
+        }
+    }
+
+    /**
+     * Count leaves of a sampled row.
+     *
+     * @param leaves leaf index of each tree
+     */
+    void record(final int[] leaves) {
+        AtomicLongArray[] counts = leafCounts;
+        for (int t = 0; t < counts.length; t++) {
+            counts[t].incrementAndGet(leaves[t]);
+        }
+        samples.incrementAndGet();
+    }
+
+    /**
+     * Copy the model and replace data count of each node with profiled count,
+     * so that generated predictor lays out branches by production traffic.
+     *
+     * @param treeModel tree model which the profile is bound to
+     * @return profiled model
+     */
+    TreeModel applyTo(final TreeModel treeModel) {
+        List<TreeNode> trees = new ArrayList<>(treeModel.getTrees().size());
+        for (int t = 0; t < treeModel.getTrees().size(); t++) {
+            TreeNode copied = treeModel.getTrees().get(t).copyTree();
+            applyCounts(copied, leafCounts[t]);
+            trees.add(copied);
+        }
+        return treeModel.copyWithTrees(trees);
+    }
+
+    /**
+     * Set data count of subtree bottom-up.
+     *
+     * @param node   root of subtree
+     * @param counts leaf counts of the tree
+     * @return count of subtree
+     */
+    private static long applyCounts(final TreeNode node, final AtomicLongArray counts) {
+        long count = node.isLeaf() ? counts.get(~node.getNodeIndex()) : applyCounts(node.getLeftNode(), counts) + applyCounts(node.getRightNode(), counts);
+        node.setDataCount((int) Math.min(count, Integer.MAX_VALUE));
+        return count;
+    }
+
+    private static int numLeaves(final TreeNode root) {
+        return root.isLeaf() ? 1 : numLeaves(root.getLeftNode()) + numLeaves(root.getRightNode());
+    }
+}
@@ -0,0 +1,296 @@
+package io.github.horoc.treetops.core.predictor;
+
+import io.github.horoc.treetops.core.model.DecisionType;
+import io.github.horoc.treetops.core.model.TreeModel;
+import io.github.horoc.treetops.core.model.TreeNode;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Feature preload engine. <br>
+ * Each feature used by split nodes is loaded once per row, and its missing value handling is hoisted out of the trees:
+ * used feature i is preloaded into row[2 * i] with NaN normalized to 0.0, and its missing code into row[2 * i + 1],
+ * which is {@link FeaturePreloadPredictor#NAN_CODE} for NaN, {@link FeaturePreloadPredictor#ZERO_CODE} for zero, 0.0 otherwise.
+ * The preloaded row is scored by a predictor generated in feature preload mode from the preloaded model,
+ * see {@link FeaturePreloadPredictor#preloadModel(TreeModel, int[])}. <br>
+ * Batch, matrix and buffer inputs are preloaded in blocks of {@link FeaturePreloadPredictor#BLOCK_ROWS} rows,
+ * each block is scored by the batch method of the preloaded predictor.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public final class FeaturePreloadPredictor implements Predictor {
+
+    /**
+     * missing code of zero feature, split node of zero missing type takes default decision.
+     */
+    public static final double ZERO_CODE = 1.0;
+
+    /**
+     * missing code of NaN feature, split node of zero or NaN missing type takes default decision, category node goes right.
+     */
+    public static final double NAN_CODE = 2.0;
+
+    /**
+     * num of rows preloaded and scored together by batch prediction.
+     */
+    private static final int BLOCK_ROWS = 64;
+
+    /**
+     * sorted indices of features used by split nodes, refer to {@link SparsePredictor#usedFeatures(TreeModel)}.
+     */
+    private final int[] usedFeatures;
+
+    /**
+     * predictor of preloaded model.
+     */
+    private final Predictor preloadPredictor;
+
+    private final int numClass;
+
+    /**
+     * per thread preloaded row buffer, avoid allocation of each prediction.
+     */
+    private final ThreadLocal<double[]> preloadBuffer;
+
+    /**
+     * per thread preloaded rows and output of a block, avoid allocation of each batch prediction.
+     */
+    private final ThreadLocal<PreloadBlock> blockBuffer;
+
+    public FeaturePreloadPredictor(int[] usedFeatures, Predictor preloadPredictor, int numClass) {
+        this.usedFeatures = usedFeatures;
+        this.preloadPredictor = preloadPredictor;
+        this.numClass = numClass;
+        this.preloadBuffer = ThreadLocal.withInitial(() -> new double[Math.max(2 * usedFeatures.length, 1)]);
+        this.blockBuffer = ThreadLocal.withInitial(() -> new PreloadBlock(Math.max(2 * usedFeatures.length, 1), numClass));
+    }
+
+    /**
+     * Copy the model and rewrite split feature of each node to the position of its normalized value in preloaded row.
+     *
+     * @param treeModel    origin tree model
+     * @param usedFeatures sorted feature indices, refer to {@link SparsePredictor#usedFeatures(TreeModel)}
+     * @return preloaded model
+     */
+    public static TreeModel preloadModel(TreeModel treeModel, int[] usedFeatures) {
+        List<TreeNode> trees = new ArrayList<>(treeModel.getTrees().size());
+        for (TreeNode root : treeModel.getTrees()) {
+            TreeNode copied = root.copyTree();
+            List<Integer> splitFeatures = copied.getSplitFeatures();
+            if (splitFeatures != null) {
+                splitFeatures.replaceAll(feature -> 2 * Arrays.binarySearch(usedFeatures, feature));
+            }
+            trees.add(copied);
+        }
+        TreeModel preloaded = treeModel.copyWithTrees(trees);
+        preloaded.setMaxFeatureIndex(2 * usedFeatures.length - 1);
+        return preloaded;
+    }
+
+    @Override
+    public double[] predictRaw(double[] features) {
+        double[] ret = new double[numClass];
+        predictRaw(features, ret);
+        return ret;
+    }
+
+    @Override
+    public void predictRaw(double[] features, double[] output) {
+        preloadPredictor.predictRaw(preload(features), output);
+    }
+
+    @Override
+    public void predictRaw(double[] features, int numIteration, double[] output) {
+        preloadPredictor.predictRaw(preload(features), numIteration, output);
+    }
+
+    @Override
+    public void predictRaw(double[][] features, int from, int to, double[] output) {
+        PreloadBlock block = blockBuffer.get();
+        for (int begin = from; begin < to; begin += BLOCK_ROWS) {
+            int rows = Math.min(BLOCK_ROWS, to - begin);
+            for (int i = 0; i < rows; i++) {
+                preload(features[begin + i], block.rows[i]);
+            }
+            scoreBlock(block, rows, output, begin);
+        }
+    }
+
+    @Override
+    public void predictRaw(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        PreloadBlock block = blockBuffer.get();
+        for (int begin = 0; begin < numRows; begin += BLOCK_ROWS) {
+            int rows = Math.min(BLOCK_ROWS, numRows - begin);
+            for (int i = 0; i < rows; i++) {
+                double[] row = block.rows[i];
+                int base = offset + (begin + i) * rowStride;
+                for (int f = 0; f < usedFeatures.length; f++) {
+                    store(row, f, matrix[base + usedFeatures[f] * featureStride]);
+                }
+            }
+            scoreBlock(block, rows, output, begin);
+        }
+    }
+
+    @Override
+    public void predictRaw(float[] features, double[] output) {
+        preloadPredictor.predictRaw(preload(features), output);
+    }
+
+    @Override
+    public void predictRaw(float[][] features, int from, int to, double[] output) {
+        PreloadBlock block = blockBuffer.get();
+        for (int begin = from; begin < to; begin += BLOCK_ROWS) {
+            int rows = Math.min(BLOCK_ROWS, to - begin);
+            for (int i = 0; i < rows; i++) {
+                preload(features[begin + i], block.rows[i]);
+            }
+            scoreBlock(block, rows, output, begin);
+        }
+    }
+
+    @Override
+    public void predictRaw(float[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        PreloadBlock block = blockBuffer.get();
+        for (int begin = 0; begin < numRows; begin += BLOCK_ROWS) {
+            int rows = Math.min(BLOCK_ROWS, numRows - begin);
+            for (int i = 0; i < rows; i++) {
+                double[] row = block.rows[i];
+                int base = offset + (begin + i) * rowStride;
+                for (int f = 0; f < usedFeatures.length; f++) {
+                    store(row, f, matrix[base + usedFeatures[f] * featureStride]);
+                }
+            }
+            scoreBlock(block, rows, output, begin);
+        }
+    }
+
+    @Override
+    public void predictRaw(DoubleBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        PreloadBlock block = blockBuffer.get();
+        for (int begin = 0; begin < numRows; begin += BLOCK_ROWS) {
+            int rows = Math.min(BLOCK_ROWS, numRows - begin);
+            for (int i = 0; i < rows; i++) {
+                double[] row = block.rows[i];
+                int base = offset + (begin + i) * rowStride;
+                for (int f = 0; f < usedFeatures.length; f++) {
+                    store(row, f, buffer.get(base + usedFeatures[f] * featureStride));
+                }
+            }
+            scoreBlock(block, rows, output, begin);
+        }
+    }
+
+    @Override
+    public void predictRaw(ByteBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        PreloadBlock block = blockBuffer.get();
+        for (int begin = 0; begin < numRows; begin += BLOCK_ROWS) {
+            int rows = Math.min(BLOCK_ROWS, numRows - begin);
+            for (int i = 0; i < rows; i++) {
+                double[] row = block.rows[i];
+                int base = offset + (begin + i) * rowStride;
+                for (int f = 0; f < usedFeatures.length; f++) {
+                    store(row, f, buffer.getDouble(base + usedFeatures[f] * featureStride));
+                }
+            }
+            scoreBlock(block, rows, output, begin);
+        }
+    }
+
+    @Override
+    public double predictRawScalar(double[] features) {
+        return preloadPredictor.predictRawScalar(preload(features));
+    }
+
+    @Override
+    public double predictRawScalar(float[] features) {
+        return preloadPredictor.predictRawScalar(preload(features));
+    }
+
+    @Override
+    public void predictLeafIndex(double[] features, int[] output) {
+        preloadPredictor.predictLeafIndex(preload(features), output);
+    }
+
+    public int[] getUsedFeatures() {
+        return usedFeatures.clone();
+    }
+
+    /**
+     * Load used features of the row into per thread buffer, absent features are treated as 0.0.
+     *
+     * @param features input feature
+     * @return preloaded row
+     */
+    private double[] preload(double[] features) {
+        return preload(features, preloadBuffer.get());
+    }
+
+    private double[] preload(double[] features, double[] row) {
+        for (int f = 0; f < usedFeatures.length; f++) {
+            store(row, f, usedFeatures[f] < features.length ? features[usedFeatures[f]] : 0.0);
+        }
+        return row;
+    }
+
+    // float version of preload, value is widened to double once loaded
+    private double[] preload(float[] features) {
+        return preload(features, preloadBuffer.get());
+    }
+
+    private double[] preload(float[] features, double[] row) {
+        for (int f = 0; f < usedFeatures.length; f++) {
+            store(row, f, usedFeatures[f] < features.length ? features[usedFeatures[f]] : 0.0);
+        }
+        return row;
+    }
+
+    /**
+     * Store normalized value and missing code of the i-th used feature into preloaded row.
+     *
+     * @param row   preloaded row
+     * @param i     index of used feature
+     * @param value feature value
+     */
+    private static void store(double[] row, int i, double value) {
+        if (Double.isNaN(value)) {
+            row[2 * i] = 0.0;
+            row[2 * i + 1] = NAN_CODE;
+        } else {
+            row[2 * i] = value;
+            row[2 * i + 1] = value >= -DecisionType.K_ZERO_THRESHOLD && value <= DecisionType.K_ZERO_THRESHOLD ? ZERO_CODE : 0.0;
+        }
+    }
+
+    /**
+     * Score preloaded rows of the block by batch prediction, and copy raw output to the rows starting from outputRow.
+     *
+     * @param block     preloaded block
+     * @param rows      num of preloaded rows in the block
+     * @param output    output buffer
+     * @param outputRow row index of the first row of the block in output
+     */
+    private void scoreBlock(PreloadBlock block, int rows, double[] output, int outputRow) {
+        preloadPredictor.predictRaw(block.rows, 0, rows, block.output);
+        System.arraycopy(block.output, 0, output, outputRow * numClass, rows * numClass);
+    }
+
+    /**
+     * Preloaded rows and raw output of a block.
+     */
+    private static final class PreloadBlock {
+
+        private final double[][] rows;
+
+        private final double[] output;
+
+        PreloadBlock(int rowSize, int numClass) {
+            this.rows = new double[BLOCK_ROWS][rowSize];
+            this.output = new double[BLOCK_ROWS * numClass];
+        }
+    }
+}
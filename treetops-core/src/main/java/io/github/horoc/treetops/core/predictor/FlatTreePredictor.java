@@ -0,0 +1,391 @@
+package io.github.horoc.treetops.core.predictor;
+
+import io.github.horoc.treetops.core.model.DecisionType;
+import io.github.horoc.treetops.core.model.MissingType;
+import io.github.horoc.treetops.core.model.TreeModel;
+import io.github.horoc.treetops.core.model.TreeNode;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Interpreter of trees packed into primitive arrays, replacement of {@link SimplePredictor} when class generation is not wanted. <br>
+ * Split nodes of all trees are laid out in flat arrays, node of each tree starts from the offset of the tree, same as leaves.
+ * A child is either the global index of a split node, or ~index of a leaf, so that traversal is a loop until the node turns negative. <br>
+ * Decision flags are the decision type of official library, thus no enum lookup nor boxed list is touched during prediction,
+ * and prediction does not allocate except arrays returned to caller. <br>
+ * Arrays of packed trees are package-private, they are shared with the vectorized engine of multi-release jar and {@link BinnedPredictor}.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+@ThreadSafe
+public final class FlatTreePredictor implements Predictor {
+
+    private static final int ZERO_MISSING = MissingType.Zero.getMask();
+
+    private static final int NAN_MISSING = MissingType.Nan.getMask();
+
+    final int numClass;
+
+    /**
+     * root of each tree, ~leaf index if the tree is a single leaf.
+     */
+    final int[] roots;
+
+    final int[] treeClasses;
+
+    final int[] feature;
+
+    final double[] threshold;
+
+    final int[] left;
+
+    final int[] right;
+
+    final byte[] decisionFlags;
+
+    final double[] leafValue;
+
+    final int numTreePerIteration;
+
+    /**
+     * category bitset of node is in [catBegin[node], catEnd[node]) of catThresholds.
+     */
+    final int[] catBegin;
+
+    final int[] catEnd;
+
+    final long[] catThresholds;
+
+    /**
+     * leaves of the t-th tree start from treeLeafBegin[t], in the leaf index order of official library.
+     */
+    private final int[] treeLeafBegin;
+
+    /**
+     * prediction early stop config, null if disabled.
+     */
+    private final PredictionEarlyStop earlyStop;
+
+    public FlatTreePredictor(TreeModel treeModel) {
+        this(treeModel, null);
+    }
+
+    public FlatTreePredictor(TreeModel treeModel, PredictionEarlyStop earlyStop) {
+        this.numClass = treeModel.getNumClass();
+        this.numTreePerIteration = Math.max(treeModel.getNumberTreePerIteration(), 1);
+        this.earlyStop = earlyStop;
+        List<TreeNode> trees = treeModel.getTrees();
+        int numTrees = trees.size();
+        this.roots = new int[numTrees];
+        this.treeClasses = new int[numTrees];
+        this.treeLeafBegin = new int[numTrees + 1];
+        int[] treeNodeBegin = new int[numTrees + 1];
+        int[] treeCatBegin = new int[numTrees + 1];
+        for (int t = 0; t < numTrees; t++) {
+            TreeNode root = trees.get(t);
+            int numLeaves = numLeaves(root);
+            treeLeafBegin[t + 1] = treeLeafBegin[t] + numLeaves;
+            treeNodeBegin[t + 1] = treeNodeBegin[t] + numLeaves - 1;
+            treeCatBegin[t + 1] = treeCatBegin[t] + (root.getCatThreshold() == null ? 0 : root.getCatThreshold().size());
+        }
+
+        int numNodes = treeNodeBegin[numTrees];
+        this.feature = new int[numNodes];
+        this.threshold = new double[numNodes];
+        this.left = new int[numNodes];
+        this.right = new int[numNodes];
+        this.decisionFlags = new byte[numNodes];
+        this.catBegin = new int[numNodes];
+        this.catEnd = new int[numNodes];
+        this.catThresholds = new long[treeCatBegin[numTrees]];
+        this.leafValue = new double[treeLeafBegin[numTrees]];
+        for (int t = 0; t < numTrees; t++) {
+            TreeNode root = trees.get(t);
+            treeClasses[t] = root.getTreeIndex() % numClass;
+            if (root.getCatThreshold() != null) {
+                for (int i = 0; i < root.getCatThreshold().size(); i++) {
+                    catThresholds[treeCatBegin[t] + i] = root.getCatThreshold().get(i);
+                }
+            }
+            roots[t] = pack(root, treeNodeBegin[t], treeLeafBegin[t], treeCatBegin[t]);
+        }
+    }
+
+    @Override
+    public double[] predictRaw(double[] features) {
+        double[] ret = new double[numClass];
+        predictRaw(features, ret);
+        return ret;
+    }
+
+    @Override
+    public void predictRaw(double[] features, double[] output) {
+        predictRaw(features, 0, output);
+    }
+
+    @Override
+    public void predictRaw(double[] features, int numIteration, double[] output) {
+        Arrays.fill(output, 0, numClass, 0.0);
+        int treeEnd = roots.length;
+        if (numIteration > 0) {
+            treeEnd = (int) Math.min(treeEnd, (long) numIteration * numTreePerIteration);
+        }
+        for (int t = 0; t < treeEnd; t++) {
+            output[treeClasses[t]] += leafValue[~leaf(roots[t], features, 0, 1)];
+            if (earlyStop != null && earlyStop.isStopped(t, output, 0)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void predictRaw(double[][] features, int from, int to, double[] output) {
+        predictRows(from, to, output, (root, i) -> leaf(root, features[i], 0, 1));
+    }
+
+    @Override
+    public void predictRaw(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictRows(0, numRows, output, (root, i) -> leaf(root, matrix, offset + i * rowStride, featureStride));
+    }
+
+    @Override
+    public double[] predictRaw(float[] features) {
+        double[] ret = new double[numClass];
+        predictRaw(features, ret);
+        return ret;
+    }
+
+    @Override
+    public void predictRaw(float[] features, double[] output) {
+        Arrays.fill(output, 0, numClass, 0.0);
+        for (int t = 0; t < roots.length; t++) {
+            output[treeClasses[t]] += leafValue[~leaf(roots[t], features, 0, 1)];
+            if (earlyStop != null && earlyStop.isStopped(t, output, 0)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void predictRaw(float[][] features, int from, int to, double[] output) {
+        predictRows(from, to, output, (root, i) -> leaf(root, features[i], 0, 1));
+    }
+
+    @Override
+    public void predictRaw(float[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictRows(0, numRows, output, (root, i) -> leaf(root, matrix, offset + i * rowStride, featureStride));
+    }
+
+    @Override
+    public void predictRaw(DoubleBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictRows(0, numRows, output, (root, i) -> leaf(root, buffer, offset + i * rowStride, featureStride));
+    }
+
+    @Override
+    public void predictRaw(ByteBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictRows(0, numRows, output, (root, i) -> leaf(root, buffer, offset + i * rowStride, featureStride));
+    }
+
+    @Override
+    public double predictRawScalar(double[] features) {
+        double ret = 0.0;
+        for (int t = 0; t < roots.length; t++) {
+            ret += leafValue[~leaf(roots[t], features, 0, 1)];
+            if (earlyStop != null && earlyStop.isStopped(t, ret)) {
+                break;
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public double predictRawScalar(float[] features) {
+        double ret = 0.0;
+        for (int t = 0; t < roots.length; t++) {
+            ret += leafValue[~leaf(roots[t], features, 0, 1)];
+            if (earlyStop != null && earlyStop.isStopped(t, ret)) {
+                break;
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public void predictLeafIndex(double[] features, int[] output) {
+        for (int t = 0; t < roots.length; t++) {
+            output[t] = ~leaf(roots[t], features, 0, 1) - treeLeafBegin[t];
+        }
+    }
+
+    @Override
+    public void predictLeafIndex(double[][] features, int from, int to, int[] output) {
+        int numTrees = roots.length;
+        for (int t = 0; t < numTrees; t++) {
+            for (int i = from; i < to; i++) {
+                output[i * numTrees + t] = ~leaf(roots[t], features[i], 0, 1) - treeLeafBegin[t];
+            }
+        }
+    }
+
+    /**
+     * Tree-outer/row-inner iteration, keep nodes of a single tree hot in cache across the whole batch.
+     * In early stop mode, each row stops independently.
+     *
+     * @param from   first row index, inclusive
+     * @param to     last row index, exclusive
+     * @param output raw values, output of the i-th row starts from i * num_class
+     * @param leaf   ~global leaf index of a tree for the i-th row
+     */
+    private void predictRows(int from, int to, double[] output, RowLeaf leaf) {
+        Arrays.fill(output, from * numClass, to * numClass, 0.0);
+        boolean[] stopped = earlyStop == null ? null : new boolean[to - from];
+        for (int t = 0; t < roots.length; t++) {
+            for (int i = from; i < to; i++) {
+                if (stopped == null || !stopped[i - from]) {
+                    output[i * numClass + treeClasses[t]] += leafValue[~leaf.leaf(roots[t], i)];
+                }
+            }
+            if (stopped != null) {
+                earlyStop.markStoppedRows(t, output, from, to, stopped);
+            }
+        }
+    }
+
+    /**
+     * Refer to official library: microsoft/LightGBM/include/LightGBM/tree.h#Tree::GetLeaf.
+     *
+     * @param root     root of tree
+     * @param features input data
+     * @param base     index of the first feature of the row
+     * @param stride   distance between two adjacent features of the row
+     * @return ~global leaf index
+     */
+    int leaf(int root, double[] features, int base, int stride) {
+        int node = root;
+        while (node >= 0) {
+            node = next(node, features[base + feature[node] * stride]);
+        }
+        return node;
+    }
+
+    // float version of leaf, value is widened to double once loaded
+    private int leaf(int root, float[] features, int base, int stride) {
+        int node = root;
+        while (node >= 0) {
+            node = next(node, features[base + feature[node] * stride]);
+        }
+        return node;
+    }
+
+    // double buffer version of leaf, value is read by absolute get
+    private int leaf(int root, DoubleBuffer features, int base, int stride) {
+        int node = root;
+        while (node >= 0) {
+            node = next(node, features.get(base + feature[node] * stride));
+        }
+        return node;
+    }
+
+    // byte buffer version of leaf, base and stride are in bytes
+    private int leaf(int root, ByteBuffer features, int base, int stride) {
+        int node = root;
+        while (node >= 0) {
+            node = next(node, features.getDouble(base + feature[node] * stride));
+        }
+        return node;
+    }
+
+    /**
+     * Refer to official library: microsoft/LightGBM/include/LightGBM/tree.h#Tree::NumericalDecision and Tree::CategoricalDecision.
+     *
+     * @param node  split node
+     * @param value feature value of split feature
+     * @return next node, or ~global leaf index
+     */
+    private int next(int node, double value) {
+        int flags = decisionFlags[node];
+        if ((flags & DecisionType.CATEGORICAL_MASK) != 0) {
+            return isInCategory(node, value) ? left[node] : right[node];
+        }
+        int missingType = (flags >> 2) & 3;
+        double fval = value;
+        if (Double.isNaN(fval) && missingType != NAN_MISSING) {
+            fval = 0.0;
+        }
+        boolean isZeroMiss = missingType == ZERO_MISSING && fval >= -DecisionType.K_ZERO_THRESHOLD && fval <= DecisionType.K_ZERO_THRESHOLD;
+        boolean isNanMiss = missingType == NAN_MISSING && Double.isNaN(fval);
+        if (isZeroMiss || isNanMiss) {
+            return (flags & DecisionType.DEFAULT_LEFT_MASK) != 0 ? left[node] : right[node];
+        }
+        return fval <= threshold[node] ? left[node] : right[node];
+    }
+
+    /**
+     * Refer to {@link MetaDataHolder#findCatBitset(int, int, int, double)}, NaN and negative value are not in any category.
+     *
+     * @param node  categorical node
+     * @param value feature value
+     * @return true if the value goes left
+     */
+    private boolean isInCategory(int node, double value) {
+        if (Double.isNaN(value) || (int) value < 0) {
+            return false;
+        }
+        int pos = (int) value;
+        int word = catBegin[node] + pos / 32;
+        return word < catEnd[node] && ((catThresholds[word] >> (pos % 32)) & 1) != 0;
+    }
+
+    /**
+     * Pack subtree into flat arrays.
+     *
+     * @param node      root of subtree
+     * @param nodeBegin global index of the first split node of the tree
+     * @param leafBegin global index of the first leaf of the tree
+     * @param catOffset global index of the first category threshold of the tree
+     * @return global index of the node, or ~global leaf index
+     */
+    private int pack(TreeNode node, int nodeBegin, int leafBegin, int catOffset) {
+        if (node.isLeaf()) {
+            int leaf = leafBegin + ~node.getNodeIndex();
+            leafValue[leaf] = node.getLeafValue();
+            return ~leaf;
+        }
+        int index = nodeBegin + node.getNodeIndex();
+        feature[index] = node.getSplitFeatures().get(node.getNodeIndex());
+        threshold[index] = node.getThreshold();
+        decisionFlags[index] = (byte) ((node.getDecisionType() & ~(DecisionType.CATEGORICAL_MASK | DecisionType.DEFAULT_LEFT_MASK))
+            | (node.isCategoryNode() ? DecisionType.CATEGORICAL_MASK : 0) | (node.isDefaultLeftDecision() ? DecisionType.DEFAULT_LEFT_MASK : 0));
+        if (node.isCategoryNode()) {
+            catBegin[index] = catOffset + node.getCatBoundaryBegin();
+            catEnd[index] = catOffset + node.getCatBoundaryEnd();
+        }
+        left[index] = pack(node.getLeftNode(), nodeBegin, leafBegin, catOffset);
+        right[index] = pack(node.getRightNode(), nodeBegin, leafBegin, catOffset);
+        return index;
+    }
+
+    private static int numLeaves(TreeNode root) {
+        return root.isLeaf() ? 1 : numLeaves(root.getLeftNode()) + numLeaves(root.getRightNode());
+    }
+
+    /**
+     * Leaf of a single row of batch input, row is addressed by its index in the batch.
+     */
+    @FunctionalInterface
+    private interface RowLeaf {
+
+        /**
+         * Find leaf of a tree for a single row.
+         *
+         * @param root root of tree
+         * @param row  row index in the batch
+         * @return ~global leaf index
+         */
+        int leaf(int root, int row);
+    }
+}
@@ -19,13 +19,14 @@ public class MetaDataHolder {
 
     public void initialize(TreeModel model) {
         if (model.isContainsCatNode()) {
-            catBitSet = new long[model.getTrees().size()][];
-            for (int i = 0; i < catBitSet.length; i++) {
-                TreeNode root = model.getTrees().get(i);
+            // indexed by tree index, since model may only contain part of the trees, e.g. start_iteration is specified
+            int maxTreeIndex = model.getTrees().stream().mapToInt(TreeNode::getTreeIndex).max().orElse(-1);
+            catBitSet = new long[maxTreeIndex + 1][];
+            for (TreeNode root : model.getTrees()) {
                 if (Objects.isNull(root.getCatThreshold()) || root.getCatThreshold().isEmpty()) {
                     continue;
                 }
-                catBitSet[i] = root.getCatThreshold().stream().mapToLong(l -> l).toArray();
+                catBitSet[root.getTreeIndex()] = root.getCatThreshold().stream().mapToLong(l -> l).toArray();
             }
         }
     }
@@ -0,0 +1,84 @@
+package io.github.horoc.treetops.core.predictor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork join task of parallel batch prediction. <br>
+ * Rows are split into chunks, each chunk is scored by the single thread batch prediction of the predictor,
+ * so that generated and simple predictors keep their tree-outer/row-inner iteration inside a chunk.
+ * Output of each row is written into its own range of the output buffer, thus chunks need no synchronization.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/8
+ */
+public final class ParallelBatchTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Rows of a chunk are expected to stay in L2 cache while all trees are scored over them.
+     */
+    private static final int CHUNK_BYTES = 256 * 1024;
+
+    private static final int MIN_CHUNK_ROWS = 16;
+
+    private final RangeScorer scorer;
+
+    private final int from;
+
+    private final int to;
+
+    private final int chunkRows;
+
+    private ParallelBatchTask(RangeScorer scorer, int from, int to, int chunkRows) {
+        this.scorer = scorer;
+        this.from = from;
+        this.to = to;
+        this.chunkRows = chunkRows;
+    }
+
+    /**
+     * Score rows in range [from, to) in the given pool, and wait for completion.
+     *
+     * @param pool     fork join pool
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param rowBytes approximate size of a single row in bytes, including its output
+     * @param scorer   single thread batch scorer of a sub range
+     */
+    public static void invoke(ForkJoinPool pool, int from, int to, int rowBytes, RangeScorer scorer) {
+        if (from >= to) {
+            return;
+        }
+        int chunkRows = Math.max(MIN_CHUNK_ROWS, CHUNK_BYTES / Math.max(rowBytes, 1));
+        // keep enough chunks for work stealing when the batch is small
+        int balancedRows = (to - from + pool.getParallelism() * 4 - 1) / (pool.getParallelism() * 4);
+        pool.invoke(new ParallelBatchTask(scorer, from, to, Math.max(1, Math.min(chunkRows, balancedRows))));
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= chunkRows) {
+            scorer.score(from, to);
+            return;
+        }
+        int middle = from + (to - from) / 2;
+        invokeAll(new ParallelBatchTask(scorer, from, middle, chunkRows), new ParallelBatchTask(scorer, middle, to, chunkRows));
+    }
+
+    /**
+     * Single thread batch scorer of rows in range [from, to).
+     */
+    @FunctionalInterface
+    public interface RangeScorer {
+
+        /**
+         * Score rows in range [from, to).
+         *
+         * @param from first row index, inclusive
+         * @param to   last row index, exclusive
+         */
+        void score(int from, int to);
+    }
+}
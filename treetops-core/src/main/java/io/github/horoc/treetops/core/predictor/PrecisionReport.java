@@ -0,0 +1,113 @@
+package io.github.horoc.treetops.core.predictor;
+
+import java.util.Objects;
+
+/**
+ * Validation report of float precision mode, quantify the prediction deviation between
+ * the double model and the float model on a user provided sample.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/3/25
+ */
+public final class PrecisionReport {
+
+    private final int numRows;
+
+    private final double maxRawDeviation;
+
+    private final double meanRawDeviation;
+
+    private final double maxDeviation;
+
+    private final double meanDeviation;
+
+    /**
+     * row index of the max deviation of prediction output.
+     */
+    private final int maxDeviationRow;
+
+    private PrecisionReport(int numRows, double maxRawDeviation, double meanRawDeviation,
+                            double maxDeviation, double meanDeviation, int maxDeviationRow) {
+        this.numRows = numRows;
+        this.maxRawDeviation = maxRawDeviation;
+        this.meanRawDeviation = meanRawDeviation;
+        this.maxDeviation = maxDeviation;
+        this.meanDeviation = meanDeviation;
+        this.maxDeviationRow = maxDeviationRow;
+    }
+
+    /**
+     * Compare prediction of float model with double model, sample rows are fed to the float model as float features,
+     * deviation is the absolute difference of each output value.
+     *
+     * @param reference      predictor of double model
+     * @param floatPredictor predictor of float model
+     * @param sample         sample rows
+     * @return validation report
+     */
+    public static PrecisionReport compare(Predictor reference, Predictor floatPredictor, double[][] sample) {
+        if (Objects.isNull(reference) || Objects.isNull(floatPredictor) || Objects.isNull(sample)) {
+            throw new IllegalArgumentException("predictors and sample can not be null");
+        }
+        double maxRaw = 0.0;
+        double sumRaw = 0.0;
+        double max = 0.0;
+        double sum = 0.0;
+        int maxRow = -1;
+        int count = 0;
+        for (int i = 0; i < sample.length; i++) {
+            float[] row = new float[sample[i].length];
+            for (int j = 0; j < row.length; j++) {
+                row[j] = (float) sample[i][j];
+            }
+            double[] expectedRaw = reference.predictRaw(sample[i]);
+            double[] actualRaw = floatPredictor.predictRaw(row);
+            double[] expected = reference.predict(sample[i]);
+            double[] actual = floatPredictor.predict(row);
+            for (int j = 0; j < expected.length; j++) {
+                double rawDeviation = Math.abs(expectedRaw[j] - actualRaw[j]);
+                double deviation = Math.abs(expected[j] - actual[j]);
+                maxRaw = Math.max(maxRaw, rawDeviation);
+                sumRaw += rawDeviation;
+                if (deviation > max || maxRow < 0) {
+                    max = deviation;
+                    maxRow = i;
+                }
+                sum += deviation;
+                count++;
+            }
+        }
+        return new PrecisionReport(sample.length, maxRaw, count == 0 ? 0.0 : sumRaw / count,
+            max, count == 0 ? 0.0 : sum / count, maxRow);
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public double getMaxRawDeviation() {
+        return maxRawDeviation;
+    }
+
+    public double getMeanRawDeviation() {
+        return meanRawDeviation;
+    }
+
+    public double getMaxDeviation() {
+        return maxDeviation;
+    }
+
+    public double getMeanDeviation() {
+        return meanDeviation;
+    }
+
+    public int getMaxDeviationRow() {
+        return maxDeviationRow;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PrecisionReport{rows=%d, maxRawDeviation=%.3e, meanRawDeviation=%.3e, maxDeviation=%.3e, meanDeviation=%.3e, maxDeviationRow=%d}",
+            numRows, maxRawDeviation, meanRawDeviation, maxDeviation, meanDeviation, maxDeviationRow);
+    }
+}
@@ -0,0 +1,167 @@
+package io.github.horoc.treetops.core.predictor;
+
+import io.github.horoc.treetops.core.model.TreeModel;
+
+/**
+ * Prediction early stop config, refer to official library: microsoft/LightGBM/src/boosting/prediction_early_stop.cpp. <br>
+ * Margin is checked every round period iterations, remaining trees are skipped once the margin is larger than threshold: <br>
+ * - binary (num_class is 1): margin is 2 * |raw|. <br>
+ * - multiclass: margin is the difference between the largest and the second largest raw value.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/1
+ */
+public final class PredictionEarlyStop {
+
+    /**
+     * Refer to official library: pred_early_stop_freq.
+     */
+    public static final int DEFAULT_ROUND_PERIOD = 10;
+
+    /**
+     * Refer to official library: pred_early_stop_margin.
+     */
+    public static final double DEFAULT_MARGIN_THRESHOLD = 10.0;
+
+    private final int roundPeriod;
+
+    private final double marginThreshold;
+
+    private final int numClass;
+
+    /**
+     * num of trees between two checkpoints, round period * num_tree_per_iteration.
+     */
+    private final int checkInterval;
+
+    public PredictionEarlyStop(int roundPeriod, double marginThreshold, TreeModel treeModel) {
+        if (roundPeriod <= 0) {
+            throw new IllegalArgumentException("round period of prediction early stop should be positive");
+        }
+        this.roundPeriod = roundPeriod;
+        this.marginThreshold = marginThreshold;
+        this.numClass = treeModel.getNumClass();
+        this.checkInterval = roundPeriod * Math.max(treeModel.getNumberTreePerIteration(), 1);
+    }
+
+    /**
+     * Refer to official library: microsoft/LightGBM/src/application/predictor.hpp,
+     * early stop only takes effect when the objective does not need accurate prediction.
+     *
+     * @param treeModel tree model
+     * @return true if objective is binary or multiclass
+     */
+    public static boolean isSupported(TreeModel treeModel) {
+        String objective = treeModel.getObjectiveType();
+        return "binary".equals(objective) || "multiclass".equals(objective) || "multiclassova".equals(objective);
+    }
+
+    /**
+     * Check whether the margin of raw values is larger than threshold.
+     *
+     * @param raw             raw values, stored in raw[offset, offset + size)
+     * @param offset          offset of raw values
+     * @param size            num of raw values, binary margin is used if size is 1
+     * @param marginThreshold margin threshold
+     * @return true if the prediction is confident enough to stop
+     */
+    public static boolean isConfident(double[] raw, int offset, int size, double marginThreshold) {
+        if (size == 1) {
+            return 2.0 * Math.abs(raw[offset]) > marginThreshold;
+        }
+        double top1 = Double.NEGATIVE_INFINITY;
+        double top2 = Double.NEGATIVE_INFINITY;
+        for (int i = offset; i < offset + size; i++) {
+            double value = raw[i];
+            if (value > top1) {
+                top2 = top1;
+                top1 = value;
+            } else if (value > top2) {
+                top2 = value;
+            }
+        }
+        return top1 - top2 > marginThreshold;
+    }
+
+    /**
+     * Check whether the margin of a single row is larger than threshold.
+     *
+     * @param raw    raw values
+     * @param offset offset of the row
+     * @return true if the prediction is confident enough to stop
+     */
+    public boolean isConfident(double[] raw, int offset) {
+        return isConfident(raw, offset, numClass, marginThreshold);
+    }
+
+    /**
+     * Check whether the margin of a single output raw value is larger than threshold.
+     *
+     * @param raw raw value
+     * @return true if the prediction is confident enough to stop
+     */
+    public boolean isConfident(double raw) {
+        return 2.0 * Math.abs(raw) > marginThreshold;
+    }
+
+    /**
+     * Margin is checked after every round period iterations.
+     *
+     * @param treePosition position of tree in model
+     * @return true if margin should be checked after the tree
+     */
+    public boolean isCheckpoint(int treePosition) {
+        return (treePosition + 1) % checkInterval == 0;
+    }
+
+    /**
+     * Refer to official library: microsoft/LightGBM/src/boosting/gbdt_prediction.cpp#GBDT::PredictRaw.
+     *
+     * @param treePosition position of the last scored tree
+     * @param raw          raw values
+     * @param offset       offset of the row
+     * @return true if remaining trees of the row can be skipped
+     */
+    public boolean isStopped(int treePosition, double[] raw, int offset) {
+        return isCheckpoint(treePosition) && isConfident(raw, offset);
+    }
+
+    /**
+     * Single output version of {@link PredictionEarlyStop#isStopped(int, double[], int)}.
+     *
+     * @param treePosition position of the last scored tree
+     * @param raw          raw value
+     * @return true if remaining trees of the row can be skipped
+     */
+    public boolean isStopped(int treePosition, double raw) {
+        return isCheckpoint(treePosition) && isConfident(raw);
+    }
+
+    /**
+     * Batch version of {@link PredictionEarlyStop#isStopped(int, double[], int)}, each row of the batch stops independently.
+     *
+     * @param treePosition position of the last scored tree
+     * @param raw          raw values, raw values of row i start from i * num_class
+     * @param from         first row index, inclusive
+     * @param to           last row index, exclusive
+     * @param stopped      stopped flag of row i is stopped[i - from], rows which turn confident are marked
+     */
+    public void markStoppedRows(int treePosition, double[] raw, int from, int to, boolean[] stopped) {
+        if (!isCheckpoint(treePosition)) {
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            if (!stopped[i - from] && isConfident(raw, i * numClass)) {
+                stopped[i - from] = true;
+            }
+        }
+    }
+
+    public int getRoundPeriod() {
+        return roundPeriod;
+    }
+
+    public double getMarginThreshold() {
+        return marginThreshold;
+    }
+}
@@ -1,5 +1,9 @@
 package io.github.horoc.treetops.core.predictor;
 
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * @author chenzhou@apache.org
  * created on 2023/2/14
@@ -20,6 +24,245 @@ public interface Predictor {
      */
     double[] predictRaw(double[] features);
 
+    /**
+     * Allocation free version of {@link Predictor#predictRaw(double[])}, raw output is written into caller owned buffer.
+     *
+     * @param features input feature, size of features should be equals to max_feature_idx
+     * @param output   output buffer, size of output should not be less than num_class
+     */
+    default void predictRaw(double[] features, double[] output) {
+        double[] ret = predictRaw(features);
+        System.arraycopy(ret, 0, output, 0, ret.length);
+    }
+
+    /**
+     * Refer to official library api: num_iteration of microsoft/LightGBM/src/c_api.cpp#LGBM_BoosterPredictForMat,
+     * only trees of the first numIteration iterations are scored, each iteration contains num_tree_per_iteration trees.
+     *
+     * @param features     input feature, size of features should be equals to max_feature_idx
+     * @param numIteration num of iterations to be scored, all iterations are scored if it is not positive
+     * @param output       output buffer, size of output should not be less than num_class
+     */
+    default void predictRaw(double[] features, int numIteration, double[] output) {
+        throw new UnsupportedOperationException("iteration limit prediction is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Batch version of {@link Predictor#predictRaw(double[])}, score rows in range [from, to). <br>
+     * Raw output of row i is written into output[i * num_class, (i + 1) * num_class).
+     *
+     * @param features input rows, size of each row should be equals to max_feature_idx
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param output   output buffer, size of output should not be less than to * num_class
+     */
+    default void predictRaw(double[][] features, int from, int to, double[] output) {
+        for (int i = from; i < to; i++) {
+            double[] ret = predictRaw(features[i]);
+            System.arraycopy(ret, 0, output, i * ret.length, ret.length);
+        }
+    }
+
+    /**
+     * Batch version of {@link Predictor#predictRaw(double[])}, score all rows.
+     *
+     * @param features input rows, size of each row should be equals to max_feature_idx
+     * @param output   output buffer, size of output should not be less than features.length * num_class
+     */
+    default void predictRaw(double[][] features, double[] output) {
+        predictRaw(features, 0, features.length, output);
+    }
+
+    /**
+     * Multi-threaded version of {@link Predictor#predictRaw(double[][], int, int, double[])}, rows are split into cache sized chunks,
+     * and each chunk is scored in the given pool by the single thread batch prediction. <br>
+     * Raw output of row i is written into output[i * num_class, (i + 1) * num_class), no allocation per row.
+     *
+     * @param features input rows, size of each row should be equals to max_feature_idx
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param output   output buffer, size of output should not be less than to * num_class
+     * @param pool     fork join pool which rows are scored in
+     */
+    default void predictRaw(double[][] features, int from, int to, double[] output, ForkJoinPool pool) {
+        int rowBytes = from < to ? features[from].length * Double.BYTES : 0;
+        ParallelBatchTask.invoke(pool, from, to, rowBytes, (begin, end) -> predictRaw(features, begin, end, output));
+    }
+
+    /**
+     * Flat matrix version of batch prediction, avoid copying each row into a new array. <br>
+     * Feature j of row i is stored at matrix[offset + i * rowStride + j * featureStride], e.g. <br>
+     * - row-major matrix: rowStride is the row length, featureStride is 1. <br>
+     * - column-major matrix: rowStride is 1, featureStride is the column length. <br>
+     * Raw output of row i is written into output[i * num_class, (i + 1) * num_class).
+     *
+     * @param matrix        flat feature matrix
+     * @param offset        index of the first feature of the first row
+     * @param rowStride     distance between two adjacent rows
+     * @param featureStride distance between two adjacent features of a row
+     * @param numRows       num of rows
+     * @param output        output buffer, size of output should not be less than numRows * num_class
+     */
+    default void predictRaw(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        throw new UnsupportedOperationException("flat matrix prediction is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Sparse version of {@link Predictor#predictRaw(double[])}, only supported by sparse engine,
+     * absent features are treated as 0.0.
+     *
+     * @param features sparse input feature
+     * @return output value, size of output should be num_class
+     */
+    default double[] predictRaw(SparseVector features) {
+        throw new UnsupportedOperationException("sparse input prediction is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Allocation free version of {@link Predictor#predictRaw(SparseVector)}.
+     *
+     * @param features sparse input feature
+     * @param output   output buffer, size of output should not be less than num_class
+     */
+    default void predictRaw(SparseVector features, double[] output) {
+        double[] ret = predictRaw(features);
+        System.arraycopy(ret, 0, output, 0, ret.length);
+    }
+
+    /**
+     * Float version of {@link Predictor#predictRaw(double[])}. <br>
+     * Predictor created in float precision mode reads float features directly,
+     * others fall back to widening the input into a double array.
+     *
+     * @param features input feature, size of features should be equals to max_feature_idx
+     * @return output value, size of output should be num_class
+     */
+    default double[] predictRaw(float[] features) {
+        return predictRaw(widen(features));
+    }
+
+    /**
+     * Float version of {@link Predictor#predictRaw(double[], double[])}.
+     *
+     * @param features input feature, size of features should be equals to max_feature_idx
+     * @param output   output buffer, size of output should not be less than num_class
+     */
+    default void predictRaw(float[] features, double[] output) {
+        predictRaw(widen(features), output);
+    }
+
+    /**
+     * Float version of {@link Predictor#predictRaw(double[][], int, int, double[])}.
+     *
+     * @param features input rows, size of each row should be equals to max_feature_idx
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param output   output buffer, size of output should not be less than to * num_class
+     */
+    default void predictRaw(float[][] features, int from, int to, double[] output) {
+        for (int i = from; i < to; i++) {
+            double[] ret = predictRaw(features[i]);
+            System.arraycopy(ret, 0, output, i * ret.length, ret.length);
+        }
+    }
+
+    /**
+     * Float version of {@link Predictor#predictRaw(double[][], double[])}.
+     *
+     * @param features input rows, size of each row should be equals to max_feature_idx
+     * @param output   output buffer, size of output should not be less than features.length * num_class
+     */
+    default void predictRaw(float[][] features, double[] output) {
+        predictRaw(features, 0, features.length, output);
+    }
+
+    /**
+     * Float version of {@link Predictor#predictRaw(double[], int, int, int, int, double[])}, only supported in float precision mode.
+     *
+     * @param matrix        flat feature matrix
+     * @param offset        index of the first feature of the first row
+     * @param rowStride     distance between two adjacent rows
+     * @param featureStride distance between two adjacent features of a row
+     * @param numRows       num of rows
+     * @param output        output buffer, size of output should not be less than numRows * num_class
+     */
+    default void predictRaw(float[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        throw new UnsupportedOperationException("float matrix prediction is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Read a single row from double buffer by absolute get, position and limit of the buffer are not changed.
+     *
+     * @param buffer input buffer
+     * @param offset index of the first feature of the row
+     * @param output output buffer, size of output should not be less than num_class
+     */
+    default void predictRaw(DoubleBuffer buffer, int offset, double[] output) {
+        predictRaw(buffer, offset, 0, 1, 1, output);
+    }
+
+    /**
+     * Double buffer version of {@link Predictor#predictRaw(double[], int, int, int, int, double[])},
+     * features are read by absolute get, e.g. from off-heap memory without copying onto the heap.
+     *
+     * @param buffer        input buffer
+     * @param offset        index of the first feature of the first row
+     * @param rowStride     distance between two adjacent rows
+     * @param featureStride distance between two adjacent features of a row
+     * @param numRows       num of rows
+     * @param output        output buffer, size of output should not be less than numRows * num_class
+     */
+    default void predictRaw(DoubleBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        throw new UnsupportedOperationException("buffer prediction is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Read a single row of doubles from byte buffer by absolute get, in the byte order of the buffer.
+     *
+     * @param buffer input buffer
+     * @param offset byte index of the first feature of the row
+     * @param output output buffer, size of output should not be less than num_class
+     */
+    default void predictRaw(ByteBuffer buffer, int offset, double[] output) {
+        predictRaw(buffer, offset, 0, Double.BYTES, 1, output);
+    }
+
+    /**
+     * Byte buffer version of {@link Predictor#predictRaw(double[], int, int, int, int, double[])},
+     * doubles are read by absolute get in the byte order of the buffer, all offsets and strides are in bytes, e.g. <br>
+     * - little-endian row-major rows: buffer.order(ByteOrder.LITTLE_ENDIAN), rowStride is 8 * row length, featureStride is 8.
+     *
+     * @param buffer        input buffer
+     * @param offset        byte index of the first feature of the first row
+     * @param rowStride     byte distance between two adjacent rows
+     * @param featureStride byte distance between two adjacent features of a row
+     * @param numRows       num of rows
+     * @param output        output buffer, size of output should not be less than numRows * num_class
+     */
+    default void predictRaw(ByteBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        throw new UnsupportedOperationException("buffer prediction is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Scalar version of {@link Predictor#predictRaw(double[])}, only available when num_class is 1.
+     *
+     * @param features input feature, size of features should be equals to max_feature_idx
+     * @return raw output value
+     */
+    default double predictRawScalar(double[] features) {
+        return predictRaw(features)[0];
+    }
+
+    /**
+     * Float version of {@link Predictor#predictRawScalar(double[])}.
+     *
+     * @param features input feature, size of features should be equals to max_feature_idx
+     * @return raw output value
+     */
+    default double predictRawScalar(float[] features) {
+        return predictRaw(features)[0];
+    }
+
     /**
      * Refer to official library api: microsoft/LightGBM/src/boosting/gbdt.h#GBDT::Predict.
      * <br>
@@ -30,5 +273,307 @@ public interface Predictor {
     default double[] predict(double[] features) {
         return predictRaw(features);
     }
-}
 
+    /**
+     * Allocation free version of {@link Predictor#predict(double[])}, output is written into caller owned buffer.
+     *
+     * @param features input feature, size of features should be equals to max_feature_idx
+     * @param output   output buffer, size of output should not be less than num_class
+     */
+    default void predict(double[] features, double[] output) {
+        double[] ret = predict(features);
+        System.arraycopy(ret, 0, output, 0, ret.length);
+    }
+
+    /**
+     * Converted version of {@link Predictor#predictRaw(double[], int, double[])}.
+     *
+     * @param features     input feature, size of features should be equals to max_feature_idx
+     * @param numIteration num of iterations to be scored, all iterations are scored if it is not positive
+     * @param output       output buffer, size of output should not be less than num_class
+     */
+    default void predict(double[] features, int numIteration, double[] output) {
+        predictRaw(features, numIteration, output);
+    }
+
+    /**
+     * Batch version of {@link Predictor#predict(double[])}, score rows in range [from, to). <br>
+     * Output of row i is written into output[i * num_class, (i + 1) * num_class).
+     *
+     * @param features input rows, size of each row should be equals to max_feature_idx
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param output   output buffer, size of output should not be less than to * num_class
+     */
+    default void predict(double[][] features, int from, int to, double[] output) {
+        for (int i = from; i < to; i++) {
+            double[] ret = predict(features[i]);
+            System.arraycopy(ret, 0, output, i * ret.length, ret.length);
+        }
+    }
+
+    /**
+     * Batch version of {@link Predictor#predict(double[])}, score all rows.
+     *
+     * @param features input rows, size of each row should be equals to max_feature_idx
+     * @param output   output buffer, size of output should not be less than features.length * num_class
+     */
+    default void predict(double[][] features, double[] output) {
+        predict(features, 0, features.length, output);
+    }
+
+    /**
+     * Multi-threaded version of {@link Predictor#predict(double[][], int, int, double[])}, rows are split into cache sized chunks,
+     * and each chunk is scored in the given pool by the single thread batch prediction. <br>
+     * Output of row i is written into output[i * num_class, (i + 1) * num_class), no allocation per row.
+     *
+     * @param features input rows, size of each row should be equals to max_feature_idx
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param output   output buffer, size of output should not be less than to * num_class
+     * @param pool     fork join pool which rows are scored in
+     */
+    default void predict(double[][] features, int from, int to, double[] output, ForkJoinPool pool) {
+        int rowBytes = from < to ? features[from].length * Double.BYTES : 0;
+        ParallelBatchTask.invoke(pool, from, to, rowBytes, (begin, end) -> predict(features, begin, end, output));
+    }
+
+    /**
+     * Flat matrix version of batch prediction, refer to {@link Predictor#predictRaw(double[], int, int, int, int, double[])}.
+     *
+     * @param matrix        flat feature matrix
+     * @param offset        index of the first feature of the first row
+     * @param rowStride     distance between two adjacent rows
+     * @param featureStride distance between two adjacent features of a row
+     * @param numRows       num of rows
+     * @param output        output buffer, size of output should not be less than numRows * num_class
+     */
+    default void predict(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictRaw(matrix, offset, rowStride, featureStride, numRows, output);
+    }
+
+    /**
+     * Sparse version of {@link Predictor#predict(double[])}, only supported by sparse engine,
+     * absent features are treated as 0.0.
+     *
+     * @param features sparse input feature
+     * @return output value, size of output should be num_class
+     */
+    default double[] predict(SparseVector features) {
+        return predictRaw(features);
+    }
+
+    /**
+     * Allocation free version of {@link Predictor#predict(SparseVector)}.
+     *
+     * @param features sparse input feature
+     * @param output   output buffer, size of output should not be less than num_class
+     */
+    default void predict(SparseVector features, double[] output) {
+        double[] ret = predict(features);
+        System.arraycopy(ret, 0, output, 0, ret.length);
+    }
+
+    /**
+     * Float version of {@link Predictor#predict(double[])}.
+     *
+     * @param features input feature, size of features should be equals to max_feature_idx
+     * @return output value, size of output should be num_class
+     */
+    default double[] predict(float[] features) {
+        return predictRaw(features);
+    }
+
+    /**
+     * Float version of {@link Predictor#predict(double[], double[])}.
+     *
+     * @param features input feature, size of features should be equals to max_feature_idx
+     * @param output   output buffer, size of output should not be less than num_class
+     */
+    default void predict(float[] features, double[] output) {
+        predictRaw(features, output);
+    }
+
+    /**
+     * Float version of {@link Predictor#predict(double[][], int, int, double[])}.
+     *
+     * @param features input rows, size of each row should be equals to max_feature_idx
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param output   output buffer, size of output should not be less than to * num_class
+     */
+    default void predict(float[][] features, int from, int to, double[] output) {
+        predictRaw(features, from, to, output);
+    }
+
+    /**
+     * Float version of {@link Predictor#predict(double[][], double[])}.
+     *
+     * @param features input rows, size of each row should be equals to max_feature_idx
+     * @param output   output buffer, size of output should not be less than features.length * num_class
+     */
+    default void predict(float[][] features, double[] output) {
+        predict(features, 0, features.length, output);
+    }
+
+    /**
+     * Float version of {@link Predictor#predict(double[], int, int, int, int, double[])}, only supported in float precision mode.
+     *
+     * @param matrix        flat feature matrix
+     * @param offset        index of the first feature of the first row
+     * @param rowStride     distance between two adjacent rows
+     * @param featureStride distance between two adjacent features of a row
+     * @param numRows       num of rows
+     * @param output        output buffer, size of output should not be less than numRows * num_class
+     */
+    default void predict(float[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictRaw(matrix, offset, rowStride, featureStride, numRows, output);
+    }
+
+    /**
+     * Double buffer version of {@link Predictor#predict(double[], double[])}, refer to {@link Predictor#predictRaw(DoubleBuffer, int, double[])}.
+     *
+     * @param buffer input buffer
+     * @param offset index of the first feature of the row
+     * @param output output buffer, size of output should not be less than num_class
+     */
+    default void predict(DoubleBuffer buffer, int offset, double[] output) {
+        predict(buffer, offset, 0, 1, 1, output);
+    }
+
+    /**
+     * Double buffer version of batch prediction, refer to {@link Predictor#predictRaw(DoubleBuffer, int, int, int, int, double[])}.
+     *
+     * @param buffer        input buffer
+     * @param offset        index of the first feature of the first row
+     * @param rowStride     distance between two adjacent rows
+     * @param featureStride distance between two adjacent features of a row
+     * @param numRows       num of rows
+     * @param output        output buffer, size of output should not be less than numRows * num_class
+     */
+    default void predict(DoubleBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictRaw(buffer, offset, rowStride, featureStride, numRows, output);
+    }
+
+    /**
+     * Byte buffer version of {@link Predictor#predict(double[], double[])}, refer to {@link Predictor#predictRaw(ByteBuffer, int, double[])}.
+     *
+     * @param buffer input buffer
+     * @param offset byte index of the first feature of the row
+     * @param output output buffer, size of output should not be less than num_class
+     */
+    default void predict(ByteBuffer buffer, int offset, double[] output) {
+        predict(buffer, offset, 0, Double.BYTES, 1, output);
+    }
+
+    /**
+     * Byte buffer version of batch prediction, refer to {@link Predictor#predictRaw(ByteBuffer, int, int, int, int, double[])}.
+     *
+     * @param buffer        input buffer
+     * @param offset        byte index of the first feature of the first row
+     * @param rowStride     byte distance between two adjacent rows
+     * @param featureStride byte distance between two adjacent features of a row
+     * @param numRows       num of rows
+     * @param output        output buffer, size of output should not be less than numRows * num_class
+     */
+    default void predict(ByteBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictRaw(buffer, offset, rowStride, featureStride, numRows, output);
+    }
+
+    /**
+     * Scalar version of {@link Predictor#predict(double[])}, only available when num_class is 1,
+     * e.g. binary classification or regression.
+     *
+     * @param features input feature, size of features should be equals to max_feature_idx
+     * @return output value
+     */
+    default double predictScalar(double[] features) {
+        return predict(features)[0];
+    }
+
+    /**
+     * Float version of {@link Predictor#predictScalar(double[])}.
+     *
+     * @param features input feature, size of features should be equals to max_feature_idx
+     * @return output value
+     */
+    default double predictScalar(float[] features) {
+        return predict(features)[0];
+    }
+
+    /**
+     * Refer to official library api: microsoft/LightGBM/src/boosting/gbdt_prediction.cpp#GBDT::PredictLeafIndex,
+     * index of the leaf which the row falls into is written into output[t] for the t-th tree of model.
+     *
+     * @param features input feature, size of features should be equals to max_feature_idx
+     * @param output   output buffer, size of output should not be less than num of trees
+     */
+    default void predictLeafIndex(double[] features, int[] output) {
+        throw new UnsupportedOperationException("leaf index prediction is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Batch version of {@link Predictor#predictLeafIndex(double[], int[])}, score rows in range [from, to). <br>
+     * Leaf indices of row i are written into output[i * num_trees, (i + 1) * num_trees).
+     *
+     * @param features input rows, size of each row should be equals to max_feature_idx
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param output   output buffer, size of output should not be less than to * num_trees
+     */
+    default void predictLeafIndex(double[][] features, int from, int to, int[] output) {
+        throw new UnsupportedOperationException("leaf index prediction is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Refer to official library api: microsoft/LightGBM/src/boosting/gbdt_prediction.cpp#GBDT::PredictContrib,
+     * feature contributions are computed by TreeSHAP algorithm, see {@link TreeShap}. <br>
+     * Contributions are laid out as num_class blocks of (num_features + 1) values, the last value of each block is the bias.
+     *
+     * @param features input feature, size of features should be equals to max_feature_idx
+     * @param output   output buffer, size of output should not be less than num_class * (max_feature_idx + 2)
+     */
+    default void predictContrib(double[] features, double[] output) {
+        throw new UnsupportedOperationException("contribution prediction is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Batch version of {@link Predictor#predictContrib(double[], double[])}, score rows in range [from, to). <br>
+     * Contributions of row i are written into output[i * contrib_size, (i + 1) * contrib_size).
+     *
+     * @param features input rows, size of each row should be equals to max_feature_idx
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param output   output buffer, size of output should not be less than to * num_class * (max_feature_idx + 2)
+     */
+    default void predictContrib(double[][] features, int from, int to, double[] output) {
+        throw new UnsupportedOperationException("contribution prediction is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Multi-threaded version of {@link Predictor#predictContrib(double[][], int, int, double[])}, rows are scored in the given pool.
+     *
+     * @param features input rows, size of each row should be equals to max_feature_idx
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param output   output buffer, size of output should not be less than to * num_class * (max_feature_idx + 2)
+     * @param pool     fork join pool which rows are scored in
+     */
+    default void predictContrib(double[][] features, int from, int to, double[] output, ForkJoinPool pool) {
+        throw new UnsupportedOperationException("contribution prediction is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Widen float features into a new double array.
+     *
+     * @param features float features
+     * @return double features
+     */
+    static double[] widen(float[] features) {
+        double[] ret = new double[features.length];
+        for (int i = 0; i < features.length; i++) {
+            ret[i] = features[i];
+        }
+        return ret;
+    }
+}
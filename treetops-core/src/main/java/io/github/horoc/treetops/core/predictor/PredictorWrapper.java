@@ -1,7 +1,11 @@
 package io.github.horoc.treetops.core.predictor;
 
+import io.github.horoc.treetops.core.model.ModelCompaction;
 import io.github.horoc.treetops.core.model.TreeModel;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Predictor Wrapper, introduce preprocess/postprocess of prediction process.
@@ -18,12 +22,50 @@ public final class PredictorWrapper implements Predictor {
      */
     private int maxFeatureIdx;
 
+    /**
+     * size of output values of a single row.
+     */
+    private int numClass;
+
+    /**
+     * size of leaf indices of a single row.
+     */
+    private int numTrees;
+
+    private TreeModel treeModel;
+
+    /**
+     * compaction report of the model, null if the model is not compacted.
+     */
+    private ModelCompaction compaction;
+
+    /**
+     * contribution engine, lazily created by the first contribution prediction.
+     */
+    private volatile TreeShap treeShap;
+
     public PredictorWrapper(Predictor innerPredictor, TreeModel treeModel) {
+        this(innerPredictor, treeModel, null);
+    }
+
+    /**
+     * Wrap predictor of a compacted model, iteration limit and leaf index prediction are rejected,
+     * since trees of the compacted model do not map to iterations of the origin model.
+     *
+     * @param innerPredictor predictor of the compacted model
+     * @param treeModel      compacted model
+     * @param compaction     compaction report, null if the model is not compacted
+     */
+    public PredictorWrapper(Predictor innerPredictor, TreeModel treeModel, ModelCompaction compaction) {
         if (Objects.isNull(innerPredictor)) {
             throw new IllegalArgumentException("new PredictorWrapper error, innerPredictor can not be null");
         }
         this.innerPredictor = innerPredictor;
         this.maxFeatureIdx = treeModel.getMaxFeatureIndex();
+        this.numClass = treeModel.getNumClass();
+        this.numTrees = treeModel.getTrees().size();
+        this.treeModel = treeModel;
+        this.compaction = compaction;
     }
 
     @Override
@@ -32,12 +74,276 @@ public final class PredictorWrapper implements Predictor {
         return innerPredictor.predictRaw(features);
     }
 
+    @Override
+    public void predictRaw(double[] features, double[] output) {
+        checkInputFeature(features);
+        checkOutputBuffer(output, numClass);
+        innerPredictor.predictRaw(features, output);
+    }
+
+    @Override
+    public void predictRaw(double[] features, int numIteration, double[] output) {
+        checkIterationLimit(numIteration);
+        checkInputFeature(features);
+        checkOutputBuffer(output, numClass);
+        innerPredictor.predictRaw(features, numIteration, output);
+    }
+
+    @Override
+    public void predictRaw(double[][] features, int from, int to, double[] output) {
+        checkBatchInput(features, from, to, output);
+        innerPredictor.predictRaw(features, from, to, output);
+    }
+
+    @Override
+    public void predictRaw(double[][] features, int from, int to, double[] output, ForkJoinPool pool) {
+        checkBatchInput(features, from, to, output);
+        checkPool(pool);
+        innerPredictor.predictRaw(features, from, to, output, pool);
+    }
+
+    @Override
+    public void predictRaw(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        checkMatrixInput(matrix, offset, rowStride, featureStride, numRows, output);
+        innerPredictor.predictRaw(matrix, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public double[] predictRaw(SparseVector features) {
+        checkSparseInput(features);
+        return innerPredictor.predictRaw(features);
+    }
+
+    @Override
+    public void predictRaw(SparseVector features, double[] output) {
+        checkSparseInput(features);
+        checkOutputBuffer(output, numClass);
+        innerPredictor.predictRaw(features, output);
+    }
+
+    @Override
+    public double[] predictRaw(float[] features) {
+        checkInputFeature(features);
+        return innerPredictor.predictRaw(features);
+    }
+
+    @Override
+    public void predictRaw(float[] features, double[] output) {
+        checkInputFeature(features);
+        checkOutputBuffer(output, numClass);
+        innerPredictor.predictRaw(features, output);
+    }
+
+    @Override
+    public void predictRaw(float[][] features, int from, int to, double[] output) {
+        checkBatchInput(features, from, to, output);
+        innerPredictor.predictRaw(features, from, to, output);
+    }
+
+    @Override
+    public void predictRaw(float[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        checkMatrixInput(matrix, offset, rowStride, featureStride, numRows, output);
+        innerPredictor.predictRaw(matrix, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public void predictRaw(DoubleBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        checkBufferInput(buffer, offset, rowStride, featureStride, numRows, output);
+        innerPredictor.predictRaw(buffer, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public void predictRaw(ByteBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        checkBufferInput(buffer, offset, rowStride, featureStride, numRows, output);
+        innerPredictor.predictRaw(buffer, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public double predictRawScalar(double[] features) {
+        checkInputFeature(features);
+        checkSingleOutput();
+        return innerPredictor.predictRawScalar(features);
+    }
+
+    @Override
+    public double predictRawScalar(float[] features) {
+        checkInputFeature(features);
+        checkSingleOutput();
+        return innerPredictor.predictRawScalar(features);
+    }
+
     @Override
     public double[] predict(double[] features) {
         checkInputFeature(features);
         return innerPredictor.predict(features);
     }
 
+    @Override
+    public void predict(double[] features, double[] output) {
+        checkInputFeature(features);
+        checkOutputBuffer(output, numClass);
+        innerPredictor.predict(features, output);
+    }
+
+    @Override
+    public void predict(double[] features, int numIteration, double[] output) {
+        checkIterationLimit(numIteration);
+        checkInputFeature(features);
+        checkOutputBuffer(output, numClass);
+        innerPredictor.predict(features, numIteration, output);
+    }
+
+    @Override
+    public void predict(double[][] features, int from, int to, double[] output) {
+        checkBatchInput(features, from, to, output);
+        innerPredictor.predict(features, from, to, output);
+    }
+
+    @Override
+    public void predict(double[][] features, int from, int to, double[] output, ForkJoinPool pool) {
+        checkBatchInput(features, from, to, output);
+        checkPool(pool);
+        innerPredictor.predict(features, from, to, output, pool);
+    }
+
+    @Override
+    public void predict(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        checkMatrixInput(matrix, offset, rowStride, featureStride, numRows, output);
+        innerPredictor.predict(matrix, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public double[] predict(SparseVector features) {
+        checkSparseInput(features);
+        return innerPredictor.predict(features);
+    }
+
+    @Override
+    public void predict(SparseVector features, double[] output) {
+        checkSparseInput(features);
+        checkOutputBuffer(output, numClass);
+        innerPredictor.predict(features, output);
+    }
+
+    @Override
+    public double[] predict(float[] features) {
+        checkInputFeature(features);
+        return innerPredictor.predict(features);
+    }
+
+    @Override
+    public void predict(float[] features, double[] output) {
+        checkInputFeature(features);
+        checkOutputBuffer(output, numClass);
+        innerPredictor.predict(features, output);
+    }
+
+    @Override
+    public void predict(float[][] features, int from, int to, double[] output) {
+        checkBatchInput(features, from, to, output);
+        innerPredictor.predict(features, from, to, output);
+    }
+
+    @Override
+    public void predict(float[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        checkMatrixInput(matrix, offset, rowStride, featureStride, numRows, output);
+        innerPredictor.predict(matrix, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public void predict(DoubleBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        checkBufferInput(buffer, offset, rowStride, featureStride, numRows, output);
+        innerPredictor.predict(buffer, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public void predict(ByteBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        checkBufferInput(buffer, offset, rowStride, featureStride, numRows, output);
+        innerPredictor.predict(buffer, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public double predictScalar(double[] features) {
+        checkInputFeature(features);
+        checkSingleOutput();
+        return innerPredictor.predictScalar(features);
+    }
+
+    @Override
+    public double predictScalar(float[] features) {
+        checkInputFeature(features);
+        checkSingleOutput();
+        return innerPredictor.predictScalar(features);
+    }
+
+    @Override
+    public void predictLeafIndex(double[] features, int[] output) {
+        checkLeafIndex();
+        checkInputFeature(features);
+        checkLeafIndexOutput(output, numTrees);
+        innerPredictor.predictLeafIndex(features, output);
+    }
+
+    @Override
+    public void predictLeafIndex(double[][] features, int from, int to, int[] output) {
+        checkLeafIndex();
+        if (Objects.isNull(features) || from < 0 || from > to || to > features.length) {
+            throw new IllegalArgumentException("input rows range does not match the input features");
+        }
+        checkLeafIndexOutput(output, to * numTrees);
+        for (int i = from; i < to; i++) {
+            checkInputFeature(features[i]);
+        }
+        innerPredictor.predictLeafIndex(features, from, to, output);
+    }
+
+    @Override
+    public void predictContrib(double[] features, double[] output) {
+        checkInputFeature(features);
+        checkOutputBuffer(output, contribSize());
+        getTreeShap().predictContrib(features, output);
+    }
+
+    @Override
+    public void predictContrib(double[][] features, int from, int to, double[] output) {
+        checkContribBatchInput(features, from, to, output);
+        getTreeShap().predictContrib(features, from, to, output);
+    }
+
+    @Override
+    public void predictContrib(double[][] features, int from, int to, double[] output, ForkJoinPool pool) {
+        checkContribBatchInput(features, from, to, output);
+        checkPool(pool);
+        getTreeShap().predictContrib(features, from, to, output, pool);
+    }
+
+    /**
+     * Compaction report of the model, refer to {@link io.github.horoc.treetops.core.factory.PredictorOptions#setCompaction(boolean)}.
+     *
+     * @return compaction report, null if the model is not compacted
+     */
+    public ModelCompaction getCompaction() {
+        return compaction;
+    }
+
+    private TreeShap getTreeShap() {
+        TreeShap shap = treeShap;
+        if (shap == null) {
+            synchronized (this) {
+                shap = treeShap;
+                if (shap == null) {
+                    shap = new TreeShap(treeModel);
+                    treeShap = shap;
+                }
+            }
+        }
+        return shap;
+    }
+
+    private int contribSize() {
+        return numClass * (maxFeatureIdx + 2);
+    }
+
     /**
      * pre-check of input features.
      * @param features input features
@@ -48,10 +354,207 @@ public final class PredictorWrapper implements Predictor {
         }
     }
 
+    /**
+     * pre-check of float input features.
+     * @param features input features
+     */
+    private void checkInputFeature(float[] features) {
+        if (Objects.isNull(features) || features.length > maxFeatureIdx + 1) {
+            throw new IllegalArgumentException("input features size does not match the predict model");
+        }
+    }
+
+    /**
+     * pre-check of sparse input features.
+     * @param features sparse input features
+     */
+    private void checkSparseInput(SparseVector features) {
+        if (Objects.isNull(features) || features.getMaxIndex() > maxFeatureIdx) {
+            throw new IllegalArgumentException("input features size does not match the predict model");
+        }
+    }
+
+    /**
+     * pre-check of batch input rows and output buffer.
+     * @param features input rows
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param output   output buffer
+     */
+    private void checkBatchInput(double[][] features, int from, int to, double[] output) {
+        if (Objects.isNull(features) || from < 0 || from > to || to > features.length) {
+            throw new IllegalArgumentException("input rows range does not match the input features");
+        }
+        checkOutputBuffer(output, to * numClass);
+        for (int i = from; i < to; i++) {
+            checkInputFeature(features[i]);
+        }
+    }
+
+    /**
+     * pre-check of float batch input rows and output buffer.
+     * @param features input rows
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param output   output buffer
+     */
+    private void checkBatchInput(float[][] features, int from, int to, double[] output) {
+        if (Objects.isNull(features) || from < 0 || from > to || to > features.length) {
+            throw new IllegalArgumentException("input rows range does not match the input features");
+        }
+        checkOutputBuffer(output, to * numClass);
+        for (int i = from; i < to; i++) {
+            checkInputFeature(features[i]);
+        }
+    }
+
+    /**
+     * pre-check of flat matrix input and output buffer, all accessed elements should be inside the matrix.
+     * @param matrix        flat feature matrix
+     * @param offset        index of the first feature of the first row
+     * @param rowStride     distance between two adjacent rows
+     * @param featureStride distance between two adjacent features of a row
+     * @param numRows       num of rows
+     * @param output        output buffer
+     */
+    private void checkMatrixInput(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        if (Objects.isNull(matrix)) {
+            throw new IllegalArgumentException("input matrix layout is invalid");
+        }
+        checkMatrixLayout(matrix.length, offset, rowStride, featureStride, numRows, output);
+    }
+
+    /**
+     * pre-check of float flat matrix input and output buffer.
+     * @param matrix        flat feature matrix
+     * @param offset        index of the first feature of the first row
+     * @param rowStride     distance between two adjacent rows
+     * @param featureStride distance between two adjacent features of a row
+     * @param numRows       num of rows
+     * @param output        output buffer
+     */
+    private void checkMatrixInput(float[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        if (Objects.isNull(matrix)) {
+            throw new IllegalArgumentException("input matrix layout is invalid");
+        }
+        checkMatrixLayout(matrix.length, offset, rowStride, featureStride, numRows, output);
+    }
+
+    /**
+     * pre-check of double buffer input and output buffer, all accessed elements should be inside the limit of buffer.
+     * @param buffer        input buffer
+     * @param offset        index of the first feature of the first row
+     * @param rowStride     distance between two adjacent rows
+     * @param featureStride distance between two adjacent features of a row
+     * @param numRows       num of rows
+     * @param output        output buffer
+     */
+    private void checkBufferInput(DoubleBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        if (Objects.isNull(buffer)) {
+            throw new IllegalArgumentException("input buffer can not be null");
+        }
+        checkMatrixLayout(buffer.limit(), offset, rowStride, featureStride, numRows, output);
+    }
+
+    /**
+     * pre-check of byte buffer input and output buffer, all accessed doubles should be inside the limit of buffer.
+     * @param buffer        input buffer
+     * @param offset        byte index of the first feature of the first row
+     * @param rowStride     byte distance between two adjacent rows
+     * @param featureStride byte distance between two adjacent features of a row
+     * @param numRows       num of rows
+     * @param output        output buffer
+     */
+    private void checkBufferInput(ByteBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        if (Objects.isNull(buffer)) {
+            throw new IllegalArgumentException("input buffer can not be null");
+        }
+        // the last double starts at least 8 bytes before the limit
+        checkMatrixLayout(buffer.limit() - Double.BYTES + 1, offset, rowStride, featureStride, numRows, output);
+    }
+
+    private void checkMatrixLayout(int length, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        if (offset < 0 || rowStride < 0 || featureStride < 0 || numRows < 0) {
+            throw new IllegalArgumentException("input matrix layout is invalid");
+        }
+        if (numRows > 0 && (long) offset + (long) (numRows - 1) * rowStride + (long) maxFeatureIdx * featureStride >= length) {
+            throw new IllegalArgumentException("input matrix size does not match the predict model");
+        }
+        checkOutputBuffer(output, numRows * numClass);
+    }
+
+    /**
+     * pre-check of output buffer.
+     * @param output   output buffer
+     * @param required required size of output buffer
+     */
+    private void checkOutputBuffer(double[] output, int required) {
+        if (Objects.isNull(output) || output.length < required) {
+            throw new IllegalArgumentException("output buffer size does not match the predict model");
+        }
+    }
+
+    /**
+     * pre-check of contribution batch input rows and output buffer.
+     * @param features input rows
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param output   output buffer
+     */
+    private void checkContribBatchInput(double[][] features, int from, int to, double[] output) {
+        if (Objects.isNull(features) || from < 0 || from > to || to > features.length) {
+            throw new IllegalArgumentException("input rows range does not match the input features");
+        }
+        checkOutputBuffer(output, to * contribSize());
+        for (int i = from; i < to; i++) {
+            checkInputFeature(features[i]);
+        }
+    }
+
+    /**
+     * pre-check of leaf index output buffer.
+     * @param output   output buffer
+     * @param required required size of output buffer
+     */
+    private void checkLeafIndexOutput(int[] output, int required) {
+        if (Objects.isNull(output) || output.length < required) {
+            throw new IllegalArgumentException("output buffer size does not match the predict model");
+        }
+    }
+
+    private void checkPool(ForkJoinPool pool) {
+        if (Objects.isNull(pool)) {
+            throw new IllegalArgumentException("fork join pool can not be null");
+        }
+    }
+
+    /**
+     * scalar prediction is only available for single output model.
+     */
+    private void checkSingleOutput() {
+        if (numClass != 1) {
+            throw new UnsupportedOperationException("scalar prediction is only supported by single output model");
+        }
+    }
+
+    private void checkIterationLimit(int numIteration) {
+        if (Objects.nonNull(compaction) && numIteration > 0) {
+            throw new UnsupportedOperationException("iteration limit prediction is not supported by compacted model, since trees of different iterations are merged");
+        }
+    }
+
+    private void checkLeafIndex() {
+        if (Objects.nonNull(compaction)) {
+            throw new UnsupportedOperationException("leaf index prediction is not supported by compacted model, since trees of different iterations are merged");
+        }
+    }
+
     /**
      * help gc, clean reference.
      */
     public void release() {
         this.innerPredictor = null;
+        this.treeModel = null;
+        this.treeShap = null;
     }
 }
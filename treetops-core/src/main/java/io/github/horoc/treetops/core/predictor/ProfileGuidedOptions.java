@@ -0,0 +1,79 @@
+package io.github.horoc.treetops.core.predictor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Options of {@link ProfileGuidedPredictor}.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class ProfileGuidedOptions {
+
+    /**
+     * one of every sampleInterval rows is sampled into the profile.
+     */
+    private int sampleInterval = 1000;
+
+    /**
+     * predictor is recompiled once this num of rows are sampled since the last compilation.
+     */
+    private long recompileSamples = 10000;
+
+    /**
+     * max num of recompilations, rows are still sampled once it is reached, so that the profile keeps up to date for export.
+     */
+    private int maxRecompilations = 1;
+
+    /**
+     * executor of recompilation.
+     */
+    private Executor executor = ForkJoinPool.commonPool();
+
+    /**
+     * profile which sampled rows are counted into, a profile imported by {@link BranchProfile#parse(String)} is applied to the first compilation,
+     * so that a new instance starts optimized. A new profile is created if it is null.
+     */
+    private BranchProfile profile;
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    public void setSampleInterval(int sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    public long getRecompileSamples() {
+        return recompileSamples;
+    }
+
+    public void setRecompileSamples(long recompileSamples) {
+        this.recompileSamples = recompileSamples;
+    }
+
+    public int getMaxRecompilations() {
+        return maxRecompilations;
+    }
+
+    public void setMaxRecompilations(int maxRecompilations) {
+        this.maxRecompilations = maxRecompilations;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public BranchProfile getProfile() {
+        return profile;
+    }
+
+    public void setProfile(BranchProfile profile) {
+        this.profile = profile;
+    }
+}
@@ -0,0 +1,235 @@
+package io.github.horoc.treetops.core.predictor;
+
+import io.github.horoc.treetops.core.model.TreeModel;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Profile guided engine. <br>
+ * A sample of single rows and batch rows of double input is profiled by leaf index prediction into {@link BranchProfile},
+ * and the predictor is recompiled asynchronously from the model whose data counts are replaced by profiled counts,
+ * thus branches of generated class are laid out by production traffic instead of training set. <br>
+ * Recompiled predictor is swapped in by a volatile write, in-flight predictions finish on the previous one.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+@ThreadSafe
+public final class ProfileGuidedPredictor implements Predictor {
+
+    private final TreeModel treeModel;
+
+    /**
+     * compile raw predictor of a model, which should support leaf index prediction.
+     */
+    private final Function<TreeModel, Predictor> compiler;
+
+    private final BranchProfile profile;
+
+    private final int sampleInterval;
+
+    private final long recompileSamples;
+
+    private final int maxRecompilations;
+
+    private final Executor executor;
+
+    /**
+     * per thread leaf index buffer of sampled row.
+     */
+    private final ThreadLocal<int[]> leafBuffer;
+
+    private final AtomicBoolean recompiling = new AtomicBoolean();
+
+    private volatile Predictor predictor;
+
+    private volatile int recompilations;
+
+    /**
+     * num of sampled rows when the current predictor is compiled.
+     */
+    private volatile long compiledSamples;
+
+    /**
+     * failure of the last recompilation, null if none.
+     */
+    private volatile RuntimeException failure;
+
+    /**
+     * request counter of sampling, it is not thread safe on purpose, lost updates only shift the sample slightly.
+     */
+    private int requests;
+
+    /**
+     * Compile the first predictor, imported profile is applied if it contains any sample.
+     *
+     * @param treeModel tree model
+     * @param compiler  compile raw predictor of a model
+     * @param options   profile guided options
+     */
+    public ProfileGuidedPredictor(TreeModel treeModel, Function<TreeModel, Predictor> compiler, ProfileGuidedOptions options) {
+        if (Objects.isNull(treeModel) || Objects.isNull(compiler) || Objects.isNull(options) || Objects.isNull(options.getExecutor())) {
+            throw new IllegalArgumentException("tree model, compiler, options and executor can not be null");
+        }
+        if (options.getSampleInterval() <= 0 || options.getRecompileSamples() <= 0 || options.getMaxRecompilations() < 0) {
+            throw new IllegalArgumentException("invalid profile guided options");
+        }
+        this.treeModel = treeModel;
+        this.compiler = compiler;
+        this.profile = options.getProfile() == null ? new BranchProfile() : options.getProfile();
+        this.profile.bind(treeModel);
+        this.sampleInterval = options.getSampleInterval();
+        this.recompileSamples = options.getRecompileSamples();
+        this.maxRecompilations = options.getMaxRecompilations();
+        this.executor = options.getExecutor();
+        this.leafBuffer = ThreadLocal.withInitial(() -> new int[treeModel.getTrees().size()]);
+        this.compiledSamples = profile.getSamples();
+        this.predictor = compiler.apply(compiledSamples > 0 ? profile.applyTo(treeModel) : treeModel);
+    }
+
+    @Override
+    public double[] predictRaw(double[] features) {
+        sample(features);
+        return predictor.predictRaw(features);
+    }
+
+    @Override
+    public void predictRaw(double[] features, double[] output) {
+        sample(features);
+        predictor.predictRaw(features, output);
+    }
+
+    @Override
+    public void predictRaw(double[] features, int numIteration, double[] output) {
+        sample(features);
+        predictor.predictRaw(features, numIteration, output);
+    }
+
+    @Override
+    public void predictRaw(double[][] features, int from, int to, double[] output) {
+        for (int i = from; i < to; i++) {
+            sample(features[i]);
+        }
+        predictor.predictRaw(features, from, to, output);
+    }
+
+    @Override
+    public void predictRaw(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictor.predictRaw(matrix, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public double[] predictRaw(SparseVector features) {
+        return predictor.predictRaw(features);
+    }
+
+    @Override
+    public void predictRaw(SparseVector features, double[] output) {
+        predictor.predictRaw(features, output);
+    }
+
+    @Override
+    public double[] predictRaw(float[] features) {
+        return predictor.predictRaw(features);
+    }
+
+    @Override
+    public void predictRaw(float[] features, double[] output) {
+        predictor.predictRaw(features, output);
+    }
+
+    @Override
+    public void predictRaw(float[][] features, int from, int to, double[] output) {
+        predictor.predictRaw(features, from, to, output);
+    }
+
+    @Override
+    public void predictRaw(float[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictor.predictRaw(matrix, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public void predictRaw(DoubleBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictor.predictRaw(buffer, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public void predictRaw(ByteBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictor.predictRaw(buffer, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public double predictRawScalar(double[] features) {
+        sample(features);
+        return predictor.predictRawScalar(features);
+    }
+
+    @Override
+    public double predictRawScalar(float[] features) {
+        return predictor.predictRawScalar(features);
+    }
+
+    @Override
+    public void predictLeafIndex(double[] features, int[] output) {
+        predictor.predictLeafIndex(features, output);
+    }
+
+    @Override
+    public void predictLeafIndex(double[][] features, int from, int to, int[] output) {
+        predictor.predictLeafIndex(features, from, to, output);
+    }
+
+    public BranchProfile getProfile() {
+        return profile;
+    }
+
+    public int getRecompilations() {
+        return recompilations;
+    }
+
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Count leaves of one of every sample interval rows, and trigger recompilation once enough rows are sampled.
+     *
+     * @param features input feature
+     */
+    private void sample(double[] features) {
+        if (++requests % sampleInterval != 0) {
+            return;
+        }
+        int[] leaves = leafBuffer.get();
+        predictor.predictLeafIndex(features, leaves);
+        profile.record(leaves);
+        if (recompilations < maxRecompilations && profile.getSamples() - compiledSamples >= recompileSamples
+            && recompiling.compareAndSet(false, true)) {
+            executor.execute(this::recompile);
+        }
+    }
+
+    /**
+     * Recompile predictor from profiled model, the current predictor is kept if compilation fails.
+     */
+    private void recompile() {
+        try {
+            long samples = profile.getSamples();
+            Predictor recompiled = compiler.apply(profile.applyTo(treeModel));
+            compiledSamples = samples;
+            predictor = recompiled;
+            recompilations++;
+        } catch (RuntimeException e) {
+            // stop recompilation, since the same model would fail again
+            failure = e;
+            recompilations = maxRecompilations;
+        } finally {
+            recompiling.set(false);
+        }
+    }
+}
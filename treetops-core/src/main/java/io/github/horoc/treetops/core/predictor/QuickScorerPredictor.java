@@ -0,0 +1,406 @@
+package io.github.horoc.treetops.core.predictor;
+
+import io.github.horoc.treetops.core.model.DecisionType;
+import io.github.horoc.treetops.core.model.MissingType;
+import io.github.horoc.treetops.core.model.TreeModel;
+import io.github.horoc.treetops.core.model.TreeNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bitvector engine, refer to QuickScorer: a fast algorithm to rank documents with additive ensembles of regression trees. <br>
+ * Leaves of each tree are numbered from left to right, a bitvector of the tree keeps leaves which are still reachable. <br>
+ * Numerical split nodes are grouped by feature and sorted by threshold, for a feature value, only the false nodes (those which go right)
+ * are visited, which are a prefix of the sorted nodes, and each of them clears leaves of its left subtree from the bitvector.
+ * Exit leaf of a tree is the lowest set bit of its bitvector. <br>
+ * Traversal is free of data dependent branches except the end of each prefix, which pays off on many trees of many leaves. <br>
+ * Missing values of numerical nodes are handled by precomputed false nodes of NaN and zero values, and categorical nodes are evaluated one by one.
+ * Trees of more than 64 leaves span multiple words, each node then contributes a mask for every word of its left subtree.
+ * Prediction early stop is not supported, since all trees are traversed at once.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+@ThreadSafe
+public final class QuickScorerPredictor extends MetaDataHolder implements Predictor {
+
+    private final int numClass;
+
+    private final int numTrees;
+
+    private final int numTreePerIteration;
+
+    /**
+     * features used by numerical nodes, in ascending order.
+     */
+    private final int[] features;
+
+    /**
+     * nodes of features[i] are in [featureBegin[i], featureBegin[i + 1]) of node arrays, sorted by threshold.
+     */
+    private final int[] featureBegin;
+
+    private final double[] thresholds;
+
+    private final int[] nodeWords;
+
+    private final long[] nodeMasks;
+
+    /**
+     * missing type of node is zero, the node goes to default child if the feature is zero.
+     */
+    private final boolean[] zeroMissing;
+
+    /**
+     * masks of the false nodes of features[i] if the feature is NaN, in [nanBegin[i], nanBegin[i + 1]).
+     */
+    private final int[] nanBegin;
+
+    private final int[] nanWords;
+
+    private final long[] nanMasks;
+
+    /**
+     * masks of the false nodes of features[i] whose missing type is zero, if the feature is zero, in [zeroBegin[i], zeroBegin[i + 1]).
+     */
+    private final int[] zeroBegin;
+
+    private final int[] zeroWords;
+
+    private final long[] zeroMasks;
+
+    /**
+     * categorical nodes, which are evaluated one by one.
+     */
+    private final TreeNode[] catNodes;
+
+    private final int[] catFeatures;
+
+    private final int[] catWords;
+
+    private final long[] catMasks;
+
+    /**
+     * bitvector of trees before traversal, words of the t-th tree are in [treeWordBegin[t], treeWordBegin[t + 1]).
+     */
+    private final long[] initialWords;
+
+    private final int[] treeWordBegin;
+
+    /**
+     * leaf values in left to right order, leaves of the t-th tree start from treeLeafBegin[t].
+     */
+    private final double[] leafValues;
+
+    /**
+     * leaf index of official library, in left to right order.
+     */
+    private final int[] leafIndexes;
+
+    private final int[] treeLeafBegin;
+
+    private final int[] treeClasses;
+
+    /**
+     * per thread bitvector buffer.
+     */
+    private final ThreadLocal<long[]> wordBuffer;
+
+    public QuickScorerPredictor(TreeModel treeModel) {
+        List<TreeNode> trees = treeModel.getTrees();
+        this.numClass = treeModel.getNumClass();
+        this.numTrees = trees.size();
+        this.numTreePerIteration = Math.max(treeModel.getNumberTreePerIteration(), 1);
+        this.treeWordBegin = new int[numTrees + 1];
+        this.treeLeafBegin = new int[numTrees + 1];
+        this.treeClasses = new int[numTrees];
+
+        List<Mask> masks = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        for (int tree = 0; tree < numTrees; tree++) {
+            final int t = tree;
+            TreeNode root = trees.get(t);
+            treeClasses[t] = root.getTreeIndex() % numClass;
+            treeLeafBegin[t] = values.size();
+            int maskBegin = masks.size();
+            collect(root, treeLeafBegin[t], values, indexes, masks);
+            int numLeaves = values.size() - treeLeafBegin[t];
+            treeWordBegin[t + 1] = treeWordBegin[t] + (numLeaves + 63) / 64;
+            // word of mask is relative to the tree
+            masks.subList(maskBegin, masks.size()).forEach(m -> m.word += treeWordBegin[t]);
+        }
+        treeLeafBegin[numTrees] = values.size();
+        this.leafValues = values.stream().mapToDouble(v -> v).toArray();
+        this.leafIndexes = indexes.stream().mapToInt(i -> i).toArray();
+        this.initialWords = initialWords(treeWordBegin, treeLeafBegin);
+        this.wordBuffer = ThreadLocal.withInitial(() -> new long[initialWords.length]);
+
+        List<Mask> categorical = new ArrayList<>();
+        Map<Integer, List<Mask>> numerical = groupByFeature(masks, categorical);
+        int numFeatures = numerical.size();
+        this.features = new int[numFeatures];
+        this.featureBegin = new int[numFeatures + 1];
+        this.nanBegin = new int[numFeatures + 1];
+        this.zeroBegin = new int[numFeatures + 1];
+        List<Mask> sorted = new ArrayList<>();
+        List<Mask> nanFalse = new ArrayList<>();
+        List<Mask> zeroFalse = new ArrayList<>();
+        int i = 0;
+        for (Map.Entry<Integer, List<Mask>> entry : numerical.entrySet()) {
+            List<Mask> nodes = entry.getValue();
+            nodes.sort(Comparator.comparingDouble(m -> m.node.getThreshold()));
+            features[i] = entry.getKey();
+            sorted.addAll(nodes);
+            for (Mask mask : nodes) {
+                if (isNanFalse(mask.node)) {
+                    nanFalse.add(mask);
+                }
+                if (missingType(mask.node) == MissingType.Zero && !mask.node.isDefaultLeftDecision()) {
+                    zeroFalse.add(mask);
+                }
+            }
+            featureBegin[++i] = sorted.size();
+            nanBegin[i] = nanFalse.size();
+            zeroBegin[i] = zeroFalse.size();
+        }
+
+        this.thresholds = sorted.stream().mapToDouble(m -> m.node.getThreshold()).toArray();
+        this.nodeWords = words(sorted);
+        this.nodeMasks = masks(sorted);
+        this.zeroMissing = new boolean[sorted.size()];
+        for (int n = 0; n < sorted.size(); n++) {
+            zeroMissing[n] = missingType(sorted.get(n).node) == MissingType.Zero;
+        }
+        this.nanWords = words(nanFalse);
+        this.nanMasks = masks(nanFalse);
+        this.zeroWords = words(zeroFalse);
+        this.zeroMasks = masks(zeroFalse);
+        this.catNodes = categorical.stream().map(m -> m.node).toArray(TreeNode[]::new);
+        this.catFeatures = categorical.stream().mapToInt(m -> splitFeature(m.node)).toArray();
+        this.catWords = words(categorical);
+        this.catMasks = masks(categorical);
+    }
+
+    @Override
+    public double[] predictRaw(double[] features) {
+        double[] ret = new double[numClass];
+        predictRaw(features, ret);
+        return ret;
+    }
+
+    @Override
+    public void predictRaw(double[] features, double[] output) {
+        predictRaw(features, 0, output);
+    }
+
+    @Override
+    public void predictRaw(double[] features, int numIteration, double[] output) {
+        long[] words = traverse(features);
+        Arrays.fill(output, 0, numClass, 0.0);
+        int treeEnd = numIteration > 0 ? (int) Math.min(numTrees, (long) numIteration * numTreePerIteration) : numTrees;
+        for (int t = 0; t < treeEnd; t++) {
+            output[treeClasses[t]] += leafValues[treeLeafBegin[t] + exitLeaf(words, t)];
+        }
+    }
+
+    @Override
+    public double predictRawScalar(double[] features) {
+        long[] words = traverse(features);
+        double ret = 0.0;
+        for (int t = 0; t < numTrees; t++) {
+            ret += leafValues[treeLeafBegin[t] + exitLeaf(words, t)];
+        }
+        return ret;
+    }
+
+    @Override
+    public void predictLeafIndex(double[] features, int[] output) {
+        long[] words = traverse(features);
+        for (int t = 0; t < numTrees; t++) {
+            output[t] = leafIndexes[treeLeafBegin[t] + exitLeaf(words, t)];
+        }
+    }
+
+    /**
+     * Clear unreachable leaves of all trees.
+     *
+     * @param row input feature
+     * @return bitvector of the row, it is reused by the next row of the thread
+     */
+    private long[] traverse(double[] row) {
+        long[] words = wordBuffer.get();
+        System.arraycopy(initialWords, 0, words, 0, words.length);
+        for (int f = 0; f < features.length; f++) {
+            double value = row[features[f]];
+            if (Double.isNaN(value)) {
+                for (int n = nanBegin[f]; n < nanBegin[f + 1]; n++) {
+                    words[nanWords[n]] &= nanMasks[n];
+                }
+            } else if (value >= -DecisionType.K_ZERO_THRESHOLD && value <= DecisionType.K_ZERO_THRESHOLD) {
+                for (int n = featureBegin[f]; n < featureBegin[f + 1] && thresholds[n] < value; n++) {
+                    if (!zeroMissing[n]) {
+                        words[nodeWords[n]] &= nodeMasks[n];
+                    }
+                }
+                for (int n = zeroBegin[f]; n < zeroBegin[f + 1]; n++) {
+                    words[zeroWords[n]] &= zeroMasks[n];
+                }
+            } else {
+                for (int n = featureBegin[f]; n < featureBegin[f + 1] && thresholds[n] < value; n++) {
+                    words[nodeWords[n]] &= nodeMasks[n];
+                }
+            }
+        }
+        for (int n = 0; n < catNodes.length; n++) {
+            if (isCategoryFalse(catNodes[n], row[catFeatures[n]])) {
+                words[catWords[n]] &= catMasks[n];
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Lowest set bit of the bitvector of the tree.
+     *
+     * @param words bitvector
+     * @param tree  tree position in model
+     * @return position of the exit leaf in left to right order
+     */
+    private int exitLeaf(long[] words, int tree) {
+        int w = treeWordBegin[tree];
+        while (words[w] == 0L) {
+            w++;
+        }
+        return (w - treeWordBegin[tree]) * 64 + Long.numberOfTrailingZeros(words[w]);
+    }
+
+    /**
+     * Refer to {@link SimplePredictor}, NaN and negative value go right.
+     *
+     * @param node  categorical node
+     * @param value feature value
+     * @return true if the value goes right
+     */
+    private boolean isCategoryFalse(TreeNode node, double value) {
+        return Double.isNaN(value) || (int) value < 0
+            || !findCatBitset(node.getTreeIndex(), node.getCatBoundaryBegin(), node.getCatBoundaryEnd() - node.getCatBoundaryBegin(), value);
+    }
+
+    /**
+     * Number leaves of subtree from left to right, and collect masks of its split nodes.
+     *
+     * @param node      root of subtree
+     * @param treeBegin position of the first leaf of the tree
+     * @param values    leaf values
+     * @param indexes   leaf indexes
+     * @param masks     masks of split nodes
+     */
+    private static void collect(TreeNode node, int treeBegin, List<Double> values, List<Integer> indexes, List<Mask> masks) {
+        if (node.isLeaf()) {
+            values.add(node.getLeafValue());
+            indexes.add(~node.getNodeIndex());
+            return;
+        }
+        int leftBegin = values.size() - treeBegin;
+        collect(node.getLeftNode(), treeBegin, values, indexes, masks);
+        int leftEnd = values.size() - treeBegin;
+        for (int w = leftBegin / 64; w <= (leftEnd - 1) / 64; w++) {
+            int from = Math.max(leftBegin, w * 64) - w * 64;
+            int to = Math.min(leftEnd, w * 64 + 64) - w * 64;
+            long bits = to - from == 64 ? -1L : ((1L << (to - from)) - 1) << from;
+            masks.add(new Mask(node, w, ~bits));
+        }
+        collect(node.getRightNode(), treeBegin, values, indexes, masks);
+    }
+
+    /**
+     * Group numerical nodes by split feature.
+     *
+     * @param masks       masks of all split nodes
+     * @param categorical output of masks of categorical nodes
+     * @return masks of numerical nodes keyed by split feature, in ascending order of feature
+     */
+    private static Map<Integer, List<Mask>> groupByFeature(List<Mask> masks, List<Mask> categorical) {
+        Map<Integer, List<Mask>> numerical = new TreeMap<>();
+        for (Mask mask : masks) {
+            if (mask.node.isCategoryNode()) {
+                categorical.add(mask);
+            } else {
+                numerical.computeIfAbsent(splitFeature(mask.node), f -> new ArrayList<>()).add(mask);
+            }
+        }
+        return numerical;
+    }
+
+    /**
+     * All leaves of each tree are reachable before traversal.
+     *
+     * @param treeWordBegin begin word of each tree
+     * @param treeLeafBegin begin leaf of each tree
+     * @return initial bitvector
+     */
+    private static long[] initialWords(int[] treeWordBegin, int[] treeLeafBegin) {
+        long[] words = new long[treeWordBegin[treeWordBegin.length - 1]];
+        for (int t = 0; t < treeWordBegin.length - 1; t++) {
+            int numLeaves = treeLeafBegin[t + 1] - treeLeafBegin[t];
+            for (int w = treeWordBegin[t]; w < treeWordBegin[t + 1]; w++) {
+                int bits = Math.min(64, numLeaves - (w - treeWordBegin[t]) * 64);
+                words[w] = bits == 64 ? -1L : (1L << bits) - 1;
+            }
+        }
+        return words;
+    }
+
+    private static int splitFeature(TreeNode node) {
+        return node.getSplitFeatures().get(node.getNodeIndex());
+    }
+
+    /**
+     * Refer to {@link SimplePredictor}, NaN goes to default child unless missing type is none, in which case it is compared as zero.
+     *
+     * @param node numerical node
+     * @return true if NaN goes right
+     */
+    private static boolean isNanFalse(TreeNode node) {
+        if (missingType(node) == MissingType.None) {
+            return 0.0 > node.getThreshold();
+        }
+        return !node.isDefaultLeftDecision();
+    }
+
+    private static MissingType missingType(TreeNode node) {
+        return MissingType.ofMask((node.getDecisionType() >> 2) & 3);
+    }
+
+    private static int[] words(List<Mask> masks) {
+        return masks.stream().mapToInt(m -> m.word).toArray();
+    }
+
+    private static long[] masks(List<Mask> masks) {
+        return masks.stream().mapToLong(m -> m.mask).toArray();
+    }
+
+    /**
+     * Mask of a split node on a word of the bitvector, bits of its left subtree leaves are cleared.
+     */
+    private static final class Mask {
+
+        private final TreeNode node;
+
+        private final long mask;
+
+        private int word;
+
+        private Mask(TreeNode node, int word, long mask) {
+            this.node = node;
+            this.word = word;
+            this.mask = mask;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package io.github.horoc.treetops.core.predictor;
+
+import io.github.horoc.treetops.core.model.TreeModel;
+import io.github.horoc.treetops.core.model.TreeNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Intra-row parallel engine for very large ensembles. <br>
+ * Trees are partitioned into shards by iteration, shards of a row are scored concurrently on a dedicated pool,
+ * the first shard is scored by the caller thread, then partial sums of each class are reduced in shard order. <br>
+ * Thread handoff only pays off when a row is expensive enough, refer to {@link ShardedPredictor#adaptiveShardCount(TreeModel, int)}.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/8
+ */
+public final class ShardedPredictor implements Predictor {
+
+    /**
+     * Estimated node visits of a single shard, below which the shard is cheaper than thread handoff.
+     */
+    public static final int MIN_SHARD_NODE_VISITS = 8192;
+
+    private final Predictor[] shards;
+
+    /**
+     * first iteration of each shard in the origin model.
+     */
+    private final int[] beginIterations;
+
+    /**
+     * num of iterations of each shard.
+     */
+    private final int[] shardIterations;
+
+    private final int numTreePerIteration;
+
+    private final int numClass;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Create sharded predictor.
+     *
+     * @param shards      predictors of shards
+     * @param shardModels models of shards in iteration order, refer to {@link ShardedPredictor#partition(TreeModel, int)}
+     * @param numClass    num of class
+     * @param pool        pool of shards, a shared pool is used if it is null
+     */
+    public ShardedPredictor(Predictor[] shards, List<TreeModel> shardModels, int numClass, ForkJoinPool pool) {
+        if (Objects.isNull(shards) || shards.length == 0) {
+            throw new IllegalArgumentException("sharded predictor requires at least one shard");
+        }
+        if (Objects.isNull(shardModels) || shardModels.size() != shards.length) {
+            throw new IllegalArgumentException("sharded predictor requires a model of each shard");
+        }
+        this.shards = shards;
+        this.numTreePerIteration = Math.max(shardModels.get(0).getNumberTreePerIteration(), 1);
+        this.beginIterations = new int[shards.length];
+        this.shardIterations = new int[shards.length];
+        int iterations = 0;
+        for (int s = 0; s < shards.length; s++) {
+            beginIterations[s] = iterations;
+            shardIterations[s] = numIterations(shardModels.get(s));
+            iterations += shardIterations[s];
+        }
+        this.numClass = numClass;
+        this.pool = Objects.isNull(pool) ? DefaultPoolHolder.POOL : pool;
+    }
+
+    /**
+     * Estimate shard count by node visits of a row, each shard should cost at least {@link ShardedPredictor#MIN_SHARD_NODE_VISITS}.
+     *
+     * @param treeModel   tree model
+     * @param parallelism parallelism of the pool
+     * @return shard count, 1 if sharding does not pay off
+     */
+    public static int adaptiveShardCount(TreeModel treeModel, int parallelism) {
+        double nodeVisits = 0.0;
+        for (TreeNode root : treeModel.getTrees()) {
+            nodeVisits += expectedDepth(root);
+        }
+        int shardCount = (int) Math.min(parallelism, nodeVisits / MIN_SHARD_NODE_VISITS);
+        return Math.max(1, Math.min(shardCount, numIterations(treeModel)));
+    }
+
+    /**
+     * Partition trees into shards by iteration, each shard contains contiguous iterations.
+     *
+     * @param treeModel  tree model
+     * @param shardCount num of shards
+     * @return shard models
+     */
+    public static List<TreeModel> partition(TreeModel treeModel, int shardCount) {
+        int iterations = numIterations(treeModel);
+        int count = Math.max(1, Math.min(shardCount, iterations));
+        List<TreeModel> models = new ArrayList<>(count);
+        for (int s = 0; s < count; s++) {
+            int begin = (int) ((long) iterations * s / count);
+            int end = (int) ((long) iterations * (s + 1) / count);
+            models.add(treeModel.copyWithIterations(begin, end - begin));
+        }
+        return models;
+    }
+
+    @Override
+    public double[] predictRaw(double[] features) {
+        double[] ret = new double[numClass];
+        predictRaw(features, ret);
+        return ret;
+    }
+
+    @Override
+    public void predictRaw(double[] features, double[] output) {
+        predictRaw(features, 0, output);
+    }
+
+    /**
+     * Each shard scores at most its own iterations within the limit, shards beyond the limit are skipped.
+     */
+    @Override
+    public void predictRaw(double[] features, int numIteration, double[] output) {
+        double[][] partials = new double[shards.length][];
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[shards.length];
+        for (int s = 1; s < shards.length; s++) {
+            int limit = shardLimit(s, numIteration);
+            if (limit < 0) {
+                break;
+            }
+            Predictor shard = shards[s];
+            double[] partial = new double[numClass];
+            partials[s] = partial;
+            tasks[s] = pool.submit(() -> scoreShard(shard, features, limit, partial));
+        }
+        scoreShard(shards[0], features, shardLimit(0, numIteration), output);
+        for (int s = 1; s < shards.length && tasks[s] != null; s++) {
+            tasks[s].join();
+            for (int k = 0; k < numClass; k++) {
+                output[k] += partials[s][k];
+            }
+        }
+    }
+
+    /**
+     * Each shard scores the whole batch with its tree-outer/row-inner iteration, then partial sums are reduced.
+     */
+    @Override
+    public void predictRaw(double[][] features, int from, int to, double[] output) {
+        double[][] rows = from == 0 ? features : Arrays.copyOfRange(features, from, to);
+        double[][] partials = new double[shards.length][];
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[shards.length];
+        for (int s = 1; s < shards.length; s++) {
+            Predictor shard = shards[s];
+            // partial output of row i is written into partial[(i - from) * num_class, (i - from + 1) * num_class)
+            double[] partial = new double[(to - from) * numClass];
+            partials[s] = partial;
+            tasks[s] = pool.submit(() -> shard.predictRaw(rows, 0, to - from, partial));
+        }
+        shards[0].predictRaw(features, from, to, output);
+        for (int s = 1; s < shards.length; s++) {
+            tasks[s].join();
+            double[] partial = partials[s];
+            int offset = from * numClass;
+            for (int i = 0; i < partial.length; i++) {
+                output[offset + i] += partial[i];
+            }
+        }
+    }
+
+    /**
+     * Each shard scores the row by its own scalar prediction, no raw output array is allocated per shard.
+     */
+    @Override
+    public double predictRawScalar(double[] features) {
+        double[] partials = new double[shards.length];
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[shards.length];
+        for (int s = 1; s < shards.length; s++) {
+            Predictor shard = shards[s];
+            int index = s;
+            tasks[s] = pool.submit(() -> {
+                partials[index] = shard.predictRawScalar(features);
+            });
+        }
+        double ret = shards[0].predictRawScalar(features);
+        for (int s = 1; s < shards.length; s++) {
+            tasks[s].join();
+            ret += partials[s];
+        }
+        return ret;
+    }
+
+    /**
+     * Leaf indices of each shard are concatenated in iteration order.
+     */
+    @Override
+    public void predictLeafIndex(double[] features, int[] output) {
+        int[][] partials = new int[shards.length][];
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[shards.length];
+        for (int s = 1; s < shards.length; s++) {
+            Predictor shard = shards[s];
+            int[] partial = new int[shardIterations[s] * numTreePerIteration];
+            partials[s] = partial;
+            tasks[s] = pool.submit(() -> shard.predictLeafIndex(features, partial));
+        }
+        shards[0].predictLeafIndex(features, output);
+        for (int s = 1; s < shards.length; s++) {
+            tasks[s].join();
+            System.arraycopy(partials[s], 0, output, beginIterations[s] * numTreePerIteration, partials[s].length);
+        }
+    }
+
+    /**
+     * Each shard scores the whole batch, then leaf indices of each row are concatenated in iteration order.
+     */
+    @Override
+    public void predictLeafIndex(double[][] features, int from, int to, int[] output) {
+        double[][] rows = from == 0 ? features : Arrays.copyOfRange(features, from, to);
+        int[][] partials = new int[shards.length][];
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[shards.length];
+        for (int s = 0; s < shards.length; s++) {
+            partials[s] = new int[(to - from) * shardIterations[s] * numTreePerIteration];
+        }
+        for (int s = 1; s < shards.length; s++) {
+            Predictor shard = shards[s];
+            int[] partial = partials[s];
+            tasks[s] = pool.submit(() -> shard.predictLeafIndex(rows, 0, to - from, partial));
+        }
+        shards[0].predictLeafIndex(rows, 0, to - from, partials[0]);
+        int numTrees = (beginIterations[shards.length - 1] + shardIterations[shards.length - 1]) * numTreePerIteration;
+        for (int s = 0; s < shards.length; s++) {
+            if (s > 0) {
+                tasks[s].join();
+            }
+            int shardTrees = shardIterations[s] * numTreePerIteration;
+            for (int i = 0; i < to - from; i++) {
+                System.arraycopy(partials[s], i * shardTrees, output, (from + i) * numTrees + beginIterations[s] * numTreePerIteration, shardTrees);
+            }
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Iteration limit of a shard.
+     *
+     * @param shard        shard index
+     * @param numIteration iteration limit of origin model, all iterations are scored if it is not positive
+     * @return 0 if all iterations of the shard are scored, -1 if the shard is beyond the limit
+     */
+    private int shardLimit(int shard, int numIteration) {
+        if (numIteration <= 0) {
+            return 0;
+        }
+        int remaining = numIteration - beginIterations[shard];
+        if (remaining <= 0) {
+            return -1;
+        }
+        return remaining >= shardIterations[shard] ? 0 : remaining;
+    }
+
+    private static void scoreShard(Predictor shard, double[] features, int limit, double[] output) {
+        if (limit == 0) {
+            shard.predictRaw(features, output);
+        } else {
+            shard.predictRaw(features, limit, output);
+        }
+    }
+
+    // expected num of visited nodes from root to leaf, weighted by data count of leaves if available
+    private static double expectedDepth(TreeNode root) {
+        List<TreeNode> leaves = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        collectLeaves(root, 0, leaves, depths);
+        double total = 0.0;
+        double weighted = 0.0;
+        for (int i = 0; i < leaves.size(); i++) {
+            double weight = root.getDataCount() > 0 ? leaves.get(i).getDataCount() : 1.0;
+            total += weight;
+            weighted += weight * depths.get(i);
+        }
+        return total <= 0 ? 0.0 : weighted / total;
+    }
+
+    private static void collectLeaves(TreeNode node, int depth, List<TreeNode> leaves, List<Integer> depths) {
+        if (node.isLeaf()) {
+            leaves.add(node);
+            depths.add(depth);
+            return;
+        }
+        collectLeaves(node.getLeftNode(), depth + 1, leaves, depths);
+        collectLeaves(node.getRightNode(), depth + 1, leaves, depths);
+    }
+
+    private static int numIterations(TreeModel treeModel) {
+        return treeModel.getTrees().size() / Math.max(treeModel.getNumberTreePerIteration(), 1);
+    }
+
+    /**
+     * Dedicated pool shared by sharded predictors which are created without a pool, threads are created lazily.
+     */
+    private static final class DefaultPoolHolder {
+
+        private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+}
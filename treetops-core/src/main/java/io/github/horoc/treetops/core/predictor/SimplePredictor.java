@@ -1,8 +1,13 @@
 package io.github.horoc.treetops.core.predictor;
 
+import io.github.horoc.treetops.core.model.DecisionType;
 import io.github.horoc.treetops.core.model.MissingType;
 import io.github.horoc.treetops.core.model.TreeModel;
 import io.github.horoc.treetops.core.model.TreeNode;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Simple predictor implementation, follow the LightGBM cpp implementation.
@@ -12,40 +17,254 @@ import io.github.horoc.treetops.core.model.TreeNode;
  */
 public class SimplePredictor extends MetaDataHolder implements Predictor {
 
-    private static final double K_ZERO_THRESHOLD = 1e-35f;
-
     private final TreeModel treeModel;
 
+    /**
+     * prediction early stop config, null if disabled.
+     */
+    private final PredictionEarlyStop earlyStop;
+
     public SimplePredictor(TreeModel treeModel) {
+        this(treeModel, null);
+    }
+
+    public SimplePredictor(TreeModel treeModel, PredictionEarlyStop earlyStop) {
         this.treeModel = treeModel;
+        this.earlyStop = earlyStop;
     }
 
     @Override
     public double[] predictRaw(double[] features) {
         double[] ret = new double[treeModel.getNumClass()];
-        for (TreeNode root : treeModel.getTrees()) {
-            ret[root.getTreeIndex() % treeModel.getNumClass()] += this.decision(root, features);
+        predictRaw(features, ret);
+        return ret;
+    }
+
+    @Override
+    public void predictRaw(double[] features, double[] output) {
+        predictRaw(features, 0, output);
+    }
+
+    @Override
+    public void predictRaw(double[] features, int numIteration, double[] output) {
+        int numClass = treeModel.getNumClass();
+        Arrays.fill(output, 0, numClass, 0.0);
+        List<TreeNode> trees = treeModel.getTrees();
+        int treeEnd = trees.size();
+        if (numIteration > 0) {
+            treeEnd = (int) Math.min(treeEnd, (long) numIteration * Math.max(treeModel.getNumberTreePerIteration(), 1));
+        }
+        for (int t = 0; t < treeEnd; t++) {
+            TreeNode root = trees.get(t);
+            output[root.getTreeIndex() % numClass] += this.decision(root, features, 0, 1);
+            if (earlyStop != null && earlyStop.isStopped(t, output, 0)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void predictRaw(double[][] features, int from, int to, double[] output) {
+        predictRows(from, to, output, (root, i) -> this.decision(root, features[i], 0, 1));
+    }
+
+    @Override
+    public void predictRaw(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictRows(0, numRows, output, (root, i) -> this.decision(root, matrix, offset + i * rowStride, featureStride));
+    }
+
+    @Override
+    public double[] predictRaw(float[] features) {
+        double[] ret = new double[treeModel.getNumClass()];
+        predictRaw(features, ret);
+        return ret;
+    }
+
+    @Override
+    public void predictRaw(float[] features, double[] output) {
+        int numClass = treeModel.getNumClass();
+        Arrays.fill(output, 0, numClass, 0.0);
+        List<TreeNode> trees = treeModel.getTrees();
+        for (int t = 0; t < trees.size(); t++) {
+            TreeNode root = trees.get(t);
+            output[root.getTreeIndex() % numClass] += this.decision(root, features, 0, 1);
+            if (earlyStop != null && earlyStop.isStopped(t, output, 0)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void predictRaw(float[][] features, int from, int to, double[] output) {
+        predictRows(from, to, output, (root, i) -> this.decision(root, features[i], 0, 1));
+    }
+
+    @Override
+    public void predictRaw(float[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictRows(0, numRows, output, (root, i) -> this.decision(root, matrix, offset + i * rowStride, featureStride));
+    }
+
+    @Override
+    public void predictRaw(DoubleBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictRows(0, numRows, output, (root, i) -> this.decision(root, buffer, offset + i * rowStride, featureStride));
+    }
+
+    @Override
+    public void predictRaw(ByteBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictRows(0, numRows, output, (root, i) -> this.decision(root, buffer, offset + i * rowStride, featureStride));
+    }
+
+    @Override
+    public double predictRawScalar(double[] features) {
+        double ret = 0.0;
+        List<TreeNode> trees = treeModel.getTrees();
+        for (int t = 0; t < trees.size(); t++) {
+            ret += this.decision(trees.get(t), features, 0, 1);
+            if (earlyStop != null && earlyStop.isStopped(t, ret)) {
+                break;
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public double predictRawScalar(float[] features) {
+        double ret = 0.0;
+        List<TreeNode> trees = treeModel.getTrees();
+        for (int t = 0; t < trees.size(); t++) {
+            ret += this.decision(trees.get(t), features, 0, 1);
+            if (earlyStop != null && earlyStop.isStopped(t, ret)) {
+                break;
+            }
         }
         return ret;
     }
 
+    @Override
+    public void predictLeafIndex(double[] features, int[] output) {
+        List<TreeNode> trees = treeModel.getTrees();
+        for (int t = 0; t < trees.size(); t++) {
+            output[t] = leafIndex(trees.get(t), features);
+        }
+    }
+
+    @Override
+    public void predictLeafIndex(double[][] features, int from, int to, int[] output) {
+        List<TreeNode> trees = treeModel.getTrees();
+        int numTrees = trees.size();
+        for (int t = 0; t < numTrees; t++) {
+            TreeNode root = trees.get(t);
+            for (int i = from; i < to; i++) {
+                output[i * numTrees + t] = leafIndex(root, features[i]);
+            }
+        }
+    }
+
+    /**
+     * Tree-outer/row-inner iteration, keep nodes of a single tree hot in cache across the whole batch.
+     * In early stop mode, each row stops independently.
+     *
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param output   raw values, output of the i-th row starts from i * num_class
+     * @param decision leaf value of a tree for the i-th row
+     */
+    private void predictRows(int from, int to, double[] output, RowDecision decision) {
+        int numClass = treeModel.getNumClass();
+        Arrays.fill(output, from * numClass, to * numClass, 0.0);
+        boolean[] stopped = earlyStop == null ? null : new boolean[to - from];
+        List<TreeNode> trees = treeModel.getTrees();
+        for (int t = 0; t < trees.size(); t++) {
+            TreeNode root = trees.get(t);
+            int classIndex = root.getTreeIndex() % numClass;
+            for (int i = from; i < to; i++) {
+                if (stopped == null || !stopped[i - from]) {
+                    output[i * numClass + classIndex] += decision.decide(root, i);
+                }
+            }
+            if (stopped != null) {
+                earlyStop.markStoppedRows(t, output, from, to, stopped);
+            }
+        }
+    }
+
+    /**
+     * Refer to official library: microsoft/LightGBM/include/LightGBM/tree.h#Tree::GetLeaf,
+     * leaf node index is stored as ~leaf_index.
+     *
+     * @param root     root of tree
+     * @param features input data
+     * @return leaf index of this tree
+     */
+    private int leafIndex(TreeNode root, double[] features) {
+        TreeNode treeNode = root;
+        while (!treeNode.isLeaf()) {
+            treeNode = nextNode(treeNode, features[splitFeature(treeNode)]);
+        }
+        return ~treeNode.getNodeIndex();
+    }
+
     /**
      * Refer to official library: microsoft/LightGBM/include/LightGBM/tree.h#Tree::Decision.
      * <p></p>
      *
-     * @param treeNode tree node meta data
+     * @param root     root of tree
      * @param features input data
-     * @return decision value of this node
+     * @param base     index of the first feature of the row
+     * @param stride   distance between two adjacent features of the row
+     * @return leaf value of this tree
      */
-    private double decision(TreeNode treeNode, double[] features) {
-        if (treeNode.isLeaf()) {
-            return treeNode.getLeafValue();
+    private double decision(TreeNode root, double[] features, int base, int stride) {
+        TreeNode treeNode = root;
+        while (!treeNode.isLeaf()) {
+            treeNode = nextNode(treeNode, features[base + splitFeature(treeNode) * stride]);
         }
+        return treeNode.getLeafValue();
+    }
 
+    // float version of decision, value is widened to double once loaded
+    private double decision(TreeNode root, float[] features, int base, int stride) {
+        TreeNode treeNode = root;
+        while (!treeNode.isLeaf()) {
+            treeNode = nextNode(treeNode, features[base + splitFeature(treeNode) * stride]);
+        }
+        return treeNode.getLeafValue();
+    }
+
+    // double buffer version of decision, value is read by absolute get
+    private double decision(TreeNode root, DoubleBuffer features, int base, int stride) {
+        TreeNode treeNode = root;
+        while (!treeNode.isLeaf()) {
+            treeNode = nextNode(treeNode, features.get(base + splitFeature(treeNode) * stride));
+        }
+        return treeNode.getLeafValue();
+    }
+
+    // byte buffer version of decision, base and stride are in bytes
+    private double decision(TreeNode root, ByteBuffer features, int base, int stride) {
+        TreeNode treeNode = root;
+        while (!treeNode.isLeaf()) {
+            treeNode = nextNode(treeNode, features.getDouble(base + splitFeature(treeNode) * stride));
+        }
+        return treeNode.getLeafValue();
+    }
+
+    int splitFeature(TreeNode treeNode) {
+        return treeNode.getSplitFeatures().get(treeNode.getNodeIndex());
+    }
+
+    /**
+     * Child node which the feature value goes to, shared with {@link TreeShap}.
+     *
+     * @param treeNode non-leaf tree node
+     * @param feature  feature value of split feature
+     * @return next node
+     */
+    TreeNode nextNode(TreeNode treeNode, double feature) {
         if (treeNode.isCategoryNode()) {
-            return categoricalDecision(treeNode, features);
+            return categoricalDecision(treeNode, feature);
         } else {
-            return numericalDecision(treeNode, features);
+            return numericalDecision(treeNode, feature);
         }
     }
 
@@ -54,13 +273,13 @@ public class SimplePredictor extends MetaDataHolder implements Predictor {
      * <p></p>
      *
      * @param treeNode tree node meta data
-     * @param features input data
-     * @return decision value of this node
+     * @param value    feature value of split feature
+     * @return next node
      */
-    private double numericalDecision(TreeNode treeNode, double[] features) {
+    private TreeNode numericalDecision(TreeNode treeNode, double value) {
         MissingType missingType = MissingType.ofMask((treeNode.getDecisionType() >> 2) & 3);
         double threshold = treeNode.getThreshold();
-        double feature = features[treeNode.getSplitFeatures().get(treeNode.getNodeIndex())];
+        double feature = value;
         if (Double.isNaN(feature) && missingType != MissingType.Nan) {
             feature = 0.0;
         }
@@ -68,18 +287,10 @@ public class SimplePredictor extends MetaDataHolder implements Predictor {
         boolean isZeroMiss = missingType == MissingType.Zero && isZero(feature);
         boolean isNanMiss = missingType == MissingType.Nan && Double.isNaN(feature);
         if (isZeroMiss || isNanMiss) {
-            if (treeNode.isDefaultLeftDecision()) {
-                return decision(treeNode.getLeftNode(), features);
-            } else {
-                return decision(treeNode.getRightNode(), features);
-            }
+            return treeNode.isDefaultLeftDecision() ? treeNode.getLeftNode() : treeNode.getRightNode();
         }
 
-        if (feature <= threshold) {
-            return decision(treeNode.getLeftNode(), features);
-        } else {
-            return decision(treeNode.getRightNode(), features);
-        }
+        return feature <= threshold ? treeNode.getLeftNode() : treeNode.getRightNode();
     }
 
     /**
@@ -87,27 +298,37 @@ public class SimplePredictor extends MetaDataHolder implements Predictor {
      * <p></p>
      *
      * @param treeNode tree node meta data
-     * @param features input data
-     * @return decision value of this node
+     * @param feature  feature value of split feature
+     * @return next node
      */
-    private double categoricalDecision(TreeNode treeNode, double[] features) {
-        double feature = features[treeNode.getSplitFeatures().get(treeNode.getNodeIndex())];
-        if (Double.isNaN(feature)) {
-            return decision(treeNode.getRightNode(), features);
-        } else {
-            int val = (int) feature;
-            if (val < 0) {
-                return decision(treeNode.getRightNode(), features);
-            }
+    private TreeNode categoricalDecision(TreeNode treeNode, double feature) {
+        if (Double.isNaN(feature) || (int) feature < 0) {
+            return treeNode.getRightNode();
         }
         if (findCatBitset(treeNode.getTreeIndex(), treeNode.getCatBoundaryBegin(),
             treeNode.getCatBoundaryEnd() - treeNode.getCatBoundaryBegin(), feature)) {
-            return decision(treeNode.getLeftNode(), features);
+            return treeNode.getLeftNode();
         }
-        return decision(treeNode.getRightNode(), features);
+        return treeNode.getRightNode();
     }
 
     private boolean isZero(double val) {
-        return val >= -K_ZERO_THRESHOLD && val <= K_ZERO_THRESHOLD;
+        return val >= -DecisionType.K_ZERO_THRESHOLD && val <= DecisionType.K_ZERO_THRESHOLD;
+    }
+
+    /**
+     * Decision of a single row of batch input, row is addressed by its index in the batch.
+     */
+    @FunctionalInterface
+    private interface RowDecision {
+
+        /**
+         * Score a tree for a single row.
+         *
+         * @param root root of tree
+         * @param row  row index in the batch
+         * @return leaf value of this tree
+         */
+        double decide(TreeNode root, int row);
     }
 }
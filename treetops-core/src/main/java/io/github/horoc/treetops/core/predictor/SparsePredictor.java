@@ -0,0 +1,150 @@
+package io.github.horoc.treetops.core.predictor;
+
+import io.github.horoc.treetops.core.model.TreeModel;
+import io.github.horoc.treetops.core.model.TreeNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sparse input engine. <br>
+ * Only features which the model actually splits on are resolved from the input, they are gathered into
+ * a compact feature array, which is scored by a predictor built from the compact model, see {@link SparsePredictor#compactModel(TreeModel, int[])}.
+ * Absent features are treated as 0.0, the same as LightGBM sparse input.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/3/18
+ */
+public final class SparsePredictor implements Predictor {
+
+    /**
+     * sorted indices of features used by split nodes, compact feature i refers to origin feature usedFeatures[i].
+     */
+    private final int[] usedFeatures;
+
+    /**
+     * predictor of compact model.
+     */
+    private final Predictor compactPredictor;
+
+    private final int numClass;
+
+    /**
+     * per thread compact feature buffer, avoid allocation of each prediction.
+     */
+    private final ThreadLocal<double[]> compactBuffer;
+
+    public SparsePredictor(int[] usedFeatures, Predictor compactPredictor, int numClass) {
+        this.usedFeatures = usedFeatures;
+        this.compactPredictor = compactPredictor;
+        this.numClass = numClass;
+        this.compactBuffer = ThreadLocal.withInitial(() -> new double[Math.max(usedFeatures.length, 1)]);
+    }
+
+    /**
+     * Collect features which are used by split nodes.
+     *
+     * @param treeModel tree model
+     * @return sorted feature indices
+     */
+    public static int[] usedFeatures(TreeModel treeModel) {
+        Set<Integer> features = new HashSet<>();
+        for (TreeNode root : treeModel.getTrees()) {
+            if (root.getSplitFeatures() != null) {
+                features.addAll(root.getSplitFeatures());
+            }
+        }
+        return features.stream().mapToInt(i -> i).sorted().toArray();
+    }
+
+    /**
+     * Copy the model and rewrite split feature of each node to its position in used features.
+     *
+     * @param treeModel    origin tree model
+     * @param usedFeatures sorted feature indices, refer to {@link SparsePredictor#usedFeatures(TreeModel)}
+     * @return compact model
+     */
+    public static TreeModel compactModel(TreeModel treeModel, int[] usedFeatures) {
+        List<TreeNode> trees = new ArrayList<>(treeModel.getTrees().size());
+        for (TreeNode root : treeModel.getTrees()) {
+            TreeNode copied = root.copyTree();
+            List<Integer> splitFeatures = copied.getSplitFeatures();
+            if (splitFeatures != null) {
+                splitFeatures.replaceAll(feature -> Arrays.binarySearch(usedFeatures, feature));
+            }
+            trees.add(copied);
+        }
+        TreeModel compact = treeModel.copyWithTrees(trees);
+        compact.setMaxFeatureIndex(usedFeatures.length - 1);
+        return compact;
+    }
+
+    @Override
+    public double[] predictRaw(double[] features) {
+        double[] ret = new double[numClass];
+        predictRaw(features, ret);
+        return ret;
+    }
+
+    @Override
+    public void predictRaw(double[] features, double[] output) {
+        compactPredictor.predictRaw(compact(features), output);
+    }
+
+    @Override
+    public void predictRaw(double[] features, int numIteration, double[] output) {
+        compactPredictor.predictRaw(compact(features), numIteration, output);
+    }
+
+    @Override
+    public double[] predictRaw(SparseVector features) {
+        double[] ret = new double[numClass];
+        predictRaw(features, ret);
+        return ret;
+    }
+
+    /**
+     * Merge sorted input indices with sorted used features, cost is O(nnz + used features).
+     */
+    @Override
+    public void predictRaw(SparseVector features, double[] output) {
+        double[] compact = compactBuffer.get();
+        int[] indices = features.getIndices();
+        double[] values = features.getValues();
+        int size = features.getSize();
+        int j = 0;
+        for (int i = 0; i < usedFeatures.length; i++) {
+            int feature = usedFeatures[i];
+            while (j < size && indices[j] < feature) {
+                j++;
+            }
+            compact[i] = j < size && indices[j] == feature ? values[j] : 0.0;
+        }
+        compactPredictor.predictRaw(compact, output);
+    }
+
+    @Override
+    public double predictRawScalar(double[] features) {
+        return compactPredictor.predictRawScalar(compact(features));
+    }
+
+    @Override
+    public void predictLeafIndex(double[] features, int[] output) {
+        compactPredictor.predictLeafIndex(compact(features), output);
+    }
+
+    public int[] getUsedFeatures() {
+        return usedFeatures.clone();
+    }
+
+    private double[] compact(double[] features) {
+        double[] compact = compactBuffer.get();
+        for (int i = 0; i < usedFeatures.length; i++) {
+            int feature = usedFeatures[i];
+            compact[i] = feature < features.length ? features[feature] : 0.0;
+        }
+        return compact;
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.horoc.treetops.core.predictor;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Reusable sparse feature vector, feature indices are stored in strictly ascending order. <br>
+ * Features which are absent from the vector are treated as 0.0, the same as LightGBM sparse input,
+ * thus they follow the missing value semantic of the split node, e.g. {@link io.github.horoc.treetops.core.model.MissingType#Zero}.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/3/18
+ */
+public final class SparseVector {
+
+    private int[] indices;
+
+    private double[] values;
+
+    private int size;
+
+    public SparseVector() {
+        this(16);
+    }
+
+    public SparseVector(int capacity) {
+        this.indices = new int[capacity];
+        this.values = new double[capacity];
+    }
+
+    /**
+     * Wrap existing arrays without copy.
+     *
+     * @param indices feature indices, should be strictly ascending
+     * @param values  feature values
+     * @param size    num of non-absent features
+     */
+    public SparseVector(int[] indices, double[] values, int size) {
+        if (Objects.isNull(indices) || Objects.isNull(values) || size < 0 || size > indices.length || size > values.length) {
+            throw new IllegalArgumentException("sparse vector size does not match the indices and values");
+        }
+        for (int i = 0; i < size; i++) {
+            if (indices[i] < 0 || i > 0 && indices[i] <= indices[i - 1]) {
+                throw new IllegalArgumentException("sparse vector indices should be non-negative and strictly ascending");
+            }
+        }
+        this.indices = indices;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Append a feature, index should be greater than the last appended one.
+     *
+     * @param index feature index
+     * @param value feature value
+     */
+    public void add(int index, double value) {
+        if (index < 0 || size > 0 && index <= indices[size - 1]) {
+            throw new IllegalArgumentException("sparse vector indices should be non-negative and strictly ascending");
+        }
+        if (size == indices.length) {
+            int capacity = Math.max(size * 2, 4);
+            indices = Arrays.copyOf(indices, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        indices[size] = index;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Remove all features, underlying arrays are kept for reuse.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public double[] getValues() {
+        return values;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Largest feature index of the vector.
+     *
+     * @return -1 if the vector is empty
+     */
+    public int getMaxIndex() {
+        return size == 0 ? -1 : indices[size - 1];
+    }
+}
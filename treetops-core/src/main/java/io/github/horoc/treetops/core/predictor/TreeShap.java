@@ -0,0 +1,268 @@
+package io.github.horoc.treetops.core.predictor;
+
+import io.github.horoc.treetops.core.model.TreeModel;
+import io.github.horoc.treetops.core.model.TreeNode;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Feature contribution engine based on TreeSHAP algorithm,
+ * refer to official library: microsoft/LightGBM/src/io/tree.cpp#Tree::TreeSHAP. <br>
+ * Contributions of row are laid out the same as pred_contrib of official library:
+ * num_class blocks of (num_features + 1) values, the last value of each block is the expected value (bias).
+ * Sum of each block equals to the raw prediction of the class.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/1
+ */
+public final class TreeShap {
+
+    private final TreeModel treeModel;
+
+    /**
+     * decision of split node follows simple predictor, including missing value and category semantic.
+     */
+    private final SimplePredictor decisionPredictor;
+
+    private final int numClass;
+
+    private final int numFeatures;
+
+    /**
+     * expected value of each tree, weighted by data count of leaves.
+     */
+    private final double[] expectedValues;
+
+    /**
+     * per thread path workspace, sized by the max depth of all trees, so that recursion does not allocate.
+     */
+    private final ThreadLocal<PathWorkspace> workspace;
+
+    public TreeShap(TreeModel treeModel) {
+        this.treeModel = treeModel;
+        this.decisionPredictor = new SimplePredictor(treeModel);
+        this.decisionPredictor.initialize(treeModel);
+        this.numClass = treeModel.getNumClass();
+        this.numFeatures = treeModel.getMaxFeatureIndex() + 1;
+
+        List<TreeNode> trees = treeModel.getTrees();
+        this.expectedValues = new double[trees.size()];
+        int maxDepth = 0;
+        for (int t = 0; t < trees.size(); t++) {
+            TreeNode root = trees.get(t);
+            if (!root.isLeaf() && root.getDataCount() <= 0) {
+                throw new IllegalArgumentException("data count of tree nodes is required by TreeSHAP, tree index: " + root.getTreeIndex());
+            }
+            expectedValues[t] = expectedValue(root, root.getDataCount());
+            maxDepth = Math.max(maxDepth, depth(root));
+        }
+        int maxPathLength = maxDepth + 1;
+        int pathSize = maxPathLength * (maxPathLength + 1) / 2;
+        this.workspace = ThreadLocal.withInitial(() -> new PathWorkspace(pathSize));
+    }
+
+    /**
+     * Size of contributions of a single row.
+     *
+     * @return num_class * (num_features + 1)
+     */
+    public int getContribSize() {
+        return numClass * (numFeatures + 1);
+    }
+
+    /**
+     * Refer to official library: microsoft/LightGBM/src/boosting/gbdt_prediction.cpp#GBDT::PredictContrib.
+     *
+     * @param features input feature, size of features should be equals to max_feature_idx
+     * @param output   output buffer, size of output should not be less than {@link TreeShap#getContribSize()}
+     */
+    public void predictContrib(double[] features, double[] output) {
+        predictContrib(features, output, 0);
+    }
+
+    /**
+     * Batch version of {@link TreeShap#predictContrib(double[], double[])}, score rows in range [from, to). <br>
+     * Contributions of row i are written into output[i * contrib_size, (i + 1) * contrib_size).
+     *
+     * @param features input rows
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param output   output buffer
+     */
+    public void predictContrib(double[][] features, int from, int to, double[] output) {
+        int contribSize = getContribSize();
+        for (int i = from; i < to; i++) {
+            predictContrib(features[i], output, i * contribSize);
+        }
+    }
+
+    /**
+     * Multi-threaded version of {@link TreeShap#predictContrib(double[][], int, int, double[])}, rows are scored in the given pool,
+     * refer to {@link ParallelBatchTask}.
+     *
+     * @param features input rows
+     * @param from     first row index, inclusive
+     * @param to       last row index, exclusive
+     * @param output   output buffer
+     * @param pool     fork join pool
+     */
+    public void predictContrib(double[][] features, int from, int to, double[] output, ForkJoinPool pool) {
+        int rowBytes = from < to ? (features[from].length + getContribSize()) * Double.BYTES : 0;
+        ParallelBatchTask.invoke(pool, from, to, rowBytes, (begin, end) -> predictContrib(features, begin, end, output));
+    }
+
+    private void predictContrib(double[] features, double[] output, int offset) {
+        Arrays.fill(output, offset, offset + getContribSize(), 0.0);
+        PathWorkspace path = workspace.get();
+        List<TreeNode> trees = treeModel.getTrees();
+        for (int t = 0; t < trees.size(); t++) {
+            TreeNode root = trees.get(t);
+            int base = offset + root.getTreeIndex() % numClass * (numFeatures + 1);
+            output[base + numFeatures] += expectedValues[t];
+            if (!root.isLeaf()) {
+                treeShap(features, output, base, path, root, 0, 0, 1.0, 1.0, -1);
+            }
+        }
+    }
+
+    // Refer to official library: microsoft/LightGBM/src/io/tree.cpp#Tree::TreeSHAP,
+    // unique path of current node is stored in workspace at [pathOffset + uniqueDepth, pathOffset + 2 * uniqueDepth],
+    // right after the path of parent node.
+    private void treeShap(double[] features, double[] phi, int phiOffset, PathWorkspace path, TreeNode node, int parentPathOffset,
+                          int parentUniqueDepth, double parentZeroFraction, double parentOneFraction, int parentFeatureIndex) {
+        int pathOffset = parentPathOffset + parentUniqueDepth;
+        int uniqueDepth = parentUniqueDepth;
+        path.copy(parentPathOffset, pathOffset, uniqueDepth);
+        path.extend(pathOffset, uniqueDepth, parentZeroFraction, parentOneFraction, parentFeatureIndex);
+
+        if (node.isLeaf()) {
+            for (int i = 1; i <= uniqueDepth; i++) {
+                double w = path.unwoundSum(pathOffset, uniqueDepth, i);
+                int element = pathOffset + i;
+                phi[phiOffset + path.featureIndex[element]] += w * (path.oneFraction[element] - path.zeroFraction[element]) * node.getLeafValue();
+            }
+            return;
+        }
+
+        int splitFeature = decisionPredictor.splitFeature(node);
+        TreeNode hot = decisionPredictor.nextNode(node, features[splitFeature]);
+        TreeNode cold = hot == node.getLeftNode() ? node.getRightNode() : node.getLeftNode();
+        double w = node.getDataCount();
+        final double hotZeroFraction = hot.getDataCount() / w;
+        final double coldZeroFraction = cold.getDataCount() / w;
+        double incomingZeroFraction = 1.0;
+        double incomingOneFraction = 1.0;
+
+        // if the feature is already split on the path, undo that split so that it can be redone at this node
+        int pathIndex = 0;
+        while (pathIndex <= uniqueDepth && path.featureIndex[pathOffset + pathIndex] != splitFeature) {
+            pathIndex++;
+        }
+        if (pathIndex != uniqueDepth + 1) {
+            incomingZeroFraction = path.zeroFraction[pathOffset + pathIndex];
+            incomingOneFraction = path.oneFraction[pathOffset + pathIndex];
+            path.unwind(pathOffset, uniqueDepth, pathIndex);
+            uniqueDepth--;
+        }
+
+        treeShap(features, phi, phiOffset, path, hot, pathOffset, uniqueDepth + 1,
+            hotZeroFraction * incomingZeroFraction, incomingOneFraction, splitFeature);
+        treeShap(features, phi, phiOffset, path, cold, pathOffset, uniqueDepth + 1,
+            coldZeroFraction * incomingZeroFraction, 0.0, splitFeature);
+    }
+
+    // Refer to official library: microsoft/LightGBM/src/io/tree.cpp#Tree::ExpectedValue.
+    private static double expectedValue(TreeNode node, double totalCount) {
+        if (node.isLeaf()) {
+            return totalCount <= 0 ? node.getLeafValue() : node.getDataCount() / totalCount * node.getLeafValue();
+        }
+        return expectedValue(node.getLeftNode(), totalCount) + expectedValue(node.getRightNode(), totalCount);
+    }
+
+    private static int depth(TreeNode node) {
+        if (node.isLeaf()) {
+            return 0;
+        }
+        return 1 + Math.max(depth(node.getLeftNode()), depth(node.getRightNode()));
+    }
+
+    /**
+     * Path elements stored in primitive arrays, refer to official library: PathElement of microsoft/LightGBM/include/LightGBM/tree.h.
+     */
+    private static final class PathWorkspace {
+
+        private final int[] featureIndex;
+
+        private final double[] zeroFraction;
+
+        private final double[] oneFraction;
+
+        private final double[] pweight;
+
+        PathWorkspace(int size) {
+            this.featureIndex = new int[size];
+            this.zeroFraction = new double[size];
+            this.oneFraction = new double[size];
+            this.pweight = new double[size];
+        }
+
+        void copy(int from, int to, int length) {
+            System.arraycopy(featureIndex, from, featureIndex, to, length);
+            System.arraycopy(zeroFraction, from, zeroFraction, to, length);
+            System.arraycopy(oneFraction, from, oneFraction, to, length);
+            System.arraycopy(pweight, from, pweight, to, length);
+        }
+
+        // Refer to official library: microsoft/LightGBM/src/io/tree.cpp#Tree::ExtendPath.
+        void extend(int offset, int uniqueDepth, double zero, double one, int feature) {
+            featureIndex[offset + uniqueDepth] = feature;
+            zeroFraction[offset + uniqueDepth] = zero;
+            oneFraction[offset + uniqueDepth] = one;
+            pweight[offset + uniqueDepth] = uniqueDepth == 0 ? 1.0 : 0.0;
+            for (int i = uniqueDepth - 1; i >= 0; i--) {
+                pweight[offset + i + 1] += one * pweight[offset + i] * (i + 1) / (double) (uniqueDepth + 1);
+                pweight[offset + i] = zero * pweight[offset + i] * (uniqueDepth - i) / (double) (uniqueDepth + 1);
+            }
+        }
+
+        // Refer to official library: microsoft/LightGBM/src/io/tree.cpp#Tree::UnwindPath.
+        void unwind(int offset, int uniqueDepth, int pathIndex) {
+            double one = oneFraction[offset + pathIndex];
+            double zero = zeroFraction[offset + pathIndex];
+            double nextOnePortion = pweight[offset + uniqueDepth];
+            for (int i = uniqueDepth - 1; i >= 0; i--) {
+                if (one != 0) {
+                    double tmp = pweight[offset + i];
+                    pweight[offset + i] = nextOnePortion * (uniqueDepth + 1) / ((i + 1) * one);
+                    nextOnePortion = tmp - pweight[offset + i] * zero * (uniqueDepth - i) / (double) (uniqueDepth + 1);
+                } else {
+                    pweight[offset + i] = pweight[offset + i] * (uniqueDepth + 1) / (zero * (uniqueDepth - i));
+                }
+            }
+            for (int i = pathIndex; i < uniqueDepth; i++) {
+                featureIndex[offset + i] = featureIndex[offset + i + 1];
+                zeroFraction[offset + i] = zeroFraction[offset + i + 1];
+                oneFraction[offset + i] = oneFraction[offset + i + 1];
+            }
+        }
+
+        // Refer to official library: microsoft/LightGBM/src/io/tree.cpp#Tree::UnwoundPathSum.
+        double unwoundSum(int offset, int uniqueDepth, int pathIndex) {
+            double one = oneFraction[offset + pathIndex];
+            double zero = zeroFraction[offset + pathIndex];
+            double nextOnePortion = pweight[offset + uniqueDepth];
+            double total = 0.0;
+            for (int i = uniqueDepth - 1; i >= 0; i--) {
+                if (one != 0) {
+                    double tmp = nextOnePortion * (uniqueDepth + 1) / ((i + 1) * one);
+                    total += tmp;
+                    nextOnePortion = pweight[offset + i] - tmp * zero * ((uniqueDepth - i) / (double) (uniqueDepth + 1));
+                } else {
+                    total += pweight[offset + i] / zero / ((uniqueDepth - i) / (double) (uniqueDepth + 1));
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package io.github.horoc.treetops.core.predictor;
+
+import io.github.horoc.treetops.core.model.TreeModel;
+
+/**
+ * Entry of vectorized engine. <br>
+ * This is the Java 8 version of multi-release jar, which always falls back to the scalar {@link FlatTreePredictor}.
+ * The version under META-INF/versions/17 is loaded on JDK 17+, which creates vectorized engine by jdk.incubator.vector,
+ * if the module is added by "--add-modules jdk.incubator.vector".
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public final class VectorSupport {
+
+    private VectorSupport() {
+    }
+
+    /**
+     * Whether vectorized engine is available in current runtime.
+     *
+     * @return false on Java 8
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Create predictor of vectorized engine, or the scalar one if it is not supported.
+     *
+     * @param treeModel tree model
+     * @param earlyStop prediction early stop config, null if disabled
+     * @return predictor
+     */
+    public static Predictor newPredictor(TreeModel treeModel, PredictionEarlyStop earlyStop) {
+        return new FlatTreePredictor(treeModel, earlyStop);
+    }
+}
@@ -2,6 +2,10 @@ package io.github.horoc.treetops.core.predictor.objective;
 
 import io.github.horoc.treetops.core.model.TreeModel;
 import io.github.horoc.treetops.core.predictor.Predictor;
+import io.github.horoc.treetops.core.predictor.SparseVector;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
 
 /**
  * Objective convert function interface.
@@ -14,6 +18,11 @@ public abstract class AbstractOutputConvertor implements Predictor {
 
     protected Predictor predictor;
 
+    /**
+     * size of output values of a single row, equals to num_class.
+     */
+    protected int numClass = 1;
+
     /**
      * Convert input based on certain objective strategy.
      *
@@ -22,6 +31,31 @@ public abstract class AbstractOutputConvertor implements Predictor {
      */
     public abstract double[] convert(double[] input);
 
+    /**
+     * Convert raw values of a single row in place, values are stored in output[offset, offset + num_class). <br>
+     * Default implementation falls back to {@link AbstractOutputConvertor#convert(double[])},
+     * built-in convertors override it to avoid allocation.
+     *
+     * @param output raw values, would be overwritten by converted values
+     * @param offset offset of the row
+     */
+    public void convert(double[] output, int offset) {
+        double[] ret = convert(Arrays.copyOfRange(output, offset, offset + numClass));
+        System.arraycopy(ret, 0, output, offset, ret.length);
+    }
+
+    /**
+     * Convert raw value of single output model. <br>
+     * Default implementation falls back to {@link AbstractOutputConvertor#convert(double[])},
+     * built-in convertors override it to avoid allocation.
+     *
+     * @param input raw value
+     * @return output value
+     */
+    public double convert(double input) {
+        return convert(new double[] {input})[0];
+    }
+
     /**
      * Binding to a predictor.
      *
@@ -31,13 +65,194 @@ public abstract class AbstractOutputConvertor implements Predictor {
      */
     public abstract Predictor decorate(Predictor predictor, TreeModel treeModel);
 
+    /**
+     * Init model meta data which is shared by all convertors.
+     *
+     * @param treeModel tree model
+     */
+    public void initialize(TreeModel treeModel) {
+        this.numClass = treeModel.getNumClass();
+    }
+
     @Override
     public double[] predictRaw(double[] features) {
         return predictor.predictRaw(features);
     }
 
+    @Override
+    public void predictRaw(double[] features, double[] output) {
+        predictor.predictRaw(features, output);
+    }
+
+    @Override
+    public void predictRaw(double[] features, int numIteration, double[] output) {
+        predictor.predictRaw(features, numIteration, output);
+    }
+
+    @Override
+    public void predictRaw(double[][] features, int from, int to, double[] output) {
+        predictor.predictRaw(features, from, to, output);
+    }
+
+    @Override
+    public void predictRaw(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictor.predictRaw(matrix, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public double[] predictRaw(SparseVector features) {
+        return predictor.predictRaw(features);
+    }
+
+    @Override
+    public void predictRaw(SparseVector features, double[] output) {
+        predictor.predictRaw(features, output);
+    }
+
+    @Override
+    public double[] predictRaw(float[] features) {
+        return predictor.predictRaw(features);
+    }
+
+    @Override
+    public void predictRaw(float[] features, double[] output) {
+        predictor.predictRaw(features, output);
+    }
+
+    @Override
+    public void predictRaw(float[][] features, int from, int to, double[] output) {
+        predictor.predictRaw(features, from, to, output);
+    }
+
+    @Override
+    public void predictRaw(float[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictor.predictRaw(matrix, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public void predictRaw(DoubleBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictor.predictRaw(buffer, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public void predictRaw(ByteBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictor.predictRaw(buffer, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public double predictRawScalar(double[] features) {
+        return predictor.predictRawScalar(features);
+    }
+
+    @Override
+    public double predictRawScalar(float[] features) {
+        return predictor.predictRawScalar(features);
+    }
+
     @Override
     public double[] predict(double[] features) {
         return convert(predictor.predictRaw(features));
     }
+
+    @Override
+    public void predict(double[] features, double[] output) {
+        predictor.predictRaw(features, output);
+        convert(output, 0);
+    }
+
+    @Override
+    public void predict(double[] features, int numIteration, double[] output) {
+        predictor.predictRaw(features, numIteration, output);
+        convert(output, 0);
+    }
+
+    @Override
+    public void predict(double[][] features, int from, int to, double[] output) {
+        predictor.predictRaw(features, from, to, output);
+        for (int i = from; i < to; i++) {
+            convert(output, i * numClass);
+        }
+    }
+
+    @Override
+    public void predict(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictor.predictRaw(matrix, offset, rowStride, featureStride, numRows, output);
+        for (int i = 0; i < numRows; i++) {
+            convert(output, i * numClass);
+        }
+    }
+
+    @Override
+    public double[] predict(SparseVector features) {
+        return convert(predictor.predictRaw(features));
+    }
+
+    @Override
+    public void predict(SparseVector features, double[] output) {
+        predictor.predictRaw(features, output);
+        convert(output, 0);
+    }
+
+    @Override
+    public double[] predict(float[] features) {
+        return convert(predictor.predictRaw(features));
+    }
+
+    @Override
+    public void predict(float[] features, double[] output) {
+        predictor.predictRaw(features, output);
+        convert(output, 0);
+    }
+
+    @Override
+    public void predict(float[][] features, int from, int to, double[] output) {
+        predictor.predictRaw(features, from, to, output);
+        for (int i = from; i < to; i++) {
+            convert(output, i * numClass);
+        }
+    }
+
+    @Override
+    public void predict(float[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictor.predictRaw(matrix, offset, rowStride, featureStride, numRows, output);
+        for (int i = 0; i < numRows; i++) {
+            convert(output, i * numClass);
+        }
+    }
+
+    @Override
+    public void predict(DoubleBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictor.predictRaw(buffer, offset, rowStride, featureStride, numRows, output);
+        for (int i = 0; i < numRows; i++) {
+            convert(output, i * numClass);
+        }
+    }
+
+    @Override
+    public void predict(ByteBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictor.predictRaw(buffer, offset, rowStride, featureStride, numRows, output);
+        for (int i = 0; i < numRows; i++) {
+            convert(output, i * numClass);
+        }
+    }
+
+    @Override
+    public double predictScalar(double[] features) {
+        return convert(predictor.predictRawScalar(features));
+    }
+
+    @Override
+    public double predictScalar(float[] features) {
+        return convert(predictor.predictRawScalar(features));
+    }
+
+    @Override
+    public void predictLeafIndex(double[] features, int[] output) {
+        predictor.predictLeafIndex(features, output);
+    }
+
+    @Override
+    public void predictLeafIndex(double[][] features, int from, int to, int[] output) {
+        predictor.predictLeafIndex(features, from, to, output);
+    }
 }
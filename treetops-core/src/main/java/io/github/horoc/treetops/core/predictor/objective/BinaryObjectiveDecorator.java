@@ -25,7 +25,17 @@ public final class BinaryObjectiveDecorator extends AbstractOutputConvertor {
 
     @Override
     public double[] convert(double[] input) {
-        return new double[]{1.0f / (1.0f + Math.exp(-sigmoid * input[0]))};
+        return new double[]{convert(input[0])};
+    }
+
+    @Override
+    public void convert(double[] output, int offset) {
+        output[offset] = convert(output[offset]);
+    }
+
+    @Override
+    public double convert(double input) {
+        return 1.0f / (1.0f + Math.exp(-sigmoid * input));
     }
 
     private double parseSigmoidValue(String objectiveConfig) {
@@ -11,7 +11,17 @@ public class CrossEntropyLambdaObjectiveDecorator extends AbstractOutputConverto
 
     @Override
     public double[] convert(double[] input) {
-        return new double[] {Math.log1p(Math.exp(-input[0]))};
+        return new double[] {convert(input[0])};
+    }
+
+    @Override
+    public void convert(double[] output, int offset) {
+        output[offset] = convert(output[offset]);
+    }
+
+    @Override
+    public double convert(double input) {
+        return Math.log1p(Math.exp(-input));
     }
 
     @Override
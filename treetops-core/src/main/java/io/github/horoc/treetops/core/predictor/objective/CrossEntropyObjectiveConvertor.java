@@ -11,7 +11,17 @@ public class CrossEntropyObjectiveConvertor extends AbstractOutputConvertor {
 
     @Override
     public double[] convert(double[] input) {
-        return new double[] {1.0 / (1.0 + Math.exp(-input[0]))};
+        return new double[] {convert(input[0])};
+    }
+
+    @Override
+    public void convert(double[] output, int offset) {
+        output[offset] = convert(output[offset]);
+    }
+
+    @Override
+    public double convert(double input) {
+        return 1.0 / (1.0 + Math.exp(-input));
     }
 
     @Override
@@ -11,29 +11,47 @@ public class MultiClassObjectiveDecorator extends AbstractOutputConvertor {
 
     @Override
     public double[] convert(double[] input) {
-        double max = input[0];
         double[] output = new double[input.length];
-        for (int i = 1; i < input.length; i++) {
-            max = max < input[i] ? input[i] : max;
-        }
-
-        double expSum = 0.0;
-        for (int i = 0; i < input.length; i++) {
-            output[i] = Math.exp(input[i] - max);
-            expSum += output[i];
-        }
-        if (expSum == 0.0) {
-            return output;
-        }
-        for (int i = 0; i < output.length; i++) {
-            output[i] = output[i] / expSum;
-        }
+        System.arraycopy(input, 0, output, 0, input.length);
+        softmax(output, 0, output.length);
         return output;
     }
 
+    @Override
+    public void convert(double[] output, int offset) {
+        softmax(output, offset, numClass);
+    }
+
     @Override
     public Predictor decorate(Predictor predictor, TreeModel treeModel) {
         this.predictor = predictor;
         return this;
     }
+
+    /**
+     * Refer to official library: microsoft/LightGBM/include/LightGBM/utils/common.h#Softmax.
+     *
+     * @param values values to be converted in place
+     * @param offset begin offset
+     * @param length num of values
+     */
+    private void softmax(double[] values, int offset, int length) {
+        int end = offset + length;
+        double max = values[offset];
+        for (int i = offset + 1; i < end; i++) {
+            max = max < values[i] ? values[i] : max;
+        }
+
+        double expSum = 0.0;
+        for (int i = offset; i < end; i++) {
+            values[i] = Math.exp(values[i] - max);
+            expSum += values[i];
+        }
+        if (expSum == 0.0) {
+            return;
+        }
+        for (int i = offset; i < end; i++) {
+            values[i] = values[i] / expSum;
+        }
+    }
 }
@@ -15,13 +15,23 @@ public final class RegressionL2ObjectiveDecorator extends AbstractOutputConverto
 
     @Override
     public double[] convert(double[] input) {
-        double ret = input[0];
+        return new double[]{convert(input[0])};
+    }
+
+    @Override
+    public void convert(double[] output, int offset) {
+        output[offset] = convert(output[offset]);
+    }
+
+    @Override
+    public double convert(double input) {
+        double ret = input;
         if (sqrt) {
             if (!Double.isNaN(ret)) {
                 ret = ret * ret * (ret >= 0 ? 1 : -1);
             }
         }
-        return new double[]{ret};
+        return ret;
     }
 
     @Override
@@ -0,0 +1,244 @@
+package io.github.horoc.treetops.core.predictor;
+
+import io.github.horoc.treetops.core.model.DecisionType;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import javax.annotation.concurrent.ThreadSafe;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vectorized batch engine of JDK 17+, refer to {@link VectorSupport}. <br>
+ * Rows of a batch advance through the same tree in groups of vector lanes, each lane holds the current node of a row.
+ * At each level, split features are gathered from the rows, compared against gathered thresholds,
+ * and children are selected by masked blend, until all lanes reach a leaf. <br>
+ * Trees are packed by {@link FlatTreePredictor}, which also serves single rows, non double input and rows of a partial group.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+@ThreadSafe
+final class VectorPredictor implements Predictor {
+
+    private static final VectorSpecies<Double> DOUBLE = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * int species of the same lane count as double species.
+     */
+    private static final VectorSpecies<Integer> INT = VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLE.vectorBitSize() / 2));
+
+    private static final int LANES = DOUBLE.length();
+
+    private static final int MISSING_TYPE_MASK = 12;
+
+    private static final int ZERO_MISSING_FLAG = 4;
+
+    private static final int NAN_MISSING_FLAG = 8;
+
+    /**
+     * Rows of a batch are packed and scored block by block, so that the packed matrix stays in cache and does not grow with the batch.
+     */
+    private static final int BLOCK_ROWS = 64;
+
+    private final FlatTreePredictor scalar;
+
+    private final int numFeatures;
+
+    private final int numClass;
+
+    /**
+     * decision flags widened to int, for gather.
+     */
+    private final int[] flags;
+
+    /**
+     * per thread buffer of a block of rows packed into a matrix.
+     */
+    private final ThreadLocal<double[]> matrixBuffer;
+
+    /**
+     * per thread buffer of node index and feature address of lanes.
+     */
+    private final ThreadLocal<int[][]> laneBuffer = ThreadLocal.withInitial(() -> new int[2][LANES]);
+
+    VectorPredictor(FlatTreePredictor scalar, int numFeatures) {
+        this.scalar = scalar;
+        this.numFeatures = numFeatures;
+        this.numClass = scalar.numClass;
+        this.matrixBuffer = ThreadLocal.withInitial(() -> new double[BLOCK_ROWS * numFeatures]);
+        this.flags = new int[scalar.decisionFlags.length];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = scalar.decisionFlags[i];
+        }
+    }
+
+    static int lanes() {
+        return LANES;
+    }
+
+    @Override
+    public double[] predictRaw(double[] features) {
+        return scalar.predictRaw(features);
+    }
+
+    @Override
+    public void predictRaw(double[] features, double[] output) {
+        scalar.predictRaw(features, output);
+    }
+
+    @Override
+    public void predictRaw(double[] features, int numIteration, double[] output) {
+        scalar.predictRaw(features, numIteration, output);
+    }
+
+    /**
+     * Rows are packed into a per thread matrix block by block, so that features of lanes can be gathered from a single array.
+     * Absent features of a short row are packed as 0.0.
+     */
+    @Override
+    public void predictRaw(double[][] features, int from, int to, double[] output) {
+        double[] matrix = matrixBuffer.get();
+        for (int begin = from; begin < to; begin += BLOCK_ROWS) {
+            int rows = Math.min(BLOCK_ROWS, to - begin);
+            for (int i = 0; i < rows; i++) {
+                double[] row = features[begin + i];
+                int length = Math.min(numFeatures, row.length);
+                System.arraycopy(row, 0, matrix, i * numFeatures, length);
+                Arrays.fill(matrix, i * numFeatures + length, (i + 1) * numFeatures, 0.0);
+            }
+            predictMatrix(matrix, 0, numFeatures, 1, rows, output, begin * numClass);
+        }
+    }
+
+    @Override
+    public void predictRaw(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        predictMatrix(matrix, offset, rowStride, featureStride, numRows, output, 0);
+    }
+
+    @Override
+    public double[] predictRaw(float[] features) {
+        return scalar.predictRaw(features);
+    }
+
+    @Override
+    public void predictRaw(float[] features, double[] output) {
+        scalar.predictRaw(features, output);
+    }
+
+    @Override
+    public void predictRaw(float[][] features, int from, int to, double[] output) {
+        scalar.predictRaw(features, from, to, output);
+    }
+
+    @Override
+    public void predictRaw(float[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        scalar.predictRaw(matrix, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public void predictRaw(DoubleBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        scalar.predictRaw(buffer, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public void predictRaw(ByteBuffer buffer, int offset, int rowStride, int featureStride, int numRows, double[] output) {
+        scalar.predictRaw(buffer, offset, rowStride, featureStride, numRows, output);
+    }
+
+    @Override
+    public double predictRawScalar(double[] features) {
+        return scalar.predictRawScalar(features);
+    }
+
+    @Override
+    public double predictRawScalar(float[] features) {
+        return scalar.predictRawScalar(features);
+    }
+
+    @Override
+    public void predictLeafIndex(double[] features, int[] output) {
+        scalar.predictLeafIndex(features, output);
+    }
+
+    @Override
+    public void predictLeafIndex(double[][] features, int from, int to, int[] output) {
+        scalar.predictLeafIndex(features, from, to, output);
+    }
+
+    /**
+     * Tree-outer/row-inner iteration, rows are scored by groups of lanes, the remaining rows are scored by scalar engine.
+     *
+     * @param matrix        input matrix
+     * @param offset        index of the first feature of the first row
+     * @param rowStride     distance between two adjacent rows
+     * @param featureStride distance between two adjacent features of a row
+     * @param numRows       num of rows
+     * @param output        output of raw values
+     * @param outputOffset  index of output of the first row
+     */
+    private void predictMatrix(double[] matrix, int offset, int rowStride, int featureStride, int numRows, double[] output, int outputOffset) {
+        Arrays.fill(output, outputOffset, outputOffset + numRows * numClass, 0.0);
+        int[][] lanes = laneBuffer.get();
+        int vectorRows = numRows - numRows % LANES;
+        for (int t = 0; t < scalar.roots.length; t++) {
+            int root = scalar.roots[t];
+            int classIndex = scalar.treeClasses[t];
+            for (int i = 0; i < vectorRows; i += LANES) {
+                IntVector rowBase = IntVector.zero(INT).addIndex(rowStride).add(offset + i * rowStride);
+                traverse(root, matrix, rowBase, featureStride, lanes);
+                for (int l = 0; l < LANES; l++) {
+                    output[outputOffset + (i + l) * numClass + classIndex] += scalar.leafValue[~lanes[0][l]];
+                }
+            }
+            for (int i = vectorRows; i < numRows; i++) {
+                output[outputOffset + i * numClass + classIndex] += scalar.leafValue[~scalar.leaf(root, matrix, offset + i * rowStride, featureStride)];
+            }
+        }
+    }
+
+    /**
+     * Advance lanes through the tree until all of them reach a leaf,
+     * refer to {@link FlatTreePredictor} for the decision of a single node.
+     *
+     * @param root          root of tree
+     * @param matrix        input matrix
+     * @param rowBase       index of the first feature of the row of each lane
+     * @param featureStride distance between two adjacent features of a row
+     * @param lanes         lanes[0] holds ~global leaf index of each lane once returned, lanes[1] is the buffer of feature address
+     */
+    private void traverse(int root, double[] matrix, IntVector rowBase, int featureStride, int[][] lanes) {
+        int[] nodes = lanes[0];
+        IntVector node = IntVector.broadcast(INT, root);
+        VectorMask<Integer> active = node.compare(VectorOperators.GE, 0);
+        while (active.anyTrue()) {
+            // lanes which reach a leaf read node 0, their results are discarded by blend
+            node.blend(0, active.not()).intoArray(nodes, 0);
+            IntVector feature = IntVector.fromArray(INT, scalar.feature, 0, nodes, 0);
+            feature.mul(featureStride).add(rowBase).intoArray(lanes[1], 0);
+            DoubleVector value = DoubleVector.fromArray(DOUBLE, matrix, 0, lanes[1], 0);
+            DoubleVector threshold = DoubleVector.fromArray(DOUBLE, scalar.threshold, 0, nodes, 0);
+            IntVector flag = IntVector.fromArray(INT, flags, 0, nodes, 0);
+
+            VectorMask<Double> isNan = value.test(VectorOperators.IS_NAN);
+            DoubleVector fval = value.blend(0.0, isNan);
+            IntVector missingType = flag.and(MISSING_TYPE_MASK);
+            VectorMask<Integer> isZeroMiss = missingType.compare(VectorOperators.EQ, ZERO_MISSING_FLAG)
+                .and(fval.abs().compare(VectorOperators.LE, DecisionType.K_ZERO_THRESHOLD).cast(INT));
+            VectorMask<Integer> isNanMiss = missingType.compare(VectorOperators.EQ, NAN_MISSING_FLAG).and(isNan.cast(INT));
+            VectorMask<Integer> useDefault = isZeroMiss.or(isNanMiss);
+            VectorMask<Integer> defaultLeft = flag.and(DecisionType.DEFAULT_LEFT_MASK).compare(VectorOperators.NE, 0);
+            VectorMask<Integer> goLeft = fval.compare(VectorOperators.LE, threshold).cast(INT).andNot(useDefault).or(useDefault.and(defaultLeft));
+
+            IntVector left = IntVector.fromArray(INT, scalar.left, 0, nodes, 0);
+            IntVector right = IntVector.fromArray(INT, scalar.right, 0, nodes, 0);
+            node = node.blend(right.blend(left, goLeft), active);
+            active = node.compare(VectorOperators.GE, 0);
+        }
+        node.intoArray(nodes, 0);
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.horoc.treetops.core.predictor;
+
+import io.github.horoc.treetops.core.model.TreeModel;
+
+/**
+ * Entry of vectorized engine, JDK 17+ version of multi-release jar. <br>
+ * Vectorized engine is created only if jdk.incubator.vector is added to the runtime and a vector holds at least two doubles,
+ * otherwise it falls back to the scalar {@link FlatTreePredictor}, same as Java 8 version.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public final class VectorSupport {
+
+    private static final boolean SUPPORTED = detect();
+
+    private VectorSupport() {
+    }
+
+    /**
+     * Whether vectorized engine is available in current runtime.
+     *
+     * @return true if jdk.incubator.vector is added and usable
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * Create predictor of vectorized engine, or the scalar one if it is not supported.
+     * Models with categorical nodes and prediction early stop are served by the scalar engine.
+     *
+     * @param treeModel tree model
+     * @param earlyStop prediction early stop config, null if disabled
+     * @return predictor
+     */
+    public static Predictor newPredictor(TreeModel treeModel, PredictionEarlyStop earlyStop) {
+        FlatTreePredictor scalar = new FlatTreePredictor(treeModel, earlyStop);
+        if (!SUPPORTED || earlyStop != null || treeModel.isContainsCatNode()) {
+            return scalar;
+        }
+        return new VectorPredictor(scalar, treeModel.getMaxFeatureIndex() + 1);
+    }
+
+    private static boolean detect() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            return VectorPredictor.lanes() >= 2;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+}
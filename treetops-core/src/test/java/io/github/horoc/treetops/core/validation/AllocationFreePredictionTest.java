@@ -0,0 +1,64 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.predictor.Predictor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Prediction with caller owned output buffer should be consistent with allocating prediction.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/3/5
+ */
+public class AllocationFreePredictionTest extends ConsistencyTestTemplate {
+
+    @Test
+    public void testOutputBufferByGeneratedClass() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor predictor = loadModel(MODELS[i], "buffer_generated_" + MODELS[i], true);
+            checkOutputBuffer(predictor, randomRows(FEATURE_SIZES[i]), NUM_CLASSES[i]);
+        }
+    }
+
+    @Test
+    public void testOutputBufferBySimplePredictor() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor predictor = loadModel(MODELS[i], "buffer_simple_" + MODELS[i], false);
+            checkOutputBuffer(predictor, randomRows(FEATURE_SIZES[i]), NUM_CLASSES[i]);
+        }
+    }
+
+    @Test
+    public void testScalarPrediction() {
+        for (int i = 0; i < MODELS.length; i++) {
+            if (NUM_CLASSES[i] != 1) {
+                continue;
+            }
+            Predictor generated = loadModel(MODELS[i], "scalar_generated_" + MODELS[i], true);
+            Predictor simple = loadModel(MODELS[i], "scalar_simple_" + MODELS[i], false);
+            for (double[] row : randomRows(FEATURE_SIZES[i])) {
+                Assertions.assertEquals(generated.predictRaw(row)[0], generated.predictRawScalar(row));
+                Assertions.assertEquals(generated.predict(row)[0], generated.predictScalar(row));
+                Assertions.assertEquals(simple.predictRaw(row)[0], simple.predictRawScalar(row));
+                Assertions.assertEquals(simple.predict(row)[0], simple.predictScalar(row));
+            }
+        }
+    }
+
+    @Test
+    public void testScalarPredictionOfMultiClassModel() {
+        Predictor predictor = loadModel("wine_model", "scalar_generated_wine_model", true);
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> predictor.predictScalar(new double[13]));
+    }
+
+    private void checkOutputBuffer(Predictor predictor, double[][] rows, int numClass) {
+        double[] raw = new double[numClass];
+        double[] output = new double[numClass];
+        for (double[] row : rows) {
+            predictor.predictRaw(row, raw);
+            predictor.predict(row, output);
+            Assertions.assertArrayEquals(predictor.predictRaw(row), raw);
+            Assertions.assertArrayEquals(predictor.predict(row), output);
+        }
+    }
+}
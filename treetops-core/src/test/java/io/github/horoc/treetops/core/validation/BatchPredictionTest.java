@@ -0,0 +1,60 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.predictor.Predictor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Batch prediction should be consistent with single row prediction.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/3/4
+ */
+public class BatchPredictionTest extends ConsistencyTestTemplate {
+
+    @Test
+    public void testBatchPredictByGeneratedClass() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor predictor = loadModel(MODELS[i], "batch_generated_" + MODELS[i], true);
+            checkBatchPrediction(predictor, randomRows(FEATURE_SIZES[i]), NUM_CLASSES[i]);
+        }
+    }
+
+    @Test
+    public void testBatchPredictBySimplePredictor() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor predictor = loadModel(MODELS[i], "batch_simple_" + MODELS[i], false);
+            checkBatchPrediction(predictor, randomRows(FEATURE_SIZES[i]), NUM_CLASSES[i]);
+        }
+    }
+
+    @Test
+    public void testBatchRange() {
+        Predictor predictor = loadModel("wine_model", "batch_range_wine_model", true);
+        double[][] rows = randomRows(13);
+        double[] output = new double[rows.length * 3];
+        predictor.predict(rows, 10, 20, output);
+        for (int i = 0; i < rows.length; i++) {
+            double[] expected = i >= 10 && i < 20 ? predictor.predict(rows[i]) : new double[3];
+            for (int j = 0; j < 3; j++) {
+                Assertions.assertEquals(expected[j], output[i * 3 + j]);
+            }
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> predictor.predict(rows, 0, rows.length, new double[rows.length]));
+    }
+
+    private void checkBatchPrediction(Predictor predictor, double[][] rows, int numClass) {
+        double[] raw = new double[rows.length * numClass];
+        double[] output = new double[rows.length * numClass];
+        predictor.predictRaw(rows, raw);
+        predictor.predict(rows, output);
+        for (int i = 0; i < rows.length; i++) {
+            double[] expectedRaw = predictor.predictRaw(rows[i]);
+            double[] expected = predictor.predict(rows[i]);
+            for (int j = 0; j < numClass; j++) {
+                Assertions.assertEquals(expectedRaw[j], raw[i * numClass + j]);
+                Assertions.assertEquals(expected[j], output[i * numClass + j]);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.loader.FileTreeModelLoader;
+import io.github.horoc.treetops.core.model.TreeModel;
+import io.github.horoc.treetops.core.model.TreeNode;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Binned interpreter should predict exactly the same as {@link io.github.horoc.treetops.core.predictor.SimplePredictor},
+ * including values right on, right above and right below split thresholds.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class BinnedPredictionTest extends ConsistencyTestTemplate {
+
+    @Test
+    public void testBinnedPrediction() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor simple = loadModel(MODELS[i], "binned_simple_" + MODELS[i], false);
+            Predictor binned = loadModel(MODELS[i], "binned_" + MODELS[i], EngineType.BINNED);
+            checkRows(simple, binned, randomRows(FEATURE_SIZES[i]), NUM_CLASSES[i]);
+            checkRows(simple, binned, thresholdRows(MODELS[i], FEATURE_SIZES[i]), NUM_CLASSES[i]);
+        }
+    }
+
+    @Test
+    public void testMissingTypes() throws IOException {
+        checkMissingTypes(EngineType.BINNED);
+    }
+
+    private void checkRows(Predictor simple, Predictor binned, double[][] rows, int numClass) {
+        double[] expected = new double[rows.length * numClass];
+        double[] batch = new double[rows.length * numClass];
+        simple.predictRaw(rows, expected);
+        binned.predictRaw(rows, batch);
+        Assertions.assertArrayEquals(expected, batch);
+
+        // column major matrix, more rows than a block
+        double[] columnMajor = new double[rows.length * rows[0].length];
+        for (int r = 0; r < rows.length; r++) {
+            for (int j = 0; j < rows[r].length; j++) {
+                columnMajor[j * rows.length + r] = rows[r][j];
+            }
+        }
+        binned.predictRaw(columnMajor, 0, 1, rows.length, rows.length, batch);
+        Assertions.assertArrayEquals(expected, batch);
+
+        double[] output = new double[numClass];
+        double[] expectedOutput = new double[numClass];
+        for (double[] row : rows) {
+            Assertions.assertArrayEquals(simple.predictRaw(row), binned.predictRaw(row));
+            binned.predictRaw(row, 7, output);
+            simple.predictRaw(row, 7, expectedOutput);
+            Assertions.assertArrayEquals(expectedOutput, output);
+            if (numClass == 1) {
+                Assertions.assertEquals(simple.predictRawScalar(row), binned.predictRawScalar(row));
+            }
+        }
+    }
+
+    /**
+     * Rows of which each feature is a split threshold of the model, or the adjacent double of it.
+     *
+     * @param resource    model resource
+     * @param featureSize num of features
+     * @return rows
+     */
+    private double[][] thresholdRows(String resource, int featureSize) {
+        TreeModel model = FileTreeModelLoader.getInstance().loadModel(getClass().getClassLoader().getResource(resource + ".txt").getPath());
+        List<List<Double>> thresholds = new ArrayList<>();
+        for (int j = 0; j < featureSize; j++) {
+            thresholds.add(new ArrayList<>());
+        }
+        for (TreeNode root : model.getTrees()) {
+            collectThresholds(root, thresholds);
+        }
+        Random random = new Random(0);
+        double[][] rows = new double[ROWS][featureSize];
+        for (double[] row : rows) {
+            for (int j = 0; j < featureSize; j++) {
+                List<Double> candidates = thresholds.get(j);
+                if (!candidates.isEmpty()) {
+                    double threshold = candidates.get(random.nextInt(candidates.size()));
+                    int kind = random.nextInt(3);
+                    row[j] = kind == 0 ? threshold : kind == 1 ? Math.nextUp(threshold) : Math.nextDown(threshold);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private void collectThresholds(TreeNode node, List<List<Double>> thresholds) {
+        if (node.isLeaf()) {
+            return;
+        }
+        thresholds.get(node.getSplitFeatures().get(node.getNodeIndex())).add(node.getThreshold());
+        collectThresholds(node.getLeftNode(), thresholds);
+        collectThresholds(node.getRightNode(), thresholds);
+    }
+}
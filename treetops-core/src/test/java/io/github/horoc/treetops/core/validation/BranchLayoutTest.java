@@ -0,0 +1,111 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.factory.TreePredictorFactory;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Hot child of each split node, by training-time counts or weights, is reached by fall through, and only the cold child is jumped to.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class BranchLayoutTest extends ConsistencyTestTemplate {
+
+    @Test
+    public void testBranchLayout() throws IOException {
+        Path model = tempDir.resolve("branch_layout_model.txt");
+        Files.write(model, layoutModel().getBytes(StandardCharsets.UTF_8));
+
+        Predictor generated = TreePredictorFactory.newInstance("branch_layout_model", model.toString(), tempDir.toString(), new PredictorOptions());
+        Predictor simple = TreePredictorFactory.newInstance("branch_layout_model_simple", model.toString(), null, EngineType.SIMPLE);
+        for (double[] row : randomRows(3)) {
+            Assertions.assertArrayEquals(simple.predictRaw(row), generated.predictRaw(row));
+        }
+        // feature equals to threshold goes left, the same as official library
+        Assertions.assertEquals(3.0, generated.predictRaw(new double[] {0.0, 0.5, -0.5})[0]);
+        Assertions.assertEquals(12.0, generated.predictRaw(new double[] {1.0, 0.5, -0.5})[0]);
+
+        Map<String, List<Integer>> jumps = treeMethodJumps(tempDir);
+        // right child of root and of node 2 are hot by counts
+        Assertions.assertEquals(Arrays.asList(Opcodes.IFLE, Opcodes.IFLE, Opcodes.IFGT), jumps.get("tree_0"));
+        // right child of node 1 is hot by weights
+        Assertions.assertEquals(Arrays.asList(Opcodes.IFGT, Opcodes.IFLE, Opcodes.IFGT), jumps.get("tree_1"));
+        // left child is hot without statistics
+        Assertions.assertEquals(Arrays.asList(Opcodes.IFGT, Opcodes.IFGT, Opcodes.IFGT), jumps.get("tree_2"));
+    }
+
+    /**
+     * Jump instructions of tree methods in emitted order, a goto would be recorded if any child is not reached by fall through.
+     *
+     * @param dir dir of generated class files
+     * @return jump opcodes keyed by tree method name
+     * @throws IOException if class file can not be read
+     */
+    private Map<String, List<Integer>> treeMethodJumps(Path dir) throws IOException {
+        Map<String, List<Integer>> jumps = new HashMap<>();
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".class")).collect(Collectors.toList())) {
+                new ClassReader(Files.readAllBytes(file)).accept(new ClassVisitor(Opcodes.ASM9) {
+                    @Override
+                    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                        if (!name.matches("tree_\\d+")) {
+                            return null;
+                        }
+                        List<Integer> opcodes = new ArrayList<>();
+                        jumps.put(name, opcodes);
+                        return new MethodVisitor(Opcodes.ASM9) {
+                            @Override
+                            public void visitJumpInsn(int opcode, Label label) {
+                                // skip nan checks of features
+                                if (opcode != Opcodes.IFEQ) {
+                                    opcodes.add(opcode);
+                                }
+                            }
+                        };
+                    }
+                }, 0);
+            }
+        }
+        return jumps;
+    }
+
+    private String layoutModel() {
+        return "tree\nversion=v3\nnum_class=1\nnum_tree_per_iteration=1\nlabel_index=0\nmax_feature_idx=2\nobjective=regression\n\n"
+            + layoutTree(0, "\nleaf_count=10 5 30 60\ninternal_count=105 15 90")
+            + layoutTree(1, "\nleaf_weight=3 9 1 0.5\ninternal_weight=13.5 12 1.5")
+            + layoutTree(2, "")
+            + "end of trees\n";
+    }
+
+    /**
+     * Tree of 3 split nodes, node 1 and node 2 are left and right child of root, each of them has two leaves.
+     *
+     * @param tree       tree index
+     * @param statistics count or weight lines of the tree
+     * @return tree block
+     */
+    private String layoutTree(int tree, String statistics) {
+        return "Tree=" + tree + "\nnum_leaves=4\nnum_cat=0\nsplit_feature=0 1 2\nthreshold=0 0.5 -0.5\ndecision_type=2 2 2"
+            + "\nleft_child=1 -1 -3\nright_child=2 -2 -4\nleaf_value=1 2 4 8" + statistics + "\nshrinkage=1\n\n\n";
+    }
+}
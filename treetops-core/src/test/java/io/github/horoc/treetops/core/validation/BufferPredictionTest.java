@@ -0,0 +1,89 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Buffer prediction should be consistent with single row prediction.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/3/25
+ */
+public class BufferPredictionTest extends ConsistencyTestTemplate {
+
+    private static final int OFFSET = 3;
+
+    private static final int PADDING = 2;
+
+    @Test
+    public void testBufferPredictByGeneratedClass() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor predictor = loadModel(MODELS[i], "buffer_generated_" + MODELS[i], true);
+            checkBuffers(predictor, randomRows(FEATURE_SIZES[i]), NUM_CLASSES[i]);
+        }
+    }
+
+    @Test
+    public void testBufferPredictBySimplePredictor() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor predictor = loadModel(MODELS[i], "buffer_simple_" + MODELS[i], false);
+            checkBuffers(predictor, randomRows(FEATURE_SIZES[i]), NUM_CLASSES[i]);
+        }
+    }
+
+    @Test
+    public void testBufferPredictByFlatPredictor() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor predictor = loadModel(MODELS[i], "buffer_flat_" + MODELS[i], EngineType.FLAT);
+            checkBuffers(predictor, randomRows(FEATURE_SIZES[i]), NUM_CLASSES[i]);
+        }
+    }
+
+    @Test
+    public void testBufferOutOfBound() {
+        Predictor predictor = loadModel("wine_model", "buffer_generated_wine_model", true);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(13 * Double.BYTES * 10).order(ByteOrder.LITTLE_ENDIAN);
+        double[] output = new double[3 * 10];
+        Assertions.assertThrows(IllegalArgumentException.class, () -> predictor.predict(bytes, 1, 13 * Double.BYTES, Double.BYTES, 10, output));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> predictor.predict(bytes.asDoubleBuffer(), 1, 13, 1, 10, output));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> predictor.predict((DoubleBuffer) null, 0, output));
+    }
+
+    private void checkBuffers(Predictor predictor, double[][] rows, int numClass) {
+        int rowStride = rows[0].length + PADDING;
+        ByteBuffer bytes = ByteBuffer.allocateDirect((OFFSET + rows.length * rowStride) * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < rows[i].length; j++) {
+                bytes.putDouble((OFFSET + i * rowStride + j) * Double.BYTES, rows[i][j]);
+            }
+        }
+        DoubleBuffer doubles = bytes.asDoubleBuffer();
+
+        double[] raw = new double[rows.length * numClass];
+        double[] output = new double[rows.length * numClass];
+        double[] byteOutput = new double[rows.length * numClass];
+        double[] single = new double[numClass];
+        predictor.predictRaw(doubles, OFFSET, rowStride, 1, rows.length, raw);
+        predictor.predict(doubles, OFFSET, rowStride, 1, rows.length, output);
+        predictor.predict(bytes, OFFSET * Double.BYTES, rowStride * Double.BYTES, Double.BYTES, rows.length, byteOutput);
+        for (int i = 0; i < rows.length; i++) {
+            double[] expectedRaw = predictor.predictRaw(rows[i]);
+            double[] expected = predictor.predict(rows[i]);
+            predictor.predict(bytes, (OFFSET + i * rowStride) * Double.BYTES, single);
+            Assertions.assertArrayEquals(expected, single);
+            predictor.predict(doubles, OFFSET + i * rowStride, single);
+            Assertions.assertArrayEquals(expected, single);
+            for (int j = 0; j < numClass; j++) {
+                Assertions.assertEquals(expectedRaw[j], raw[i * numClass + j]);
+                Assertions.assertEquals(expected[j], output[i * numClass + j]);
+                Assertions.assertEquals(expected[j], byteOutput[i * numClass + j]);
+            }
+        }
+        Assertions.assertEquals(0, bytes.position());
+    }
+}
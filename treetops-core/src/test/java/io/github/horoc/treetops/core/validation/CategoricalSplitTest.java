@@ -0,0 +1,141 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.factory.TreePredictorFactory;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+
+/**
+ * Category splits are decided by constants of generated class: long mask, tableswitch, lookupswitch and static bitset,
+ * prediction should be the same as the bitset lookup of official library.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class CategoricalSplitTest extends ConsistencyTestTemplate {
+
+    /**
+     * all categories are smaller than 64, decided by long mask.
+     */
+    private static final int[] MASK_CATEGORIES = {1, 3, 5, 63};
+
+    /**
+     * dense categories, decided by tableswitch.
+     */
+    private static final int[] TABLE_CATEGORIES = {100, 101, 103, 104, 106};
+
+    /**
+     * sparse categories, decided by lookupswitch.
+     */
+    private static final int[] LOOKUP_CATEGORIES = {70, 500, 9000};
+
+    /**
+     * many categories, decided by static bitset.
+     */
+    private static final int[] BITSET_CATEGORIES = IntStream.concat(IntStream.of(0, 600), IntStream.range(32, 64).map(i -> 2 * i)).toArray();
+
+    /**
+     * the second bitset of a tree, which starts from cat_boundaries[1].
+     */
+    private static final int[] NESTED_CATEGORIES = {2};
+
+    @Test
+    public void testCategorySplit() throws IOException {
+        Path model = tempDir.resolve("category_split_model.txt");
+        Files.write(model, categoryModel().getBytes(StandardCharsets.UTF_8));
+
+        Predictor generated = TreePredictorFactory.newInstance("category_split_model", model.toString(), tempDir.toString(), new PredictorOptions());
+        Predictor simple = TreePredictorFactory.newInstance("category_split_model_simple", model.toString(), null, EngineType.SIMPLE);
+        Predictor flat = TreePredictorFactory.newInstance("category_split_model_flat", model.toString(), null, EngineType.FLAT);
+        Predictor binned = TreePredictorFactory.newInstance("category_split_model_binned", model.toString(), null, EngineType.BINNED);
+
+        Random random = new Random(0);
+        List<Integer> candidates = Stream.of(MASK_CATEGORIES, TABLE_CATEGORIES, LOOKUP_CATEGORIES, BITSET_CATEGORIES)
+            .flatMapToInt(Arrays::stream)
+            .flatMap(c -> IntStream.of(c - 1, c, c + 1))
+            .boxed()
+            .collect(Collectors.toList());
+        for (int i = 0; i < ROWS * 8; i++) {
+            double[] row = new double[4];
+            for (int j = 0; j < row.length; j++) {
+                int kind = random.nextInt(10);
+                if (kind == 0) {
+                    row[j] = Double.NaN;
+                } else if (kind == 1) {
+                    row[j] = -1.5 * random.nextDouble();
+                } else if (kind == 2) {
+                    row[j] = random.nextInt(20000) + random.nextDouble();
+                } else {
+                    row[j] = candidates.get(random.nextInt(candidates.size()));
+                }
+            }
+            double expected = contains(MASK_CATEGORIES, row[0]) + 2 * contains(TABLE_CATEGORIES, row[1]) + 4 * contains(LOOKUP_CATEGORIES, row[2])
+                + contains(BITSET_CATEGORIES, row[3]) * (8 + 16 * contains(NESTED_CATEGORIES, row[0]));
+            Assertions.assertEquals(expected, generated.predictRaw(row)[0]);
+            Assertions.assertEquals(expected, simple.predictRaw(row)[0]);
+            Assertions.assertEquals(expected, flat.predictRaw(row)[0]);
+            Assertions.assertEquals(expected, binned.predictRaw(row)[0]);
+        }
+
+        // generated class does not hold category bitsets of model any more
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".class")).collect(Collectors.toList())) {
+                Assertions.assertEquals("java/lang/Object", new ClassReader(Files.readAllBytes(file)).getSuperName());
+            }
+        }
+    }
+
+    private int contains(int[] categories, double value) {
+        return !Double.isNaN(value) && (int) value >= 0 && Arrays.stream(categories).anyMatch(c -> c == (int) value) ? 1 : 0;
+    }
+
+    private String categoryModel() {
+        return "tree\nversion=v3\nnum_class=1\nnum_tree_per_iteration=1\nlabel_index=0\nmax_feature_idx=3\nobjective=regression\n\n"
+            + singleSplitTree(0, 0, MASK_CATEGORIES, 1)
+            + singleSplitTree(1, 1, TABLE_CATEGORIES, 2)
+            + singleSplitTree(2, 2, LOOKUP_CATEGORIES, 4)
+            + nestedSplitTree()
+            + "end of trees\n";
+    }
+
+    private String singleSplitTree(int tree, int feature, int[] categories, double leftValue) {
+        List<Long> words = bitset(categories);
+        return "Tree=" + tree + "\nnum_leaves=2\nnum_cat=1\nsplit_feature=" + feature + "\nthreshold=0\ndecision_type=1"
+            + "\nleft_child=-1\nright_child=-2\nleaf_value=" + leftValue + " 0"
+            + "\ncat_boundaries=0 " + words.size() + "\ncat_threshold=" + join(words) + "\nshrinkage=1\n\n\n";
+    }
+
+    private String nestedSplitTree() {
+        List<Long> words = bitset(BITSET_CATEGORIES);
+        List<Long> nestedWords = bitset(NESTED_CATEGORIES);
+        return "Tree=3\nnum_leaves=3\nnum_cat=2\nsplit_feature=3 0\nthreshold=0 1\ndecision_type=1 1"
+            + "\nleft_child=1 -2\nright_child=-1 -3\nleaf_value=0 24 8"
+            + "\ncat_boundaries=0 " + words.size() + " " + (words.size() + nestedWords.size())
+            + "\ncat_threshold=" + join(words) + " " + join(nestedWords) + "\nshrinkage=1\n\n\n";
+    }
+
+    private List<Long> bitset(int[] categories) {
+        long[] words = new long[Arrays.stream(categories).max().getAsInt() / 32 + 1];
+        for (int category : categories) {
+            words[category / 32] |= 1L << (category % 32);
+        }
+        return Arrays.stream(words).boxed().collect(Collectors.toList());
+    }
+
+    private String join(List<Long> words) {
+        return words.stream().map(String::valueOf).collect(Collectors.joining(" "));
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.factory.TreePredictorFactory;
+import io.github.horoc.treetops.core.loader.FileTreeModelLoader;
+import io.github.horoc.treetops.core.model.TreeNode;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Threshold of category split is the index of its bitset, the bitset is cat_threshold[cat_boundaries[i], cat_boundaries[i + 1]),
+ * which may take more than one word, and the second category split of a tree does not start from the second word.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class CategoryBoundaryTest extends ConsistencyTestTemplate {
+
+    /**
+     * categories of root split, take two words of bitset.
+     */
+    private static final int[] ROOT_CATEGORIES = {1, 40};
+
+    /**
+     * categories of the second split, its bitset starts from the third word.
+     */
+    private static final int[] CHILD_CATEGORIES = {3};
+
+    @Test
+    public void testCategoryBoundary() throws IOException {
+        Path model = tempDir.resolve("category_boundary_model.txt");
+        // root splits on feature 0, its left child splits on feature 1, bitsets: {1, 40} -> [2, 256], {3} -> [8]
+        String text = "tree\nversion=v3\nnum_class=1\nnum_tree_per_iteration=1\nlabel_index=0\nmax_feature_idx=1\nobjective=regression\n\n"
+            + "Tree=0\nnum_leaves=3\nnum_cat=2\nsplit_feature=0 1\nthreshold=0 1\ndecision_type=1 1\nleft_child=1 -2\nright_child=-1 -3"
+            + "\nleaf_value=0 3 1\ncat_boundaries=0 2 3\ncat_threshold=2 256 8\nshrinkage=1\n\n\n"
+            + "end of trees\n";
+        Files.write(model, text.getBytes(StandardCharsets.UTF_8));
+
+        TreeNode root = FileTreeModelLoader.getInstance().loadModel(model.toString()).getTrees().get(0);
+        Assertions.assertEquals(0, root.getCatBoundaryBegin());
+        Assertions.assertEquals(2, root.getCatBoundaryEnd());
+        Assertions.assertEquals(2, root.getLeftNode().getCatBoundaryBegin());
+        Assertions.assertEquals(3, root.getLeftNode().getCatBoundaryEnd());
+
+        Predictor generated = TreePredictorFactory.newInstance("category_boundary_model", model.toString(), null, EngineType.GENERATED);
+        Predictor simple = TreePredictorFactory.newInstance("category_boundary_model_simple", model.toString(), null, EngineType.SIMPLE);
+        double[] values = {0, 1, 2, 3, 8, 33, 39, 40, 41, 72};
+        for (double first : values) {
+            for (double second : values) {
+                double expected = contains(ROOT_CATEGORIES, first) ? contains(CHILD_CATEGORIES, second) ? 3 : 1 : 0;
+                double[] row = {first, second};
+                Assertions.assertEquals(expected, generated.predictRaw(row)[0]);
+                Assertions.assertEquals(expected, simple.predictRaw(row)[0]);
+            }
+        }
+    }
+
+    private boolean contains(int[] categories, double value) {
+        for (int category : categories) {
+            if (category == (int) value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,42 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.factory.TreePredictorFactory;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Category split converts feature to int before the negative check, same as official library,
+ * thus value in (-1, 0) is category 0 and only value of which int value is negative goes to the right child.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class CategoryNegativeValueTest extends ConsistencyTestTemplate {
+
+    @Test
+    public void testNegativeValue() throws IOException {
+        Path model = tempDir.resolve("category_negative_value_model.txt");
+        // categories {0, 2} go left
+        String text = "tree\nversion=v3\nnum_class=1\nnum_tree_per_iteration=1\nlabel_index=0\nmax_feature_idx=0\nobjective=regression\n\n"
+            + "Tree=0\nnum_leaves=2\nnum_cat=1\nsplit_feature=0\nthreshold=0\ndecision_type=1\nleft_child=-1\nright_child=-2"
+            + "\nleaf_value=1 0\ncat_boundaries=0 1\ncat_threshold=5\nshrinkage=1\n\n\n"
+            + "end of trees\n";
+        Files.write(model, text.getBytes(StandardCharsets.UTF_8));
+
+        Predictor generated = TreePredictorFactory.newInstance("category_negative_value_model", model.toString(), null, EngineType.GENERATED);
+        Predictor simple = TreePredictorFactory.newInstance("category_negative_value_model_simple", model.toString(), null, EngineType.SIMPLE);
+        double[] values = {-0.0, -0.25, -0.999, -1.0, -1.5, -2.5, 0.0, 0.5, 1.0, 2.0, 2.75, Double.NaN};
+        double[] expected = {1, 1, 1, 0, 0, 0, 1, 1, 0, 1, 1, 0};
+        for (int i = 0; i < values.length; i++) {
+            double[] row = {values[i]};
+            Assertions.assertEquals(expected[i], generated.predictRaw(row)[0], "value: " + values[i]);
+            Assertions.assertEquals(expected[i], simple.predictRaw(row)[0], "value: " + values[i]);
+        }
+    }
+}
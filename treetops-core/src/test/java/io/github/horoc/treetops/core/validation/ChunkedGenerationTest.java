@@ -0,0 +1,166 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.factory.TreePredictorFactory;
+import io.github.horoc.treetops.core.generator.PredictorClassGenerator;
+import io.github.horoc.treetops.core.loader.FileTreeModelLoader;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Predictor whose trees are split into chunk classes should be consistent with the single generated class,
+ * chunks continue the raw values of previous chunks in the same order, so results are exactly the same.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/8
+ */
+public class ChunkedGenerationTest extends ConsistencyTestTemplate {
+
+    private static final int MAX_CHUNK_TREE_NUMS = 7;
+
+    private static final int[] CALL_ITERATIONS = {1, 2, 3, 17, 0, Integer.MAX_VALUE};
+
+    @BeforeEach
+    public void setUp() {
+        TreePredictorFactory.setGenerationTreeNumsThreshold(MAX_CHUNK_TREE_NUMS);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        TreePredictorFactory.setGenerationTreeNumsThreshold(PredictorClassGenerator.DEFAULT_MAX_CHUNK_TREE_NUMS);
+    }
+
+    @Test
+    public void testChunkedPrediction() throws IOException {
+        for (int m = 0; m < MODELS.length; m++) {
+            Path dir = Files.createDirectory(tempDir.resolve(MODELS[m]));
+            final Predictor chunked = loadModel(MODELS[m], "chunked_" + MODELS[m], dir.toString(), new PredictorOptions());
+            Predictor expected = loadReference(MODELS[m], "chunked_reference_" + MODELS[m], new PredictorOptions());
+            Assertions.assertTrue(containsChunkClass(dir));
+
+            int numClass = NUM_CLASSES[m];
+            int featureSize = FEATURE_SIZES[m];
+            double[][] rows = randomRows(featureSize);
+            double[] matrix = new double[rows.length * featureSize];
+            for (int i = 0; i < rows.length; i++) {
+                System.arraycopy(rows[i], 0, matrix, i * featureSize, featureSize);
+            }
+            double[] expectedBatch = new double[rows.length * numClass];
+            double[] batch = new double[rows.length * numClass];
+            double[] matrixBatch = new double[rows.length * numClass];
+            expected.predict(rows, expectedBatch);
+            chunked.predict(rows, batch);
+            chunked.predict(matrix, 0, featureSize, 1, rows.length, matrixBatch);
+            Assertions.assertArrayEquals(expectedBatch, batch);
+            Assertions.assertArrayEquals(expectedBatch, matrixBatch);
+
+            int numTrees = FileTreeModelLoader.getInstance().loadModel(getClass().getClassLoader().getResource(MODELS[m] + ".txt").getPath())
+                .getTrees().size();
+            int[] expectedLeaves = new int[rows.length * numTrees];
+            int[] leaves = new int[rows.length * numTrees];
+            expected.predictLeafIndex(rows, 0, rows.length, expectedLeaves);
+            chunked.predictLeafIndex(rows, 0, rows.length, leaves);
+            Assertions.assertArrayEquals(expectedLeaves, leaves);
+
+            double[] expectedOutput = new double[numClass];
+            double[] output = new double[numClass];
+            int[] expectedRowLeaves = new int[numTrees];
+            int[] rowLeaves = new int[numTrees];
+            for (double[] row : rows) {
+                Assertions.assertArrayEquals(expected.predictRaw(row), chunked.predictRaw(row));
+                Assertions.assertArrayEquals(expected.predict(row), chunked.predict(row));
+                expected.predictLeafIndex(row, expectedRowLeaves);
+                chunked.predictLeafIndex(row, rowLeaves);
+                Assertions.assertArrayEquals(expectedRowLeaves, rowLeaves);
+                if (numClass == 1) {
+                    Assertions.assertEquals(expected.predictRawScalar(row), chunked.predictRawScalar(row));
+                }
+                for (int numIteration : CALL_ITERATIONS) {
+                    expected.predictRaw(row, numIteration, expectedOutput);
+                    chunked.predictRaw(row, numIteration, output);
+                    Assertions.assertArrayEquals(expectedOutput, output);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testChunkedEarlyStop() {
+        String[] resources = {"breast_cancer_model", "wine_model"};
+        int[] featureSizes = {30, 13};
+        int[] numClasses = {1, 3};
+        for (int m = 0; m < resources.length; m++) {
+            PredictorOptions options = new PredictorOptions();
+            options.setEarlyStop(true);
+            options.setEarlyStopRoundPeriod(2);
+            options.setEarlyStopMarginThreshold(3.0);
+            Predictor chunked = loadModel(resources[m], "chunked_early_stop_" + resources[m], options);
+            Predictor expected = loadReference(resources[m], "chunked_early_stop_reference_" + resources[m], options);
+
+            double[][] rows = randomRows(featureSizes[m]);
+            double[] expectedBatch = new double[rows.length * numClasses[m]];
+            double[] batch = new double[rows.length * numClasses[m]];
+            expected.predictRaw(rows, expectedBatch);
+            chunked.predictRaw(rows, batch);
+            Assertions.assertArrayEquals(expectedBatch, batch);
+            for (double[] row : rows) {
+                Assertions.assertArrayEquals(expected.predictRaw(row), chunked.predictRaw(row));
+                if (numClasses[m] == 1) {
+                    Assertions.assertEquals(expected.predictRawScalar(row), chunked.predictRawScalar(row));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testChunkedFloatPrecision() {
+        PredictorOptions options = new PredictorOptions();
+        options.setFloatPrecision(true);
+        Predictor chunked = loadModel("california_housing_model", "chunked_float_california_housing_model", options);
+        Predictor expected = loadReference("california_housing_model", "chunked_float_reference_california_housing_model", options);
+
+        double[][] rows = randomRows(8);
+        float[][] floatRows = new float[rows.length][8];
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < 8; j++) {
+                floatRows[i][j] = (float) rows[i][j];
+            }
+        }
+        double[] expectedBatch = new double[rows.length];
+        double[] batch = new double[rows.length];
+        expected.predictRaw(floatRows, 0, rows.length, expectedBatch);
+        chunked.predictRaw(floatRows, 0, rows.length, batch);
+        Assertions.assertArrayEquals(expectedBatch, batch);
+        for (float[] row : floatRows) {
+            Assertions.assertArrayEquals(expected.predictRaw(row), chunked.predictRaw(row));
+            Assertions.assertEquals(expected.predictRawScalar(row), chunked.predictRawScalar(row));
+        }
+    }
+
+    private Predictor loadReference(String resource, String modelName, PredictorOptions options) {
+        TreePredictorFactory.setGenerationTreeNumsThreshold(Integer.MAX_VALUE);
+        try {
+            return loadModel(resource, modelName, options);
+        } finally {
+            TreePredictorFactory.setGenerationTreeNumsThreshold(MAX_CHUNK_TREE_NUMS);
+        }
+    }
+
+    private Predictor loadModel(String resource, String modelName, String saveClassFileDir, PredictorOptions options) {
+        String path = getClass().getClassLoader().getResource(resource + ".txt").getPath();
+        return TreePredictorFactory.newInstance(modelName, path, saveClassFileDir, options);
+    }
+
+    private boolean containsChunkClass(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.anyMatch(file -> file.getFileName().toString().endsWith("$Chunk1.class"));
+        }
+    }
+}
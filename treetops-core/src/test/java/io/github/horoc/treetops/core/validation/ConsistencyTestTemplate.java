@@ -0,0 +1,208 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.factory.TreePredictorFactory;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Base template of consistency tests, which compare different prediction apis on random rows of all test models.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/3/4
+ */
+public abstract class ConsistencyTestTemplate {
+
+    protected static final String[] MODELS = {"breast_cancer_model", "california_housing_model", "diabetes_model", "wine_model"};
+
+    protected static final int[] FEATURE_SIZES = {30, 8, 10, 13};
+
+    protected static final int[] NUM_CLASSES = {1, 1, 1, 3};
+
+    protected static final int ROWS = 257;
+
+    /**
+     * numerical decision types of each missing type and default direction.
+     */
+    private static final int[] DECISION_TYPES = {0, 2, 4, 6, 8, 10};
+
+    /**
+     * Directory of synthetic model files, deleted after each test.
+     */
+    @TempDir
+    protected Path tempDir;
+
+    /**
+     * Random rows with about 5% NaN and 5% zero values.
+     *
+     * @param featureSize size of feature
+     * @return rows
+     */
+    protected double[][] randomRows(int featureSize) {
+        Random random = new Random(featureSize);
+        double[][] rows = new double[ROWS][featureSize];
+        for (double[] row : rows) {
+            for (int j = 0; j < featureSize; j++) {
+                int dice = random.nextInt(20);
+                row[j] = dice == 0 ? Double.NaN : dice == 1 ? 0.0 : -2.0 + 4 * random.nextDouble();
+            }
+        }
+        return rows;
+    }
+
+    protected Predictor loadModel(String resource, String modelName, boolean isGenerated) {
+        String path = getClass().getClassLoader().getResource(resource + ".txt").getPath();
+        return TreePredictorFactory.newInstance(modelName, path, isGenerated);
+    }
+
+    protected Predictor loadModel(String resource, String modelName, EngineType engineType) {
+        String path = getClass().getClassLoader().getResource(resource + ".txt").getPath();
+        return TreePredictorFactory.newInstance(modelName, path, null, engineType);
+    }
+
+    protected Predictor loadModel(String resource, String modelName, PredictorOptions options) {
+        String path = getClass().getClassLoader().getResource(resource + ".txt").getPath();
+        return TreePredictorFactory.newInstance(modelName, path, null, options);
+    }
+
+    /**
+     * Compare predictor of the given engine with simple predictor on the synthetic missing type model.
+     *
+     * @param engineType engine to be checked
+     * @throws IOException if model file can not be written
+     */
+    protected void checkMissingTypes(EngineType engineType) throws IOException {
+        PredictorOptions options = new PredictorOptions();
+        options.setEngineType(engineType);
+        checkMissingTypes("missing_type_model_" + engineType.name().toLowerCase(), options);
+    }
+
+    /**
+     * Compare predictor of the given options with simple predictor on a synthetic model, which contains: <br>
+     * - trees of two numerical splits, which cover all missing types and default directions. <br>
+     * - trees of 150 random numerical splits, which span multiple words of a 64 bits bitvector. <br>
+     * - a categorical split tree on feature 3, NaN and negative values go right,
+     * it is left out for vector engine, which falls back to flat engine on models with categorical nodes. <br>
+     * Feature 3 is only used by the categorical split, since binned engine does not allow a feature to be both numerical and categorical,
+     * and feature 4 is not used by any split. Rows are made of NaN, zero, values within zero threshold, values on thresholds and random values,
+     * they are scored one by one, as scalar, as leaf indexes, by batch and by row-major / column-major flat matrix,
+     * except quick scorer engine which does not support flat matrix input.
+     *
+     * @param modelName unique model name
+     * @param options   predictor options to be checked
+     * @throws IOException if model file can not be written
+     */
+    protected void checkMissingTypes(String modelName, PredictorOptions options) throws IOException {
+        Random random = new Random(0);
+        StringBuilder text = new StringBuilder("tree\nversion=v3\nnum_class=1\nnum_tree_per_iteration=1\nlabel_index=0\nmax_feature_idx=4\nobjective=regression\n\n");
+        for (int t = 0; t < DECISION_TYPES.length; t++) {
+            // root splits on feature t % 3, its right child splits on the next feature
+            text.append("Tree=").append(t).append("\nnum_leaves=3\nnum_cat=0\nsplit_feature=").append(t % 3).append(' ').append((t + 1) % 3)
+                .append("\nthreshold=0.25 -0.25\ndecision_type=").append(DECISION_TYPES[t]).append(' ').append(DECISION_TYPES[(t + 3) % 6])
+                .append("\nleft_child=-1 -2\nright_child=1 -3\nleaf_value=").append(1 << t).append(" 0 ").append(1 << (t + 8)).append("\nshrinkage=1\n\n\n");
+        }
+        text.append(randomTree(6, 150, random)).append(randomTree(7, 150, random));
+        int numTrees = 8;
+        if (options.getEngineType() != EngineType.VECTOR) {
+            text.append("Tree=8\nnum_leaves=2\nnum_cat=1\nsplit_feature=3\nthreshold=0\ndecision_type=1\nleft_child=-1\nright_child=-2\nleaf_value=32 0")
+                .append("\ncat_boundaries=0 1\ncat_threshold=11\nshrinkage=1\n\n\n");
+            numTrees++;
+        }
+        Path model = tempDir.resolve(modelName + ".txt");
+        Files.write(model, text.append("end of trees\n").toString().getBytes(StandardCharsets.UTF_8));
+
+        Predictor predictor = TreePredictorFactory.newInstance(modelName, model.toString(), null, options);
+        Predictor simple = TreePredictorFactory.newInstance(modelName + "_simple", model.toString(), null, EngineType.SIMPLE);
+        double[] candidates = {Double.NaN, 0.0, -0.0, 1e-36, -1e-36, 1e-30, 0.25, -0.25, 0.5, -0.5, 1.0, -1.0, 3.0, -3.0};
+        double[][] rows = new double[ROWS * 4][5];
+        double[] rowMajor = new double[rows.length * 5];
+        double[] columnMajor = new double[rows.length * 5];
+        int[] leaves = new int[numTrees];
+        int[] expectedLeaves = new int[numTrees];
+        for (int r = 0; r < rows.length; r++) {
+            for (int j = 0; j < 5; j++) {
+                rows[r][j] = random.nextBoolean() ? candidates[random.nextInt(candidates.length)] : -2.0 + 4 * random.nextDouble();
+                rowMajor[r * 5 + j] = rows[r][j];
+                columnMajor[j * rows.length + r] = rows[r][j];
+            }
+            Assertions.assertArrayEquals(simple.predictRaw(rows[r]), predictor.predictRaw(rows[r]));
+            Assertions.assertEquals(simple.predictRawScalar(rows[r]), predictor.predictRawScalar(rows[r]));
+            predictor.predictLeafIndex(rows[r], leaves);
+            simple.predictLeafIndex(rows[r], expectedLeaves);
+            Assertions.assertArrayEquals(expectedLeaves, leaves);
+        }
+        double[] expected = new double[rows.length];
+        double[] batch = new double[rows.length];
+        simple.predictRaw(rows, expected);
+        predictor.predictRaw(rows, batch);
+        Assertions.assertArrayEquals(expected, batch);
+        if (options.getEngineType() == EngineType.QUICK_SCORER) {
+            return;
+        }
+        predictor.predictRaw(rowMajor, 0, 5, 1, rows.length, batch);
+        Assertions.assertArrayEquals(expected, batch);
+        predictor.predictRaw(columnMajor, 0, 1, rows.length, rows.length, batch);
+        Assertions.assertArrayEquals(expected, batch);
+    }
+
+    /**
+     * Tree of random shape, split features are in [0, 3).
+     *
+     * @param tree      tree index
+     * @param numLeaves num of leaves
+     * @param random    random
+     * @return tree block
+     */
+    private String randomTree(int tree, int numLeaves, Random random) {
+        int[][] nodes = new int[4][numLeaves - 1];
+        double[] thresholds = new double[numLeaves - 1];
+        build(0, numLeaves, new int[1], nodes, thresholds, random);
+        return "Tree=" + tree + "\nnum_leaves=" + numLeaves + "\nnum_cat=0"
+            + "\nsplit_feature=" + join(IntStream.of(nodes[0]).boxed())
+            + "\nthreshold=" + join(IntStream.range(0, numLeaves - 1).mapToObj(n -> thresholds[n]))
+            + "\ndecision_type=" + join(IntStream.of(nodes[1]).boxed())
+            + "\nleft_child=" + join(IntStream.of(nodes[2]).boxed())
+            + "\nright_child=" + join(IntStream.of(nodes[3]).boxed())
+            + "\nleaf_value=" + join(IntStream.range(0, numLeaves).mapToObj(l -> random.nextInt(1000) / 8.0))
+            + "\nshrinkage=1\n\n\n";
+    }
+
+    /**
+     * Split leaves in [begin, end) at a random position.
+     *
+     * @param begin      first leaf
+     * @param end        end of leaves
+     * @param next       next node id
+     * @param nodes      split feature, decision type, left child and right child of nodes
+     * @param thresholds thresholds of nodes
+     * @param random     random
+     * @return node id, or ~leaf of a single leaf
+     */
+    private int build(int begin, int end, int[] next, int[][] nodes, double[] thresholds, Random random) {
+        if (end - begin == 1) {
+            return ~begin;
+        }
+        int node = next[0]++;
+        nodes[0][node] = random.nextInt(3);
+        nodes[1][node] = DECISION_TYPES[random.nextInt(DECISION_TYPES.length)];
+        thresholds[node] = random.nextInt(9) == 0 ? 0.5 : Math.round((-2.0 + 4 * random.nextDouble()) * 100) / 100.0;
+        int mid = begin + 1 + random.nextInt(end - begin - 1);
+        nodes[2][node] = build(begin, mid, next, nodes, thresholds, random);
+        nodes[3][node] = build(mid, end, next, nodes, thresholds, random);
+        return node;
+    }
+
+    private String join(Stream<?> values) {
+        return values.map(String::valueOf).collect(Collectors.joining(" "));
+    }
+}
@@ -0,0 +1,141 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.loader.FileTreeModelLoader;
+import io.github.horoc.treetops.core.model.TreeModel;
+import io.github.horoc.treetops.core.model.TreeNode;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Feature contributions should sum up to raw prediction, and be the exact shapley values of path dependent expectation.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/1
+ */
+public class ContribPredictionTest extends ConsistencyTestTemplate {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void testContribSumToRawPrediction() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int i = 0; i < MODELS.length; i++) {
+                Predictor predictor = loadModel(MODELS[i], "contrib_" + MODELS[i], true);
+                double[][] rows = randomRows(FEATURE_SIZES[i]);
+                int contribSize = NUM_CLASSES[i] * (FEATURE_SIZES[i] + 1);
+                double[] batch = new double[rows.length * contribSize];
+                double[] parallel = new double[rows.length * contribSize];
+                predictor.predictContrib(rows, 0, rows.length, batch);
+                predictor.predictContrib(rows, 0, rows.length, parallel, pool);
+
+                double[] contrib = new double[contribSize];
+                for (int r = 0; r < rows.length; r++) {
+                    predictor.predictContrib(rows[r], contrib);
+                    double[] raw = predictor.predictRaw(rows[r]);
+                    for (int k = 0; k < NUM_CLASSES[i]; k++) {
+                        double sum = 0.0;
+                        for (int j = 0; j <= FEATURE_SIZES[i]; j++) {
+                            sum += contrib[k * (FEATURE_SIZES[i] + 1) + j];
+                        }
+                        Assertions.assertEquals(raw[k], sum, DELTA);
+                    }
+                    for (int j = 0; j < contribSize; j++) {
+                        Assertions.assertEquals(contrib[j], batch[r * contribSize + j]);
+                        Assertions.assertEquals(contrib[j], parallel[r * contribSize + j]);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testContribEqualsShapleyValues() {
+        checkShapleyValues("california_housing_model", 8, 1, 5);
+        checkShapleyValues("wine_model", 13, 3, 2);
+    }
+
+    @Test
+    public void testContribOutputSize() {
+        Predictor predictor = loadModel("wine_model", "contrib_wine_model", true);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> predictor.predictContrib(new double[13], new double[14]));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> predictor.predictContrib(new double[2][13], 0, 2, new double[42]));
+    }
+
+    /**
+     * Brute force shapley values over all feature subsets, rows have no missing value, so that split decision is feature <= threshold.
+     *
+     * @param resource    model name
+     * @param featureSize size of feature
+     * @param numClass    num of class
+     * @param numRows     num of rows to be checked
+     */
+    private void checkShapleyValues(String resource, int featureSize, int numClass, int numRows) {
+        Predictor predictor = loadModel(resource, "contrib_shapley_" + resource, false);
+        TreeModel model = FileTreeModelLoader.getInstance().loadModel(getClass().getClassLoader().getResource(resource + ".txt").getPath());
+        Random random = new Random(featureSize);
+        double[] factorial = new double[featureSize + 1];
+        factorial[0] = 1.0;
+        for (int i = 1; i <= featureSize; i++) {
+            factorial[i] = factorial[i - 1] * i;
+        }
+
+        double[] contrib = new double[numClass * (featureSize + 1)];
+        for (int r = 0; r < numRows; r++) {
+            double[] row = new double[featureSize];
+            for (int j = 0; j < featureSize; j++) {
+                row[j] = 0.5 + 3 * random.nextDouble();
+            }
+            predictor.predictContrib(row, contrib);
+
+            // value of each subset and class
+            double[][] values = new double[1 << featureSize][numClass];
+            for (int subset = 0; subset < values.length; subset++) {
+                for (TreeNode root : model.getTrees()) {
+                    values[subset][root.getTreeIndex() % numClass] += expectation(root, row, subset);
+                }
+            }
+            for (int k = 0; k < numClass; k++) {
+                for (int j = 0; j < featureSize; j++) {
+                    double expected = 0.0;
+                    for (int subset = 0; subset < values.length; subset++) {
+                        if ((subset & 1 << j) != 0) {
+                            continue;
+                        }
+                        int size = Integer.bitCount(subset);
+                        double weight = factorial[size] * factorial[featureSize - size - 1] / factorial[featureSize];
+                        expected += weight * (values[subset | 1 << j][k] - values[subset][k]);
+                    }
+                    Assertions.assertEquals(expected, contrib[k * (featureSize + 1) + j], DELTA);
+                }
+                Assertions.assertEquals(values[0][k], contrib[k * (featureSize + 1) + featureSize], DELTA);
+            }
+        }
+    }
+
+    /**
+     * Path dependent expectation, children are weighted by data count if split feature is not in subset.
+     *
+     * @param node   tree node
+     * @param row    input row
+     * @param subset bit set of known features
+     * @return expectation
+     */
+    private double expectation(TreeNode node, double[] row, int subset) {
+        if (node.isLeaf()) {
+            return node.getLeafValue();
+        }
+        int feature = node.getSplitFeatures().get(node.getNodeIndex());
+        if ((subset & 1 << feature) != 0) {
+            return expectation(row[feature] <= node.getThreshold() ? node.getLeftNode() : node.getRightNode(), row, subset);
+        }
+        TreeNode left = node.getLeftNode();
+        TreeNode right = node.getRightNode();
+        return (left.getDataCount() * expectation(left, row, subset) + right.getDataCount() * expectation(right, row, subset)) / node.getDataCount();
+    }
+}
@@ -0,0 +1,124 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.loader.FileTreeModelLoader;
+import io.github.horoc.treetops.core.model.TreeModel;
+import io.github.horoc.treetops.core.predictor.PredictionEarlyStop;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import io.github.horoc.treetops.core.predictor.SimplePredictor;
+import java.util.Arrays;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Prediction early stop should follow the semantic of official library:
+ * margin of raw values is checked every round period iterations.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/1
+ */
+public class EarlyStopTest extends ConsistencyTestTemplate {
+
+    private static final int ROUND_PERIOD = 5;
+
+    @Test
+    public void testBinaryEarlyStop() {
+        checkEarlyStop("breast_cancer_model", 30, 1, 4.0);
+    }
+
+    @Test
+    public void testMulticlassEarlyStop() {
+        checkEarlyStop("wine_model", 13, 3, 3.0);
+    }
+
+    @Test
+    public void testIgnoredByRegression() {
+        Predictor expected = loadModel("california_housing_model", "early_stop_reference_california_housing_model", true);
+        Predictor predictor = loadModel("california_housing_model", "early_stop_california_housing_model", earlyStopOptions(EngineType.GENERATED, 0.0));
+        for (double[] row : randomRows(8)) {
+            Assertions.assertArrayEquals(expected.predictRaw(row), predictor.predictRaw(row));
+        }
+    }
+
+    private void checkEarlyStop(String resource, int featureSize, int numClass, double margin) {
+        Predictor generated = loadModel(resource, "early_stop_generated_" + resource, earlyStopOptions(EngineType.GENERATED, margin));
+        Predictor simple = loadModel(resource, "early_stop_simple_" + resource, earlyStopOptions(EngineType.SIMPLE, margin));
+        Predictor flat = loadModel(resource, "early_stop_flat_" + resource, earlyStopOptions(EngineType.FLAT, margin));
+        TreeModel model = FileTreeModelLoader.getInstance().loadModel(getClass().getClassLoader().getResource(resource + ".txt").getPath());
+
+        double[][] rows = randomRows(featureSize);
+        double[] generatedBatch = new double[rows.length * numClass];
+        double[] simpleBatch = new double[rows.length * numClass];
+        double[] flatBatch = new double[rows.length * numClass];
+        generated.predictRaw(rows, generatedBatch);
+        simple.predictRaw(rows, simpleBatch);
+        flat.predictRaw(rows, flatBatch);
+        Predictor binned = loadModel(resource, "early_stop_binned_" + resource, earlyStopOptions(EngineType.BINNED, margin));
+        double[] binnedBatch = new double[rows.length * numClass];
+        binned.predictRaw(rows, binnedBatch);
+
+        int stoppedRows = 0;
+        for (int i = 0; i < rows.length; i++) {
+            double[] expected = expectedRaw(model, rows[i], margin);
+            if (!Arrays.equals(expected, fullRaw(model, rows[i]))) {
+                stoppedRows++;
+            }
+            Assertions.assertArrayEquals(expected, generated.predictRaw(rows[i]));
+            Assertions.assertArrayEquals(expected, simple.predictRaw(rows[i]));
+            Assertions.assertArrayEquals(expected, flat.predictRaw(rows[i]));
+            Assertions.assertArrayEquals(expected, binned.predictRaw(rows[i]));
+            for (int j = 0; j < numClass; j++) {
+                Assertions.assertEquals(expected[j], generatedBatch[i * numClass + j]);
+                Assertions.assertEquals(expected[j], simpleBatch[i * numClass + j]);
+                Assertions.assertEquals(expected[j], flatBatch[i * numClass + j]);
+                Assertions.assertEquals(expected[j], binnedBatch[i * numClass + j]);
+            }
+            if (numClass == 1) {
+                Assertions.assertEquals(expected[0], generated.predictRawScalar(rows[i]));
+                Assertions.assertEquals(expected[0], simple.predictRawScalar(rows[i]));
+                Assertions.assertEquals(expected[0], flat.predictRawScalar(rows[i]));
+                Assertions.assertEquals(expected[0], binned.predictRawScalar(rows[i]));
+            }
+        }
+        Assertions.assertTrue(stoppedRows > 0);
+    }
+
+    /**
+     * Reference implementation, score the first k * round_period iterations until it is confident.
+     *
+     * @param model  tree model
+     * @param row    input row
+     * @param margin margin threshold
+     * @return expected raw values
+     */
+    private double[] expectedRaw(TreeModel model, double[] row, double margin) {
+        int treesPerCheck = ROUND_PERIOD * model.getNumberTreePerIteration();
+        for (int end = treesPerCheck; end < model.getTrees().size(); end += treesPerCheck) {
+            double[] raw = prefixRaw(model, row, end);
+            if (PredictionEarlyStop.isConfident(raw, 0, raw.length, margin)) {
+                return raw;
+            }
+        }
+        return fullRaw(model, row);
+    }
+
+    private double[] fullRaw(TreeModel model, double[] row) {
+        return prefixRaw(model, row, model.getTrees().size());
+    }
+
+    private double[] prefixRaw(TreeModel model, double[] row, int end) {
+        SimplePredictor predictor = new SimplePredictor(model.copyWithTrees(model.getTrees().subList(0, end)));
+        predictor.initialize(model);
+        return predictor.predictRaw(row);
+    }
+
+    private PredictorOptions earlyStopOptions(EngineType engineType, double margin) {
+        PredictorOptions options = new PredictorOptions();
+        options.setEngineType(engineType);
+        options.setEarlyStop(true);
+        options.setEarlyStopRoundPeriod(ROUND_PERIOD);
+        options.setEarlyStopMarginThreshold(margin);
+        return options;
+    }
+}
@@ -0,0 +1,105 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Feature preload mode hoists feature loading and missing value handling out of split nodes,
+ * prediction should be exactly the same as default generated predictor.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class FeaturePreloadTest extends ConsistencyTestTemplate {
+
+    @Test
+    public void testFeaturePreload() {
+        PredictorOptions options = new PredictorOptions();
+        options.setFeaturePreload(true);
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor generated = loadModel(MODELS[i], "preload_generated_" + MODELS[i], true);
+            Predictor preload = loadModel(MODELS[i], "preload_" + MODELS[i], options);
+            double[] output = new double[NUM_CLASSES[i]];
+            double[] expectedOutput = new double[NUM_CLASSES[i]];
+            for (double[] row : randomRows(FEATURE_SIZES[i])) {
+                Assertions.assertArrayEquals(generated.predictRaw(row), preload.predictRaw(row));
+                Assertions.assertArrayEquals(generated.predict(row), preload.predict(row));
+                preload.predictRaw(row, 7, output);
+                generated.predictRaw(row, 7, expectedOutput);
+                Assertions.assertArrayEquals(expectedOutput, output);
+            }
+        }
+    }
+
+    @Test
+    public void testBatchAndMatrix() {
+        PredictorOptions options = new PredictorOptions();
+        options.setFeaturePreload(true);
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor generated = loadModel(MODELS[i], "preload_batch_generated_" + MODELS[i], true);
+            Predictor preload = loadModel(MODELS[i], "preload_batch_" + MODELS[i], options);
+            int numClass = NUM_CLASSES[i];
+            int featureSize = FEATURE_SIZES[i];
+            double[][] rows = randomRows(featureSize);
+            double[] expected = new double[rows.length * numClass];
+            generated.predictRaw(rows, expected);
+
+            // more rows than a block, starting from a row other than 0
+            double[] batch = new double[rows.length * numClass];
+            preload.predictRaw(rows, 0, 3, batch);
+            preload.predictRaw(rows, 3, rows.length, batch);
+            Assertions.assertArrayEquals(expected, batch);
+
+            double[] rowMajor = new double[rows.length * featureSize];
+            double[] columnMajor = new double[rows.length * featureSize];
+            DoubleBuffer doubleBuffer = ByteBuffer.allocateDirect(rowMajor.length * Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+            ByteBuffer byteBuffer = ByteBuffer.allocateDirect(rowMajor.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int r = 0; r < rows.length; r++) {
+                for (int j = 0; j < featureSize; j++) {
+                    rowMajor[r * featureSize + j] = rows[r][j];
+                    columnMajor[j * rows.length + r] = rows[r][j];
+                    doubleBuffer.put(r * featureSize + j, rows[r][j]);
+                    byteBuffer.putDouble((r * featureSize + j) * Double.BYTES, rows[r][j]);
+                }
+            }
+            preload.predictRaw(rowMajor, 0, featureSize, 1, rows.length, batch);
+            Assertions.assertArrayEquals(expected, batch);
+            preload.predictRaw(columnMajor, 0, 1, rows.length, rows.length, batch);
+            Assertions.assertArrayEquals(expected, batch);
+            preload.predictRaw(doubleBuffer, 0, featureSize, 1, rows.length, batch);
+            Assertions.assertArrayEquals(expected, batch);
+            preload.predictRaw(byteBuffer, 0, featureSize * Double.BYTES, Double.BYTES, rows.length, batch);
+            Assertions.assertArrayEquals(expected, batch);
+
+            // float rows are compared with the widened double rows
+            float[][] floatRows = new float[rows.length][featureSize];
+            float[] floatMatrix = new float[rows.length * featureSize];
+            double[][] widenedRows = new double[rows.length][featureSize];
+            for (int r = 0; r < rows.length; r++) {
+                for (int j = 0; j < featureSize; j++) {
+                    floatRows[r][j] = (float) rows[r][j];
+                    floatMatrix[r * featureSize + j] = (float) rows[r][j];
+                    widenedRows[r][j] = (float) rows[r][j];
+                }
+            }
+            generated.predictRaw(widenedRows, expected);
+            preload.predictRaw(floatRows, batch);
+            Assertions.assertArrayEquals(expected, batch);
+            preload.predictRaw(floatMatrix, 0, featureSize, 1, rows.length, batch);
+            Assertions.assertArrayEquals(expected, batch);
+        }
+    }
+
+    @Test
+    public void testMissingTypes() throws IOException {
+        PredictorOptions options = new PredictorOptions();
+        options.setFeaturePreload(true);
+        checkMissingTypes("preload_missing_type_model", options);
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.io.IOException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Flat array interpreter should predict exactly the same as {@link io.github.horoc.treetops.core.predictor.SimplePredictor}.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class FlatTreePredictionTest extends ConsistencyTestTemplate {
+
+    @Test
+    public void testFlatPrediction() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor simple = loadModel(MODELS[i], "flat_simple_" + MODELS[i], false);
+            Predictor flat = loadModel(MODELS[i], "flat_" + MODELS[i], EngineType.FLAT);
+            double[][] rows = randomRows(FEATURE_SIZES[i]);
+            float[][] floatRows = new float[rows.length][];
+            double[] expectedBatch = new double[rows.length * NUM_CLASSES[i]];
+            double[] batch = new double[rows.length * NUM_CLASSES[i]];
+            simple.predictRaw(rows, expectedBatch);
+            flat.predictRaw(rows, batch);
+            Assertions.assertArrayEquals(expectedBatch, batch);
+
+            int[] leaves = new int[1024];
+            int[] expectedLeaves = new int[1024];
+            double[] output = new double[NUM_CLASSES[i]];
+            double[] expectedOutput = new double[NUM_CLASSES[i]];
+            for (int r = 0; r < rows.length; r++) {
+                Assertions.assertArrayEquals(simple.predictRaw(rows[r]), flat.predictRaw(rows[r]));
+                Assertions.assertArrayEquals(simple.predict(rows[r]), flat.predict(rows[r]));
+                flat.predictRaw(rows[r], 7, output);
+                simple.predictRaw(rows[r], 7, expectedOutput);
+                Assertions.assertArrayEquals(expectedOutput, output);
+                flat.predictLeafIndex(rows[r], leaves);
+                simple.predictLeafIndex(rows[r], expectedLeaves);
+                Assertions.assertArrayEquals(expectedLeaves, leaves);
+
+                floatRows[r] = new float[rows[r].length];
+                for (int j = 0; j < rows[r].length; j++) {
+                    floatRows[r][j] = (float) rows[r][j];
+                }
+                Assertions.assertArrayEquals(simple.predictRaw(floatRows[r]), flat.predictRaw(floatRows[r]));
+            }
+            simple.predictRaw(floatRows, expectedBatch);
+            flat.predictRaw(floatRows, batch);
+            Assertions.assertArrayEquals(expectedBatch, batch);
+        }
+    }
+
+    @Test
+    public void testMissingTypes() throws IOException {
+        checkMissingTypes(EngineType.FLAT);
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.predictor.PrecisionReport;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Float precision mode should be consistent across engines and input forms,
+ * and only slightly deviate from the double model.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/3/25
+ */
+public class FloatPrecisionTest extends ConsistencyTestTemplate {
+
+    @Test
+    public void testFloatPredictionConsistency() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor generated = loadModel(MODELS[i], "float_generated_" + MODELS[i], floatOptions(EngineType.GENERATED));
+            Predictor simple = loadModel(MODELS[i], "float_simple_" + MODELS[i], floatOptions(EngineType.SIMPLE));
+            float[][] rows = toFloat(randomRows(FEATURE_SIZES[i]));
+            int numClass = NUM_CLASSES[i];
+            int numFeatures = FEATURE_SIZES[i];
+
+            double[] batch = new double[rows.length * numClass];
+            generated.predict(rows, batch);
+            float[] matrix = new float[rows.length * numFeatures];
+            for (int r = 0; r < rows.length; r++) {
+                System.arraycopy(rows[r], 0, matrix, r * numFeatures, numFeatures);
+            }
+            double[] matrixOutput = new double[rows.length * numClass];
+            simple.predict(matrix, 0, numFeatures, 1, rows.length, matrixOutput);
+
+            for (int r = 0; r < rows.length; r++) {
+                double[] expected = generated.predict(rows[r]);
+                Assertions.assertArrayEquals(expected, simple.predict(rows[r]));
+                for (int j = 0; j < numClass; j++) {
+                    Assertions.assertEquals(expected[j], batch[r * numClass + j]);
+                    Assertions.assertEquals(expected[j], matrixOutput[r * numClass + j]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPrecisionReport() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor reference = loadModel(MODELS[i], "float_reference_" + MODELS[i], true);
+            Predictor floatPredictor = loadModel(MODELS[i], "float_generated_" + MODELS[i], floatOptions(EngineType.GENERATED));
+            // sample values are representable by float, thus deviation only comes from rounding of leaf values
+            float[][] floatRows = toFloat(randomRows(FEATURE_SIZES[i]));
+            double[][] sample = new double[floatRows.length][];
+            for (int r = 0; r < floatRows.length; r++) {
+                sample[r] = Predictor.widen(floatRows[r]);
+            }
+            PrecisionReport report = PrecisionReport.compare(reference, floatPredictor, sample);
+            Assertions.assertEquals(ROWS, report.getNumRows());
+            Assertions.assertTrue(report.getMaxRawDeviation() < 1e-4, report.toString());
+            Assertions.assertTrue(report.getMeanDeviation() <= report.getMaxDeviation(), report.toString());
+        }
+    }
+
+    @Test
+    public void testFloatInputOfDoubleModel() {
+        Predictor predictor = loadModel("wine_model", "float_input_wine_model", true);
+        float[] row = toFloat(randomRows(13))[0];
+        Assertions.assertArrayEquals(predictor.predict(Predictor.widen(row)), predictor.predict(row));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> predictor.predict(row, 0, 13, 1, 1, new double[3]));
+    }
+
+    private PredictorOptions floatOptions(EngineType engineType) {
+        PredictorOptions options = new PredictorOptions();
+        options.setEngineType(engineType);
+        options.setFloatPrecision(true);
+        return options;
+    }
+
+    private float[][] toFloat(double[][] rows) {
+        float[][] ret = new float[rows.length][];
+        for (int i = 0; i < rows.length; i++) {
+            ret[i] = new float[rows[i].length];
+            for (int j = 0; j < rows[i].length; j++) {
+                ret[i][j] = (float) rows[i][j];
+            }
+        }
+        return ret;
+    }
+}
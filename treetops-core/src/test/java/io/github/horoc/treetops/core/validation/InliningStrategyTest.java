@@ -0,0 +1,162 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.factory.TreePredictorFactory;
+import io.github.horoc.treetops.core.generator.InliningStrategy;
+import io.github.horoc.treetops.core.generator.PredictorClassGenerator;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Every inlining strategy sums up trees in the same order, so results are exactly the same as one method per tree.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class InliningStrategyTest extends ConsistencyTestTemplate {
+
+    /**
+     * Smaller than trees of california housing model, so that grouped trees and over budget trees are mixed.
+     */
+    private static final int GROUPED_METHOD_SIZE_BUDGET = 700;
+
+    private static final int INLINED_CHUNK_TREE_NUMS = 20;
+
+    private static final int INLINED_METHOD_SIZE_BUDGET = 30000;
+
+    private static final int[] CALL_ITERATIONS = {1, 2, 3, 17, 0};
+
+    @Test
+    public void testGroupedPrediction() {
+        for (int m = 0; m < MODELS.length; m++) {
+            PredictorOptions options = new PredictorOptions();
+            options.setInliningStrategy(InliningStrategy.GROUPED);
+            options.setMethodSizeBudget(GROUPED_METHOD_SIZE_BUDGET);
+            Predictor grouped = loadModel(MODELS[m], "grouped_" + MODELS[m], options);
+            Predictor expected = loadModel(MODELS[m], "grouped_reference_" + MODELS[m], treeMethodOptions());
+            checkConsistency(expected, grouped, FEATURE_SIZES[m], NUM_CLASSES[m]);
+        }
+    }
+
+    @Test
+    public void testInlinedPrediction() {
+        TreePredictorFactory.setGenerationTreeNumsThreshold(INLINED_CHUNK_TREE_NUMS);
+        try {
+            for (int m = 0; m < MODELS.length; m++) {
+                PredictorOptions options = new PredictorOptions();
+                options.setInliningStrategy(InliningStrategy.INLINED);
+                options.setMethodSizeBudget(INLINED_METHOD_SIZE_BUDGET);
+                Predictor inlined = loadModel(MODELS[m], "inlined_" + MODELS[m], options);
+                Predictor expected = loadModel(MODELS[m], "inlined_reference_" + MODELS[m], treeMethodOptions());
+                checkConsistency(expected, inlined, FEATURE_SIZES[m], NUM_CLASSES[m]);
+            }
+        } finally {
+            TreePredictorFactory.setGenerationTreeNumsThreshold(PredictorClassGenerator.DEFAULT_MAX_CHUNK_TREE_NUMS);
+        }
+    }
+
+    @Test
+    public void testEarlyStop() {
+        String[] resources = {"breast_cancer_model", "wine_model"};
+        int[] featureSizes = {30, 13};
+        int[] numClasses = {1, 3};
+        for (int m = 0; m < resources.length; m++) {
+            for (InliningStrategy strategy : new InliningStrategy[] {InliningStrategy.GROUPED, InliningStrategy.INLINED}) {
+                PredictorOptions options = earlyStopOptions();
+                options.setInliningStrategy(strategy);
+                options.setMethodSizeBudget(strategy == InliningStrategy.GROUPED ? GROUPED_METHOD_SIZE_BUDGET : INLINED_METHOD_SIZE_BUDGET);
+                Predictor actual = loadModel(resources[m], "early_stop_" + strategy + "_" + resources[m], options);
+                PredictorOptions referenceOptions = earlyStopOptions();
+                referenceOptions.setInliningStrategy(InliningStrategy.TREE_METHOD);
+                Predictor expected = loadModel(resources[m], "early_stop_" + strategy + "_reference_" + resources[m], referenceOptions);
+                checkConsistency(expected, actual, featureSizes[m], numClasses[m]);
+            }
+        }
+    }
+
+    @Test
+    public void testDefaultStrategy() throws IOException {
+        // trees do not fit in a single method, so they are grouped by default
+        Assertions.assertTrue(generatedMethods("wine_model", "default_strategy_wine_model", new PredictorOptions()).contains("group_0"));
+        // trees larger than method size budget are invoked directly
+        PredictorOptions options = new PredictorOptions();
+        options.setMethodSizeBudget(GROUPED_METHOD_SIZE_BUDGET);
+        Assertions.assertTrue(generatedMethods("california_housing_model", "default_strategy_california_housing_model", options).stream()
+            .noneMatch(name -> name.startsWith("group_")));
+    }
+
+    private void checkConsistency(Predictor expected, Predictor actual, int featureSize, int numClass) {
+        double[][] rows = randomRows(featureSize);
+        double[] matrix = new double[rows.length * featureSize];
+        for (int i = 0; i < rows.length; i++) {
+            System.arraycopy(rows[i], 0, matrix, i * featureSize, featureSize);
+        }
+        double[] expectedBatch = new double[rows.length * numClass];
+        double[] batch = new double[rows.length * numClass];
+        double[] matrixBatch = new double[rows.length * numClass];
+        expected.predictRaw(rows, expectedBatch);
+        actual.predictRaw(rows, batch);
+        actual.predictRaw(matrix, 0, featureSize, 1, rows.length, matrixBatch);
+        Assertions.assertArrayEquals(expectedBatch, batch);
+        Assertions.assertArrayEquals(expectedBatch, matrixBatch);
+
+        double[] expectedOutput = new double[numClass];
+        double[] output = new double[numClass];
+        for (double[] row : rows) {
+            Assertions.assertArrayEquals(expected.predictRaw(row), actual.predictRaw(row));
+            if (numClass == 1) {
+                Assertions.assertEquals(expected.predictRawScalar(row), actual.predictRawScalar(row));
+            }
+            for (int numIteration : CALL_ITERATIONS) {
+                expected.predictRaw(row, numIteration, expectedOutput);
+                actual.predictRaw(row, numIteration, output);
+                Assertions.assertArrayEquals(expectedOutput, output);
+            }
+        }
+    }
+
+    private PredictorOptions treeMethodOptions() {
+        PredictorOptions options = new PredictorOptions();
+        options.setInliningStrategy(InliningStrategy.TREE_METHOD);
+        return options;
+    }
+
+    private PredictorOptions earlyStopOptions() {
+        PredictorOptions options = new PredictorOptions();
+        options.setEarlyStop(true);
+        options.setEarlyStopRoundPeriod(2);
+        options.setEarlyStopMarginThreshold(3.0);
+        return options;
+    }
+
+    private List<String> generatedMethods(String resource, String modelName, PredictorOptions options) throws IOException {
+        Path dir = Files.createDirectory(tempDir.resolve(modelName));
+        String path = getClass().getClassLoader().getResource(resource + ".txt").getPath();
+        TreePredictorFactory.newInstance(modelName, path, dir.toString(), options);
+        List<String> methods = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".class")).collect(Collectors.toList())) {
+                new ClassReader(Files.readAllBytes(file)).accept(new ClassVisitor(Opcodes.ASM9) {
+                    @Override
+                    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                        methods.add(name);
+                        return null;
+                    }
+                }, ClassReader.SKIP_CODE);
+            }
+        }
+        return methods;
+    }
+}
@@ -0,0 +1,97 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.loader.FileTreeModelLoader;
+import io.github.horoc.treetops.core.model.TreeModel;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import io.github.horoc.treetops.core.predictor.SimplePredictor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Prediction of selected iterations should be consistent with the model which only contains those trees.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/1
+ */
+public class IterationLimitTest extends ConsistencyTestTemplate {
+
+    private static final int START_ITERATION = 2;
+
+    private static final int NUM_ITERATION = 5;
+
+    private static final int[] CALL_ITERATIONS = {1, 3, 7, 0, Integer.MAX_VALUE};
+
+    @Test
+    public void testLoadTimeIterationRange() {
+        for (int i = 0; i < MODELS.length; i++) {
+            TreeModel expectedModel = loadTreeModel(MODELS[i]).copyWithIterations(START_ITERATION, NUM_ITERATION);
+            Predictor expected = newSimplePredictor(expectedModel);
+            Predictor generated = loadModel(MODELS[i], "iteration_range_generated_" + MODELS[i], iterationOptions(EngineType.GENERATED));
+            Predictor simple = loadModel(MODELS[i], "iteration_range_simple_" + MODELS[i], iterationOptions(EngineType.SIMPLE));
+            Assertions.assertEquals(NUM_ITERATION * Math.max(expectedModel.getNumberTreePerIteration(), 1), expectedModel.getTrees().size());
+            for (double[] row : randomRows(FEATURE_SIZES[i])) {
+                Assertions.assertArrayEquals(expected.predictRaw(row), generated.predictRaw(row));
+                Assertions.assertArrayEquals(expected.predictRaw(row), simple.predictRaw(row));
+            }
+        }
+    }
+
+    @Test
+    public void testPerCallIterationLimitByGeneratedClass() {
+        for (int i = 0; i < MODELS.length; i++) {
+            checkPerCallLimit(loadModel(MODELS[i], "iteration_limit_generated_" + MODELS[i], true), i);
+        }
+    }
+
+    @Test
+    public void testPerCallIterationLimitBySimplePredictor() {
+        for (int i = 0; i < MODELS.length; i++) {
+            checkPerCallLimit(loadModel(MODELS[i], "iteration_limit_simple_" + MODELS[i], false), i);
+        }
+    }
+
+    @Test
+    public void testPerCallIterationLimitBySparseEngine() {
+        for (int i = 0; i < MODELS.length; i++) {
+            checkPerCallLimit(loadModel(MODELS[i], "iteration_limit_sparse_" + MODELS[i], EngineType.SPARSE), i);
+        }
+    }
+
+    private void checkPerCallLimit(Predictor predictor, int modelIndex) {
+        TreeModel model = loadTreeModel(MODELS[modelIndex]);
+        double[][] rows = randomRows(FEATURE_SIZES[modelIndex]);
+        double[] raw = new double[NUM_CLASSES[modelIndex]];
+        double[] output = new double[NUM_CLASSES[modelIndex]];
+        for (int numIteration : CALL_ITERATIONS) {
+            Predictor expected = newSimplePredictor(model.copyWithIterations(0, numIteration));
+            for (double[] row : rows) {
+                predictor.predictRaw(row, numIteration, raw);
+                predictor.predict(row, numIteration, output);
+                Assertions.assertArrayEquals(expected.predictRaw(row), raw);
+                if (numIteration <= 0 || numIteration == Integer.MAX_VALUE) {
+                    Assertions.assertArrayEquals(predictor.predict(row), output);
+                }
+            }
+        }
+    }
+
+    private TreeModel loadTreeModel(String resource) {
+        return FileTreeModelLoader.getInstance().loadModel(getClass().getClassLoader().getResource(resource + ".txt").getPath());
+    }
+
+    private Predictor newSimplePredictor(TreeModel model) {
+        SimplePredictor predictor = new SimplePredictor(model);
+        predictor.initialize(model);
+        return predictor;
+    }
+
+    private PredictorOptions iterationOptions(EngineType engineType) {
+        PredictorOptions options = new PredictorOptions();
+        options.setEngineType(engineType);
+        options.setStartIteration(START_ITERATION);
+        options.setNumIteration(NUM_ITERATION);
+        return options;
+    }
+}
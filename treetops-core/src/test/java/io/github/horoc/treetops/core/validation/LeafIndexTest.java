@@ -0,0 +1,90 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.loader.FileTreeModelLoader;
+import io.github.horoc.treetops.core.model.TreeModel;
+import io.github.horoc.treetops.core.model.TreeNode;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Sum of leaf values of predicted leaf indices should be the same as raw prediction.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/1
+ */
+public class LeafIndexTest extends ConsistencyTestTemplate {
+
+    @Test
+    public void testLeafIndexByGeneratedClass() {
+        for (int i = 0; i < MODELS.length; i++) {
+            checkLeafIndex(loadModel(MODELS[i], "leaf_index_generated_" + MODELS[i], true), i, true);
+        }
+    }
+
+    @Test
+    public void testLeafIndexBySimplePredictor() {
+        for (int i = 0; i < MODELS.length; i++) {
+            checkLeafIndex(loadModel(MODELS[i], "leaf_index_simple_" + MODELS[i], false), i, true);
+        }
+    }
+
+    @Test
+    public void testLeafIndexBySparseEngine() {
+        for (int i = 0; i < MODELS.length; i++) {
+            checkLeafIndex(loadModel(MODELS[i], "leaf_index_sparse_" + MODELS[i], EngineType.SPARSE), i, false);
+        }
+    }
+
+    @Test
+    public void testLeafIndexByFeaturePreload() {
+        PredictorOptions options = new PredictorOptions();
+        options.setFeaturePreload(true);
+        for (int i = 0; i < MODELS.length; i++) {
+            checkLeafIndex(loadModel(MODELS[i], "leaf_index_preload_" + MODELS[i], options), i, false);
+        }
+    }
+
+    @Test
+    public void testLeafIndexOutputSize() {
+        Predictor predictor = loadModel("wine_model", "leaf_index_generated_wine_model", true);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> predictor.predictLeafIndex(new double[13], new int[1]));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> predictor.predictLeafIndex(new double[2][13], 0, 2, new int[1]));
+    }
+
+    private void checkLeafIndex(Predictor predictor, int modelIndex, boolean checkBatch) {
+        TreeModel model = FileTreeModelLoader.getInstance().loadModel(getClass().getClassLoader().getResource(MODELS[modelIndex] + ".txt").getPath());
+        List<TreeNode> trees = model.getTrees();
+        int numClass = NUM_CLASSES[modelIndex];
+        double[][] rows = randomRows(FEATURE_SIZES[modelIndex]);
+        int[] batch = new int[rows.length * trees.size()];
+        if (checkBatch) {
+            predictor.predictLeafIndex(rows, 0, rows.length, batch);
+        }
+
+        int[] leaves = new int[trees.size()];
+        for (int i = 0; i < rows.length; i++) {
+            predictor.predictLeafIndex(rows[i], leaves);
+            double[] raw = new double[numClass];
+            for (int t = 0; t < trees.size(); t++) {
+                raw[trees.get(t).getTreeIndex() % numClass] += leafValue(trees.get(t), leaves[t]);
+                if (checkBatch) {
+                    Assertions.assertEquals(leaves[t], batch[i * trees.size() + t]);
+                }
+            }
+            Assertions.assertArrayEquals(predictor.predictRaw(rows[i]), raw, 1e-9);
+        }
+    }
+
+    private double leafValue(TreeNode root, int leafIndex) {
+        for (TreeNode node : root.getAllNodes()) {
+            if (node.isLeaf() && node.getNodeIndex() == ~leafIndex) {
+                return node.getLeafValue();
+            }
+        }
+        throw new AssertionError("leaf index " + leafIndex + " does not exist");
+    }
+}
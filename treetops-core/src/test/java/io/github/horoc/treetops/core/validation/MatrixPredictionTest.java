@@ -0,0 +1,80 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.predictor.Predictor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Flat matrix prediction should be consistent with single row prediction.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/3/11
+ */
+public class MatrixPredictionTest extends ConsistencyTestTemplate {
+
+    private static final int OFFSET = 3;
+
+    private static final int PADDING = 2;
+
+    @Test
+    public void testMatrixPredictByGeneratedClass() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor predictor = loadModel(MODELS[i], "matrix_generated_" + MODELS[i], true);
+            checkRowMajor(predictor, randomRows(FEATURE_SIZES[i]), NUM_CLASSES[i]);
+            checkColumnMajor(predictor, randomRows(FEATURE_SIZES[i]), NUM_CLASSES[i]);
+        }
+    }
+
+    @Test
+    public void testMatrixPredictBySimplePredictor() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor predictor = loadModel(MODELS[i], "matrix_simple_" + MODELS[i], false);
+            checkRowMajor(predictor, randomRows(FEATURE_SIZES[i]), NUM_CLASSES[i]);
+            checkColumnMajor(predictor, randomRows(FEATURE_SIZES[i]), NUM_CLASSES[i]);
+        }
+    }
+
+    @Test
+    public void testMatrixOutOfBound() {
+        Predictor predictor = loadModel("wine_model", "matrix_generated_wine_model", true);
+        double[] matrix = new double[13 * 10];
+        double[] output = new double[3 * 10];
+        Assertions.assertThrows(IllegalArgumentException.class, () -> predictor.predict(matrix, 1, 13, 1, 10, output));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> predictor.predict(matrix, 0, 1, 10, 11, output));
+    }
+
+    private void checkRowMajor(Predictor predictor, double[][] rows, int numClass) {
+        int rowStride = rows[0].length + PADDING;
+        double[] matrix = new double[OFFSET + rows.length * rowStride];
+        for (int i = 0; i < rows.length; i++) {
+            System.arraycopy(rows[i], 0, matrix, OFFSET + i * rowStride, rows[i].length);
+        }
+        checkOutput(predictor, rows, numClass, matrix, rowStride, 1);
+    }
+
+    private void checkColumnMajor(Predictor predictor, double[][] rows, int numClass) {
+        int columnStride = rows.length + PADDING;
+        double[] matrix = new double[OFFSET + rows[0].length * columnStride];
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < rows[i].length; j++) {
+                matrix[OFFSET + j * columnStride + i] = rows[i][j];
+            }
+        }
+        checkOutput(predictor, rows, numClass, matrix, 1, columnStride);
+    }
+
+    private void checkOutput(Predictor predictor, double[][] rows, int numClass, double[] matrix, int rowStride, int featureStride) {
+        double[] raw = new double[rows.length * numClass];
+        double[] output = new double[rows.length * numClass];
+        predictor.predictRaw(matrix, OFFSET, rowStride, featureStride, rows.length, raw);
+        predictor.predict(matrix, OFFSET, rowStride, featureStride, rows.length, output);
+        for (int i = 0; i < rows.length; i++) {
+            double[] expectedRaw = predictor.predictRaw(rows[i]);
+            double[] expected = predictor.predict(rows[i]);
+            for (int j = 0; j < numClass; j++) {
+                Assertions.assertEquals(expectedRaw[j], raw[i * numClass + j]);
+                Assertions.assertEquals(expected[j], output[i * numClass + j]);
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.dispatcher.MicroBatchDispatcher;
+import io.github.horoc.treetops.core.dispatcher.MicroBatchOptions;
+import io.github.horoc.treetops.core.dispatcher.MicroBatchStats;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Micro batch dispatcher should be consistent with single row prediction, and shed requests under overload.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/8
+ */
+public class MicroBatchDispatcherTest extends ConsistencyTestTemplate {
+
+    private static final int THREADS = 8;
+
+    @Test
+    public void testConcurrentSubmit() throws Exception {
+        for (int m = 0; m < MODELS.length; m++) {
+            Predictor predictor = loadModel(MODELS[m], "micro_batch_" + MODELS[m], true);
+            double[][] rows = randomRows(FEATURE_SIZES[m]);
+            MicroBatchOptions options = new MicroBatchOptions();
+            options.setMaxBatchSize(16);
+            options.setWorkerThreads(2);
+            ExecutorService clients = Executors.newFixedThreadPool(THREADS);
+            try (MicroBatchDispatcher dispatcher = new MicroBatchDispatcher(predictor, options)) {
+                List<Future<?>> results = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    int offset = t;
+                    results.add(clients.submit(() -> {
+                        for (int i = offset; i < rows.length; i += THREADS) {
+                            Assertions.assertArrayEquals(predictor.predict(rows[i]), dispatcher.submit(rows[i]).get());
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> result : results) {
+                    result.get();
+                }
+
+                MicroBatchStats stats = dispatcher.getStats();
+                Assertions.assertEquals(rows.length, stats.getSubmitted());
+                Assertions.assertEquals(0, stats.getRejected());
+                long histogramSum = 0;
+                for (long count : stats.getBatchSizeHistogram()) {
+                    histogramSum += count;
+                }
+                Assertions.assertEquals(stats.getBatches(), histogramSum);
+                Assertions.assertTrue(stats.getBatches() <= rows.length);
+            } finally {
+                clients.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testAdmissionControl() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        MicroBatchOptions options = new MicroBatchOptions();
+        options.setMaxBatchSize(1);
+        options.setQueueCapacity(2);
+        options.setWorkerThreads(1);
+        try (MicroBatchDispatcher dispatcher = new MicroBatchDispatcher(new BlockingPredictor(latch), options)) {
+            List<CompletableFuture<double[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(dispatcher.submit(new double[] {i}));
+            }
+            Assertions.assertTrue(dispatcher.getStats().getRejected() > 0);
+            latch.countDown();
+
+            int rejected = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    Assertions.assertArrayEquals(new double[] {i}, futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Assertions.assertTrue(e.getCause() instanceof RejectedExecutionException);
+                    rejected++;
+                }
+            }
+            Assertions.assertEquals(dispatcher.getStats().getRejected(), rejected);
+        }
+    }
+
+    @Test
+    public void testDeadlineShedding() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        MicroBatchOptions options = new MicroBatchOptions();
+        options.setWorkerThreads(1);
+        try (MicroBatchDispatcher dispatcher = new MicroBatchDispatcher(new BlockingPredictor(latch), options)) {
+            final CompletableFuture<double[]> blocked = dispatcher.submit(new double[] {1.0});
+            // wait until the first batch is being scored
+            Thread.sleep(50);
+            final CompletableFuture<double[]> expired = dispatcher.submit(new double[] {2.0}, 1, TimeUnit.MILLISECONDS);
+            Thread.sleep(50);
+            latch.countDown();
+
+            Assertions.assertArrayEquals(new double[] {1.0}, blocked.get());
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class, expired::get);
+            Assertions.assertTrue(e.getCause() instanceof TimeoutException);
+            Assertions.assertEquals(1, dispatcher.getStats().getExpired());
+        }
+    }
+
+    @Test
+    public void testInvalidRowIsIsolated() throws Exception {
+        Predictor predictor = loadModel("wine_model", "micro_batch_invalid_wine_model", true);
+        MicroBatchOptions options = new MicroBatchOptions();
+        options.setMaxWaitMicros(50_000);
+        try (MicroBatchDispatcher dispatcher = new MicroBatchDispatcher(predictor, options)) {
+            double[] row = randomRows(13)[0];
+            CompletableFuture<double[]> valid = dispatcher.submit(row);
+            CompletableFuture<double[]> invalid = dispatcher.submit(new double[100]);
+            Assertions.assertArrayEquals(predictor.predict(row), valid.get());
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class, invalid::get);
+            Assertions.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testEachRowScoredOnce() throws Exception {
+        AtomicInteger scored = new AtomicInteger();
+        MicroBatchOptions options = new MicroBatchOptions();
+        options.setMaxBatchSize(8);
+        options.setMaxWaitMicros(50_000);
+        options.setWorkerThreads(1);
+        try (MicroBatchDispatcher dispatcher = new MicroBatchDispatcher(features -> {
+            scored.incrementAndGet();
+            return new double[] {features[0]};
+        }, options)) {
+            List<CompletableFuture<double[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(dispatcher.submit(new double[] {i}));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Assertions.assertArrayEquals(new double[] {i}, futures.get(i).get());
+            }
+            // the row which resolves output size is not scored again by the batch
+            Assertions.assertEquals(futures.size(), scored.get());
+        }
+    }
+
+    /**
+     * Echo the first feature after the latch is released.
+     */
+    private static final class BlockingPredictor implements Predictor {
+
+        private final CountDownLatch latch;
+
+        BlockingPredictor(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public double[] predictRaw(double[] features) {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new double[] {features[0]};
+        }
+    }
+}
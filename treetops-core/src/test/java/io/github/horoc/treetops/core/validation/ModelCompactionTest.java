@@ -0,0 +1,204 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.factory.TreePredictorFactory;
+import io.github.horoc.treetops.core.loader.FileTreeModelLoader;
+import io.github.horoc.treetops.core.model.ModelCompaction;
+import io.github.horoc.treetops.core.model.TreeModel;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compacted model should predict the same as the origin one within summation tolerance,
+ * model with single leaf trees should be parsed and predicted by all engines.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class ModelCompactionTest extends ConsistencyTestTemplate {
+
+    /**
+     * relative tolerance of summation in a different order.
+     */
+    private static final double TOLERANCE = 1e-12;
+
+    private static final EngineType[] ENGINES = {EngineType.GENERATED, EngineType.SIMPLE, EngineType.FLAT, EngineType.BINNED, EngineType.QUICK_SCORER};
+
+    @Test
+    public void testCompaction() throws IOException {
+        Path model = writeModel("compaction_model", 1,
+            tree(0, "0 1", "0.5 0.25", "-1 -2", "1 -3", "1.5 -2 0.75", "10 4", "6 2 2"),
+            singleLeafTree(1, "0.25"),
+            tree(2, "0 1", "0.5 0.25", "-1 -2", "1 -3", "0.5 3 -0.125", "10 4", "6 2 2"),
+            // both children of root are the same leaf
+            tree(3, "2", "0.1", "-1", "-2", "0.125 0.125", "10", "5 5"),
+            // children of the second split are the same leaf
+            tree(4, "1 0", "0.5 -0.5", "-1 -2", "1 -3", "4 -1 -1", "10 6", "4 3 3"));
+        TreeModel treeModel = FileTreeModelLoader.getInstance().loadModel(model.toString());
+        ModelCompaction compaction = ModelCompaction.compact(treeModel);
+        Assertions.assertEquals(3, compaction.getRemovedTrees());
+        Assertions.assertEquals(11, compaction.getRemovedNodes());
+        Assertions.assertEquals(2, compaction.getFoldedTrees());
+        Assertions.assertEquals(1, compaction.getMergedTrees());
+        Assertions.assertEquals(2, compaction.getCollapsedSplits());
+        Assertions.assertEquals(2, compaction.getModel().getTrees().size());
+        Assertions.assertEquals(5, treeModel.getTrees().size());
+
+        checkEngines("compaction_model", model, 1, 3);
+    }
+
+    @Test
+    public void testClassOfConstantTrees() throws IOException {
+        Path model = writeModel("compaction_multiclass_model", 2,
+            tree(0, "0", "0.5", "-1", "-2", "1 2", "10", "5 5"),
+            singleLeafTree(1, "0.5"),
+            singleLeafTree(2, "-0.25"),
+            singleLeafTree(3, "0.125"));
+        ModelCompaction compaction = ModelCompaction.compact(FileTreeModelLoader.getInstance().loadModel(model.toString()));
+        // bias of class 1 is held by tree 1
+        Assertions.assertEquals(2, compaction.getModel().getTrees().size());
+        Assertions.assertEquals(2, compaction.getFoldedTrees());
+        Assertions.assertEquals(0.625, compaction.getModel().getTrees().get(1).getLeafValue());
+
+        checkEngines("compaction_multiclass_model", model, 2, 1);
+    }
+
+    @Test
+    public void testIdenticalCategoricalTrees() throws IOException {
+        // after its left split collapses, tree 0 equals tree 1, but its categorical node refers to the second bitset of its own tree
+        Path model = writeModel("compaction_categorical_model", 1,
+            "Tree=0\nnum_leaves=4\nnum_cat=2\nsplit_feature=2 0 1\nthreshold=0.1 0 1\ndecision_type=2 1 1\nleft_child=1 -1 -3\nright_child=2 -2 -4"
+                + "\nleaf_value=0.5 0.5 1 -1\nleaf_count=2 2 3 3\ninternal_count=10 4 6\ncat_boundaries=0 1 2\ncat_threshold=5 2\nshrinkage=1\n\n\n",
+            "Tree=1\nnum_leaves=3\nnum_cat=1\nsplit_feature=2 1\nthreshold=0.1 0\ndecision_type=2 1\nleft_child=-1 -2\nright_child=1 -3"
+                + "\nleaf_value=0.25 2 -2\nleaf_count=4 3 3\ninternal_count=10 6\ncat_boundaries=0 1\ncat_threshold=2\nshrinkage=1\n\n\n");
+        ModelCompaction compaction = ModelCompaction.compact(FileTreeModelLoader.getInstance().loadModel(model.toString()));
+        Assertions.assertEquals(1, compaction.getCollapsedSplits());
+        Assertions.assertEquals(1, compaction.getMergedTrees());
+        Assertions.assertEquals(1, compaction.getModel().getTrees().size());
+
+        checkEngines("compaction_categorical_model", model, 1, 3);
+    }
+
+    @Test
+    public void testBundledModels() {
+        for (int i = 0; i < MODELS.length; i++) {
+            TreeModel treeModel = FileTreeModelLoader.getInstance().loadModel(getClass().getClassLoader().getResource(MODELS[i] + ".txt").getPath());
+            ModelCompaction compaction = ModelCompaction.compact(treeModel);
+            Assertions.assertEquals(treeModel.getTrees().size() - compaction.getModel().getTrees().size(), compaction.getRemovedTrees());
+
+            PredictorOptions options = new PredictorOptions();
+            options.setCompaction(true);
+            Predictor expected = loadModel(MODELS[i], "compaction_reference_" + MODELS[i], false);
+            Predictor compacted = loadModel(MODELS[i], "compaction_" + MODELS[i], options);
+            double[][] rows = randomRows(FEATURE_SIZES[i]);
+            double[] expectedBatch = new double[rows.length * NUM_CLASSES[i]];
+            double[] batch = new double[rows.length * NUM_CLASSES[i]];
+            expected.predictRaw(rows, expectedBatch);
+            compacted.predictRaw(rows, batch);
+            assertClose(expectedBatch, batch);
+            for (double[] row : rows) {
+                assertClose(expected.predictRaw(row), compacted.predictRaw(row));
+            }
+        }
+    }
+
+    @Test
+    public void testCompactedPredictor() {
+        TreeModel treeModel = FileTreeModelLoader.getInstance().loadModel(getClass().getClassLoader().getResource("wine_model.txt").getPath());
+        ModelCompaction expected = ModelCompaction.compact(treeModel);
+        PredictorOptions options = new PredictorOptions();
+        options.setCompaction(true);
+        for (EngineType engine : ENGINES) {
+            options.setEngineType(engine);
+            Predictor compacted = loadModel("wine_model", "compaction_api_wine_model_" + engine, options);
+            ModelCompaction compaction = TreePredictorFactory.getCompaction(compacted);
+            Assertions.assertEquals(expected.toString(), compaction.toString());
+
+            // trees of different iterations are merged, thus iteration limit and leaf index of origin model can not be answered
+            double[] row = randomRows(13)[0];
+            double[] output = new double[3];
+            Assertions.assertThrows(UnsupportedOperationException.class, () -> compacted.predictRaw(row, 7, output));
+            Assertions.assertThrows(UnsupportedOperationException.class, () -> compacted.predict(row, 7, output));
+            Assertions.assertThrows(UnsupportedOperationException.class, () -> compacted.predictLeafIndex(row, new int[300]));
+            Assertions.assertThrows(UnsupportedOperationException.class, () -> compacted.predictLeafIndex(new double[][] {row}, 0, 1, new int[300]));
+            // not positive iteration limit scores all iterations
+            compacted.predictRaw(row, 0, output);
+            Assertions.assertArrayEquals(compacted.predictRaw(row), output);
+        }
+        Assertions.assertNull(TreePredictorFactory.getCompaction(loadModel("wine_model", "compaction_none_wine_model", false)));
+    }
+
+    @Test
+    public void testEarlyStopRejected() {
+        PredictorOptions options = new PredictorOptions();
+        options.setCompaction(true);
+        options.setEarlyStop(true);
+        Assertions.assertThrows(RuntimeException.class, () -> loadModel("wine_model", "compaction_early_stop_wine_model", options));
+    }
+
+    private void checkEngines(String name, Path model, int numClass, int numFeatures) {
+        Predictor expected = TreePredictorFactory.newInstance(name + "_reference", model.toString(), null, EngineType.SIMPLE);
+        Random random = new Random(0);
+        double[][] rows = new double[ROWS][numFeatures];
+        for (double[] row : rows) {
+            for (int j = 0; j < numFeatures; j++) {
+                row[j] = random.nextInt(10) == 0 ? Double.NaN : random.nextDouble() * 2 - 1;
+            }
+        }
+        for (EngineType engine : ENGINES) {
+            PredictorOptions options = new PredictorOptions();
+            options.setEngineType(engine);
+            // single leaf trees are supported without compaction
+            Predictor origin = TreePredictorFactory.newInstance(name + "_origin_" + engine, model.toString(), null, options);
+            options.setCompaction(true);
+            Predictor compacted = TreePredictorFactory.newInstance(name + "_compacted_" + engine, model.toString(), null, options);
+            double[] batch = new double[ROWS * numClass];
+            compacted.predictRaw(rows, batch);
+            for (int r = 0; r < rows.length; r++) {
+                double[] raw = expected.predictRaw(rows[r]);
+                Assertions.assertArrayEquals(raw, origin.predictRaw(rows[r]));
+                assertClose(raw, compacted.predictRaw(rows[r]));
+                for (int c = 0; c < numClass; c++) {
+                    Assertions.assertEquals(raw[c], batch[r * numClass + c], TOLERANCE);
+                }
+            }
+        }
+    }
+
+    private void assertClose(double[] expected, double[] actual) {
+        Assertions.assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            Assertions.assertEquals(expected[i], actual[i], TOLERANCE * Math.max(1.0, Math.abs(expected[i])));
+        }
+    }
+
+    private Path writeModel(String name, int numClass, String... trees) throws IOException {
+        Path model = tempDir.resolve(name + ".txt");
+        StringBuilder text = new StringBuilder("tree\nversion=v3\nnum_class=").append(numClass).append("\nnum_tree_per_iteration=").append(numClass)
+            .append("\nlabel_index=0\nmax_feature_idx=2\nobjective=").append(numClass == 1 ? "regression" : "multiclass num_class:" + numClass).append("\n\n");
+        for (String tree : trees) {
+            text.append(tree);
+        }
+        Files.write(model, text.append("end of trees\n").toString().getBytes(StandardCharsets.UTF_8));
+        return model;
+    }
+
+    private String tree(int index, String features, String thresholds, String left, String right, String leafValues, String internalCounts, String leafCounts) {
+        int numLeaves = leafValues.split(" ").length;
+        return "Tree=" + index + "\nnum_leaves=" + numLeaves + "\nnum_cat=0\nsplit_feature=" + features + "\nthreshold=" + thresholds
+            + "\ndecision_type=" + features.replaceAll("[0-9]+", "2") + "\nleft_child=" + left + "\nright_child=" + right + "\nleaf_value=" + leafValues
+            + "\nleaf_count=" + leafCounts + "\ninternal_count=" + internalCounts + "\nshrinkage=1\n\n\n";
+    }
+
+    private String singleLeafTree(int index, String leafValue) {
+        return "Tree=" + index + "\nnum_leaves=1\nnum_cat=0\nsplit_feature=\nsplit_gain=\nthreshold=\ndecision_type=\nleft_child=\nright_child=\nleaf_value=" + leafValue
+            + "\nleaf_weight=\nleaf_count=\ninternal_value=\ninternal_weight=\ninternal_count=\nis_linear=0\nshrinkage=1\n\n\n";
+    }
+}
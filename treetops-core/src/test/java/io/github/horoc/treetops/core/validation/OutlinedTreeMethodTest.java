@@ -0,0 +1,132 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.factory.TreePredictorFactory;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Tree whose method exceeds size budget is split into subtree methods, prediction should be exactly the same.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/8
+ */
+public class OutlinedTreeMethodTest extends ConsistencyTestTemplate {
+
+    /**
+     * 1023 split nodes, tree method would exceed 64KB without outlining.
+     */
+    private static final int DEEP_TREE_DEPTH = 10;
+
+    private static final int DEEP_TREE_FEATURES = 8;
+
+    @Test
+    public void testSmallMethodSizeBudget() {
+        for (int m = 0; m < MODELS.length; m++) {
+            PredictorOptions options = new PredictorOptions();
+            options.setMethodSizeBudget(64);
+            Predictor outlined = loadModel(MODELS[m], "outlined_" + MODELS[m], options);
+            Predictor expected = loadModel(MODELS[m], "outlined_reference_" + MODELS[m], true);
+            checkConsistency(expected, outlined, randomRows(FEATURE_SIZES[m]), NUM_CLASSES[m]);
+        }
+    }
+
+    @Test
+    public void testDeepTree() throws IOException {
+        Path model = tempDir.resolve("deep_tree_model.txt");
+        Files.write(model, deepTreeModel().getBytes(StandardCharsets.UTF_8));
+
+        Predictor generated = TreePredictorFactory.newInstance("outlined_deep_tree_model", model.toString(), tempDir.toString(), new PredictorOptions());
+        Predictor simple = TreePredictorFactory.newInstance("outlined_deep_tree_model_simple", model.toString(), null, EngineType.SIMPLE);
+        checkConsistency(simple, generated, randomRows(DEEP_TREE_FEATURES), 1);
+
+        List<String> methods = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".class")).collect(Collectors.toList())) {
+                new ClassReader(Files.readAllBytes(file)).accept(new ClassVisitor(Opcodes.ASM9) {
+                    @Override
+                    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                        methods.add(name);
+                        return null;
+                    }
+                }, ClassReader.SKIP_CODE);
+            }
+        }
+        Assertions.assertTrue(methods.contains("tree_0"));
+        Assertions.assertTrue(methods.stream().anyMatch(name -> name.startsWith("tree_0_")));
+        Assertions.assertTrue(methods.stream().anyMatch(name -> name.startsWith("leaf_0_")));
+    }
+
+    private void checkConsistency(Predictor expected, Predictor actual, double[][] rows, int numClass) {
+        double[] expectedBatch = new double[rows.length * numClass];
+        double[] batch = new double[rows.length * numClass];
+        expected.predictRaw(rows, expectedBatch);
+        actual.predictRaw(rows, batch);
+        Assertions.assertArrayEquals(expectedBatch, batch);
+
+        int[] expectedLeaves = new int[rows.length * 300];
+        int[] leaves = new int[rows.length * 300];
+        for (double[] row : rows) {
+            Assertions.assertArrayEquals(expected.predictRaw(row), actual.predictRaw(row));
+            expected.predictLeafIndex(row, expectedLeaves);
+            actual.predictLeafIndex(row, leaves);
+            Assertions.assertArrayEquals(expectedLeaves, leaves);
+        }
+    }
+
+    /**
+     * Single full binary tree, split nodes cover all missing types.
+     *
+     * @return model text
+     */
+    private String deepTreeModel() {
+        Random random = new Random(DEEP_TREE_DEPTH);
+        int internalNodes = (1 << DEEP_TREE_DEPTH) - 1;
+        int[] decisionTypes = {2, 6, 10, 0};
+        List<String> features = new ArrayList<>();
+        List<String> thresholds = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        List<String> left = new ArrayList<>();
+        List<String> right = new ArrayList<>();
+        for (int i = 0; i < internalNodes; i++) {
+            features.add(String.valueOf(random.nextInt(DEEP_TREE_FEATURES)));
+            thresholds.add(String.valueOf(-1.5 + 3 * random.nextDouble()));
+            types.add(String.valueOf(decisionTypes[i % decisionTypes.length]));
+            left.add(String.valueOf(childIndex(2 * i + 1, internalNodes)));
+            right.add(String.valueOf(childIndex(2 * i + 2, internalNodes)));
+        }
+        String leafValues = IntStream.rangeClosed(0, internalNodes)
+            .mapToObj(i -> String.valueOf(random.nextGaussian()))
+            .collect(Collectors.joining(" "));
+        return "tree\nversion=v3\nnum_class=1\nnum_tree_per_iteration=1\nlabel_index=0\nmax_feature_idx=" + (DEEP_TREE_FEATURES - 1)
+            + "\nobjective=regression\n\n"
+            + "Tree=0\nnum_leaves=" + (internalNodes + 1) + "\nnum_cat=0"
+            + "\nsplit_feature=" + String.join(" ", features)
+            + "\nthreshold=" + String.join(" ", thresholds)
+            + "\ndecision_type=" + String.join(" ", types)
+            + "\nleft_child=" + String.join(" ", left)
+            + "\nright_child=" + String.join(" ", right)
+            + "\nleaf_value=" + leafValues
+            + "\nshrinkage=1\n\n\nend of trees\n";
+    }
+
+    private int childIndex(int node, int internalNodes) {
+        return node < internalNodes ? node : ~(node - internalNodes);
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Parallel batch prediction should be consistent with single thread batch prediction.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/8
+ */
+public class ParallelBatchPredictionTest extends ConsistencyTestTemplate {
+
+    private static final int FROM = 3;
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    public static void createPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    public static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void testParallelBatchPredictByGeneratedClass() {
+        for (int i = 0; i < MODELS.length; i++) {
+            checkParallelBatch(loadModel(MODELS[i], "parallel_generated_" + MODELS[i], EngineType.GENERATED), i);
+        }
+    }
+
+    @Test
+    public void testParallelBatchPredictBySimplePredictor() {
+        for (int i = 0; i < MODELS.length; i++) {
+            checkParallelBatch(loadModel(MODELS[i], "parallel_simple_" + MODELS[i], EngineType.SIMPLE), i);
+        }
+    }
+
+    @Test
+    public void testParallelBatchPredictBySparseEngine() {
+        for (int i = 0; i < MODELS.length; i++) {
+            checkParallelBatch(loadModel(MODELS[i], "parallel_sparse_" + MODELS[i], EngineType.SPARSE), i);
+        }
+    }
+
+    @Test
+    public void testParallelBatchInvalidInput() {
+        Predictor predictor = loadModel("wine_model", "parallel_generated_wine_model", EngineType.GENERATED);
+        double[][] rows = randomRows(13);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> predictor.predict(rows, 0, rows.length, new double[rows.length], pool));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> predictor.predict(rows, 0, rows.length, new double[rows.length * 3], null));
+    }
+
+    private void checkParallelBatch(Predictor predictor, int modelIndex) {
+        double[][] rows = randomRows(FEATURE_SIZES[modelIndex]);
+        int numClass = NUM_CLASSES[modelIndex];
+        double[] raw = new double[rows.length * numClass];
+        double[] output = new double[rows.length * numClass];
+        double[] parallelRaw = new double[rows.length * numClass];
+        double[] parallelOutput = new double[rows.length * numClass];
+        predictor.predictRaw(rows, FROM, rows.length, raw);
+        predictor.predict(rows, FROM, rows.length, output);
+        predictor.predictRaw(rows, FROM, rows.length, parallelRaw, pool);
+        predictor.predict(rows, FROM, rows.length, parallelOutput, pool);
+        Assertions.assertArrayEquals(raw, parallelRaw);
+        Assertions.assertArrayEquals(output, parallelOutput);
+
+        // empty range
+        predictor.predict(rows, FROM, FROM, parallelOutput, pool);
+        Assertions.assertArrayEquals(output, parallelOutput);
+    }
+}
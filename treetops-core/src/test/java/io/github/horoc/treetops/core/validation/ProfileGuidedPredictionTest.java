@@ -0,0 +1,91 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.factory.TreePredictorFactory;
+import io.github.horoc.treetops.core.predictor.BranchProfile;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import io.github.horoc.treetops.core.predictor.ProfileGuidedOptions;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Profile guided predictor is recompiled by sampled rows, prediction should be the same as default generated predictor before and after recompilation.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class ProfileGuidedPredictionTest extends ConsistencyTestTemplate {
+
+    @Test
+    public void testProfileGuidedPrediction() throws IOException {
+        for (int i = 0; i < MODELS.length; i++) {
+            Path dir = Files.createDirectory(tempDir.resolve(MODELS[i]));
+            BranchProfile profile = new BranchProfile();
+            PredictorOptions options = profileGuidedOptions(profile);
+            String path = getClass().getClassLoader().getResource(MODELS[i] + ".txt").getPath();
+            Predictor profiled = TreePredictorFactory.newInstance("pgo_" + MODELS[i], path, dir.toString(), options);
+            Predictor generated = loadModel(MODELS[i], "pgo_generated_" + MODELS[i], true);
+
+            double[][] rows = randomRows(FEATURE_SIZES[i]);
+            for (double[] row : rows) {
+                Assertions.assertArrayEquals(generated.predictRaw(row), profiled.predictRaw(row));
+                Assertions.assertArrayEquals(generated.predict(row), profiled.predict(row));
+            }
+            // recompiled once, by the calling thread
+            Assertions.assertEquals(ROWS * 2, profile.getSamples());
+            Assertions.assertTrue(hasClass(dir, "_pgo_1"));
+            Assertions.assertFalse(hasClass(dir, "_pgo_2"));
+            for (double[] row : rows) {
+                Assertions.assertArrayEquals(generated.predictRaw(row), profiled.predictRaw(row));
+            }
+
+            // a new instance starts from exported profile
+            BranchProfile imported = BranchProfile.parse(profile.export());
+            Assertions.assertEquals(profile.export(), imported.export());
+            Predictor restarted = loadModel(MODELS[i], "pgo_imported_" + MODELS[i], profileGuidedOptions(imported));
+            for (double[] row : rows) {
+                Assertions.assertArrayEquals(generated.predictRaw(row), restarted.predictRaw(row));
+            }
+        }
+    }
+
+    @Test
+    public void testMismatchedProfile() {
+        BranchProfile profile = new BranchProfile();
+        loadModel(MODELS[0], "pgo_mismatch_source_" + MODELS[0], profileGuidedOptions(profile));
+
+        BranchProfile imported = BranchProfile.parse(profile.export());
+        RuntimeException e = Assertions.assertThrows(RuntimeException.class,
+            () -> loadModel(MODELS[3], "pgo_mismatch_" + MODELS[3], profileGuidedOptions(imported)));
+        Assertions.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BranchProfile.parse("tree=0 1 2"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BranchProfile.parse("treetops_branch_profile\nsamples=1\ntree=0 a"));
+    }
+
+    /**
+     * Every row is sampled and recompilation runs on the calling thread, so that it is deterministic.
+     *
+     * @param profile branch profile
+     * @return predictor options
+     */
+    private PredictorOptions profileGuidedOptions(BranchProfile profile) {
+        ProfileGuidedOptions profileGuided = new ProfileGuidedOptions();
+        profileGuided.setSampleInterval(1);
+        profileGuided.setRecompileSamples(ROWS / 2);
+        profileGuided.setExecutor(Runnable::run);
+        profileGuided.setProfile(profile);
+        PredictorOptions options = new PredictorOptions();
+        options.setProfileGuided(profileGuided);
+        return options;
+    }
+
+    private boolean hasClass(Path dir, String suffix) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.anyMatch(f -> f.getFileName().toString().contains(suffix));
+        }
+    }
+}
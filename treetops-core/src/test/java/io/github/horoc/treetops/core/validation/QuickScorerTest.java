@@ -0,0 +1,52 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.io.IOException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * QuickScorer engine should predict the same values and leaf indexes as tree traversal.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class QuickScorerTest extends ConsistencyTestTemplate {
+
+    @Test
+    public void testQuickScorer() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor generated = loadModel(MODELS[i], "quick_scorer_generated_" + MODELS[i], true);
+            Predictor quickScorer = loadModel(MODELS[i], "quick_scorer_" + MODELS[i], EngineType.QUICK_SCORER);
+            double[] output = new double[NUM_CLASSES[i]];
+            double[] expectedOutput = new double[NUM_CLASSES[i]];
+            int[] leaves = new int[1024];
+            int[] expectedLeaves = new int[1024];
+            for (double[] row : randomRows(FEATURE_SIZES[i])) {
+                Assertions.assertArrayEquals(generated.predictRaw(row), quickScorer.predictRaw(row), 1e-12);
+                Assertions.assertArrayEquals(generated.predict(row), quickScorer.predict(row), 1e-12);
+                quickScorer.predictRaw(row, 7, output);
+                generated.predictRaw(row, 7, expectedOutput);
+                Assertions.assertArrayEquals(expectedOutput, output, 1e-12);
+                quickScorer.predictLeafIndex(row, leaves);
+                generated.predictLeafIndex(row, expectedLeaves);
+                Assertions.assertArrayEquals(expectedLeaves, leaves);
+            }
+        }
+    }
+
+    @Test
+    public void testMissingTypesAndLargeTrees() throws IOException {
+        checkMissingTypes(EngineType.QUICK_SCORER);
+    }
+
+    @Test
+    public void testEarlyStopRejected() {
+        PredictorOptions options = new PredictorOptions();
+        options.setEngineType(EngineType.QUICK_SCORER);
+        options.setEarlyStop(true);
+        Assertions.assertThrows(RuntimeException.class, () -> loadModel("breast_cancer_model", "quick_scorer_early_stop_breast_cancer_model", options));
+    }
+}
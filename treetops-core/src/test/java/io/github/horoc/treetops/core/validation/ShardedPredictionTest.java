@@ -0,0 +1,124 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.loader.FileTreeModelLoader;
+import io.github.horoc.treetops.core.model.TreeModel;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import io.github.horoc.treetops.core.predictor.ShardedPredictor;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tree-sharded prediction should be consistent with simple predictor, up to the order of summation.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/8
+ */
+public class ShardedPredictionTest extends ConsistencyTestTemplate {
+
+    private static final double DELTA = 1e-9;
+
+    private static final int SHARD_COUNT = 3;
+
+    @Test
+    public void testShardedPredict() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (int i = 0; i < MODELS.length; i++) {
+                PredictorOptions options = new PredictorOptions();
+                options.setEngineType(EngineType.SHARDED);
+                options.setShardCount(SHARD_COUNT);
+                options.setShardPool(pool);
+                Predictor sharded = loadModel(MODELS[i], "sharded_" + MODELS[i], options);
+                Predictor simple = loadModel(MODELS[i], "sharded_reference_" + MODELS[i], false);
+
+                double[][] rows = randomRows(FEATURE_SIZES[i]);
+                double[] batch = new double[rows.length * NUM_CLASSES[i]];
+                double[] expectedBatch = new double[rows.length * NUM_CLASSES[i]];
+                sharded.predict(rows, batch);
+                simple.predict(rows, expectedBatch);
+                Assertions.assertArrayEquals(expectedBatch, batch, DELTA);
+                for (double[] row : rows) {
+                    Assertions.assertArrayEquals(simple.predictRaw(row), sharded.predictRaw(row), DELTA);
+                    Assertions.assertArrayEquals(simple.predict(row), sharded.predict(row), DELTA);
+                    if (NUM_CLASSES[i] == 1) {
+                        Assertions.assertEquals(simple.predictRawScalar(row), sharded.predictRawScalar(row), DELTA);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testIterationLimitAndLeafIndex() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (int i = 0; i < MODELS.length; i++) {
+                PredictorOptions options = new PredictorOptions();
+                options.setEngineType(EngineType.SHARDED);
+                options.setShardCount(SHARD_COUNT);
+                options.setShardPool(pool);
+                Predictor sharded = loadModel(MODELS[i], "sharded_limit_" + MODELS[i], options);
+                Predictor simple = loadModel(MODELS[i], "sharded_limit_reference_" + MODELS[i], false);
+
+                double[][] rows = randomRows(FEATURE_SIZES[i]);
+                int from = 5;
+                double[] batch = new double[rows.length * NUM_CLASSES[i]];
+                double[] expectedBatch = new double[rows.length * NUM_CLASSES[i]];
+                sharded.predictRaw(rows, from, rows.length, batch);
+                simple.predictRaw(rows, from, rows.length, expectedBatch);
+                Assertions.assertArrayEquals(expectedBatch, batch, DELTA);
+
+                int numTrees = FileTreeModelLoader.getInstance().loadModel(getClass().getClassLoader().getResource(MODELS[i] + ".txt").getPath())
+                    .getTrees().size();
+                int[] leafBatch = new int[rows.length * numTrees];
+                int[] expectedLeafBatch = new int[rows.length * numTrees];
+                sharded.predictLeafIndex(rows, from, rows.length, leafBatch);
+                simple.predictLeafIndex(rows, from, rows.length, expectedLeafBatch);
+                Assertions.assertArrayEquals(expectedLeafBatch, leafBatch);
+
+                double[] output = new double[NUM_CLASSES[i]];
+                double[] expectedOutput = new double[NUM_CLASSES[i]];
+                int[] leaves = new int[numTrees];
+                int[] expectedLeaves = new int[numTrees];
+                for (double[] row : rows) {
+                    // limits within the first shard, across shards and beyond the model
+                    for (int numIteration : new int[] {1, 7, numTrees / NUM_CLASSES[i] - 1, numTrees}) {
+                        sharded.predictRaw(row, numIteration, output);
+                        simple.predictRaw(row, numIteration, expectedOutput);
+                        Assertions.assertArrayEquals(expectedOutput, output, DELTA);
+                    }
+                    sharded.predictLeafIndex(row, leaves);
+                    simple.predictLeafIndex(row, expectedLeaves);
+                    Assertions.assertArrayEquals(expectedLeaves, leaves);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testAdaptiveShardCount() {
+        for (int i = 0; i < MODELS.length; i++) {
+            TreeModel model = FileTreeModelLoader.getInstance().loadModel(getClass().getClassLoader().getResource(MODELS[i] + ".txt").getPath());
+            // small test models are too cheap for thread handoff
+            Assertions.assertEquals(1, ShardedPredictor.adaptiveShardCount(model, 8));
+
+            List<TreeModel> shards = ShardedPredictor.partition(model, SHARD_COUNT);
+            Assertions.assertEquals(SHARD_COUNT, shards.size());
+            int trees = 0;
+            for (TreeModel shard : shards) {
+                Assertions.assertEquals(0, shard.getTrees().size() % model.getNumberTreePerIteration());
+                Assertions.assertSame(model.getTrees().get(trees), shard.getTrees().get(0));
+                trees += shard.getTrees().size();
+            }
+            Assertions.assertEquals(model.getTrees().size(), trees);
+        }
+    }
+}
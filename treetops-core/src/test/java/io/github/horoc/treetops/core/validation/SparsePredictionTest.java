@@ -0,0 +1,78 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import io.github.horoc.treetops.core.predictor.SparseVector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Sparse engine should be consistent with dense prediction, absent features are treated as 0.0.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/3/18
+ */
+public class SparsePredictionTest extends ConsistencyTestTemplate {
+
+    @Test
+    public void testSparsePredict() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor dense = loadModel(MODELS[i], "sparse_dense_" + MODELS[i], true);
+            Predictor sparse = loadModel(MODELS[i], "sparse_" + MODELS[i], EngineType.SPARSE);
+            SparseVector vector = new SparseVector(2);
+            double[] output = new double[NUM_CLASSES[i]];
+            for (double[] row : randomRows(FEATURE_SIZES[i])) {
+                toSparse(row, vector);
+                double[] expected = dense.predict(row);
+                double[] expectedRaw = dense.predictRaw(row);
+                Assertions.assertArrayEquals(expected, sparse.predict(vector));
+                Assertions.assertArrayEquals(expectedRaw, sparse.predictRaw(vector));
+                Assertions.assertArrayEquals(expected, sparse.predict(row));
+                if (NUM_CLASSES[i] == 1) {
+                    Assertions.assertEquals(expectedRaw[0], sparse.predictRawScalar(row));
+                }
+                sparse.predict(vector, output);
+                Assertions.assertArrayEquals(expected, output);
+            }
+        }
+    }
+
+    @Test
+    public void testAbsentFeatures() {
+        Predictor dense = loadModel("wine_model", "sparse_dense_wine_model", true);
+        Predictor sparse = loadModel("wine_model", "sparse_wine_model", EngineType.SPARSE);
+        SparseVector vector = new SparseVector(new int[] {1, 5}, new double[] {1.5, Double.NaN}, 2);
+        double[] row = new double[13];
+        row[1] = 1.5;
+        row[5] = Double.NaN;
+        Assertions.assertArrayEquals(dense.predict(row), sparse.predict(vector));
+        Assertions.assertArrayEquals(dense.predict(new double[13]), sparse.predict(new SparseVector()));
+    }
+
+    @Test
+    public void testIllegalSparseInput() {
+        Predictor sparse = loadModel("wine_model", "sparse_wine_model", EngineType.SPARSE);
+        SparseVector vector = new SparseVector();
+        vector.add(13, 1.0);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> sparse.predict(vector));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> vector.add(3, 1.0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SparseVector(new int[] {2, 1}, new double[2], 2));
+        Predictor dense = loadModel("wine_model", "sparse_dense_wine_model", true);
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> dense.predict(new SparseVector()));
+    }
+
+    /**
+     * Zero values are dropped, the same as LightGBM sparse input.
+     *
+     * @param row    dense row
+     * @param vector sparse vector to fill
+     */
+    private void toSparse(double[] row, SparseVector vector) {
+        vector.clear();
+        for (int j = 0; j < row.length; j++) {
+            if (row[j] != 0.0) {
+                vector.add(j, row[j]);
+            }
+        }
+    }
+}
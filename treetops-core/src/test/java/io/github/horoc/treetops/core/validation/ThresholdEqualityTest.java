@@ -0,0 +1,57 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.factory.PredictorOptions;
+import io.github.horoc.treetops.core.factory.TreePredictorFactory;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Feature exactly equal to the threshold of a numerical split goes to the left child, same as `fval <= threshold` of official library.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class ThresholdEqualityTest extends ConsistencyTestTemplate {
+
+    private static final double THRESHOLD = 0.5;
+
+    @Test
+    public void testValueOnThreshold() throws IOException {
+        Path model = tempDir.resolve("threshold_equality_model.txt");
+        // tree 0 splits on feature 0, tree 1 splits on feature 1 with the same threshold
+        String text = "tree\nversion=v3\nnum_class=1\nnum_tree_per_iteration=1\nlabel_index=0\nmax_feature_idx=1\nobjective=regression\n\n"
+            + "Tree=0\nnum_leaves=2\nnum_cat=0\nsplit_feature=0\nthreshold=" + THRESHOLD + "\ndecision_type=2\nleft_child=-1\nright_child=-2"
+            + "\nleaf_value=1 2\nshrinkage=1\n\n\n"
+            + "Tree=1\nnum_leaves=2\nnum_cat=0\nsplit_feature=1\nthreshold=" + THRESHOLD + "\ndecision_type=2\nleft_child=-1\nright_child=-2"
+            + "\nleaf_value=10 20\nshrinkage=1\n\n\n"
+            + "end of trees\n";
+        Files.write(model, text.getBytes(StandardCharsets.UTF_8));
+
+        PredictorOptions preloadOptions = new PredictorOptions();
+        preloadOptions.setFeaturePreload(true);
+        Predictor[] predictors = {
+            TreePredictorFactory.newInstance("threshold_equality_model", model.toString(), null, EngineType.GENERATED),
+            TreePredictorFactory.newInstance("threshold_equality_model_preload", model.toString(), null, preloadOptions),
+            TreePredictorFactory.newInstance("threshold_equality_model_simple", model.toString(), null, EngineType.SIMPLE),
+        };
+        double[] values = {THRESHOLD, Math.nextDown(THRESHOLD), Math.nextUp(THRESHOLD)};
+        for (Predictor predictor : predictors) {
+            for (double first : values) {
+                for (double second : values) {
+                    double expected = (first <= THRESHOLD ? 1 : 2) + (second <= THRESHOLD ? 10 : 20);
+                    double[] row = {first, second};
+                    Assertions.assertEquals(expected, predictor.predictRaw(row)[0]);
+                    double[] batch = new double[1];
+                    predictor.predictRaw(new double[][] {row}, batch);
+                    Assertions.assertEquals(expected, batch[0]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.horoc.treetops.core.validation;
+
+import io.github.horoc.treetops.core.factory.EngineType;
+import io.github.horoc.treetops.core.predictor.Predictor;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Vectorized engine should predict exactly the same as {@link io.github.horoc.treetops.core.predictor.SimplePredictor} on batches of any size,
+ * it falls back to scalar engine if jdk.incubator.vector is not available, e.g. on Java 8.
+ *
+ * @author chenzhou@apache.org
+ * created on 2023/4/9
+ */
+public class VectorPredictionTest extends ConsistencyTestTemplate {
+
+    private static final int[] BATCH_SIZES = {1, 3, 7, 16, 61, ROWS};
+
+    private static final int PADDING = 3;
+
+    @Test
+    public void testVectorPrediction() {
+        for (int i = 0; i < MODELS.length; i++) {
+            Predictor simple = loadModel(MODELS[i], "vector_simple_" + MODELS[i], false);
+            Predictor vector = loadModel(MODELS[i], "vector_" + MODELS[i], EngineType.VECTOR);
+            double[][] rows = randomRows(FEATURE_SIZES[i]);
+            for (int batchSize : BATCH_SIZES) {
+                checkBatch(simple, vector, Arrays.copyOfRange(rows, ROWS - batchSize, ROWS), NUM_CLASSES[i]);
+            }
+            for (double[] row : rows) {
+                Assertions.assertArrayEquals(simple.predict(row), vector.predict(row));
+            }
+        }
+    }
+
+    @Test
+    public void testMissingTypes() throws IOException {
+        checkMissingTypes(EngineType.VECTOR);
+    }
+
+    @Test
+    public void testShortRows() {
+        Predictor simple = loadModel("wine_model", "vector_short_simple_wine_model", false);
+        Predictor vector = loadModel("wine_model", "vector_short_wine_model", EngineType.VECTOR);
+        double[][] rows = randomRows(13);
+        double[] batch = new double[ROWS * 3];
+        vector.predictRaw(rows, batch);
+
+        // absent features are 0.0, not values of rows packed by the previous batch
+        double[][] shortRows = new double[ROWS][];
+        double[][] paddedRows = new double[ROWS][];
+        for (int r = 0; r < ROWS; r++) {
+            shortRows[r] = Arrays.copyOf(rows[r], 5);
+            paddedRows[r] = Arrays.copyOf(shortRows[r], 13);
+        }
+        double[] expected = new double[ROWS * 3];
+        simple.predictRaw(paddedRows, expected);
+        vector.predictRaw(shortRows, batch);
+        Assertions.assertArrayEquals(expected, batch);
+    }
+
+    private void checkBatch(Predictor simple, Predictor vector, double[][] rows, int numClass) {
+        double[] expected = new double[rows.length * numClass];
+        double[] batch = new double[rows.length * numClass];
+        simple.predictRaw(rows, expected);
+        vector.predictRaw(rows, batch);
+        Assertions.assertArrayEquals(expected, batch);
+
+        // row major matrix with padding, and column major matrix
+        int rowStride = rows[0].length + PADDING;
+        double[] rowMajor = new double[PADDING + rows.length * rowStride];
+        double[] columnMajor = new double[rows.length * rows[0].length];
+        for (int r = 0; r < rows.length; r++) {
+            for (int j = 0; j < rows[r].length; j++) {
+                rowMajor[PADDING + r * rowStride + j] = rows[r][j];
+                columnMajor[j * rows.length + r] = rows[r][j];
+            }
+        }
+        vector.predictRaw(rowMajor, PADDING, rowStride, 1, rows.length, batch);
+        Assertions.assertArrayEquals(expected, batch);
+        vector.predictRaw(columnMajor, 0, 1, rows.length, rows.length, batch);
+        Assertions.assertArrayEquals(expected, batch);
+
+        // partial batch of a larger output
+        double[] partial = new double[(rows.length + 2) * numClass];
+        double[][] shifted = new double[rows.length + 2][];
+        Arrays.fill(shifted, rows[0]);
+        System.arraycopy(rows, 0, shifted, 1, rows.length);
+        vector.predictRaw(shifted, 1, rows.length + 1, partial);
+        Assertions.assertArrayEquals(expected, Arrays.copyOfRange(partial, numClass, (rows.length + 1) * numClass));
+    }
+}